@@ -0,0 +1,62 @@
+package com.carledwinti.library.api.benchmark;
+
+import com.carledwinti.library.api.dto.BookDTO;
+import com.carledwinti.library.api.model.Book;
+import com.carledwinti.library.api.model.Loan;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+//massa de dados compartilhada pelos benchmarks, sempre com os mesmos valores para que as execuções sejam comparáveis
+final class BenchmarkFixtures {
+
+    private BenchmarkFixtures() {
+    }
+
+    static BookDTO bookDTO() {
+        return BookDTO.builder()
+                .author("Artur")
+                .title("As Aventuras do Rei")
+                .isbn("978-85-0000-000-1")
+                .build();
+    }
+
+    static Book book(long id) {
+        return Book.builder()
+                .id(id)
+                .author("Autor " + id)
+                .title("Titulo do livro numero " + id)
+                .isbn(String.valueOf(9788500000000L + id))
+                .build();
+    }
+
+    static Loan loan(long id, Book book) {
+        return Loan.builder()
+                .id(id)
+                .isbn(book.getIsbn())
+                .customer("Cliente " + id)
+                .customerEmail("cliente" + id + "@email.com")
+                .book(book)
+                .loanDate(LocalDate.of(2021, 1, 1))
+                .dueDate(LocalDate.of(2021, 1, 4))
+                .returned(false)
+                .build();
+    }
+
+    static List<Book> books(int size) {
+        List<Book> books = new ArrayList<>(size);
+        for (long id = 1; id <= size; id++) {
+            books.add(book(id));
+        }
+        return books;
+    }
+
+    static List<Loan> loans(int size) {
+        List<Loan> loans = new ArrayList<>(size);
+        for (long id = 1; id <= size; id++) {
+            loans.add(loan(id, book(id)));
+        }
+        return loans;
+    }
+}
@@ -0,0 +1,146 @@
+package com.carledwinti.library.api.benchmark;
+
+import com.carledwinti.library.api.dto.BookDTO;
+import com.carledwinti.library.api.dto.LoanDTO;
+import com.carledwinti.library.api.dto.LoanFilterDTO;
+import com.carledwinti.library.api.mapper.BookMapper;
+import com.carledwinti.library.api.mapper.LoanMapper;
+import com.carledwinti.library.api.model.Book;
+import com.carledwinti.library.api.model.Loan;
+import com.carledwinti.library.api.resource.BookController;
+import com.carledwinti.library.api.resource.LoanController;
+import com.carledwinti.library.api.service.BookService;
+import com.carledwinti.library.api.service.LoanService;
+import com.carledwinti.library.api.service.export.BookCatalogExport;
+import com.carledwinti.library.api.service.export.ExportPermits;
+import com.carledwinti.library.api.service.export.LoanHistoryExport;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.context.request.WebRequest;
+
+import javax.validation.Validation;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executa os métodos dos controllers sem a camada HTTP e com os services stubados, de forma que o custo medido seja
+ * o dos controllers e da serialização Jackson do {@link PageImpl} devolvido ao cliente. As listagens dos services já
+ * retornam as projeções(BookDTO/LoanDTO), o mapeamento das entities é medido pelo MappingBenchmark.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ControllerBenchmark {
+
+    @Param({"10", "100"})
+    private int pageSize;
+
+    private BookController bookController;
+    private LoanController loanController;
+    private ObjectMapper objectMapper;
+    private BookDTO bookDTO;
+    private BookDTO bookFilterDTO;
+    private LoanFilterDTO loanFilterDTO;
+    private Pageable pageable;
+    private WebRequest webRequest;
+
+    @Setup
+    public void setUp() {
+        pageable = PageRequest.of(0, pageSize);
+        Book book = BenchmarkFixtures.book(1L);
+        BookMapper bookMapper = new BookMapper();
+        LoanMapper loanMapper = new LoanMapper(bookMapper);
+        List<BookDTO> books = bookMapper.toDTOs(BenchmarkFixtures.books(pageSize));
+        List<LoanDTO> loans = loanMapper.toDTOsWithBook(BenchmarkFixtures.loans(pageSize));
+
+        //stubOnly para que o mockito não guarde as invocações durante as milhões de chamadas do benchmark
+        BookService bookService = Mockito.mock(BookService.class, Mockito.withSettings().stubOnly());
+        LoanService loanService = Mockito.mock(LoanService.class, Mockito.withSettings().stubOnly());
+        Mockito.when(bookService.save(Mockito.any(Book.class))).thenReturn(book);
+        Mockito.when(bookService.getByid(Mockito.anyLong())).thenReturn(Optional.of(book));
+        Mockito.when(bookService.findByFilter(Mockito.any(Book.class), Mockito.any(Pageable.class)))
+                .thenReturn(new PageImpl<>(books, pageable, 1000));
+        Mockito.when(loanService.getLoansByBook(Mockito.any(Book.class), Mockito.any(Pageable.class)))
+                .thenReturn(new PageImpl<>(loans, pageable, 1000));
+        Mockito.when(loanService.findByFilter(Mockito.any(Loan.class), Mockito.any(Pageable.class)))
+                .thenReturn(new PageImpl<>(loans, pageable, 1000));
+
+        //mesma configuração do ObjectMapper criado pelo Spring Boot para os controllers
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        bookController = new BookController(bookService, bookMapper, loanService, objectMapper,
+                Validation.buildDefaultValidatorFactory().getValidator(), Mockito.mock(BookCatalogExport.class),
+                Mockito.mock(LoanHistoryExport.class), new ExportPermits(1));
+        loanController = new LoanController(loanService, bookService, loanMapper, Mockito.mock(LoanHistoryExport.class),
+                new ExportPermits(1));
+
+        bookDTO = BenchmarkFixtures.bookDTO();
+        bookFilterDTO = BookDTO.builder().title("livro").build();
+        //requisição sem If-None-Match/If-Modified-Since, o GET condicional sempre segue para a consulta
+        webRequest = new ServletWebRequest(new MockHttpServletRequest(), new MockHttpServletResponse());
+        loanFilterDTO = LoanFilterDTO.builder().isbn("9788500000001").customer("Cliente 1").build();
+    }
+
+    @Benchmark
+    public BookDTO createBook() {
+        return bookController.create(bookDTO);
+    }
+
+    @Benchmark
+    public BookDTO getBook() {
+        return bookController.getBook(1L, webRequest);
+    }
+
+    @Benchmark
+    public Page<BookDTO> getBooksByFilter() {
+        return bookController.getByFilter(bookFilterDTO, pageable);
+    }
+
+    @Benchmark
+    public byte[] getBooksByFilterJson() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(bookController.getByFilter(bookFilterDTO, pageable));
+    }
+
+    @Benchmark
+    public Page<LoanDTO> getAllLoanFromBook() {
+        return bookController.getAllLoanFromBook(1L, pageable, webRequest);
+    }
+
+    @Benchmark
+    public byte[] getAllLoanFromBookJson() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(bookController.getAllLoanFromBook(1L, pageable, webRequest));
+    }
+
+    @Benchmark
+    public Page<LoanDTO> findLoansByFilter() {
+        return loanController.findByFilter(loanFilterDTO, pageable);
+    }
+
+    @Benchmark
+    public byte[] findLoansByFilterJson() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(loanController.findByFilter(loanFilterDTO, pageable));
+    }
+}
@@ -0,0 +1,122 @@
+package com.carledwinti.library.api.benchmark;
+
+import com.carledwinti.library.api.LibraryApiApplication;
+import com.carledwinti.library.api.exception.BusinessException;
+import com.carledwinti.library.api.model.Book;
+import com.carledwinti.library.api.model.Loan;
+import com.carledwinti.library.api.repository.BookRepository;
+import com.carledwinti.library.api.service.LoanService;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Empresta e devolve books sorteados com 64 threads pelo LoanService real(H2 em memória), medindo a vazão e contando
+ * os empréstimos aceitos(loaned) e recusados por já estarem emprestados(conflicts). Com books=1 todas as threads
+ * disputam o mesmo book, com books=4096 quase não há disputa.
+ *
+ * Ao final de cada cenário o teardown confere no banco que nenhum book ficou com mais de um loan não devolvido e que
+ * o activeLoanId de cada book aponta para o seu loan aberto, lançando erro caso contrário.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(64)
+@State(Scope.Benchmark)
+public class LoanConcurrencyBenchmark {
+
+    @Param({"1", "64", "4096"})
+    private int books;
+
+    private ConfigurableApplicationContext context;
+    private LoanService loanService;
+    private List<Book> savedBooks;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Outcome {
+        public long loaned;
+        public long conflicts;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new SpringApplicationBuilder(LibraryApiApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties("application.books.search-index.enabled=false", "spring.main.banner-mode=off",
+                        "spring.datasource.url=jdbc:h2:mem:loan-benchmark")
+                .run();
+        loanService = context.getBean(LoanService.class);
+        BookRepository bookRepository = context.getBean(BookRepository.class);
+        List<Book> newBooks = new ArrayList<>();
+        for (int i = 0; i < books; i++) {
+            newBooks.add(BenchmarkFixtures.book((long) i));
+        }
+        newBooks.forEach(book -> book.setId(null));
+        savedBooks = bookRepository.saveAll(newBooks);
+    }
+
+    @TearDown(Level.Trial)
+    public void verifyAndClose() {
+        EntityManager entityManager = context.getBean(EntityManagerFactory.class).createEntityManager();
+        try {
+            List<?> loanedTwice = entityManager.createQuery("select loan.book.id from Loan loan " +
+                    " where loan.returned is null or loan.returned = false " +
+                    " group by loan.book.id having count(loan) > 1").getResultList();
+            Long openLoans = entityManager.createQuery("select count(loan) from Loan loan, Book book " +
+                    " where loan.book = book and book.activeLoanId = loan.id " +
+                    " and (loan.returned is null or loan.returned = false)", Long.class).getSingleResult();
+            Long onLoanBooks = entityManager.createQuery(
+                    "select count(book) from Book book where book.activeLoanId is not null", Long.class).getSingleResult();
+            if (!loanedTwice.isEmpty() || !openLoans.equals(onLoanBooks)) {
+                throw new IllegalStateException("books loaned twice: " + loanedTwice
+                        + ", open loans: " + openLoans + ", books on loan: " + onLoanBooks);
+            }
+        } finally {
+            entityManager.close();
+            context.close();
+        }
+    }
+
+    //quem consegue o empréstimo devolve o book logo em seguida, liberando para as outras threads
+    @Benchmark
+    public boolean loanAndReturn(Outcome outcome) {
+        Book book = savedBooks.get(ThreadLocalRandom.current().nextInt(savedBooks.size()));
+        Loan loan = Loan.builder().book(book).isbn(book.getIsbn()).customer("Lariano")
+                .customerEmail("lariano@email.com").loanDate(LocalDate.now()).build();
+        try {
+            Loan savedLoan = loanService.save(loan).get();
+            loanService.update(Loan.builder().id(savedLoan.getId()).returned(true).build());
+            outcome.loaned++;
+            return true;
+        } catch (BusinessException businessException) {
+            outcome.conflicts++;
+            return false;
+        }
+    }
+}
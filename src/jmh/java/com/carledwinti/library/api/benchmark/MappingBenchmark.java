@@ -0,0 +1,120 @@
+package com.carledwinti.library.api.benchmark;
+
+import com.carledwinti.library.api.dto.BookDTO;
+import com.carledwinti.library.api.dto.LoanDTO;
+import com.carledwinti.library.api.mapper.BookMapper;
+import com.carledwinti.library.api.mapper.LoanMapper;
+import com.carledwinti.library.api.model.Book;
+import com.carledwinti.library.api.model.Loan;
+import org.modelmapper.ModelMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Mede isoladamente cada conversão DTO/entity feita pelos controllers a cada requisição, comparando o ModelMapper
+ * (modelMapper*) com os mappers do pacote mapper (mapper*). Os cenários *Page convertem uma página de 100 linhas.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MappingBenchmark {
+
+    private static final int PAGE_SIZE = 100;
+
+    private ModelMapper modelMapper;
+    private BookMapper bookMapper;
+    private LoanMapper loanMapper;
+    private BookDTO bookDTO;
+    private Book book;
+    private Loan loan;
+    private List<Book> books;
+    private List<Loan> loans;
+
+    @Setup
+    public void setUp() {
+        modelMapper = new ModelMapper();
+        bookMapper = new BookMapper();
+        loanMapper = new LoanMapper(bookMapper);
+        bookDTO = BenchmarkFixtures.bookDTO();
+        book = BenchmarkFixtures.book(1L);
+        loan = BenchmarkFixtures.loan(1L, book);
+        books = BenchmarkFixtures.books(PAGE_SIZE);
+        loans = BenchmarkFixtures.loans(PAGE_SIZE);
+    }
+
+    //BookController.create e getByFilter
+    @Benchmark
+    public Book modelMapperBookDTOToEntity() {
+        return modelMapper.map(bookDTO, Book.class);
+    }
+
+    @Benchmark
+    public Book mapperBookDTOToEntity() {
+        return bookMapper.toEntity(bookDTO);
+    }
+
+    //BookController.create, getBook e getByFilter
+    @Benchmark
+    public BookDTO modelMapperBookEntityToDTO() {
+        return modelMapper.map(book, BookDTO.class);
+    }
+
+    @Benchmark
+    public BookDTO mapperBookEntityToDTO() {
+        return bookMapper.toDTO(book);
+    }
+
+    //linha de LoanController.findByFilter e BookController.getAllLoanFromBook
+    @Benchmark
+    public LoanDTO modelMapperLoanRowToDTO() {
+        return modelMapperLoanRow(loan);
+    }
+
+    @Benchmark
+    public LoanDTO mapperLoanRowToDTO() {
+        return loanMapper.toDTOWithBook(loan);
+    }
+
+    @Benchmark
+    public List<BookDTO> modelMapperBookPage() {
+        return books.stream().map(book -> modelMapper.map(book, BookDTO.class)).collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<BookDTO> mapperBookPage() {
+        return bookMapper.toDTOs(books);
+    }
+
+    @Benchmark
+    public List<LoanDTO> modelMapperLoanPage() {
+        return loans.stream().map(this::modelMapperLoanRow).collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<LoanDTO> mapperLoanPage() {
+        return loanMapper.toDTOsWithBook(loans);
+    }
+
+    //lambda que os controllers usavam antes dos mappers
+    private LoanDTO modelMapperLoanRow(Loan loan) {
+        BookDTO loanBookDTO = modelMapper.map(loan.getBook(), BookDTO.class);
+        LoanDTO loanDTO = modelMapper.map(loan, LoanDTO.class);
+        loanDTO.setBookDTO(loanBookDTO);
+        return loanDTO;
+    }
+}
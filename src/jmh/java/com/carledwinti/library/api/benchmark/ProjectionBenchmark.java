@@ -0,0 +1,170 @@
+package com.carledwinti.library.api.benchmark;
+
+import com.carledwinti.library.api.LibraryApiApplication;
+import com.carledwinti.library.api.dto.BookDTO;
+import com.carledwinti.library.api.dto.LoanDTO;
+import com.carledwinti.library.api.mapper.BookMapper;
+import com.carledwinti.library.api.mapper.LoanMapper;
+import com.carledwinti.library.api.model.Book;
+import com.carledwinti.library.api.model.Loan;
+import com.carledwinti.library.api.repository.BookRepository;
+import com.carledwinti.library.api.repository.LoanRepository;
+import com.carledwinti.library.api.service.BookService;
+import com.carledwinti.library.api.service.LoanService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Example;
+import org.springframework.data.domain.ExampleMatcher;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compara as listagens de books e loans carregando as entities e convertendo com os mappers(como era feito antes das
+ * projeções) com as projeções BookDTO/LoanDTO retornadas pelos services, na aplicação completa com H2 em memória.
+ * Ambos os caminhos executam a mesma página e o mesmo count, em transação readOnly.
+ *
+ * Com -prof gc(padrão do profile) o gc.alloc.rate.norm dá os bytes alocados por requisição:
+ * mvnw -Pbenchmark verify -Djmh.args="ProjectionBenchmark -prof gc"
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProjectionBenchmark {
+
+    private static final int BOOKS = 1000;
+
+    @Param({"20", "100"})
+    private int pageSize;
+
+    private ConfigurableApplicationContext context;
+    private BookService bookService;
+    private LoanService loanService;
+    private BookRepository bookRepository;
+    private BookMapper bookMapper;
+    private LoanMapper loanMapper;
+    private EntityManager entityManager;
+    private TransactionTemplate readOnlyTransaction;
+    private Book bookFilter;
+    private Book loanedBook;
+    private Pageable pageable;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new SpringApplicationBuilder(LibraryApiApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties("spring.main.banner-mode=off", "spring.boot.admin.client.enabled=false",
+                        "logging.level.root=WARN",
+                        "spring.datasource.url=jdbc:h2:mem:projection-benchmark;DB_CLOSE_ON_EXIT=FALSE")
+                //sem o índice de busca o filtro de books sempre vai à base, nos dois caminhos. Como argumento, pois
+                //o properties() do builder não sobrescreve o application.properties
+                .run("--application.books.search-index.enabled=false");
+        bookService = context.getBean(BookService.class);
+        loanService = context.getBean(LoanService.class);
+        bookRepository = context.getBean(BookRepository.class);
+        bookMapper = context.getBean(BookMapper.class);
+        loanMapper = context.getBean(LoanMapper.class);
+        entityManager = SharedEntityManagerCreator.createSharedEntityManager(context.getBean(EntityManagerFactory.class));
+        readOnlyTransaction = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+        readOnlyTransaction.setReadOnly(true);
+
+        List<Book> books = BenchmarkFixtures.books(BOOKS);
+        books.forEach(book -> book.setId(null));
+        books = bookRepository.saveAll(books);
+        //o histórico de empréstimos de um mesmo book, já devolvidos
+        loanedBook = books.get(0);
+        List<Loan> loans = new ArrayList<>(BOOKS);
+        for (int i = 1; i <= BOOKS; i++) {
+            Loan loan = BenchmarkFixtures.loan(i, loanedBook);
+            loan.setId(null);
+            loan.setReturned(true);
+            loans.add(loan);
+        }
+        context.getBean(LoanRepository.class).saveAll(loans);
+
+        //todos os books contêm "livro" no título
+        bookFilter = Book.builder().title("livro").build();
+        pageable = PageRequest.of(1, pageSize);
+        checkPage(booksFromEntities(), booksFromProjection());
+        checkPage(loansFromEntities(), loansFromProjection());
+    }
+
+    //os dois caminhos precisam entregar a mesma página completa, senão a comparação não vale
+    private void checkPage(Page<?> fromEntities, Page<?> fromProjection) {
+        if (fromEntities.getNumberOfElements() != pageSize || !fromEntities.getContent().equals(fromProjection.getContent())
+                || fromEntities.getTotalElements() != fromProjection.getTotalElements()) {
+            throw new IllegalStateException("entity and projection pages differ: " + fromEntities.getContent()
+                    + " / " + fromProjection.getContent());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void close() {
+        context.close();
+    }
+
+    @Benchmark
+    public Page<BookDTO> booksFromEntities() {
+        return readOnlyTransaction.execute(status -> {
+            Page<Book> page = bookRepository.findAll(Example.of(bookFilter, ExampleMatcher.matching()
+                    .withIgnoreCase()
+                    .withIgnoreNullValues()
+                    .withStringMatcher(ExampleMatcher.StringMatcher.CONTAINING)), pageable);
+            return new PageImpl<>(bookMapper.toDTOs(page.getContent()), pageable, page.getTotalElements());
+        });
+    }
+
+    @Benchmark
+    public Page<BookDTO> booksFromProjection() {
+        return bookService.findByFilter(bookFilter, pageable);
+    }
+
+    @Benchmark
+    public Page<LoanDTO> loansFromEntities() {
+        return readOnlyTransaction.execute(status -> {
+            List<Loan> loans = entityManager.createQuery(
+                    "select loan from Loan as loan join fetch loan.book where loan.book = :book", Loan.class)
+                    .setParameter("book", loanedBook)
+                    .setFirstResult((int) pageable.getOffset())
+                    .setMaxResults(pageable.getPageSize())
+                    .getResultList();
+            Long total = entityManager.createQuery(
+                    "select count(loan) from Loan as loan where loan.book = :book", Long.class)
+                    .setParameter("book", loanedBook)
+                    .getSingleResult();
+            return new PageImpl<>(loanMapper.toDTOsWithBook(loans), pageable, total);
+        });
+    }
+
+    @Benchmark
+    public Page<LoanDTO> loansFromProjection() {
+        return loanService.getLoansByBook(loanedBook, pageable);
+    }
+}
@@ -0,0 +1,159 @@
+package com.carledwinti.library.api.benchmark;
+
+import com.carledwinti.library.api.LibraryApiApplication;
+import com.carledwinti.library.api.config.ExecutionThreads;
+import com.carledwinti.library.api.model.Book;
+import com.carledwinti.library.api.model.Loan;
+import com.carledwinti.library.api.repository.BookRepository;
+import com.carledwinti.library.api.repository.LoanRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Carga HTTP(GET /api/books e /api/loans, 20 por página) com 128 clientes simultâneos contra a aplicação completa,
+ * comparando as requisições em threads de plataforma(pool do Tomcat) e virtuais(application.threads.virtual).
+ * Throughput dá a vazão e SampleTime a distribuição do tempo de resposta(p99 em "·p0.99").
+ *
+ * dbLatencyMillis segura cada conexão obtida do Hikari por esse tempo, simulando uma base lenta: é o cenário em que o
+ * pool do Tomcat satura. As threads virtuais exigem Java 21, o benchmark é compilado com o JDK do projeto e o JVM do
+ * fork é escolhido pelo JMH:
+ * mvnw -Pbenchmark verify -Djmh.args="ThreadModeLoadBenchmark -jvm /caminho/jdk-21/bin/java"
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(128)
+@State(Scope.Benchmark)
+public class ThreadModeLoadBenchmark {
+
+    @Param({"false", "true"})
+    private boolean virtual;
+
+    @Param({"0", "20"})
+    private int dbLatencyMillis;
+
+    private ConfigurableApplicationContext context;
+    private String booksUrl;
+    private String loansUrl;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        if (virtual && !ExecutionThreads.isVirtualSupported()) {
+            throw new IllegalStateException("virtual threads require the benchmark fork to run on Java 21(-jvm)");
+        }
+        context = new SpringApplicationBuilder(LibraryApiApplication.class)
+                .properties("server.port=0", "spring.main.banner-mode=off",
+                        "spring.boot.admin.client.enabled=false", "logging.level.root=WARN",
+                        "spring.datasource.url=jdbc:h2:mem:thread-mode-benchmark;DB_CLOSE_ON_EXIT=FALSE",
+                        "application.threads.virtual=" + virtual)
+                .initializers(applicationContext -> applicationContext.getBeanFactory()
+                        .addBeanPostProcessor(new SlowConnectionPostProcessor(dbLatencyMillis)))
+                .run();
+        BookRepository bookRepository = context.getBean(BookRepository.class);
+        LoanRepository loanRepository = context.getBean(LoanRepository.class);
+        List<Book> books = BenchmarkFixtures.books(100);
+        books.forEach(book -> book.setId(null));
+        books = bookRepository.saveAll(books);
+        List<Loan> loans = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            Loan loan = BenchmarkFixtures.loan(i, books.get(i));
+            loan.setId(null);
+            loans.add(loan);
+        }
+        loanRepository.saveAll(loans);
+        String port = context.getEnvironment().getProperty("local.server.port");
+        booksUrl = "http://localhost:" + port + "/api/books?page=0&size=20";
+        loansUrl = "http://localhost:" + port + "/api/loans?page=0&size=20";
+    }
+
+    @TearDown(Level.Trial)
+    public void close() {
+        context.close();
+    }
+
+    @Benchmark
+    public int getBooks() throws IOException {
+        return get(booksUrl);
+    }
+
+    @Benchmark
+    public int getLoans() throws IOException {
+        return get(loansUrl);
+    }
+
+    //o corpo é lido até o fim para que a conexão volte ao keep-alive do HttpURLConnection
+    private static int get(String url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        int status = connection.getResponseCode();
+        if (status != 200) {
+            throw new IllegalStateException("GET " + url + " returned " + status);
+        }
+        byte[] buffer = new byte[8192];
+        int total = 0;
+        try (InputStream body = connection.getInputStream()) {
+            for (int read; (read = body.read(buffer)) != -1; ) {
+                total += read;
+            }
+        }
+        return total;
+    }
+
+    //cada conexão obtida do DataSource fica presa por dbLatencyMillis antes de ser usada
+    private static final class SlowConnectionPostProcessor implements BeanPostProcessor {
+
+        private final int latencyMillis;
+
+        SlowConnectionPostProcessor(int latencyMillis) {
+            this.latencyMillis = latencyMillis;
+        }
+
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName) {
+            if (latencyMillis == 0 || !(bean instanceof DataSource)) {
+                return bean;
+            }
+            return Proxy.newProxyInstance(DataSource.class.getClassLoader(), new Class<?>[]{DataSource.class},
+                    (proxy, method, args) -> {
+                        Object result;
+                        try {
+                            result = method.invoke(bean, args);
+                        } catch (InvocationTargetException invocationTargetException) {
+                            throw invocationTargetException.getCause();
+                        }
+                        if (result instanceof Connection) {
+                            Thread.sleep(latencyMillis);
+                        }
+                        return result;
+                    });
+        }
+    }
+}
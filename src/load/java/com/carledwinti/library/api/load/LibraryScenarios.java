@@ -0,0 +1,183 @@
+package com.carledwinti.library.api.load;
+
+import com.carledwinti.library.api.dto.LoanDTO;
+import com.carledwinti.library.api.dto.ReturnedLoanDTO;
+import com.carledwinti.library.api.model.Book;
+import com.carledwinti.library.api.model.Loan;
+import com.carledwinti.library.api.repository.LoanRepository;
+import com.carledwinti.library.api.service.BookService;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.DefaultResponseErrorHandler;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Dados e cenários do teste de carga. Os books e o histórico de loans(já devolvidos) são gravados pelos beans da
+ * aplicação antes da carga. create-loan empresta um book disponível e return-loan devolve um loan criado por ele,
+ * o book volta a ficar disponível: os dois cenários nunca disputam o mesmo book.
+ */
+final class LibraryScenarios implements Closeable {
+
+    private static final int PAGE_SIZE = 20;
+    private static final int SEED_CHUNK = 1000;
+
+    private final String baseUrl;
+    private final CloseableHttpClient httpClient;
+    private final RestTemplate restTemplate;
+    private final List<Long> bookIds = new ArrayList<>();
+    private final Queue<String> availableIsbns = new ConcurrentLinkedQueue<>();
+    private final Queue<ActiveLoan> activeLoans = new ConcurrentLinkedQueue<>();
+    private int authors;
+
+    LibraryScenarios(String baseUrl, int clients) {
+        this.baseUrl = baseUrl;
+        PoolingHttpClientConnectionManager connections = new PoolingHttpClientConnectionManager();
+        connections.setMaxTotal(clients);
+        connections.setDefaultMaxPerRoute(clients);
+        this.httpClient = HttpClients.custom().setConnectionManager(connections).build();
+        //o HttpURLConnection padrão do RestTemplate não envia PATCH(devolução)
+        this.restTemplate = new RestTemplate(new HttpComponentsClientHttpRequestFactory(httpClient));
+        //4xx/5xx são contados como erro pelo cenário, sem exceção
+        this.restTemplate.setErrorHandler(new DefaultResponseErrorHandler() {
+            @Override
+            public boolean hasError(ClientHttpResponse response) {
+                return false;
+            }
+        });
+    }
+
+    //autores repetidos a cada PAGE_SIZE books, a busca por autor retorna uma página cheia
+    void seed(BookService bookService, LoanRepository loanRepository, int books, int loansPerBook) {
+        authors = Math.max(1, books / PAGE_SIZE);
+        for (int from = 0; from < books; from += SEED_CHUNK) {
+            List<Book> chunk = new ArrayList<>(SEED_CHUNK);
+            for (int i = from; i < Math.min(books, from + SEED_CHUNK); i++) {
+                chunk.add(Book.builder()
+                        .title("Titulo do livro numero " + i)
+                        .author("Autor " + (i % authors))
+                        .isbn(String.valueOf(9788500000000L + i))
+                        .build());
+            }
+            List<Book> savedBooks = bookService.saveAll(chunk);
+            List<Loan> loans = new ArrayList<>(savedBooks.size() * loansPerBook);
+            for (Book book : savedBooks) {
+                bookIds.add(book.getId());
+                availableIsbns.add(book.getIsbn());
+                for (int i = 0; i < loansPerBook; i++) {
+                    LocalDate loanDate = LocalDate.now().minusDays(10L * (i + 1));
+                    loans.add(Loan.builder()
+                            .book(book)
+                            .isbn(book.getIsbn())
+                            .customer("Cliente " + i)
+                            .customerEmail("cliente" + i + "@email.com")
+                            .loanDate(loanDate)
+                            .dueDate(loanDate.plusDays(3))
+                            .returned(true)
+                            .build());
+                }
+            }
+            loanRepository.saveAll(loans);
+        }
+    }
+
+    //as taxas(requisições por segundo) vêm das opções rate.<cenário>
+    List<LoadScenario> scenarios(Environment options) {
+        return Arrays.asList(
+                new LoadScenario("search-books", options.getProperty("rate.search-books", Double.class, 10d),
+                        this::searchBooks),
+                new LoadScenario("get-book", options.getProperty("rate.get-book", Double.class, 20d),
+                        this::getBook),
+                new LoadScenario("create-loan", options.getProperty("rate.create-loan", Double.class, 5d),
+                        this::createLoan),
+                new LoadScenario("return-loan", options.getProperty("rate.return-loan", Double.class, 5d),
+                        this::returnLoan),
+                new LoadScenario("book-loans", options.getProperty("rate.book-loans", Double.class, 10d),
+                        this::getBookLoans));
+    }
+
+    private LoadScenario.Outcome searchBooks() {
+        int author = ThreadLocalRandom.current().nextInt(authors);
+        return outcome(restTemplate.getForEntity(baseUrl + "/api/books?author={author}&page=0&size=" + PAGE_SIZE,
+                String.class, "Autor " + author));
+    }
+
+    private LoadScenario.Outcome getBook() {
+        return outcome(restTemplate.getForEntity(baseUrl + "/api/books/{id}", String.class, randomBookId()));
+    }
+
+    private LoadScenario.Outcome getBookLoans() {
+        return outcome(restTemplate.getForEntity(baseUrl + "/api/books/{id}/loans?page=0&size=" + PAGE_SIZE,
+                String.class, randomBookId()));
+    }
+
+    private LoadScenario.Outcome createLoan() {
+        String isbn = availableIsbns.poll();
+        if (isbn == null) {
+            return LoadScenario.Outcome.SKIPPED;
+        }
+        LoanDTO loanDTO = LoanDTO.builder().isbn(isbn).customer("Carga").customerEmail("carga@email.com").build();
+        ResponseEntity<LoanDTO> response = restTemplate.postForEntity(baseUrl + "/api/loans", loanDTO, LoanDTO.class);
+        if (!response.getStatusCode().is2xxSuccessful()) {
+            availableIsbns.add(isbn);
+            return LoadScenario.Outcome.ERROR;
+        }
+        activeLoans.add(new ActiveLoan(response.getBody().getId(), isbn));
+        return LoadScenario.Outcome.OK;
+    }
+
+    private LoadScenario.Outcome returnLoan() {
+        ActiveLoan activeLoan = activeLoans.poll();
+        if (activeLoan == null) {
+            return LoadScenario.Outcome.SKIPPED;
+        }
+        ResponseEntity<Void> response = restTemplate.exchange(baseUrl + "/api/loans/{id}", HttpMethod.PATCH,
+                new HttpEntity<>(new ReturnedLoanDTO(true)), Void.class, activeLoan.loanId);
+        if (!response.getStatusCode().is2xxSuccessful()) {
+            activeLoans.add(activeLoan);
+            return LoadScenario.Outcome.ERROR;
+        }
+        availableIsbns.add(activeLoan.isbn);
+        return LoadScenario.Outcome.OK;
+    }
+
+    private Long randomBookId() {
+        return bookIds.get(ThreadLocalRandom.current().nextInt(bookIds.size()));
+    }
+
+    private static LoadScenario.Outcome outcome(ResponseEntity<?> response) {
+        return response.getStatusCode().is2xxSuccessful() ? LoadScenario.Outcome.OK : LoadScenario.Outcome.ERROR;
+    }
+
+    @Override
+    public void close() throws IOException {
+        httpClient.close();
+    }
+
+    private static final class ActiveLoan {
+
+        private final Long loanId;
+        private final String isbn;
+
+        ActiveLoan(Long loanId, String isbn) {
+            this.loanId = loanId;
+            this.isbn = isbn;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.carledwinti.library.api.load;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Modelo aberto: cada cenário tem uma thread que agenda as requisições no intervalo da sua taxa, sem esperar as
+ * anteriores terminarem, e os clientes(pool de threads) as executam. Com a aplicação mais lenta que a taxa as
+ * requisições esperam na fila e o tempo de espera aparece nos percentis, a vazão medida fica abaixo da taxa.
+ */
+final class LoadDriver {
+
+    private final List<LoadScenario> scenarios;
+    private final int clients;
+
+    LoadDriver(List<LoadScenario> scenarios, int clients) {
+        this.scenarios = scenarios;
+        this.clients = clients;
+    }
+
+    void run(long warmupSeconds, long durationSeconds) throws InterruptedException {
+        ExecutorService workers = Executors.newFixedThreadPool(clients);
+        long start = System.nanoTime();
+        long measureFrom = start + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long end = measureFrom + TimeUnit.SECONDS.toNanos(durationSeconds);
+
+        List<Thread> dispatchers = new ArrayList<>();
+        for (LoadScenario scenario : scenarios) {
+            if (scenario.getRatePerSecond() <= 0) {
+                continue;
+            }
+            Thread dispatcher = new Thread(() -> dispatch(scenario, workers, start, measureFrom, end),
+                    "load-" + scenario.getName());
+            dispatcher.start();
+            dispatchers.add(dispatcher);
+        }
+        for (Thread dispatcher : dispatchers) {
+            dispatcher.join();
+        }
+        //as requisições já agendadas terminam, as que passarem do limite ficam fora do resultado
+        workers.shutdown();
+        if (!workers.awaitTermination(Math.max(30, durationSeconds), TimeUnit.SECONDS)) {
+            workers.shutdownNow();
+        }
+    }
+
+    //o próximo instante é calculado a partir do início e não do fim da espera, atrasos do agendador não reduzem a taxa
+    private static void dispatch(LoadScenario scenario, ExecutorService workers, long start, long measureFrom, long end) {
+        double intervalNanos = TimeUnit.SECONDS.toNanos(1) / scenario.getRatePerSecond();
+        for (long sent = 0; ; sent++) {
+            long intendedStart = start + (long) (sent * intervalNanos);
+            if (intendedStart >= end) {
+                return;
+            }
+            long wait = intendedStart - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            boolean measured = intendedStart >= measureFrom;
+            workers.execute(() -> scenario.execute(intendedStart, measured));
+        }
+    }
+}
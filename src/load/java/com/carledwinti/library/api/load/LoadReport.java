@@ -0,0 +1,48 @@
+package com.carledwinti.library.api.load;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Resultado de uma execução, gravado em target/load-test/report.json. O baseline(src/load/baseline.json) é um
+ * report gravado com --update-baseline=true.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class LoadReport {
+
+    private int books;
+    private int loansPerBook;
+    private int clients;
+    private long durationSeconds;
+    private List<EndpointReport> endpoints;
+
+    public EndpointReport endpoint(String name) {
+        return endpoints.stream().filter(endpoint -> endpoint.getName().equals(name)).findFirst().orElse(null);
+    }
+
+    //requests inclui os erros, throughput conta somente as respostas de sucesso. Tempos em milissegundos
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @Builder
+    public static class EndpointReport {
+        private String name;
+        private double targetRate;
+        private long requests;
+        private long errors;
+        private long skipped;
+        private double throughput;
+        private double p50Millis;
+        private double p90Millis;
+        private double p99Millis;
+        private double p999Millis;
+        private double maxMillis;
+    }
+}
@@ -0,0 +1,81 @@
+package com.carledwinti.library.api.load;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Um endpoint exercitado a uma taxa fixa de chegada(requisições por segundo). O tempo de cada requisição é contado a
+ * partir do instante em que ela deveria ter começado, assim a espera por um cliente livre também entra nos
+ * percentis(sem coordinated omission).
+ */
+final class LoadScenario {
+
+    enum Outcome { OK, ERROR, SKIPPED }
+
+    @FunctionalInterface
+    interface Action {
+        Outcome call() throws Exception;
+    }
+
+    private final String name;
+    private final double ratePerSecond;
+    private final Action action;
+    //em microssegundos, o histograma cresce conforme o maior tempo registrado
+    private final Histogram latencies = new ConcurrentHistogram(3);
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+
+    LoadScenario(String name, double ratePerSecond, Action action) {
+        this.name = name;
+        this.ratePerSecond = ratePerSecond;
+        this.action = action;
+    }
+
+    //measured false durante o aquecimento: a requisição é feita mas não entra no resultado
+    void execute(long intendedStartNanos, boolean measured) {
+        Outcome outcome;
+        try {
+            outcome = action.call();
+        } catch (Exception exception) {
+            outcome = Outcome.ERROR;
+        }
+        if (!measured) {
+            return;
+        }
+        //sem dados para a requisição(ex.: nenhum loan ativo para devolver) nada foi enviado
+        if (outcome == Outcome.SKIPPED) {
+            skipped.increment();
+            return;
+        }
+        latencies.recordValue(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - intendedStartNanos));
+        (outcome == Outcome.OK ? completed : errors).increment();
+    }
+
+    String getName() {
+        return name;
+    }
+
+    double getRatePerSecond() {
+        return ratePerSecond;
+    }
+
+    Histogram getLatencies() {
+        return latencies;
+    }
+
+    long getCompleted() {
+        return completed.sum();
+    }
+
+    long getErrors() {
+        return errors.sum();
+    }
+
+    long getSkipped() {
+        return skipped.sum();
+    }
+}
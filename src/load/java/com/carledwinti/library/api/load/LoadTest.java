@@ -0,0 +1,147 @@
+package com.carledwinti.library.api.load;
+
+import com.carledwinti.library.api.LibraryApiApplication;
+import com.carledwinti.library.api.repository.LoanRepository;
+import com.carledwinti.library.api.service.BookService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.env.SimpleCommandLinePropertySource;
+import org.springframework.core.env.StandardEnvironment;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Teste de carga da API: sobe a aplicação completa com H2 em memória, grava books(books) com o histórico de loans
+ * (loans-per-book) e executa os cenários de LibraryScenarios a taxas fixas de chegada(rate.<cenário>, por segundo)
+ * por clients conexões. Depois de warmup segundos de aquecimento mede duration segundos e mostra os percentis do
+ * HdrHistogram por endpoint. report.json e a distribuição completa(<cenário>.hgrm) ficam em report-dir.
+ *
+ * O build falha(código de saída 1) quando algum endpoint regride em relação ao baseline(RegressionGate).
+ * --update-baseline=true grava o resultado como novo baseline. As demais opções são repassadas à aplicação
+ * (ex.: --application.threads.virtual=true):
+ * mvnw -Pload-test verify -Dload.args="--duration=60 --rate.get-book=200"
+ */
+public final class LoadTest {
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        StandardEnvironment options = new StandardEnvironment();
+        options.getPropertySources().addFirst(new SimpleCommandLinePropertySource(args));
+        int books = options.getProperty("books", Integer.class, 1000);
+        int loansPerBook = options.getProperty("loans-per-book", Integer.class, 5);
+        int clients = options.getProperty("clients", Integer.class, 64);
+        long warmup = options.getProperty("warmup", Long.class, 10L);
+        long duration = options.getProperty("duration", Long.class, 30L);
+        File baselineFile = new File(options.getProperty("baseline", "src/load/baseline.json"));
+        File reportDir = new File(options.getProperty("report-dir", "target/load-test"));
+        RegressionGate gate = new RegressionGate(options.getProperty("max-p99-increase", Double.class, 0.25),
+                options.getProperty("p99-slack-ms", Double.class, 5d),
+                options.getProperty("max-throughput-decrease", Double.class, 0.10),
+                options.getProperty("max-error-rate", Double.class, 0.01));
+
+        //o restart do devtools executaria a aplicação em outra thread, sem o código de saída da falha
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(LibraryApiApplication.class)
+                .properties("server.port=0", "spring.main.banner-mode=off",
+                        "spring.boot.admin.client.enabled=false", "logging.level.root=WARN",
+                        "spring.datasource.url=jdbc:h2:mem:load-test;DB_CLOSE_ON_EXIT=FALSE")
+                .run(args);
+        LoadReport report;
+        try (LibraryScenarios library = new LibraryScenarios(
+                "http://localhost:" + context.getEnvironment().getProperty("local.server.port"), clients)) {
+            System.out.printf("seeding %d books with %d loans each%n", books, loansPerBook);
+            library.seed(context.getBean(BookService.class), context.getBean(LoanRepository.class), books, loansPerBook);
+
+            List<LoadScenario> scenarios = library.scenarios(options);
+            System.out.printf("running %d s of warmup and %d s of measurement with %d clients%n", warmup, duration, clients);
+            new LoadDriver(scenarios, clients).run(warmup, duration);
+            report = report(scenarios, books, loansPerBook, clients, duration);
+            write(scenarios, report, reportDir);
+        } finally {
+            context.close();
+        }
+        print(report);
+
+        ObjectMapper objectMapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+        if (options.getProperty("update-baseline", Boolean.class, false)) {
+            objectMapper.writeValue(baselineFile, report);
+            System.out.println("baseline updated: " + baselineFile);
+            System.exit(0);
+        }
+        LoadReport baseline = null;
+        if (baselineFile.exists()) {
+            baseline = objectMapper.readValue(baselineFile, LoadReport.class);
+        } else {
+            System.out.println("no baseline at " + baselineFile + ", only the error rate is checked");
+        }
+        List<String> violations = gate.check(baseline, report);
+        violations.forEach(violation -> System.out.println("REGRESSION " + violation));
+        System.exit(violations.isEmpty() ? 0 : 1);
+    }
+
+    private static LoadReport report(List<LoadScenario> scenarios, int books, int loansPerBook, int clients,
+                                     long duration) {
+        List<LoadReport.EndpointReport> endpoints = new ArrayList<>();
+        for (LoadScenario scenario : scenarios) {
+            if (scenario.getRatePerSecond() <= 0) {
+                continue;
+            }
+            Histogram latencies = scenario.getLatencies();
+            endpoints.add(LoadReport.EndpointReport.builder()
+                    .name(scenario.getName())
+                    .targetRate(scenario.getRatePerSecond())
+                    .requests(scenario.getCompleted() + scenario.getErrors())
+                    .errors(scenario.getErrors())
+                    .skipped(scenario.getSkipped())
+                    .throughput((double) scenario.getCompleted() / duration)
+                    .p50Millis(millis(latencies, 50))
+                    .p90Millis(millis(latencies, 90))
+                    .p99Millis(millis(latencies, 99))
+                    .p999Millis(millis(latencies, 99.9))
+                    .maxMillis(latencies.getMaxValue() / 1000d)
+                    .build());
+        }
+        return LoadReport.builder().books(books).loansPerBook(loansPerBook).clients(clients)
+                .durationSeconds(duration).endpoints(endpoints).build();
+    }
+
+    private static double millis(Histogram latencies, double percentile) {
+        return latencies.getValueAtPercentile(percentile) / 1000d;
+    }
+
+    //.hgrm no formato do HdrHistogram(percentis em ms), pode ser comparado no plotter do HdrHistogram
+    private static void write(List<LoadScenario> scenarios, LoadReport report, File reportDir) throws IOException {
+        if (!reportDir.isDirectory() && !reportDir.mkdirs()) {
+            throw new IOException("could not create " + reportDir);
+        }
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(new File(reportDir, "report.json"), report);
+        for (LoadScenario scenario : scenarios) {
+            if (scenario.getRatePerSecond() <= 0) {
+                continue;
+            }
+            try (PrintStream hgrm = new PrintStream(new File(reportDir, scenario.getName() + ".hgrm"), "UTF-8")) {
+                scenario.getLatencies().outputPercentileDistribution(hgrm, 1000d);
+            }
+        }
+    }
+
+    private static void print(LoadReport report) {
+        System.out.printf("%n%-14s %8s %9s %7s %8s %10s %9s %9s %9s %9s %9s%n", "endpoint", "rate/s", "requests",
+                "errors", "skipped", "ok/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        for (LoadReport.EndpointReport endpoint : report.getEndpoints()) {
+            System.out.printf("%-14s %8.1f %9d %7d %8d %10.1f %9.2f %9.2f %9.2f %9.2f %9.2f%n", endpoint.getName(),
+                    endpoint.getTargetRate(), endpoint.getRequests(), endpoint.getErrors(), endpoint.getSkipped(),
+                    endpoint.getThroughput(), endpoint.getP50Millis(), endpoint.getP90Millis(),
+                    endpoint.getP99Millis(), endpoint.getP999Millis(), endpoint.getMaxMillis());
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.carledwinti.library.api.load;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compara cada endpoint com o baseline: o p99 não pode subir mais que maxP99Increase(fração) e p99SlackMillis juntos,
+ * a vazão não pode cair mais que maxThroughputDecrease e os erros não passam de maxErrorRate das requisições.
+ * A folga em milissegundos evita falhas por variações pequenas em endpoints de poucos milissegundos.
+ */
+final class RegressionGate {
+
+    private final double maxP99Increase;
+    private final double p99SlackMillis;
+    private final double maxThroughputDecrease;
+    private final double maxErrorRate;
+
+    RegressionGate(double maxP99Increase, double p99SlackMillis, double maxThroughputDecrease, double maxErrorRate) {
+        this.maxP99Increase = maxP99Increase;
+        this.p99SlackMillis = p99SlackMillis;
+        this.maxThroughputDecrease = maxThroughputDecrease;
+        this.maxErrorRate = maxErrorRate;
+    }
+
+    //lista vazia quando não há regressão. Sem baseline somente os erros são conferidos
+    List<String> check(LoadReport baseline, LoadReport current) {
+        List<String> violations = new ArrayList<>();
+        for (LoadReport.EndpointReport endpoint : current.getEndpoints()) {
+            if (endpoint.getRequests() > 0 && (double) endpoint.getErrors() / endpoint.getRequests() > maxErrorRate) {
+                violations.add(String.format("%s: %d errors in %d requests", endpoint.getName(), endpoint.getErrors(),
+                        endpoint.getRequests()));
+            }
+
+            LoadReport.EndpointReport expected = baseline == null ? null : baseline.endpoint(endpoint.getName());
+            if (expected == null) {
+                continue;
+            }
+            //com outra taxa de chegada os números não são comparáveis
+            if (expected.getTargetRate() != endpoint.getTargetRate()) {
+                violations.add(String.format("%s: rate %.1f/s differs from the baseline rate %.1f/s, "
+                        + "refresh the baseline with --update-baseline=true", endpoint.getName(),
+                        endpoint.getTargetRate(), expected.getTargetRate()));
+                continue;
+            }
+            double maxP99 = expected.getP99Millis() * (1 + maxP99Increase) + p99SlackMillis;
+            if (endpoint.getP99Millis() > maxP99) {
+                violations.add(String.format("%s: p99 %.2f ms above %.2f ms(baseline %.2f ms)", endpoint.getName(),
+                        endpoint.getP99Millis(), maxP99, expected.getP99Millis()));
+            }
+            double minThroughput = expected.getThroughput() * (1 - maxThroughputDecrease);
+            if (endpoint.getThroughput() < minThroughput) {
+                violations.add(String.format("%s: throughput %.1f/s below %.1f/s(baseline %.1f/s)", endpoint.getName(),
+                        endpoint.getThroughput(), minThroughput, expected.getThroughput()));
+            }
+        }
+        return violations;
+    }
+}
@@ -1,10 +1,17 @@
 package com.carledwinti.library.api;
 
+import com.carledwinti.library.api.config.ExecutionThreads;
+import com.carledwinti.library.api.mapper.BookMapper;
+import com.carledwinti.library.api.mapper.LoanMapper;
+import com.carledwinti.library.api.metrics.SlowQueryLog;
 import com.carledwinti.library.api.service.EmailService;
+import com.carledwinti.library.api.service.lock.BookLocks;
+import com.carledwinti.library.api.service.search.BookSearchIndex;
+import com.carledwinti.library.api.service.search.IsbnBloomFilter;
 import org.hibernate.validator.constraints.Email;
-import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.CommandLineRunner;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.web.servlet.support.SpringBootServletInitializer;
@@ -22,8 +29,46 @@ import java.util.List;
 public class LibraryApiApplication { /*com tomcat tomcat embedded, vai inicializar a aplicação a partir do tomcat embarcado*/
 
 	@Bean //criando uma instancia Singleton para disponibilizar no context para outras classes via Injection
-	public ModelMapper modelMapper(){
-	return new ModelMapper();
+	public BookMapper bookMapper(){
+		return new BookMapper();
+	}
+
+	@Bean
+	public LoanMapper loanMapper(){
+		return new LoanMapper(bookMapper());
+	}
+
+	//índice de busca de books em memória, carregado pelo BookSearchIndexLoader e atualizado pelo BookServiceImpl
+	@Bean
+	public BookSearchIndex bookSearchIndex(){
+		return new BookSearchIndex();
+	}
+
+	//isbns cadastrados, responde sem ir à base as consultas por isbns que não existem. Com três syncs seguidos
+	//perdidos o filtro deixa de responder não e a base decide
+	@Bean
+	public IsbnBloomFilter isbnBloomFilter(@Value("${application.books.isbn-filter.fpp:0.01}") double fpp,
+										   @Value("${application.books.isbn-filter.sync-interval-ms:1000}") long syncIntervalMillis){
+		return new IsbnBloomFilter(fpp, 3 * syncIntervalMillis);
+	}
+
+	//últimas consultas SQL lentas, alimentado pelo SlowQueryDataSourcePostProcessor e exibido no /actuator/queries
+	@Bean
+	public SlowQueryLog slowQueryLog(@Value("${application.queries.slow-threshold-ms:200}") long thresholdMillis,
+									 @Value("${application.queries.slow-log-size:100}") int capacity){
+		return new SlowQueryLog(thresholdMillis, capacity);
+	}
+
+	//threads de plataforma ou virtuais(Java 21+) para as requisições, tarefas agendadas e envio de emails
+	@Bean
+	public ExecutionThreads executionThreads(@Value("${application.threads.virtual:false}") boolean virtual){
+		return new ExecutionThreads(virtual);
+	}
+
+	//locks por book(em faixas) que serializam somente os empréstimos concorrentes do mesmo book
+	@Bean
+	public BookLocks bookLocks(@Value("${application.loans.lock-stripes:256}") int stripes){
+		return new BookLocks(stripes);
 	}
 
 	//para anotar um method e permitir que ele seja executado de forma schedulada/agendada de tempos em tempos
@@ -0,0 +1,96 @@
+package com.carledwinti.library.api.config;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Threads de execução das requisições, das tarefas agendadas e do envio de emails: threads de plataforma(padrão) ou
+ * virtuais(application.threads.virtual=true). As threads virtuais só existem a partir do Java 21, o projeto é compilado
+ * para Java 8 e por isso a API é obtida por reflexão. Em um JVM anterior o modo virtual é ignorado com um aviso.
+ *
+ * Com threads virtuais uma requisição bloqueada no JDBC ou no SMTP não ocupa uma thread do Tomcat, o limite de
+ * concorrência passa a ser o pool de conexões do Hikari(maximum-pool-size/connection-timeout).
+ */
+@Slf4j
+public class ExecutionThreads {
+
+    private final boolean virtual;
+
+    public ExecutionThreads(boolean virtualRequested) {
+        this.virtual = virtualRequested && isVirtualSupported();
+        if (virtualRequested && !virtual) {
+            log.warn("virtual threads require Java 21 or later, running on platform threads(java {})",
+                    System.getProperty("java.version"));
+        }
+    }
+
+    public static boolean isVirtualSupported() {
+        try {
+            Thread.class.getMethod("ofVirtual");
+            return true;
+        } catch (NoSuchMethodException noSuchMethodException) {
+            return false;
+        }
+    }
+
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    //threads nomeadas prefix1, prefix2... virtuais ou de plataforma(daemon) conforme o modo
+    public ThreadFactory threadFactory(String prefix) {
+        if (virtual) {
+            return virtualThreadFactory(prefix);
+        }
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    //uma thread virtual nova por tarefa, sem pool(Executors.newThreadPerTaskExecutor), somente no modo virtual
+    public ExecutorService newThreadPerTaskExecutor(String prefix) {
+        if (!virtual) {
+            throw new IllegalStateException("thread per task executor requires virtual threads");
+        }
+        return (ExecutorService) invoke(method(Executors.class, "newThreadPerTaskExecutor", ThreadFactory.class),
+                null, virtualThreadFactory(prefix));
+    }
+
+    //Thread.ofVirtual().name(prefix, 1).factory(). Os métodos são obtidos da interface pública Thread.Builder, a
+    //implementação do builder não é acessível
+    private static ThreadFactory virtualThreadFactory(String prefix) {
+        try {
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            Object builder = invoke(method(Thread.class, "ofVirtual"), null);
+            builder = invoke(method(builderType, "name", String.class, long.class), builder, prefix, 1L);
+            return (ThreadFactory) invoke(method(builderType, "factory"), builder);
+        } catch (ClassNotFoundException classNotFoundException) {
+            throw new IllegalStateException("virtual threads are not supported", classNotFoundException);
+        }
+    }
+
+    private static Method method(Class<?> type, String name, Class<?>... parameterTypes) {
+        try {
+            return type.getMethod(name, parameterTypes);
+        } catch (NoSuchMethodException noSuchMethodException) {
+            throw new IllegalStateException("virtual threads are not supported", noSuchMethodException);
+        }
+    }
+
+    private static Object invoke(Method method, Object target, Object... args) {
+        try {
+            return method.invoke(target, args);
+        } catch (IllegalAccessException | InvocationTargetException exception) {
+            throw new IllegalStateException("virtual threads are not supported", exception);
+        }
+    }
+}
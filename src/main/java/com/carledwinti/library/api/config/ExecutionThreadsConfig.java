@@ -0,0 +1,47 @@
+package com.carledwinti.library.api.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.SchedulingConfigurer;
+import org.springframework.scheduling.config.ScheduledTaskRegistrar;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * No modo virtual(ExecutionThreads.isVirtual) as requisições do Tomcat e as tarefas @Scheduled passam a executar em
+ * threads virtuais. No modo de plataforma o Tomcat continua com o seu pool de threads(server.tomcat.max-threads). O
+ * agendador tem spring.task.scheduling.pool.size threads nos dois modos.
+ */
+@Configuration
+public class ExecutionThreadsConfig {
+
+    //uma thread virtual por requisição no lugar do pool do Tomcat, o server.tomcat.max-threads deixa de ser o limite
+    @Bean
+    public WebServerFactoryCustomizer<TomcatServletWebServerFactory> virtualThreadsTomcatCustomizer(ExecutionThreads executionThreads){
+        return factory -> {
+            if (executionThreads.isVirtual()) {
+                ExecutorService executor = executionThreads.newThreadPerTaskExecutor("http-virtual-");
+                factory.addProtocolHandlerCustomizers(
+                        (TomcatProtocolHandlerCustomizer<?>) protocolHandler -> protocolHandler.setExecutor(executor));
+            }
+        };
+    }
+
+    //agendador das tarefas @Scheduled com spring.task.scheduling.pool.size threads, virtuais no modo virtual: uma tarefa
+    //demorada não atrasa as demais(ex.: a verificação do atraso das réplicas) e uma mesma tarefa continua sem se
+    //sobrepor. Com um SchedulingConfigurer no context o TaskScheduler do Spring Boot não é criado e o Spring usaria um
+    //executor de uma thread, por isso o agendador é definido nos dois modos
+    @Bean
+    public SchedulingConfigurer schedulingConfigurer(ExecutionThreads executionThreads,
+                                                     @Value("${spring.task.scheduling.pool.size:1}") int poolSize){
+        return (ScheduledTaskRegistrar taskRegistrar) -> {
+            String prefix = executionThreads.isVirtual() ? "scheduling-virtual-" : "scheduling-";
+            taskRegistrar.setScheduler(Executors.newScheduledThreadPool(poolSize, executionThreads.threadFactory(prefix)));
+        };
+    }
+}
@@ -0,0 +1,90 @@
+package com.carledwinti.library.api.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.autoconfigure.transaction.TransactionManagerCustomizers;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Com application.datasource.replicas.enabled=true o DataSource da aplicação passa a ser o ReadWriteRoutingDataSource:
+ * o primary é o spring.datasource.* e cada url de application.datasource.replicas.urls é uma réplica(mesmo usuário e
+ * senha). Todos os pools recebem as configurações de spring.datasource.hikari.* e publicam as métricas hikaricp.*
+ * com o nome do pool(primary, replica-0, replica-1...).
+ *
+ * O flyway e tudo o que executa fora de uma transação readOnly usam o primary. As transações readOnly não alimentam
+ * o cache de segundo nível(ReplicaJpaTransactionManager).
+ */
+@Configuration
+@EnableConfigurationProperties(DataSourceProperties.class)
+@ConditionalOnProperty(name = "application.datasource.replicas.enabled", havingValue = "true")
+public class ReadWriteDataSourceConfig {
+
+    @Bean
+    public ReplicaRouting replicaRouting(DataSourceProperties dataSourceProperties, Environment environment,
+                                         MeterRegistry meterRegistry,
+                                         @Value("${application.datasource.replicas.urls}") List<String> replicaUrls,
+                                         @Value("${application.datasource.replicas.lag-query:}") String lagQuery,
+                                         @Value("${application.datasource.replicas.max-lag-ms:5000}") long maxLagMillis){
+        HikariDataSource primary = dataSourceProperties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        configure(primary, ReplicaRouting.PRIMARY, environment, meterRegistry);
+
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        for (int i = 0; i < replicaUrls.size(); i++) {
+            HikariDataSource replica = DataSourceBuilder.create()
+                    .type(HikariDataSource.class)
+                    .driverClassName(primary.getDriverClassName())
+                    .url(replicaUrls.get(i).trim())
+                    .username(dataSourceProperties.determineUsername())
+                    .password(dataSourceProperties.determinePassword())
+                    .build();
+            configure(replica, "replica-" + i, environment, meterRegistry);
+            replica.setReadOnly(true);
+            replicas.put(replica.getPoolName(), replica);
+        }
+        return new ReplicaRouting(primary, replicas, lagQuery, maxLagMillis);
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(ReplicaRouting replicaRouting){
+        return new LazyConnectionDataSourceProxy(new ReadWriteRoutingDataSource(replicaRouting));
+    }
+
+    //substitui o transactionManager do Spring Boot(@ConditionalOnMissingBean), com os mesmos customizers
+    @Bean
+    public PlatformTransactionManager transactionManager(EntityManagerFactory entityManagerFactory,
+                                                         ObjectProvider<TransactionManagerCustomizers> transactionManagerCustomizers){
+        JpaTransactionManager transactionManager = new ReplicaJpaTransactionManager(entityManagerFactory);
+        transactionManagerCustomizers.ifAvailable(customizers -> customizers.customize(transactionManager));
+        return transactionManager;
+    }
+
+    //os pools não são beans(o único DataSource do context é o de roteamento), as configurações e as métricas do
+    //Hikari que o Spring Boot aplicaria são aplicadas aqui
+    private static void configure(HikariDataSource pool, String poolName, Environment environment,
+                                  MeterRegistry meterRegistry) {
+        Binder.get(environment).bind("spring.datasource.hikari", Bindable.ofInstance(pool));
+        pool.setPoolName(poolName);
+        pool.setMetricRegistry(meterRegistry);
+    }
+}
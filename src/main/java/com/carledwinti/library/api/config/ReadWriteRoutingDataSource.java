@@ -0,0 +1,50 @@
+package com.carledwinti.library.api.config;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * DataSource do primary e das réplicas, o pool de cada conexão é escolhido pelo ReplicaRouting. Deve ficar atrás de
+ * um LazyConnectionDataSourceProxy: o JpaTransactionManager obtém a conexão ao iniciar a transação, antes do
+ * readOnly ser publicado no TransactionSynchronizationManager.
+ */
+public class ReadWriteRoutingDataSource extends AbstractRoutingDataSource {
+
+    private final ReplicaRouting replicaRouting;
+    private final Map<String, DataSource> dataSources;
+
+    public ReadWriteRoutingDataSource(ReplicaRouting replicaRouting) {
+        this.replicaRouting = replicaRouting;
+        this.dataSources = new HashMap<>(replicaRouting.getReplicas());
+        this.dataSources.put(ReplicaRouting.PRIMARY, replicaRouting.getPrimary());
+        setTargetDataSources(new HashMap<>(dataSources));
+        setDefaultTargetDataSource(replicaRouting.getPrimary());
+        afterPropertiesSet();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return replicaRouting.route();
+    }
+
+    //falha ao obter a conexão de uma réplica(base fora do ar, pool esgotado) não falha a leitura, que vai ao primary
+    @Override
+    public Connection getConnection() throws SQLException {
+        String key = replicaRouting.route();
+        DataSource dataSource = dataSources.get(key);
+        if (ReplicaRouting.PRIMARY.equals(key)) {
+            return dataSource.getConnection();
+        }
+        try {
+            return dataSource.getConnection();
+        } catch (SQLException exception) {
+            replicaRouting.failed(key, exception);
+            return replicaRouting.getPrimary().getConnection();
+        }
+    }
+}
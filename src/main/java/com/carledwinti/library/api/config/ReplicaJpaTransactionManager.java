@@ -0,0 +1,41 @@
+package com.carledwinti.library.api.config;
+
+import org.hibernate.CacheMode;
+import org.hibernate.Session;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.orm.jpa.EntityManagerHolder;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.persistence.CacheStoreMode;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * JpaTransactionManager usado com as réplicas: as sessões das transações readOnly, que leem de uma réplica, usam
+ * CacheMode.GET e consultam o cache de segundo nível(entities e consultas) sem alimentá-lo. Um book ou um resultado
+ * de consulta lido em uma réplica atrasada continuaria no cache até o TTL mesmo depois do commit no primary.
+ *
+ * As transações de escrita voltam para CacheMode.NORMAL, o EntityManager do open-in-view é o mesmo em todas as
+ * transações da requisição. As leituras que devem alimentar o cache(getByid e getBookByIsbn do BookService) usam
+ * transações de escrita: o miss vai ao primary e o hit não usa conexão.
+ */
+public class ReplicaJpaTransactionManager extends JpaTransactionManager {
+
+    public ReplicaJpaTransactionManager(EntityManagerFactory entityManagerFactory) {
+        super(entityManagerFactory);
+    }
+
+    @Override
+    protected void doBegin(Object transaction, TransactionDefinition definition) {
+        super.doBegin(transaction, definition);
+        EntityManagerHolder entityManagerHolder =
+                (EntityManagerHolder) TransactionSynchronizationManager.getResource(obtainEntityManagerFactory());
+        EntityManager entityManager = entityManagerHolder.getEntityManager();
+        //o find usa o storeMode do EntityManager e as consultas usam o CacheMode da sessão
+        entityManager.setProperty(AvailableSettings.JPA_SHARED_CACHE_STORE_MODE,
+                definition.isReadOnly() ? CacheStoreMode.BYPASS : CacheStoreMode.USE);
+        entityManager.unwrap(Session.class).setCacheMode(definition.isReadOnly() ? CacheMode.GET : CacheMode.NORMAL);
+    }
+}
@@ -0,0 +1,181 @@
+package com.carledwinti.library.api.config;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.StringUtils;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Escolhe o pool de cada conexão do ReadWriteRoutingDataSource: transações readOnly vão para as réplicas(round-robin
+ * entre as disponíveis), o restante, inclusive o que executa fora de transação, vai para o primary.
+ *
+ * Uma réplica fica indisponível quando o atraso medido pela lagQuery passa de maxLagMillis ou quando a consulta do
+ * atraso/a conexão falha, as leituras passam para as outras réplicas ou para o primary(fallback) até a próxima
+ * verificação. Sem lagQuery o atraso não é medido e somente as falhas de conexão retiram a réplica.
+ */
+@Slf4j
+public class ReplicaRouting implements MeterBinder {
+
+    public static final String PRIMARY = "primary";
+
+    private final DataSource primary;
+    private final List<Replica> replicas;
+    private final String lagQuery;
+    private final long maxLagMillis;
+    private final AtomicInteger next = new AtomicInteger();
+    private final LongAdder primaryConnections = new LongAdder();
+    private final LongAdder fallbacks = new LongAdder();
+
+    public ReplicaRouting(DataSource primary, Map<String, DataSource> replicas, String lagQuery, long maxLagMillis) {
+        this.primary = primary;
+        List<Replica> replicaList = new ArrayList<>(replicas.size());
+        replicas.forEach((name, dataSource) -> replicaList.add(new Replica(name, dataSource)));
+        this.replicas = Collections.unmodifiableList(replicaList);
+        this.lagQuery = lagQuery;
+        this.maxLagMillis = maxLagMillis;
+    }
+
+    //chamado a cada conexão obtida, o LazyConnectionDataSourceProxy só obtém a conexão no primeiro comando SQL, quando
+    //a transação(e o seu readOnly) já foi iniciada
+    public String route() {
+        if (!replicas.isEmpty() && TransactionSynchronizationManager.isActualTransactionActive()
+                && TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            int size = replicas.size();
+            int start = Math.floorMod(next.getAndIncrement(), size);
+            for (int i = 0; i < size; i++) {
+                Replica replica = replicas.get((start + i) % size);
+                if (replica.available) {
+                    replica.connections.increment();
+                    return replica.name;
+                }
+            }
+            fallbacks.increment();
+        }
+        primaryConnections.increment();
+        return PRIMARY;
+    }
+
+    //a réplica não entregou a conexão: fica fora até a próxima verificação e a leitura vai para o primary
+    public void failed(String name, SQLException exception) {
+        for (Replica replica : replicas) {
+            if (replica.name.equals(name)) {
+                replica.available = false;
+                log.warn("replica {} unavailable, reading from the primary until the next check: {}", name,
+                        exception.getMessage());
+            }
+        }
+        fallbacks.increment();
+        primaryConnections.increment();
+    }
+
+    @Scheduled(initialDelayString = "${application.datasource.replicas.lag-check-interval-ms:1000}",
+               fixedDelayString = "${application.datasource.replicas.lag-check-interval-ms:1000}")
+    public void checkReplicas() {
+        for (Replica replica : replicas) {
+            try (Connection connection = replica.dataSource.getConnection()) {
+                if (StringUtils.hasText(lagQuery)) {
+                    replica.lagMillis = lag(connection);
+                }
+                boolean available = replica.lagMillis <= maxLagMillis;
+                if (available != replica.available) {
+                    log.info("replica {} {}, lag: {} ms", replica.name, available ? "available" : "unavailable",
+                            replica.lagMillis);
+                }
+                replica.available = available;
+            } catch (SQLException exception) {
+                if (replica.available) {
+                    log.warn("replica {} unavailable: {}", replica.name, exception.getMessage());
+                }
+                replica.available = false;
+            }
+        }
+    }
+
+    private long lag(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement(); ResultSet resultSet = statement.executeQuery(lagQuery)) {
+            //sem linha(ex.: a base não é uma réplica) o atraso é zero
+            return resultSet.next() ? resultSet.getLong(1) : 0;
+        }
+    }
+
+    public DataSource getPrimary() {
+        return primary;
+    }
+
+    public Map<String, DataSource> getReplicas() {
+        Map<String, DataSource> dataSources = new LinkedHashMap<>();
+        replicas.forEach(replica -> dataSources.put(replica.name, replica.dataSource));
+        return dataSources;
+    }
+
+    public boolean isAvailable(String name) {
+        return replicas.stream().anyMatch(replica -> replica.name.equals(name) && replica.available);
+    }
+
+    //fecha os pools junto com o context
+    public void close() throws Exception {
+        for (Replica replica : replicas) {
+            if (replica.dataSource instanceof AutoCloseable) {
+                ((AutoCloseable) replica.dataSource).close();
+            }
+        }
+        if (primary instanceof AutoCloseable) {
+            ((AutoCloseable) primary).close();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("library.datasource.connections", primaryConnections, LongAdder::sum)
+                .description("connections routed to each pool")
+                .tag("pool", PRIMARY)
+                .register(registry);
+        FunctionCounter.builder("library.datasource.replica.fallbacks", fallbacks, LongAdder::sum)
+                .description("read-only connections sent to the primary because no replica was available")
+                .register(registry);
+        for (Replica replica : replicas) {
+            FunctionCounter.builder("library.datasource.connections", replica.connections, LongAdder::sum)
+                    .description("connections routed to each pool")
+                    .tag("pool", replica.name)
+                    .register(registry);
+            Gauge.builder("library.datasource.replica.lag", replica, measured -> measured.lagMillis)
+                    .baseUnit("milliseconds")
+                    .tag("pool", replica.name)
+                    .register(registry);
+            Gauge.builder("library.datasource.replica.available", replica, measured -> measured.available ? 1 : 0)
+                    .tag("pool", replica.name)
+                    .register(registry);
+        }
+    }
+
+    private static final class Replica {
+
+        private final String name;
+        private final DataSource dataSource;
+        private final LongAdder connections = new LongAdder();
+        private volatile long lagMillis;
+        private volatile boolean available = true;
+
+        Replica(String name, DataSource dataSource) {
+            this.name = name;
+            this.dataSource = dataSource;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.carledwinti.library.api.config;
+
+import com.carledwinti.library.api.constants.ConstantsCache;
+import org.ehcache.config.CacheConfiguration;
+import org.ehcache.config.Configuration;
+import org.ehcache.config.builders.CacheConfigurationBuilder;
+import org.ehcache.config.builders.ConfigurationBuilder;
+import org.ehcache.config.builders.ExpiryPolicyBuilder;
+import org.ehcache.config.builders.ResourcePoolsBuilder;
+import org.ehcache.jsr107.EhcacheCachingProvider;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.cache.spi.RegionFactory;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.cache.jcache.JCacheCacheManager;
+import org.springframework.context.annotation.Bean;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import java.net.URI;
+import java.time.Duration;
+import java.util.UUID;
+
+/**
+ * Cache de segundo nível do Hibernate(JCache/Ehcache) com application.jpa.second-level-cache.enabled=true: as
+ * entities Book(região book) e os resultados das consultas marcadas como cacheáveis(findByIsbn e existsByIsbn do
+ * BookRepository) ficam em memória, cada região com o seu tamanho(max-entries) e TTL(ttl-seconds).
+ *
+ * As regiões são criadas aqui a partir das propriedades, sem ehcache.xml. Uma região que não estiver declarada faz o
+ * Hibernate falhar ao subir(missing_cache_strategy=fail). As estatísticas de cada região ficam no /actuator/queries,
+ * nas métricas hibernate.second.level.cache.* e, pelo CacheManager do Spring que expõe as mesmas regiões, no
+ * /actuator/caches e nas métricas cache.gets(hit/miss), cache.puts e cache.evictions.
+ *
+ * Este cache substitui o cache do BookService(user-003): o book por id é a entity da região book e o book por isbn é
+ * o resultado do findByIsbn no cache de consultas, os dois invalidados pelo Hibernate no commit do save/update/delete.
+ */
+@org.springframework.context.annotation.Configuration
+@ConditionalOnProperty(name = "application.jpa.second-level-cache.enabled", havingValue = "true")
+public class SecondLevelCacheConfig {
+
+    //o timestamp da última alteração de cada tabela decide se um resultado em cache ainda vale, não pode expirar
+    //nem ser descartado antes dos resultados(uma entrada por tabela)
+    private static final long TIMESTAMPS_MAX_ENTRIES = 1000;
+
+    //um CacheManager por context(URI única), o context dos testes não compartilha as regiões com outro context
+    @Bean(destroyMethod = "close")
+    public CacheManager hibernateCacheManager(
+            @Value("${application.jpa.second-level-cache.book.max-entries:10000}") long bookMaxEntries,
+            @Value("${application.jpa.second-level-cache.book.ttl-seconds:600}") long bookTtlSeconds,
+            @Value("${application.jpa.second-level-cache.query.max-entries:10000}") long queryMaxEntries,
+            @Value("${application.jpa.second-level-cache.query.ttl-seconds:600}") long queryTtlSeconds){
+        Configuration configuration = ConfigurationBuilder.newConfigurationBuilder()
+                .withCache(ConstantsCache.BOOK_REGION, region(bookMaxEntries, bookTtlSeconds))
+                .withCache(RegionFactory.DEFAULT_QUERY_RESULTS_REGION_UNQUALIFIED_NAME,
+                        region(queryMaxEntries, queryTtlSeconds))
+                .withCache(RegionFactory.DEFAULT_UPDATE_TIMESTAMPS_REGION_UNQUALIFIED_NAME,
+                        CacheConfigurationBuilder.newCacheConfigurationBuilder(Object.class, Object.class,
+                                ResourcePoolsBuilder.heap(TIMESTAMPS_MAX_ENTRIES)).build())
+                .build();
+        EhcacheCachingProvider cachingProvider =
+                (EhcacheCachingProvider) Caching.getCachingProvider(EhcacheCachingProvider.class.getName());
+        CacheManager cacheManager = cachingProvider.getCacheManager(
+                URI.create("urn:library-api:hibernate:" + UUID.randomUUID()), configuration);
+        //estatísticas do JCache(MBeans lidos pelas métricas cache.*), desligadas por padrão
+        cacheManager.getCacheNames().forEach(cacheName -> cacheManager.enableStatistics(cacheName, true));
+        return cacheManager;
+    }
+
+    //somente para o /actuator/caches e as métricas cache.*, sem @EnableCaching nenhum método usa este CacheManager
+    @Bean
+    public org.springframework.cache.CacheManager secondLevelCacheManager(CacheManager hibernateCacheManager){
+        return new JCacheCacheManager(hibernateCacheManager);
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer secondLevelCacheHibernateProperties(CacheManager hibernateCacheManager){
+        return properties -> {
+            properties.put(AvailableSettings.USE_SECOND_LEVEL_CACHE, true);
+            properties.put(AvailableSettings.USE_QUERY_CACHE, true);
+            properties.put(AvailableSettings.CACHE_REGION_FACTORY, ConfigSettings.SIMPLE_FACTORY_NAME);
+            properties.put(ConfigSettings.CACHE_MANAGER, hibernateCacheManager);
+            properties.put(ConfigSettings.MISSING_CACHE_STRATEGY, "fail");
+        };
+    }
+
+    private static CacheConfiguration<Object, Object> region(long maxEntries, long ttlSeconds) {
+        return CacheConfigurationBuilder.newCacheConfigurationBuilder(Object.class, Object.class,
+                ResourcePoolsBuilder.heap(maxEntries))
+                .withExpiry(ExpiryPolicyBuilder.timeToLiveExpiration(Duration.ofSeconds(ttlSeconds)))
+                .build();
+    }
+}
@@ -0,0 +1,7 @@
+package com.carledwinti.library.api.constants;
+
+public class ConstantsCache {
+
+    //região do cache de segundo nível do hibernate com as entities Book(SecondLevelCacheConfig)
+    public static final String BOOK_REGION = "book";
+}
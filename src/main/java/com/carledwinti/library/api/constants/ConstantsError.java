@@ -7,5 +7,11 @@ public class ConstantsError {
     public static final String MSG_ERROR_ID_CANT_BE_NULL = "Id can't be null.";
     public static final String MSG_ERROR_BOOK_NOT_FOUND_FOR_ISBN = "Book not fond for passed ISBN";
     public static final String MSG_ERROR_BOOK_ALREADY_LOANED = "Book already loaned.";
+    public static final String MSG_ERROR_LOAN_DUE_DATE_BEFORE_LOAN_DATE = "Due date can't be before the loan date.";
     public static final String MSG_ERROR_RETURN_LOAN_ID_NOTFOUND = "Id not found to return loan";
+    public static final String MSG_ERROR_INVALID_BATCH_CONTENT = "Invalid batch content, processing stopped: ";
+    public static final String MSG_ERROR_INVALID_CURSOR = "Invalid pagination cursor";
+    public static final String MSG_ERROR_INVALID_EXPORT_FORMAT = "Invalid export format, allowed: ndjson, csv";
+    public static final String MSG_ERROR_TOO_MANY_EXPORTS = "Too many exports in progress, try again later";
+    public static final String MSG_ERROR_INVALID_CURSOR_SORT = "Invalid sort property for cursor pagination, allowed: ";
 }
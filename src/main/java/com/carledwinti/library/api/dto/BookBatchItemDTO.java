@@ -0,0 +1,19 @@
+package com.carledwinti.library.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class BookBatchItemDTO {
+    //posição do book no corpo da requisição, começando em 0
+    private Integer index;
+    private String isbn;
+    private Long id;
+    private BookBatchStatus status;
+    private String error;
+}
@@ -0,0 +1,38 @@
+package com.carledwinti.library.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class BookBatchReportDTO {
+    private int received;
+    private int created;
+    private int rejected;
+    //somente os itens rejeitados(INVALID, DUPLICATED) e no máximo maxItems, o tamanho da resposta não depende do
+    //tamanho da carga. truncated indica que existem mais rejeitados do que os listados
+    @Builder.Default
+    private List<BookBatchItemDTO> items = new ArrayList<>();
+    private boolean truncated;
+
+    public void add(BookBatchItemDTO item, int maxItems) {
+        received++;
+        if (item.getStatus() == BookBatchStatus.CREATED) {
+            created++;
+            return;
+        }
+        rejected++;
+        if (items.size() < maxItems) {
+            items.add(item);
+        } else {
+            truncated = true;
+        }
+    }
+}
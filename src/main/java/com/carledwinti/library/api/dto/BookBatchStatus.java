@@ -0,0 +1,7 @@
+package com.carledwinti.library.api.dto;
+
+public enum BookBatchStatus {
+    CREATED,
+    DUPLICATED,
+    INVALID
+}
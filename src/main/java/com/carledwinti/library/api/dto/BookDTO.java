@@ -20,4 +20,12 @@ public class BookDTO {
     @NotEmpty
     private String isbn;
     private List<LoanDTO> loanDTOs;
+
+    //projeção das consultas de leitura(select new) do BookRepository, sem carregar a entity Book
+    public BookDTO(Long id, String title, String author, String isbn) {
+        this.id = id;
+        this.title = title;
+        this.author = author;
+        this.isbn = isbn;
+    }
 }
@@ -6,6 +6,7 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import javax.validation.constraints.NotEmpty;
+import java.time.LocalDate;
 
 @Data
 @AllArgsConstructor
@@ -21,4 +22,26 @@ public class LoanDTO {
     private String customerEmail;
     private BookDTO bookDTO;
     private Boolean returned;
+    //opcional no empréstimo, sem ela vale o prazo padrão(application.loans.period-days)
+    private LocalDate dueDate;
+    //somente leitura, no empréstimo é sempre a data corrente. Também é o valor do cursor das listagens por loanDate
+    private LocalDate loanDate;
+
+    //projeções das consultas de leitura(select new) do LoanRepository, sem carregar as entities Loan e Book
+    public LoanDTO(Long id, String isbn, String customer, String customerEmail, Boolean returned, LocalDate dueDate,
+                   LocalDate loanDate) {
+        this.id = id;
+        this.isbn = isbn;
+        this.customer = customer;
+        this.customerEmail = customerEmail;
+        this.returned = returned;
+        this.dueDate = dueDate;
+        this.loanDate = loanDate;
+    }
+
+    public LoanDTO(Long id, String isbn, String customer, String customerEmail, Boolean returned, LocalDate dueDate,
+                   LocalDate loanDate, Long bookId, String bookTitle, String bookAuthor, String bookIsbn) {
+        this(id, isbn, customer, customerEmail, returned, dueDate, loanDate);
+        this.bookDTO = new BookDTO(bookId, bookTitle, bookAuthor, bookIsbn);
+    }
 }
@@ -0,0 +1,16 @@
+package com.carledwinti.library.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+//projeção do loan atrasado com somente o necessário para o envio dos emails, criada direto no JPQL(select new)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class OverdueLoanDTO {
+    private Long id;
+    private String customerEmail;
+}
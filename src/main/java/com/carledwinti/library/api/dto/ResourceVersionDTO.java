@@ -0,0 +1,32 @@
+package com.carledwinti.library.api.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+//versão de um recurso para os GETs condicionais(ETag/Last-Modified), criada direto no JPQL(select new) sem carregar
+//a entity
+@Data
+@NoArgsConstructor
+public class ResourceVersionDTO {
+    private String eTag;
+    private Instant lastModified;
+
+    //uma entity: @Version e lastModified
+    public ResourceVersionDTO(Long version, Instant lastModified) {
+        this.eTag = String.valueOf(version);
+        this.lastModified = lastModified;
+    }
+
+    //book e os seus loans: qualquer alteração do book, novo loan ou loan alterado(devolução) muda o ETag
+    public ResourceVersionDTO(Long version, Instant lastModified, Long loans, Instant loansLastModified) {
+        this.eTag = version + "-" + loans + "-" + (loansLastModified == null ? 0 : loansLastModified.toEpochMilli());
+        this.lastModified = loansLastModified == null || lastModified.isAfter(loansLastModified) ? lastModified : loansLastModified;
+    }
+
+    //-1 quando não houver data, o If-Modified-Since é ignorado
+    public long getLastModifiedMillis() {
+        return lastModified == null ? -1 : lastModified.toEpochMilli();
+    }
+}
@@ -0,0 +1,20 @@
+package com.carledwinti.library.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+//resposta sem count(parâmetro count=false), o cliente sabe apenas se existe uma próxima página(hasNext)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class SliceDTO<T> {
+    private List<T> content;
+    private int number;
+    private int size;
+    private boolean hasNext;
+}
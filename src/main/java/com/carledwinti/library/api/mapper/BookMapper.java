@@ -0,0 +1,41 @@
+package com.carledwinti.library.api.mapper;
+
+import com.carledwinti.library.api.dto.BookDTO;
+import com.carledwinti.library.api.model.Book;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Conversão Book/BookDTO com acesso direto aos getters/setters, sem reflection nem TypeMap como no ModelMapper.
+ * Produz exatamente os mesmos objetos que o ModelMapper produzia: a lista de loans não é copiada em nenhum sentido.
+ */
+public class BookMapper {
+
+    public Book toEntity(BookDTO bookDTO) {
+        Book book = new Book();
+        book.setId(bookDTO.getId());
+        book.setTitle(bookDTO.getTitle());
+        book.setAuthor(bookDTO.getAuthor());
+        book.setIsbn(bookDTO.getIsbn());
+        return book;
+    }
+
+    public BookDTO toDTO(Book book) {
+        BookDTO bookDTO = new BookDTO();
+        bookDTO.setId(book.getId());
+        bookDTO.setTitle(book.getTitle());
+        bookDTO.setAuthor(book.getAuthor());
+        bookDTO.setIsbn(book.getIsbn());
+        return bookDTO;
+    }
+
+    public List<BookDTO> toDTOs(List<Book> books) {
+        //lista já dimensionada para evitar as realocações do Collectors.toList()
+        List<BookDTO> bookDTOs = new ArrayList<>(books.size());
+        for (Book book : books) {
+            bookDTOs.add(toDTO(book));
+        }
+        return bookDTOs;
+    }
+}
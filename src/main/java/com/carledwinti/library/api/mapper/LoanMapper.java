@@ -0,0 +1,73 @@
+package com.carledwinti.library.api.mapper;
+
+import com.carledwinti.library.api.dto.LoanDTO;
+import com.carledwinti.library.api.dto.LoanFilterDTO;
+import com.carledwinti.library.api.dto.ReturnedLoanDTO;
+import com.carledwinti.library.api.model.Loan;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Conversão Loan/LoanDTO e dos DTOs de filtro e devolução. Nas listagens o book de cada loan é convertido pelo
+ * {@link BookMapper} para o bookDTO aninhado, o mesmo que os controllers faziam linha a linha com o ModelMapper.
+ */
+public class LoanMapper {
+
+    private final BookMapper bookMapper;
+
+    public LoanMapper(BookMapper bookMapper) {
+        this.bookMapper = bookMapper;
+    }
+
+    //o book não é mapeado a partir do bookDTO, ele sempre é obtido pelo isbn e definido no controller
+    public Loan toEntity(LoanDTO loanDTO) {
+        Loan loan = new Loan();
+        loan.setId(loanDTO.getId());
+        loan.setIsbn(loanDTO.getIsbn());
+        loan.setCustomer(loanDTO.getCustomer());
+        loan.setCustomerEmail(loanDTO.getCustomerEmail());
+        loan.setReturned(loanDTO.getReturned());
+        loan.setDueDate(loanDTO.getDueDate());
+        return loan;
+    }
+
+    public Loan toEntity(LoanFilterDTO loanFilterDTO) {
+        Loan loan = new Loan();
+        loan.setIsbn(loanFilterDTO.getIsbn());
+        loan.setCustomer(loanFilterDTO.getCustomer());
+        return loan;
+    }
+
+    public void updateEntity(ReturnedLoanDTO returnedLoanDTO, Loan loan) {
+        loan.setReturned(returnedLoanDTO.getReturned());
+    }
+
+    public LoanDTO toDTO(Loan loan) {
+        LoanDTO loanDTO = new LoanDTO();
+        loanDTO.setId(loan.getId());
+        loanDTO.setIsbn(loan.getIsbn());
+        loanDTO.setCustomer(loan.getCustomer());
+        loanDTO.setCustomerEmail(loan.getCustomerEmail());
+        loanDTO.setReturned(loan.getReturned());
+        loanDTO.setDueDate(loan.getDueDate());
+        loanDTO.setLoanDate(loan.getLoanDate());
+        return loanDTO;
+    }
+
+    public LoanDTO toDTOWithBook(Loan loan) {
+        LoanDTO loanDTO = toDTO(loan);
+        if (loan.getBook() != null) {
+            loanDTO.setBookDTO(bookMapper.toDTO(loan.getBook()));
+        }
+        return loanDTO;
+    }
+
+    public List<LoanDTO> toDTOsWithBook(List<Loan> loans) {
+        List<LoanDTO> loanDTOs = new ArrayList<>(loans.size());
+        for (Loan loan : loans) {
+            loanDTOs.add(toDTOWithBook(loan));
+        }
+        return loanDTOs;
+    }
+}
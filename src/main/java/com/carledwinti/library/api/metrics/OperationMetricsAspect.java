@@ -0,0 +1,102 @@
+package com.carledwinti.library.api.metrics;
+
+import com.carledwinti.library.api.pagination.CursorPage;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.data.domain.Slice;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Mede cada chamada aos services(BookService, LoanService, EmailService) e aos repositories do Spring Data:
+ * library.service.calls e library.repository.calls(timers) com as tags component(interface chamada), method e
+ * exception(none ou o nome simples da exception lançada, a contagem por exception é a contagem de erros) e
+ * library.service.results e library.repository.results com a quantidade de linhas das páginas e listas retornadas.
+ *
+ * Os percentis e os histogramas(Prometheus) são configurados por nome no application.properties
+ * (management.metrics.distribution.*). O tempo do SMTP fica no library.mail.send, o EmailService somente enfileira.
+ */
+@Aspect
+@Component
+public class OperationMetricsAspect {
+
+    private static final String APPLICATION_PACKAGE = "com.carledwinti.library.api.";
+
+    private final MeterRegistry meterRegistry;
+    private final Map<Class<?>, String> componentNames = new ConcurrentHashMap<>();
+
+    public OperationMetricsAspect(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Around("execution(public * *(..)) && (target(com.carledwinti.library.api.service.BookService) " +
+            "|| target(com.carledwinti.library.api.service.LoanService) " +
+            "|| target(com.carledwinti.library.api.service.EmailService))")
+    public Object timeService(ProceedingJoinPoint joinPoint) throws Throwable {
+        return record("library.service", joinPoint);
+    }
+
+    @Around("execution(public * *(..)) && target(org.springframework.data.repository.Repository)")
+    public Object timeRepository(ProceedingJoinPoint joinPoint) throws Throwable {
+        return record("library.repository", joinPoint);
+    }
+
+    private Object record(String layer, ProceedingJoinPoint joinPoint) throws Throwable {
+        String component = componentName(joinPoint.getTarget().getClass());
+        String method = joinPoint.getSignature().getName();
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String exception = "none";
+        try {
+            Object result = joinPoint.proceed();
+            recordResultSize(layer, component, method, result);
+            return result;
+        } catch (Throwable throwable) {
+            exception = throwable.getClass().getSimpleName();
+            throw throwable;
+        } finally {
+            sample.stop(Timer.builder(layer + ".calls")
+                    .tag("component", component)
+                    .tag("method", method)
+                    .tag("exception", exception)
+                    .register(meterRegistry));
+        }
+    }
+
+    private void recordResultSize(String layer, String component, String method, Object result) {
+        int size;
+        if (result instanceof Slice) {
+            size = ((Slice<?>) result).getNumberOfElements();
+        } else if (result instanceof Collection) {
+            size = ((Collection<?>) result).size();
+        } else if (result instanceof CursorPage) {
+            size = ((CursorPage<?>) result).getContent().size();
+        } else {
+            return;
+        }
+        DistributionSummary.builder(layer + ".results")
+                .tag("component", component)
+                .tag("method", method)
+                .register(meterRegistry)
+                .record(size);
+    }
+
+    //nome da interface da aplicação implementada pelo alvo(BookServiceImpl -> BookService, proxy do Spring Data ->
+    //BookRepository), o nome da classe quando não houver
+    private String componentName(Class<?> targetClass) {
+        return componentNames.computeIfAbsent(targetClass, type -> {
+            for (Class<?> anInterface : type.getInterfaces()) {
+                if (anInterface.getName().startsWith(APPLICATION_PACKAGE)) {
+                    return anInterface.getSimpleName();
+                }
+            }
+            return type.getSimpleName();
+        });
+    }
+}
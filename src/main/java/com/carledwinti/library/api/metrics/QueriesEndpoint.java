@@ -0,0 +1,139 @@
+package com.carledwinti.library.api.metrics;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.EntityStatistics;
+import org.hibernate.stat.QueryStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManagerFactory;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * /actuator/queries: estatísticas do Hibernate por consulta JPQL(execuções, tempo total/máximo, linhas), cargas de
+ * entities, hits do cache de segundo nível(total e por região), do cache de consultas e as últimas consultas SQL
+ * lentas(SlowQueryLog). DELETE zera os contadores.
+ *
+ * As estatísticas dependem de hibernate.generate_statistics=true, com o log por sessão do Hibernate desligado o custo
+ * é de alguns contadores atômicos por consulta.
+ */
+@Component
+@Endpoint(id = "queries")
+public class QueriesEndpoint {
+
+    private final Statistics statistics;
+    private final SlowQueryLog slowQueryLog;
+
+    public QueriesEndpoint(EntityManagerFactory entityManagerFactory, SlowQueryLog slowQueryLog) {
+        this.statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        this.slowQueryLog = slowQueryLog;
+    }
+
+    @ReadOperation
+    public QueriesReport queries() {
+        List<QueryReport> queries = new ArrayList<>();
+        for (String query : statistics.getQueries()) {
+            QueryStatistics queryStatistics = statistics.getQueryStatistics(query);
+            queries.add(new QueryReport(SlowQueryLog.redact(query), queryStatistics.getExecutionCount(),
+                    queryStatistics.getExecutionTotalTime(), queryStatistics.getExecutionMaxTime(),
+                    queryStatistics.getExecutionRowCount(), queryStatistics.getCacheHitCount(),
+                    queryStatistics.getCacheMissCount()));
+        }
+        //as consultas que mais consumiram tempo primeiro
+        queries.sort(Comparator.comparingLong(QueryReport::getTotalTimeMillis).reversed());
+
+        List<EntityReport> entities = new ArrayList<>();
+        for (String entityName : statistics.getEntityNames()) {
+            EntityStatistics entityStatistics = statistics.getEntityStatistics(entityName);
+            entities.add(new EntityReport(entityName, entityStatistics.getLoadCount(), entityStatistics.getFetchCount(),
+                    entityStatistics.getCacheHitCount(), entityStatistics.getCacheMissCount()));
+        }
+
+        //regiões do cache de segundo nível(entities e resultados de consultas), vazio sem o SecondLevelCacheConfig
+        List<RegionReport> regions = new ArrayList<>();
+        for (String regionName : statistics.getSecondLevelCacheRegionNames()) {
+            CacheRegionStatistics regionStatistics = statistics.getCacheRegionStatistics(regionName);
+            if (regionStatistics != null) {
+                regions.add(new RegionReport(regionName, regionStatistics.getHitCount(),
+                        regionStatistics.getMissCount(), regionStatistics.getPutCount()));
+            }
+        }
+
+        return new QueriesReport(statistics.isStatisticsEnabled(), Instant.ofEpochMilli(statistics.getStartTime()),
+                statistics.getQueryExecutionCount(), statistics.getQueryExecutionMaxTime(),
+                statistics.getPrepareStatementCount(), statistics.getEntityLoadCount(), statistics.getEntityFetchCount(),
+                statistics.getSecondLevelCacheHitCount(), statistics.getSecondLevelCacheMissCount(),
+                statistics.getSecondLevelCachePutCount(), statistics.getQueryCacheHitCount(),
+                statistics.getQueryCacheMissCount(), statistics.getQueryCachePutCount(), queries, entities, regions,
+                slowQueryLog.getThresholdMillis(), slowQueryLog.getQueries());
+    }
+
+    @DeleteOperation
+    public void reset() {
+        statistics.clear();
+        slowQueryLog.clear();
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class QueriesReport {
+        private final boolean statisticsEnabled;
+        private final Instant since;
+        private final long queryExecutions;
+        private final long queryMaxTimeMillis;
+        private final long preparedStatements;
+        private final long entityLoads;
+        private final long entityFetches;
+        private final long secondLevelCacheHits;
+        private final long secondLevelCacheMisses;
+        private final long secondLevelCachePuts;
+        private final long queryCacheHits;
+        private final long queryCacheMisses;
+        private final long queryCachePuts;
+        private final List<QueryReport> queries;
+        private final List<EntityReport> entities;
+        private final List<RegionReport> regions;
+        private final long slowThresholdMillis;
+        private final List<SlowQueryLog.SlowQuery> slowQueries;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class QueryReport {
+        private final String query;
+        private final long executions;
+        private final long totalTimeMillis;
+        private final long maxTimeMillis;
+        private final long rows;
+        private final long cacheHits;
+        private final long cacheMisses;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class EntityReport {
+        private final String entity;
+        private final long loads;
+        private final long fetches;
+        private final long cacheHits;
+        private final long cacheMisses;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class RegionReport {
+        private final String region;
+        private final long hits;
+        private final long misses;
+        private final long puts;
+    }
+}
@@ -0,0 +1,125 @@
+package com.carledwinti.library.api.metrics;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+
+/**
+ * Envolve o DataSource para medir cada execução de SQL(execute*, inclusive os lotes JDBC) e entregar ao SlowQueryLog.
+ * Connection e Statement são proxies que somente repassam as chamadas, guardando o SQL do prepare para a execução.
+ */
+@Component
+public class SlowQueryDataSourcePostProcessor implements BeanPostProcessor {
+
+    private final ObjectProvider<SlowQueryLog> slowQueryLog;
+
+    //ObjectProvider para que o SlowQueryLog só seja criado quando o DataSource for criado
+    public SlowQueryDataSourcePostProcessor(ObjectProvider<SlowQueryLog> slowQueryLog) {
+        this.slowQueryLog = slowQueryLog;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (bean instanceof DataSource && !Proxy.isProxyClass(bean.getClass())) {
+            return proxy(DataSource.class, bean, new DataSourceHandler((DataSource) bean, slowQueryLog.getObject()));
+        }
+        return bean;
+    }
+
+    private static <T> T proxy(Class<T> type, Object target, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler));
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException invocationTargetException) {
+            throw invocationTargetException.getCause();
+        }
+    }
+
+    private static final class DataSourceHandler implements InvocationHandler {
+
+        private final DataSource dataSource;
+        private final SlowQueryLog slowQueryLog;
+
+        DataSourceHandler(DataSource dataSource, SlowQueryLog slowQueryLog) {
+            this.dataSource = dataSource;
+            this.slowQueryLog = slowQueryLog;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object result = SlowQueryDataSourcePostProcessor.invoke(dataSource, method, args);
+            if (result instanceof Connection) {
+                return proxy(Connection.class, result, new ConnectionHandler((Connection) result, slowQueryLog));
+            }
+            return result;
+        }
+    }
+
+    private static final class ConnectionHandler implements InvocationHandler {
+
+        private final Connection connection;
+        private final SlowQueryLog slowQueryLog;
+
+        ConnectionHandler(Connection connection, SlowQueryLog slowQueryLog) {
+            this.connection = connection;
+            this.slowQueryLog = slowQueryLog;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object result = SlowQueryDataSourcePostProcessor.invoke(connection, method, args);
+            String sql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : null;
+            if (result instanceof CallableStatement) {
+                return proxy(CallableStatement.class, result, new StatementHandler((Statement) result, sql, slowQueryLog));
+            }
+            if (result instanceof PreparedStatement) {
+                return proxy(PreparedStatement.class, result, new StatementHandler((Statement) result, sql, slowQueryLog));
+            }
+            if (result instanceof Statement) {
+                return proxy(Statement.class, result, new StatementHandler((Statement) result, null, slowQueryLog));
+            }
+            return result;
+        }
+    }
+
+    private static final class StatementHandler implements InvocationHandler {
+
+        private final Statement statement;
+        private final String preparedSql;
+        private final SlowQueryLog slowQueryLog;
+
+        StatementHandler(Statement statement, String preparedSql, SlowQueryLog slowQueryLog) {
+            this.statement = statement;
+            this.preparedSql = preparedSql;
+            this.slowQueryLog = slowQueryLog;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (!method.getName().startsWith("execute")) {
+                return SlowQueryDataSourcePostProcessor.invoke(statement, method, args);
+            }
+            long start = System.nanoTime();
+            try {
+                return SlowQueryDataSourcePostProcessor.invoke(statement, method, args);
+            } finally {
+                //Statement.execute(sql) recebe o SQL na execução, o PreparedStatement recebeu no prepare
+                String sql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : preparedSql;
+                slowQueryLog.record(sql, System.nanoTime() - start);
+            }
+        }
+    }
+}
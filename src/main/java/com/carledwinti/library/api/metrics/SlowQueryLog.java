@@ -0,0 +1,82 @@
+package com.carledwinti.library.api.metrics;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.regex.Pattern;
+
+/**
+ * Últimos N comandos SQL que passaram do tempo limite(ring buffer, o mais antigo é sobrescrito). Abaixo do limite o
+ * custo é somente a comparação do tempo, o SQL só é copiado e mascarado quando a consulta é lenta.
+ *
+ * Os valores dos parâmetros nunca são guardados: os prepared statements já chegam com '?' e os literais(textos e
+ * números) escritos no próprio SQL são trocados por '?'.
+ */
+public class SlowQueryLog {
+
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern NUMBER_LITERAL = Pattern.compile("\\b\\d+(?:\\.\\d+)?\\b");
+
+    private final long thresholdNanos;
+    private final AtomicReferenceArray<SlowQuery> queries;
+    private final AtomicLong next = new AtomicLong();
+
+    public SlowQueryLog(long thresholdMillis, int capacity) {
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+        this.queries = new AtomicReferenceArray<>(capacity);
+    }
+
+    public void record(String sql, long elapsedNanos) {
+        if (elapsedNanos < thresholdNanos) {
+            return;
+        }
+        SlowQuery slowQuery = new SlowQuery(redact(sql), TimeUnit.NANOSECONDS.toMillis(elapsedNanos), Instant.now(),
+                Thread.currentThread().getName());
+        queries.set((int) (next.getAndIncrement() % queries.length()), slowQuery);
+    }
+
+    //do mais recente para o mais antigo
+    public List<SlowQuery> getQueries() {
+        long last = next.get();
+        List<SlowQuery> slowQueries = new ArrayList<>(queries.length());
+        for (long i = last - 1; i >= 0 && i >= last - queries.length(); i--) {
+            SlowQuery slowQuery = queries.get((int) (i % queries.length()));
+            if (slowQuery != null) {
+                slowQueries.add(slowQuery);
+            }
+        }
+        return slowQueries;
+    }
+
+    public long getThresholdMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(thresholdNanos);
+    }
+
+    public void clear() {
+        for (int i = 0; i < queries.length(); i++) {
+            queries.set(i, null);
+        }
+    }
+
+    static String redact(String sql) {
+        if (sql == null) {
+            return null;
+        }
+        return NUMBER_LITERAL.matcher(STRING_LITERAL.matcher(sql).replaceAll("?")).replaceAll("?");
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class SlowQuery {
+        private final String sql;
+        private final long timeMillis;
+        private final Instant executedAt;
+        private final String thread;
+    }
+}
@@ -1,11 +1,15 @@
 package com.carledwinti.library.api.model;
 
+import com.carledwinti.library.api.constants.ConstantsCache;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import javax.persistence.*;
+import java.time.Instant;
 import java.util.List;
 
 @Data //cria getters,setters, toString e EqualsAndHashCode
@@ -13,6 +17,9 @@ import java.util.List;
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
+//cache de segundo nível(SecondLevelCacheConfig): read-write trava a entrada durante o update e não devolve um book
+//alterado por uma transação ainda não concluída
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = ConstantsCache.BOOK_REGION)
 public class Book {
 
     @Id
@@ -21,6 +28,21 @@ public class Book {
     private String title;
     private String author;
     private String isbn;
+    //id do loan não devolvido do book(null quando disponível), mantido somente pelos updates condicionais(JDBC) do
+    //LoanRepository ao emprestar e devolver. Fora do insert/update da entity para que um book em cache(desatualizado)
+    //salvo pelo update do book não sobrescreva o valor
+    @Column(name = "active_loan_id", insertable = false, updatable = false)
+    private Long activeLoanId;
+    //incrementada pelo hibernate a cada update do book, forma o ETag dos GETs condicionais junto com o lastModified
+    @Version
+    private Long version;
+    private Instant lastModified;
     @OneToMany(mappedBy = "book", fetch = FetchType.LAZY)
     private List<Loan> loans;
+
+    @PrePersist
+    @PreUpdate
+    void touch() {
+        lastModified = Instant.now();
+    }
 }
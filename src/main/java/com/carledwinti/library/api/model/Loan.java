@@ -8,6 +8,7 @@ import lombok.NoArgsConstructor;
 import javax.persistence.*;
 import javax.validation.constraints.NotEmpty;
 import javax.validation.constraints.NotNull;
+import java.time.Instant;
 import java.time.LocalDate;
 
 @Entity
@@ -34,5 +35,23 @@ public class Loan {
     private Book book;
     @NotNull
     private LocalDate loanDate;
+    //data limite da devolução definida no empréstimo, os atrasados são lidos pelo índice (returned, due_date)
+    @Column(name="due_date")
+    @NotNull
+    private LocalDate dueDate;
     private Boolean returned;
+    //incrementada pelo hibernate a cada update do loan(devolução), forma o ETag dos GETs condicionais
+    @Version
+    private Long version;
+    private Instant lastModified;
+
+    @PrePersist
+    @PreUpdate
+    void touch() {
+        lastModified = Instant.now();
+        //coluna not null: um loan novo ainda não foi devolvido
+        if (returned == null) {
+            returned = false;
+        }
+    }
 }
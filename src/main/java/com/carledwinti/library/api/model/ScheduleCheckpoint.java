@@ -0,0 +1,31 @@
+package com.carledwinti.library.api.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import java.time.LocalDate;
+
+//progresso de uma tarefa agendada processada em lotes, permite continuar uma execução interrompida a partir do último
+//id, com a data de referência(runDate) da execução
+@Entity
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class ScheduleCheckpoint {
+
+    @Id
+    @Column(name = "job_name")
+    private String jobName;
+    @Column(name = "run_date")
+    private LocalDate runDate;
+    @Column(name = "last_id")
+    private Long lastId;
+    private Long processed;
+    private boolean finished;
+}
@@ -0,0 +1,14 @@
+package com.carledwinti.library.api.pagination;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+//página do modo keyset, nextCursor é null quando não existem mais linhas depois desta página
+@Getter
+@AllArgsConstructor
+public class CursorPage<T> {
+    private final List<T> content;
+    private final String nextCursor;
+}
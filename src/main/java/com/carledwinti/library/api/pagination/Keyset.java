@@ -0,0 +1,29 @@
+package com.carledwinti.library.api.pagination;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.data.domain.Sort;
+
+/**
+ * Posição de uma página no modo keyset(seek): a propriedade de ordenação, a direção e os valores(sort key, id) da
+ * última linha entregue. Na primeira página value e id são null e a consulta começa do início da ordenação.
+ */
+@Getter
+@AllArgsConstructor
+public class Keyset {
+
+    public static final String ID = "id";
+
+    private final String property;
+    private final Sort.Direction direction;
+    private final String value;
+    private final Long id;
+
+    public boolean isFirstPage() {
+        return id == null;
+    }
+
+    public boolean isSortedById() {
+        return ID.equals(property);
+    }
+}
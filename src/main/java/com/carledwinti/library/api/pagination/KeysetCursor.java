@@ -0,0 +1,71 @@
+package com.carledwinti.library.api.pagination;
+
+import com.carledwinti.library.api.constants.ConstantsError;
+import com.carledwinti.library.api.exception.BusinessException;
+import org.springframework.beans.DirectFieldAccessor;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.util.StringUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Codifica e decodifica o cursor opaco(parâmetro after) do modo keyset. O token é o base64(url safe) de
+ * "property:direction:id:value", o value fica por último pois pode conter ':'. Uma sort key null fica sem o último
+ * separador("property:direction:id"), diferente de um value vazio ou do texto "null".
+ * A ordenação da primeira página vem do sort do Pageable(padrão id), nas seguintes vem sempre do próprio cursor.
+ */
+public final class KeysetCursor {
+
+    private static final String SEPARATOR = ":";
+
+    private KeysetCursor() {
+    }
+
+    public static Keyset decode(String after, Pageable pageable, Set<String> sortProperties) {
+        if (!StringUtils.hasText(after)) {
+            Sort.Order order = pageable.getSort().stream().findFirst()
+                    .orElse(Sort.Order.asc(Keyset.ID));
+            checkSortProperty(order.getProperty(), sortProperties);
+            return new Keyset(order.getProperty(), order.getDirection(), null, null);
+        }
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(after), StandardCharsets.UTF_8);
+            String[] parts = decoded.split(SEPARATOR, 4);
+            if (parts.length < 3) {
+                throw new BusinessException(ConstantsError.MSG_ERROR_INVALID_CURSOR);
+            }
+            checkSortProperty(parts[0], sortProperties);
+            String value = parts.length == 4 ? parts[3] : null;
+            return new Keyset(parts[0], Sort.Direction.fromString(parts[1]), value, Long.valueOf(parts[2]));
+        } catch (IllegalArgumentException illegalArgumentException) {
+            //base64 inválido, direção inválida ou id não numérico(NumberFormatException)
+            throw new BusinessException(ConstantsError.MSG_ERROR_INVALID_CURSOR);
+        }
+    }
+
+    //a consulta busca size + 1 linhas, a linha extra indica que existe uma próxima página e não é devolvida
+    public static <T> CursorPage<T> page(List<T> rows, Keyset keyset, int size) {
+        if (rows.size() <= size) {
+            return new CursorPage<>(rows, null);
+        }
+        List<T> content = new ArrayList<>(rows.subList(0, size));
+        DirectFieldAccessor last = new DirectFieldAccessor(content.get(size - 1));
+        Object value = last.getPropertyValue(keyset.getProperty());
+        Object id = last.getPropertyValue(Keyset.ID);
+        String cursor = keyset.getProperty() + SEPARATOR + keyset.getDirection() + SEPARATOR + id
+                + (value != null ? SEPARATOR + value : "");
+        return new CursorPage<>(content,
+                Base64.getUrlEncoder().withoutPadding().encodeToString(cursor.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static void checkSortProperty(String property, Set<String> sortProperties) {
+        if (!sortProperties.contains(property)) {
+            throw new BusinessException(ConstantsError.MSG_ERROR_INVALID_CURSOR_SORT + sortProperties);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.carledwinti.library.api.pagination;
+
+import com.carledwinti.library.api.constants.ConstantsError;
+import com.carledwinti.library.api.exception.BusinessException;
+
+import javax.persistence.EntityManager;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Monta a parte keyset das consultas criteria dos fragmentos de repository:
+ * where (sortKey > :value or (sortKey = :value and id > :id)) order by sortKey, id limit :size.
+ * O custo de cada página não depende de quantas linhas vieram antes, ao contrário do offset do Pageable.
+ * A consulta pode retornar a entity do root ou uma projeção(select new) dos seus atributos.
+ *
+ * Sort keys null(title, author, isbn, customer não são obrigatórios na base) são tratadas como o menor valor, a ordem
+ * padrão do H2(e do BookSearchIndex): primeiro no asc e por último no desc. Sem isso o sortKey > :value descartaria
+ * as linhas com null e um cursor parado em um null não teria com o que comparar.
+ */
+public final class KeysetQueries {
+
+    private KeysetQueries() {
+    }
+
+    public static <T> List<T> list(EntityManager entityManager, CriteriaQuery<T> query, Root<?> root,
+                                   List<Predicate> filters, Keyset keyset, int limit) {
+        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+        boolean ascending = keyset.getDirection().isAscending();
+        Path<Long> id = root.get(Keyset.ID);
+        Path<Comparable<Object>> sortKey = root.get(keyset.getProperty());
+
+        List<Predicate> predicates = new ArrayList<>(filters);
+        if (!keyset.isFirstPage()) {
+            Predicate afterId = ascending ? criteriaBuilder.greaterThan(id, keyset.getId())
+                    : criteriaBuilder.lessThan(id, keyset.getId());
+            if (keyset.isSortedById()) {
+                predicates.add(afterId);
+            } else if (keyset.getValue() == null) {
+                //cursor em um null: os demais nulls depois do id e, no asc, todos os valores não null
+                Predicate nullsAfterId = criteriaBuilder.and(criteriaBuilder.isNull(sortKey), afterId);
+                predicates.add(ascending ? criteriaBuilder.or(nullsAfterId, criteriaBuilder.isNotNull(sortKey))
+                        : nullsAfterId);
+            } else {
+                Comparable<Object> value = sortKeyValue(sortKey, keyset.getValue());
+                Predicate afterValue = criteriaBuilder.or(
+                        ascending ? criteriaBuilder.greaterThan(sortKey, value) : criteriaBuilder.lessThan(sortKey, value),
+                        criteriaBuilder.and(criteriaBuilder.equal(sortKey, value), afterId));
+                //no desc os nulls ficam depois de todos os valores
+                predicates.add(ascending ? afterValue : criteriaBuilder.or(afterValue, criteriaBuilder.isNull(sortKey)));
+            }
+        }
+        query.where(predicates.toArray(new Predicate[0]));
+        if (keyset.isSortedById()) {
+            query.orderBy(ascending ? criteriaBuilder.asc(id) : criteriaBuilder.desc(id));
+        } else {
+            query.orderBy(ascending ? criteriaBuilder.asc(sortKey) : criteriaBuilder.desc(sortKey),
+                    ascending ? criteriaBuilder.asc(id) : criteriaBuilder.desc(id));
+        }
+        return entityManager.createQuery(query).setMaxResults(limit).getResultList();
+    }
+
+    //o cursor guarda o valor como texto, aqui ele volta para o tipo do atributo da entity
+    @SuppressWarnings("unchecked")
+    private static Comparable<Object> sortKeyValue(Path<?> sortKey, String value) {
+        Class<?> javaType = sortKey.getJavaType();
+        try {
+            if (LocalDate.class.equals(javaType)) {
+                return (Comparable<Object>) (Object) LocalDate.parse(value);
+            }
+            if (Long.class.equals(javaType)) {
+                return (Comparable<Object>) (Object) Long.valueOf(value);
+            }
+            return (Comparable<Object>) (Object) value;
+        } catch (DateTimeParseException | NumberFormatException exception) {
+            throw new BusinessException(ConstantsError.MSG_ERROR_INVALID_CURSOR);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.carledwinti.library.api.repository;
+
+import org.hibernate.exception.ConstraintViolationException;
+
+import java.util.Locale;
+
+/**
+ * Índice único do isbn dos books(idx_book_isbn, V2__workload_indexes.sql). A violação acontece quando outra requisição
+ * cadastra o mesmo isbn entre a verificação de duplicados e o insert, e chega como DuplicateKeyException(JDBC) ou como
+ * DataIntegrityViolationException com a ConstraintViolationException do Hibernate na causa.
+ */
+public final class BookIsbnIndex {
+
+    static final String NAME = "idx_book_isbn";
+
+    private BookIsbnIndex() {
+    }
+
+    //o nome do índice vem no nome da constraint(Hibernate) ou na mensagem do banco, em maiúsculas no H2
+    public static boolean isViolatedBy(Throwable exception) {
+        for (Throwable cause = exception; cause != null; cause = cause.getCause()) {
+            String description = cause instanceof ConstraintViolationException
+                    ? ((ConstraintViolationException) cause).getConstraintName() : cause.getMessage();
+            if (description != null && description.toLowerCase(Locale.ROOT).contains(NAME)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -1,13 +1,72 @@
 package com.carledwinti.library.api.repository;
 
+import com.carledwinti.library.api.dto.BookDTO;
+import com.carledwinti.library.api.dto.ResourceVersionDTO;
 import com.carledwinti.library.api.model.Book;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
+import javax.persistence.QueryHint;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
-public interface BookRepository extends JpaRepository<Book, Long> {
+import static org.hibernate.jpa.QueryHints.HINT_CACHEABLE;
+import static org.hibernate.jpa.QueryHints.HINT_CACHE_MODE;
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
+
+public interface BookRepository extends JpaRepository<Book, Long>, BookRepositoryCustom {
     //Por se tratar de um QueryMethod, utilizamos palavras chaves e não existe a necessidade de implementar o método
     //ele será implemantado pelo Spring Data em tempo de runtime retornando true ou false
+    //resultados no cache de consultas do hibernate(SecondLevelCacheConfig) e invalidados a cada insert/update/delete
+    //de book. O cache guarda somente o id encontrado, o book vem do cache de segundo nível(região book)
+    @QueryHints(@QueryHint(name = HINT_CACHEABLE, value = "true"))
     boolean existsByIsbn(String isbn);
+    @QueryHints(@QueryHint(name = HINT_CACHEABLE, value = "true"))
     Optional<Book> findByIsbn(String isbn);
+
+    //verifica os isbns de um lote inteiro com um único IN, retornando somente os que já existem na base
+    @Query(value = "select book.isbn from Book as book where book.isbn in :isbns")
+    List<String> findExistentIsbns(@Param("isbns") Collection<String> isbns);
+
+    //projeção dos books de uma página do BookSearchIndex, na ordem que o banco devolver
+    @Query(value = "select new com.carledwinti.library.api.dto.BookDTO(book.id, book.title, book.author, book.isbn) " +
+                   " from Book as book where book.id in :ids")
+    List<BookDTO> findDTOsByIds(@Param("ids") Collection<Long> ids);
+
+    //somente a versão do book para os GETs condicionais, sem carregar a entity
+    @Query(value = "select new com.carledwinti.library.api.dto.ResourceVersionDTO(book.version, book.lastModified) " +
+                   " from Book as book where book.id = :id")
+    Optional<ResourceVersionDTO> findVersionById(@Param("id") Long id);
+
+    //versão do book somada à quantidade e à última alteração dos seus loans(GETs condicionais dos loans do book)
+    @Query(value = "select new com.carledwinti.library.api.dto.ResourceVersionDTO(book.version, book.lastModified, " +
+                   " count(loan), max(loan.lastModified)) " +
+                   " from Book as book left join book.loans as loan " +
+                   " where book.id = :id " +
+                   " group by book.id, book.version, book.lastModified")
+    Optional<ResourceVersionDTO> findVersionWithLoansById(@Param("id") Long id);
+
+    //todos os isbns lidos aos poucos(fetch size) para montar o IsbnBloomFilter, precisa de uma transação aberta
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "1000"))
+    @Query(value = "select book.isbn from Book as book")
+    Stream<String> streamAllIsbns();
+
+    //isbns dos books inseridos ou alterados depois de since, em qualquer instância(sync do IsbnBloomFilter)
+    @Query(value = "select book.isbn from Book as book where book.lastModified > :since")
+    List<String> findIsbnsModifiedAfter(@Param("since") Instant since);
+
+    //todos os books em ordem de id para a exportação do catálogo, lidos aos poucos(fetch size) por um cursor
+    //forward-only. Somente leitura(sem snapshot) e sem passar pelo cache de segundo nível, que seria inundado pelo
+    //catálogo inteiro. Precisa de uma transação aberta
+    @QueryHints({@QueryHint(name = HINT_FETCH_SIZE, value = "1000"),
+                 @QueryHint(name = HINT_READONLY, value = "true"),
+                 @QueryHint(name = HINT_CACHE_MODE, value = "IGNORE")})
+    @Query(value = "select book from Book as book order by book.id")
+    Stream<Book> streamAll();
 }
@@ -0,0 +1,28 @@
+package com.carledwinti.library.api.repository;
+
+import com.carledwinti.library.api.dto.BookDTO;
+import com.carledwinti.library.api.model.Book;
+import com.carledwinti.library.api.pagination.Keyset;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+
+import java.util.List;
+
+//fragmento do BookRepository com as operações que não podem ser feitas via QueryMethod/JPA
+public interface BookRepositoryCustom {
+
+    //insere os books em lote via JDBC(com IDENTITY o hibernate não agrupa os inserts) e preenche o id de cada um
+    List<Book> insertAll(List<Book> books);
+
+    //as consultas por filtro(contendo, ignorando case e nulls) retornam a projeção BookDTO, sem carregar as entities
+
+    Page<BookDTO> findPageByFilter(Book bookFilter, Pageable pageable);
+
+    //paginado por keyset, retorna no máximo limit books
+    List<BookDTO> findByFilterAfter(Book bookFilter, Keyset keyset, int limit);
+
+    //sem o count
+    Slice<BookDTO> findSliceByFilter(Book bookFilter, Pageable pageable);
+}
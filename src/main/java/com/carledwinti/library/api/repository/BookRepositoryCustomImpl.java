@@ -0,0 +1,159 @@
+package com.carledwinti.library.api.repository;
+
+import com.carledwinti.library.api.dto.BookDTO;
+import com.carledwinti.library.api.model.Book;
+import com.carledwinti.library.api.pagination.Keyset;
+import com.carledwinti.library.api.pagination.KeysetQueries;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+import org.springframework.data.repository.support.PageableExecutionUtils;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+//implementação do fragmento BookRepositoryCustom, o Spring Data encontra pelo sufixo Impl
+public class BookRepositoryCustomImpl implements BookRepositoryCustom {
+
+    private static final String SQL_INSERT_BOOK =
+            "insert into book (title, author, isbn, version, last_modified) values (:title, :author, :isbn, 0, :lastModified)";
+    private static final String SQL_SELECT_ID_BY_ISBN =
+            "select id, isbn from book where isbn in (:isbns)";
+
+    //o NamedParameterJdbcTemplate obtém a mesma conexão da transação JPA corrente(DataSourceUtils)
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    public BookRepositoryCustomImpl(DataSource dataSource) {
+        this.jdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
+    }
+
+    @Override
+    public List<Book> insertAll(List<Book> books) {
+        if (books.isEmpty()) {
+            return books;
+        }
+        //sem o hibernate o version e o lastModified precisam ser preenchidos aqui(version null quebra o update do book)
+        Instant now = Instant.now();
+        SqlParameterSource[] batch = new SqlParameterSource[books.size()];
+        for (int i = 0; i < books.size(); i++) {
+            Book book = books.get(i);
+            book.setVersion(0L);
+            book.setLastModified(now);
+            batch[i] = new MapSqlParameterSource()
+                    .addValue("title", book.getTitle())
+                    .addValue("author", book.getAuthor())
+                    .addValue("isbn", book.getIsbn())
+                    .addValue("lastModified", Timestamp.from(now));
+        }
+        jdbcTemplate.batchUpdate(SQL_INSERT_BOOK, batch);
+        //as consultas em cache(ex.: existsByIsbn/findByIsbn sem resultado) não enxergam os books inseridos via JDBC
+        SecondLevelCacheInvalidation.invalidateQueries(entityManager, Book.class);
+
+        //uma única consulta para recuperar os ids gerados de todo o lote
+        List<String> isbns = books.stream().map(Book::getIsbn).collect(Collectors.toList());
+        Map<String, Long> idsByIsbn = new HashMap<>(books.size() * 2);
+        jdbcTemplate.query(SQL_SELECT_ID_BY_ISBN, new MapSqlParameterSource("isbns", isbns),
+                resultSet -> {
+                    idsByIsbn.put(resultSet.getString("isbn"), resultSet.getLong("id"));
+                });
+        books.forEach(book -> book.setId(idsByIsbn.get(book.getIsbn())));
+        return books;
+    }
+
+    @Override
+    public Page<BookDTO> findPageByFilter(Book bookFilter, Pageable pageable) {
+        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<BookDTO> query = criteriaBuilder.createQuery(BookDTO.class);
+        Root<Book> book = selectBookDTO(criteriaBuilder, query);
+        query.where(filterPredicates(criteriaBuilder, book, bookFilter).toArray(new Predicate[0]));
+        query.orderBy(QueryUtils.toOrders(pageable.getSort(), book, criteriaBuilder));
+        List<BookDTO> books = entityManager.createQuery(query)
+                .setFirstResult((int) pageable.getOffset())
+                .setMaxResults(pageable.getPageSize())
+                .getResultList();
+
+        //o count só é executado quando o total não pode ser calculado pela própria página(igual ao SimpleJpaRepository)
+        return PageableExecutionUtils.getPage(books, pageable, () -> {
+            CriteriaQuery<Long> countQuery = criteriaBuilder.createQuery(Long.class);
+            Root<Book> countBook = countQuery.from(Book.class);
+            countQuery.select(criteriaBuilder.count(countBook))
+                    .where(filterPredicates(criteriaBuilder, countBook, bookFilter).toArray(new Predicate[0]));
+            return entityManager.createQuery(countQuery).getSingleResult();
+        });
+    }
+
+    @Override
+    public List<BookDTO> findByFilterAfter(Book bookFilter, Keyset keyset, int limit) {
+        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<BookDTO> query = criteriaBuilder.createQuery(BookDTO.class);
+        Root<Book> book = selectBookDTO(criteriaBuilder, query);
+        List<Predicate> filters = filterPredicates(criteriaBuilder, book, bookFilter);
+        return KeysetQueries.list(entityManager, query, book, filters, keyset, limit);
+    }
+
+    @Override
+    public Slice<BookDTO> findSliceByFilter(Book bookFilter, Pageable pageable) {
+        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<BookDTO> query = criteriaBuilder.createQuery(BookDTO.class);
+        Root<Book> book = selectBookDTO(criteriaBuilder, query);
+        query.where(filterPredicates(criteriaBuilder, book, bookFilter).toArray(new Predicate[0]));
+        query.orderBy(QueryUtils.toOrders(pageable.getSort(), book, criteriaBuilder));
+
+        //a linha extra(size + 1) indica se existe uma próxima página e não é devolvida
+        List<BookDTO> books = entityManager.createQuery(query)
+                .setFirstResult((int) pageable.getOffset())
+                .setMaxResults(pageable.getPageSize() + 1)
+                .getResultList();
+        boolean hasNext = books.size() > pageable.getPageSize();
+        return new SliceImpl<>(hasNext ? books.subList(0, pageable.getPageSize()) : books, pageable, hasNext);
+    }
+
+    //somente as colunas da resposta, sem carregar as entities(nem os snapshots do dirty checking) no contexto de
+    //persistência
+    private Root<Book> selectBookDTO(CriteriaBuilder criteriaBuilder, CriteriaQuery<BookDTO> query) {
+        Root<Book> book = query.from(Book.class);
+        query.select(criteriaBuilder.construct(BookDTO.class,
+                book.get("id"), book.get("title"), book.get("author"), book.get("isbn")));
+        return book;
+    }
+
+    //contendo, ignorando case e nulls(equivalente ao Example com withIgnoreCase, withIgnoreNullValues e CONTAINING)
+    private List<Predicate> filterPredicates(CriteriaBuilder criteriaBuilder, Root<Book> book, Book bookFilter) {
+        List<Predicate> filters = new ArrayList<>();
+        if (bookFilter.getId() != null) {
+            filters.add(criteriaBuilder.equal(book.get("id"), bookFilter.getId()));
+        }
+        addContaining(criteriaBuilder, book.get("title"), bookFilter.getTitle(), filters);
+        addContaining(criteriaBuilder, book.get("author"), bookFilter.getAuthor(), filters);
+        addContaining(criteriaBuilder, book.get("isbn"), bookFilter.getIsbn(), filters);
+        return filters;
+    }
+
+    private void addContaining(CriteriaBuilder criteriaBuilder, Path<String> path, String value, List<Predicate> filters) {
+        if (value != null) {
+            filters.add(criteriaBuilder.like(criteriaBuilder.lower(path), "%" + value.toLowerCase(Locale.ROOT) + "%"));
+        }
+    }
+}
@@ -1,37 +1,150 @@
 package com.carledwinti.library.api.repository;
 
+import com.carledwinti.library.api.dto.LoanDTO;
+import com.carledwinti.library.api.dto.OverdueLoanDTO;
+import com.carledwinti.library.api.dto.ResourceVersionDTO;
 import com.carledwinti.library.api.model.Book;
 import com.carledwinti.library.api.model.Loan;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 
+import javax.persistence.QueryHint;
 import java.time.LocalDate;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
-public interface LoanRepository extends JpaRepository<Loan, Long> {
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
 
-    @Query(value = "select " +
-                    " case when( count(loan.id) > 0 ) then true else false end " +
-                    " from Loan loan " +
-                    " where loan.book = :book " +
-                    " and ( loan.returned is null or loan.returned is not false ) "
-            , nativeQuery = false)
-    Boolean existsByBookAndNotReturned(@Param("book") Book book);
+public interface LoanRepository extends JpaRepository<Loan, Long>, LoanRepositoryCustom {
+
+    //leitura de uma linha pela PK do book(activeLoanId) no lugar do count sobre todo o histórico de loans do book. O
+    //count sem group by devolve sempre uma linha, false também para um book que não existe(nunca null)
+    @Query(value = "select case when (count(book) > 0) then true else false end " +
+                   " from Book as book where book = :book and book.activeLoanId is not null ")
+    boolean existsByBookAndNotReturned(@Param("book") Book book);
+
+    //somente a versão do loan para os GETs condicionais, sem carregar a entity e o seu book
+    @Query(value = "select new com.carledwinti.library.api.dto.ResourceVersionDTO(loan.version, loan.lastModified) " +
+                   " from Loan as loan where loan.id = :id")
+    Optional<ResourceVersionDTO> findVersionById(@Param("id") Long id);
+
+    //o loan do GET /api/loans/{id} como projeção, sem o book(a resposta não o inclui)
+    @Query(value = "select new com.carledwinti.library.api.dto.LoanDTO(loan.id, loan.isbn, loan.customer, " +
+                   " loan.customerEmail, loan.returned, loan.dueDate, loan.loanDate) " +
+                   " from Loan as loan where loan.id = :id")
+    Optional<LoanDTO> findDTOById(@Param("id") Long id);
 
     //declarando como *** ultimo *** parametro da assinatura do method o Pageable ele *** já retornará um objeto Pageable *****
-    @Query(value = "select loan from Loan as loan " +
-                   " join loan.book as book " +
-                   " where book.isbn = :isbn or loan.customer = :customer ")
-    Page<Loan> findByBookIsbnOrCustomer(@Param("isbn") String isbn, @Param("customer") String customer, Pageable pageable);
+    //as listagens retornam a projeção LoanDTO já com o book(join no mesmo select, sem N+1): nenhuma entity é carregada
+    //no contexto de persistência, sem snapshots para o dirty checking. O countQuery continua sem o join
+    //o isbn do loan é o do seu book(definido no empréstimo), o filtro usa a coluna do loan e o seu índice.
+    //Um filtro null nunca encontra loans(= null), por isso é retirado da consulta: o outro filtro sozinho usa o seu
+    //índice, com os dois o OR entre colunas diferentes lê a tabela
+    default Page<LoanDTO> findByBookIsbnOrCustomer(String isbn, String customer, Pageable pageable) {
+        if (customer == null) {
+            return findByIsbn(isbn, pageable);
+        }
+        if (isbn == null) {
+            return findByCustomer(customer, pageable);
+        }
+        return findByIsbnOrCustomer(isbn, customer, pageable);
+    }
+
+    @Query(value = "select new com.carledwinti.library.api.dto.LoanDTO(loan.id, loan.isbn, loan.customer, loan.customerEmail, " +
+                   " loan.returned, loan.dueDate, loan.loanDate, book.id, book.title, book.author, book.isbn) " +
+                   " from Loan as loan join loan.book as book where loan.isbn = :isbn",
+           countQuery = "select count(loan) from Loan as loan where loan.isbn = :isbn")
+    Page<LoanDTO> findByIsbn(@Param("isbn") String isbn, Pageable pageable);
+
+    @Query(value = "select new com.carledwinti.library.api.dto.LoanDTO(loan.id, loan.isbn, loan.customer, loan.customerEmail, " +
+                   " loan.returned, loan.dueDate, loan.loanDate, book.id, book.title, book.author, book.isbn) " +
+                   " from Loan as loan join loan.book as book where loan.customer = :customer",
+           countQuery = "select count(loan) from Loan as loan where loan.customer = :customer")
+    Page<LoanDTO> findByCustomer(@Param("customer") String customer, Pageable pageable);
+
+    @Query(value = "select new com.carledwinti.library.api.dto.LoanDTO(loan.id, loan.isbn, loan.customer, loan.customerEmail, " +
+                   " loan.returned, loan.dueDate, loan.loanDate, book.id, book.title, book.author, book.isbn) " +
+                   " from Loan as loan join loan.book as book " +
+                   " where loan.isbn = :isbn or loan.customer = :customer ",
+           countQuery = "select count(loan) from Loan as loan " +
+                   " where loan.isbn = :isbn or loan.customer = :customer ")
+    Page<LoanDTO> findByIsbnOrCustomer(@Param("isbn") String isbn, @Param("customer") String customer, Pageable pageable);
+
+    @Query(value = "select new com.carledwinti.library.api.dto.LoanDTO(loan.id, loan.isbn, loan.customer, loan.customerEmail, " +
+                   " loan.returned, loan.dueDate, loan.loanDate, book.id, book.title, book.author, book.isbn) " +
+                   " from Loan as loan join loan.book as book where loan.book = :book",
+           countQuery = "select count(loan) from Loan as loan where loan.book = :book")
+    Page<LoanDTO> findByBook(@Param("book") Book book, Pageable pageable);
 
-    Page<Loan> findByBook(Book book, Pageable pageable);
+    //retornando Slice o Spring Data busca size + 1 linhas para calcular o hasNext e *** não executa o count ***
+    //mesmos filtros do findByBookIsbnOrCustomer
+    default Slice<LoanDTO> findSliceByBookIsbnOrCustomer(String isbn, String customer, Pageable pageable) {
+        if (customer == null) {
+            return findSliceByIsbn(isbn, pageable);
+        }
+        if (isbn == null) {
+            return findSliceByCustomer(customer, pageable);
+        }
+        return findSliceByIsbnOrCustomer(isbn, customer, pageable);
+    }
+
+    @Query(value = "select new com.carledwinti.library.api.dto.LoanDTO(loan.id, loan.isbn, loan.customer, loan.customerEmail, " +
+                   " loan.returned, loan.dueDate, loan.loanDate, book.id, book.title, book.author, book.isbn) " +
+                   " from Loan as loan join loan.book as book where loan.isbn = :isbn")
+    Slice<LoanDTO> findSliceByIsbn(@Param("isbn") String isbn, Pageable pageable);
+
+    @Query(value = "select new com.carledwinti.library.api.dto.LoanDTO(loan.id, loan.isbn, loan.customer, loan.customerEmail, " +
+                   " loan.returned, loan.dueDate, loan.loanDate, book.id, book.title, book.author, book.isbn) " +
+                   " from Loan as loan join loan.book as book where loan.customer = :customer")
+    Slice<LoanDTO> findSliceByCustomer(@Param("customer") String customer, Pageable pageable);
+
+    @Query(value = "select new com.carledwinti.library.api.dto.LoanDTO(loan.id, loan.isbn, loan.customer, loan.customerEmail, " +
+                   " loan.returned, loan.dueDate, loan.loanDate, book.id, book.title, book.author, book.isbn) " +
+                   " from Loan as loan join loan.book as book " +
+                   " where loan.isbn = :isbn or loan.customer = :customer ")
+    Slice<LoanDTO> findSliceByIsbnOrCustomer(@Param("isbn") String isbn, @Param("customer") String customer, Pageable pageable);
+
+    @Query(value = "select new com.carledwinti.library.api.dto.LoanDTO(loan.id, loan.isbn, loan.customer, loan.customerEmail, " +
+                   " loan.returned, loan.dueDate, loan.loanDate, book.id, book.title, book.author, book.isbn) " +
+                   " from Loan as loan join loan.book as book where loan.book = :book")
+    Slice<LoanDTO> findSliceByBook(@Param("book") Book book, Pageable pageable);
+
+    //histórico completo(auditoria) dos loans de um book e de um customer em ordem de id, lido aos poucos(fetch size)
+    //por um cursor forward-only. A projeção não carrega entities no contexto de persistência, que não cresce com o
+    //tamanho do histórico. Precisam de uma transação aberta enquanto o stream é consumido
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "1000"))
+    @Query(value = "select new com.carledwinti.library.api.dto.LoanDTO(loan.id, loan.isbn, loan.customer, loan.customerEmail, " +
+                   " loan.returned, loan.dueDate, loan.loanDate, book.id, book.title, book.author, book.isbn) " +
+                   " from Loan as loan join loan.book as book where loan.book = :book order by loan.id")
+    Stream<LoanDTO> streamByBook(@Param("book") Book book);
+
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "1000"))
+    @Query(value = "select new com.carledwinti.library.api.dto.LoanDTO(loan.id, loan.isbn, loan.customer, loan.customerEmail, " +
+                   " loan.returned, loan.dueDate, loan.loanDate, book.id, book.title, book.author, book.isbn) " +
+                   " from Loan as loan join loan.book as book where loan.customer = :customer order by loan.id")
+    Stream<LoanDTO> streamByCustomer(@Param("customer") String customer);
+
+    //loans com o prazo de devolução(dueDate) até referenceDate, inclusive: como antes do dueDate(loanDate <= hoje - 3),
+    //o loan é avisado no próprio dia do prazo. returned é sempre preenchido(false no empréstimo), returned = false e o
+    //intervalo de due_date são lidos pelo índice (returned, due_date).
+    //Lido pelo índice a ordem deixa de ser a do id, o order by mantém a ordem dos empréstimos
+    @Query(value = "select loan from Loan as loan " +
+                   " where loan.returned = false and loan.dueDate <= :referenceDate " +
+                   " order by loan.id ")
+    List<Optional<Loan>> findOverdueLoans(@Param("referenceDate") LocalDate referenceDate);
 
-    //erro caso não implemente a query --> No property lessThanThan found for type LocalDate! Traversed path: Loan.loanDate.
-    @Query(value = "select loan from Loan as loan where loan.loanDate <= :daysOverDue and (loan.returned is null or loan.returned is false)")
-    List<Optional<Loan>> findByLoanDateLessThanAndNotReturned(@Param("daysOverDue") LocalDate daysOverDue);
+    //lote(keyset pelo id) dos loans atrasados com somente id e email, sem carregar as entities e os seus books
+    @Query(value = "select new com.carledwinti.library.api.dto.OverdueLoanDTO(loan.id, loan.customerEmail) " +
+                   " from Loan as loan " +
+                   " where loan.returned = false and loan.dueDate <= :referenceDate " +
+                   " and loan.id > :lastId " +
+                   " order by loan.id ")
+    List<OverdueLoanDTO> findOverdueLoansAfter(@Param("referenceDate") LocalDate referenceDate, @Param("lastId") Long lastId, Pageable pageable);
 }
@@ -0,0 +1,24 @@
+package com.carledwinti.library.api.repository;
+
+import com.carledwinti.library.api.dto.LoanDTO;
+import com.carledwinti.library.api.model.Book;
+import com.carledwinti.library.api.pagination.Keyset;
+
+import java.util.List;
+
+//fragmento do LoanRepository com as consultas paginadas por keyset, retornam no máximo limit loans, e os updates
+//condicionais do activeLoanId do book
+public interface LoanRepositoryCustom {
+
+    //mesmo filtro e mesma projeção do findByBookIsbnOrCustomer
+    List<LoanDTO> findByBookIsbnOrCustomerAfter(String isbn, String customer, Keyset keyset, int limit);
+
+    List<LoanDTO> findByBookAfter(Book book, Keyset keyset, int limit);
+
+    //update condicional: marca o book como emprestado somente se ele estiver disponível(ou já for deste loan),
+    //com dois empréstimos concorrentes do mesmo book somente um altera a linha
+    int markBookOnLoan(Long bookId, Long loanId);
+
+    //libera o book somente se o loan ativo dele for o loan devolvido
+    int clearBookActiveLoan(Long bookId, Long loanId);
+}
@@ -0,0 +1,104 @@
+package com.carledwinti.library.api.repository;
+
+import com.carledwinti.library.api.dto.LoanDTO;
+import com.carledwinti.library.api.model.Book;
+import com.carledwinti.library.api.model.Loan;
+import com.carledwinti.library.api.pagination.Keyset;
+import com.carledwinti.library.api.pagination.KeysetQueries;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Join;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.sql.DataSource;
+import java.util.Collections;
+import java.util.List;
+
+//implementação do fragmento LoanRepositoryCustom, o Spring Data encontra pelo sufixo Impl
+public class LoanRepositoryCustomImpl implements LoanRepositoryCustom {
+
+    private static final String SQL_MARK_BOOK_ON_LOAN =
+            "update book set active_loan_id = :loanId " +
+            " where id = :bookId and (active_loan_id is null or active_loan_id = :loanId)";
+    private static final String SQL_CLEAR_BOOK_ACTIVE_LOAN =
+            "update book set active_loan_id = null where id = :bookId and active_loan_id = :loanId";
+
+    //o NamedParameterJdbcTemplate obtém a mesma conexão da transação JPA corrente(DataSourceUtils)
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    public LoanRepositoryCustomImpl(DataSource dataSource) {
+        this.jdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
+    }
+
+    @Override
+    public List<LoanDTO> findByBookIsbnOrCustomerAfter(String isbn, String customer, Keyset keyset, int limit) {
+        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<LoanDTO> query = criteriaBuilder.createQuery(LoanDTO.class);
+        Root<Loan> loan = selectLoanDTO(criteriaBuilder, query);
+
+        //assim como no JPQL(= null nunca é verdadeiro) um filtro null não encontra nenhum loan, ele é retirado da
+        //consulta para que o outro filtro use o seu índice(isbn do loan ou customer)
+        Predicate isbnOrCustomer;
+        if (isbn != null && customer != null) {
+            isbnOrCustomer = criteriaBuilder.or(criteriaBuilder.equal(loan.get("isbn"), isbn),
+                    criteriaBuilder.equal(loan.get("customer"), customer));
+        } else if (isbn != null) {
+            isbnOrCustomer = criteriaBuilder.equal(loan.get("isbn"), isbn);
+        } else if (customer != null) {
+            isbnOrCustomer = criteriaBuilder.equal(loan.get("customer"), customer);
+        } else {
+            isbnOrCustomer = criteriaBuilder.disjunction();
+        }
+        return KeysetQueries.list(entityManager, query, loan, Collections.singletonList(isbnOrCustomer), keyset, limit);
+    }
+
+    @Override
+    public List<LoanDTO> findByBookAfter(Book book, Keyset keyset, int limit) {
+        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<LoanDTO> query = criteriaBuilder.createQuery(LoanDTO.class);
+        Root<Loan> loan = selectLoanDTO(criteriaBuilder, query);
+        Predicate byBook = criteriaBuilder.equal(loan.get("book"), book);
+        return KeysetQueries.list(entityManager, query, loan, Collections.singletonList(byBook), keyset, limit);
+    }
+
+    //mesma projeção das listagens do LoanRepository: o book vem do join no mesmo select e nenhuma entity é carregada
+    private Root<Loan> selectLoanDTO(CriteriaBuilder criteriaBuilder, CriteriaQuery<LoanDTO> query) {
+        Root<Loan> loan = query.from(Loan.class);
+        Join<Loan, Book> book = loan.join("book");
+        query.select(criteriaBuilder.construct(LoanDTO.class, loan.get("id"), loan.get("isbn"), loan.get("customer"),
+                loan.get("customerEmail"), loan.get("returned"), loan.get("dueDate"), loan.get("loanDate"),
+                book.get("id"), book.get("title"), book.get("author"), book.get("isbn")));
+        return loan;
+    }
+
+    //via JDBC e não por um update JPQL: o Hibernate retira do cache de segundo nível todos os books e invalida todas
+    //as consultas em cache sobre book a cada update JPQL, a cada empréstimo e devolução. Aqui somente o book alterado
+    //sai do cache
+    @Override
+    public int markBookOnLoan(Long bookId, Long loanId) {
+        return updateBookActiveLoan(SQL_MARK_BOOK_ON_LOAN, bookId, loanId);
+    }
+
+    @Override
+    public int clearBookActiveLoan(Long bookId, Long loanId) {
+        return updateBookActiveLoan(SQL_CLEAR_BOOK_ACTIVE_LOAN, bookId, loanId);
+    }
+
+    private int updateBookActiveLoan(String sql, Long bookId, Long loanId) {
+        int updatedRows = jdbcTemplate.update(sql, new MapSqlParameterSource()
+                .addValue("bookId", bookId)
+                .addValue("loanId", loanId));
+        if (updatedRows > 0) {
+            SecondLevelCacheInvalidation.invalidateEntity(entityManager, Book.class, bookId);
+        }
+        return updatedRows;
+    }
+}
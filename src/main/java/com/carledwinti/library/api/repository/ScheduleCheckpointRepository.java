@@ -0,0 +1,7 @@
+package com.carledwinti.library.api.repository;
+
+import com.carledwinti.library.api.model.ScheduleCheckpoint;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface ScheduleCheckpointRepository extends JpaRepository<ScheduleCheckpoint, String> {
+}
@@ -0,0 +1,52 @@
+package com.carledwinti.library.api.repository;
+
+import org.hibernate.cache.spi.TimestampsCache;
+import org.hibernate.cache.spi.access.EntityDataAccess;
+import org.hibernate.cache.spi.access.SoftLock;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.persister.entity.EntityPersister;
+
+import javax.persistence.EntityManager;
+import java.io.Serializable;
+
+/**
+ * Os inserts e updates feitos via JDBC não passam pelo Hibernate, que não atualiza o cache de segundo nível. Estes
+ * métodos fazem o que o Hibernate faria com as próprias alterações, valendo até o fim da transação corrente: sem o
+ * cache de segundo nível(ou sem a entity nele) não fazem nada.
+ */
+final class SecondLevelCacheInvalidation {
+
+    private SecondLevelCacheInvalidation() {
+    }
+
+    //linhas novas na tabela da entity: os resultados em cache das consultas sobre ela deixam de valer e, até o commit,
+    //nenhum resultado novo é colocado no cache(ex.: existsByIsbn false de um isbn que acabou de ser inserido)
+    static void invalidateQueries(EntityManager entityManager, Class<?> entityClass) {
+        SessionImplementor session = entityManager.unwrap(SessionImplementor.class);
+        TimestampsCache timestampsCache = session.getFactory().getCache().getTimestampsCache();
+        if (timestampsCache == null || !session.getFactory().getSessionFactoryOptions().isQueryCacheEnabled()) {
+            return;
+        }
+        Serializable[] querySpaces = session.getFactory().getMetamodel().entityPersister(entityClass).getQuerySpaces();
+        timestampsCache.preInvalidate(querySpaces, session);
+        session.getActionQueue().registerProcess((success, completedSession) ->
+                timestampsCache.invalidate(querySpaces, completedSession));
+    }
+
+    //linha alterada: somente a entity com este id sai do cache, travada até o fim da transação. Uma leitura iniciada
+    //antes do commit não volta a colocar o estado anterior no cache
+    static void invalidateEntity(EntityManager entityManager, Class<?> entityClass, Object id) {
+        SessionImplementor session = entityManager.unwrap(SessionImplementor.class);
+        SessionFactoryImplementor sessionFactory = session.getFactory();
+        EntityPersister persister = sessionFactory.getMetamodel().entityPersister(entityClass);
+        EntityDataAccess cacheAccess = persister.getCacheAccessStrategy();
+        if (cacheAccess == null) {
+            return;
+        }
+        Object key = cacheAccess.generateCacheKey(id, persister, sessionFactory, session.getTenantIdentifier());
+        SoftLock lock = cacheAccess.lockItem(session, key, null);
+        session.getActionQueue().registerProcess((success, completedSession) ->
+                cacheAccess.unlockItem(completedSession, key, lock));
+    }
+}
@@ -1,28 +1,59 @@
 package com.carledwinti.library.api.resource;
 
+import com.carledwinti.library.api.constants.ConstantsError;
+import com.carledwinti.library.api.dto.BookBatchItemDTO;
+import com.carledwinti.library.api.dto.BookBatchReportDTO;
+import com.carledwinti.library.api.dto.BookBatchStatus;
 import com.carledwinti.library.api.dto.BookDTO;
+import com.carledwinti.library.api.dto.CursorPageDTO;
 import com.carledwinti.library.api.dto.LoanDTO;
+import com.carledwinti.library.api.dto.ResourceVersionDTO;
+import com.carledwinti.library.api.dto.SliceDTO;
+import com.carledwinti.library.api.mapper.BookMapper;
 import com.carledwinti.library.api.model.Book;
-import com.carledwinti.library.api.model.Loan;
+import com.carledwinti.library.api.pagination.CursorPage;
+import com.carledwinti.library.api.repository.BookIsbnIndex;
 import com.carledwinti.library.api.service.BookService;
 import com.carledwinti.library.api.service.LoanService;
+import com.carledwinti.library.api.service.export.BookCatalogExport;
+import com.carledwinti.library.api.service.export.BookExportFormat;
+import com.carledwinti.library.api.service.export.ExportPermits;
+import com.carledwinti.library.api.service.export.LoanHistoryExport;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.modelmapper.ModelMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import javax.validation.ConstraintViolation;
 import javax.validation.Valid;
+import javax.validation.Validator;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 
 @RestController
 @RequestMapping("/api/books")
@@ -31,9 +62,24 @@ import java.util.stream.Collectors;
 @Slf4j
 public class BookController {
 
+    private static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
     private final BookService bookService;
-    private final ModelMapper modelMapper;
+    private final BookMapper bookMapper;
     private final LoanService loanService;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+    private final BookCatalogExport bookCatalogExport;
+    private final LoanHistoryExport loanHistoryExport;
+    private final ExportPermits exportPermits;
+
+    //quantidade de books validados e inseridos por transação na carga em lote
+    @Value("${application.books.batch.chunk-size:1000}")
+    private int batchChunkSize;
+
+    //itens rejeitados listados no relatório da carga em lote, os demais entram somente nos totais
+    @Value("${application.books.batch.max-reported-rejections:1000}")
+    private int batchMaxReportedRejections;
 
    /*
    private BookService bookService;
@@ -65,8 +111,8 @@ public class BookController {
 //                .isbn(bookDTO.getIsbn())
 //                .build();
 
-        //converter via modelMapper
-        Book bookEntity = modelMapper.map(bookDTO, Book.class);
+        //converter via bookMapper
+        Book bookEntity = bookMapper.toEntity(bookDTO);
 
         bookEntity = bookService.save(bookEntity);
 
@@ -77,21 +123,141 @@ public class BookController {
 //                .isbn(bookEntity.getIsbn())
 //                .build();
 
-        return modelMapper.map(bookEntity, BookDTO.class);
+        return bookMapper.toDTO(bookEntity);
     }
 
-    @GetMapping("/{id}")
+    //carga de catálogo: o corpo(array JSON ou NDJSON) é lido como stream, um book por vez, e processado em chunks,
+    //de forma que a memória utilizada não depende do tamanho da carga. O relatório traz os totais e somente os itens
+    //rejeitados(limitados por max-reported-rejections)
+    @PostMapping(value = "/batch", consumes = {MediaType.APPLICATION_JSON_VALUE, APPLICATION_NDJSON_VALUE})
     @ResponseStatus(HttpStatus.OK)
+    @ApiOperation("Creates many books from a JSON array or NDJSON body")
+    public BookBatchReportDTO createBatch(InputStream body) throws IOException {
+        log.info("creating books in batch");
+        BookBatchReportDTO report = new BookBatchReportDTO();
+        List<BookDTO> chunk = new ArrayList<>(batchChunkSize);
+        String invalidContent = null;
+        //o MappingIterator percorre tanto os elementos de um array quanto uma sequência de objetos(NDJSON)
+        try (MappingIterator<BookDTO> bookDTOs = objectMapper.readerFor(BookDTO.class).readValues(body)) {
+            while (bookDTOs.hasNextValue()) {
+                chunk.add(bookDTOs.nextValue());
+                if (chunk.size() == batchChunkSize) {
+                    saveChunk(chunk, report);
+                    chunk.clear();
+                }
+            }
+        } catch (JsonProcessingException jsonProcessingException) {
+            //os chunks anteriores já foram gravados, o relatório indica em qual item o processamento parou
+            invalidContent = jsonProcessingException.getOriginalMessage();
+        }
+        saveChunk(chunk, report);
+        if (invalidContent != null) {
+            report.add(BookBatchItemDTO.builder()
+                    .index(report.getReceived())
+                    .status(BookBatchStatus.INVALID)
+                    .error(ConstantsError.MSG_ERROR_INVALID_BATCH_CONTENT + invalidContent)
+                    .build(), batchMaxReportedRejections);
+        }
+        log.info("books batch finished, received: {}, created: {}", report.getReceived(), report.getCreated());
+        return report;
+    }
+
+    private void saveChunk(List<BookDTO> chunk, BookBatchReportDTO report) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        int firstIndex = report.getReceived();
+        BookBatchItemDTO[] items = new BookBatchItemDTO[chunk.size()];
+        List<Book> validBooks = new ArrayList<>(chunk.size());
+        for (int i = 0; i < chunk.size(); i++) {
+            BookDTO bookDTO = chunk.get(i);
+            Set<ConstraintViolation<BookDTO>> violations = validator.validate(bookDTO);
+            if (violations.isEmpty()) {
+                Book book = bookMapper.toEntity(bookDTO);
+                book.setId(null);
+                validBooks.add(book);
+            } else {
+                ConstraintViolation<BookDTO> violation = violations.iterator().next();
+                items[i] = batchItem(firstIndex + i, bookDTO, BookBatchStatus.INVALID,
+                        violation.getPropertyPath() + " " + violation.getMessage());
+            }
+        }
+
+        Map<String, Long> createdIds = new HashMap<>(validBooks.size() * 2);
+        saveAll(validBooks).forEach(book -> createdIds.put(book.getIsbn(), book.getId()));
+
+        for (int i = 0; i < chunk.size(); i++) {
+            if (items[i] == null) {
+                BookDTO bookDTO = chunk.get(i);
+                //o remove garante que só o primeiro item de um isbn repetido no lote seja o CREATED
+                Long id = createdIds.remove(bookDTO.getIsbn());
+                items[i] = id != null
+                        ? batchItem(firstIndex + i, bookDTO, BookBatchStatus.CREATED, null)
+                        : batchItem(firstIndex + i, bookDTO, BookBatchStatus.DUPLICATED, ConstantsError.MSG_ERROR_ISBN_ALREADY_EXISTS);
+                items[i].setId(id);
+            }
+            report.add(items[i], batchMaxReportedRejections);
+        }
+    }
+
+    //um isbn do chunk cadastrado por outra requisição depois da verificação de duplicados viola o idx_book_isbn e
+    //desfaz o chunk inteiro: os books são gravados de novo um por vez e os que violarem o índice ficam sem id(DUPLICATED)
+    private List<Book> saveAll(List<Book> books) {
+        try {
+            return bookService.saveAll(books);
+        } catch (DataIntegrityViolationException dataIntegrityViolationException) {
+            if (!BookIsbnIndex.isViolatedBy(dataIntegrityViolationException)) {
+                throw dataIntegrityViolationException;
+            }
+            log.warn("books batch chunk hit a concurrent isbn, saving its {} books one by one", books.size());
+            List<Book> createdBooks = new ArrayList<>(books.size());
+            for (Book book : books) {
+                try {
+                    createdBooks.addAll(bookService.saveAll(Collections.singletonList(book)));
+                } catch (DataIntegrityViolationException duplicatedIsbn) {
+                    if (!BookIsbnIndex.isViolatedBy(duplicatedIsbn)) {
+                        throw duplicatedIsbn;
+                    }
+                }
+            }
+            return createdBooks;
+        }
+    }
+
+    private BookBatchItemDTO batchItem(int index, BookDTO bookDTO, BookBatchStatus status, String error) {
+        return BookBatchItemDTO.builder().index(index).isbn(bookDTO.getIsbn()).status(status).error(error).build();
+    }
+
+    //exportação do catálogo inteiro(NDJSON ou CSV) escrita enquanto os books são lidos da base, sem paginação e sem
+    //count. Com Accept-Encoding gzip o corpo é comprimido durante a escrita
+    @GetMapping("/export")
+    @ApiOperation("Exports the whole book catalog as NDJSON or CSV")
+    public ResponseEntity<StreamingResponseBody> exportBooks(@RequestParam(defaultValue = "ndjson") String format,
+                                                             @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding){
+        BookExportFormat exportFormat = BookExportFormat.of(format)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST, ConstantsError.MSG_ERROR_INVALID_EXPORT_FORMAT));
+        log.info("Exporting books catalog, format: {}", exportFormat);
+        return StreamingResponses.attachment(exportPermits, exportFormat.getMediaType(),
+                "books." + exportFormat.getExtension(), acceptEncoding, outputStream -> bookCatalogExport.export(exportFormat, outputStream));
+    }
+
+    //GET condicional: a versão(ETag/Last-Modified) é consultada antes do book, com If-None-Match/If-Modified-Since
+    //válidos a resposta é 304 sem corpo. Sem @ResponseStatus(OK), que sobrescreveria o 304
+    @GetMapping("/{id}")
     @ApiOperation("Obtains a book by id")
-    public BookDTO getBook(@PathVariable Long id){
+    @ApiResponses({@ApiResponse(code=304, message = "Book not modified since the informed ETag/date")})
+    public BookDTO getBook(@PathVariable Long id, WebRequest webRequest){
         log.info("Obtaining details for book id: {}", id);
+        if (notModified(bookService.getVersion(id), webRequest)) {
+            return null;
+        }
         //caso não retorne nada e não tenha tratamento irá retornar a exception --> Caused by: java.util.NoSuchElementException:
         // No value present
         //Optional<Book> bookOptional = bookService.getByid(id);
 
         //Vamos utilizar conforme a baixo para conseguirmos tratar o retorno de Option empty e retornar uma exception com codigo de status
         return bookService.getByid(id)
-                .map(book -> modelMapper.map(book, BookDTO.class)) //mapea a entity book para bookDTO caso seja encontrado
+                .map(bookMapper::toDTO) //mapea a entity book para bookDTO caso seja encontrado
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND)); //retorna uma Exception Spring com
                                                 // responseStatus customisado caso não encontre a entity na base de dados
     }
@@ -104,7 +270,7 @@ public class BookController {
         log.info("Deleting a book by id: {}", id);
         //ele tenta obter um book com um .get() implicito
         // e caso não encontre retornamos uma exception com resonseStatus NOT_FOUND no orElseThrow
-        Book book = bookService.getByid(id).orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
+        Book book = bookService.getByidForUpdate(id).orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
         bookService.delete(book);
     }
 
@@ -113,14 +279,14 @@ public class BookController {
     @ApiOperation("Updates a book by id")
     public BookDTO updateBook(@PathVariable Long id, @RequestBody @Valid BookDTO bookDTO){
         log.info("Updating a book by id: {}", id);
-        return bookService.getByid(id).map(existentBook -> {
+        return bookService.getByidForUpdate(id).map(existentBook -> {
             //set
             existentBook.setAuthor(bookDTO.getAuthor());
             existentBook.setTitle(bookDTO.getTitle());
             //update
             existentBook = bookService.update(existentBook);
             //map to return DTO
-            return modelMapper.map(existentBook, BookDTO.class);
+            return bookMapper.toDTO(existentBook);
         }).orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
     }
 
@@ -131,31 +297,88 @@ public class BookController {
     @ApiOperation("Obtains many Books by filters")
     public Page<BookDTO> getByFilter(BookDTO bookDTO, Pageable pageRequest){
         log.info("Obtaining a book by filter: {}", bookDTO.toString());
-        Book bookFilter = modelMapper.map(bookDTO, Book.class);
-        Page<Book> pageBook = bookService.findByFilter(bookFilter, pageRequest);
-        List<BookDTO> bookDTOList =  pageBook.getContent().stream()
-                                            .map(book -> modelMapper.map(book, BookDTO.class))
-                                            .collect(Collectors.toList());
-        return new PageImpl<BookDTO>(bookDTOList, pageRequest, pageBook.getTotalElements());
+        Book bookFilter = bookMapper.toEntity(bookDTO);
+        //a página já vem com a projeção BookDTO, sem conversão das entities
+        return bookService.findByFilter(bookFilter, pageRequest);
+    }
+
+    //Modo sem count: com count=false a resposta é um SliceDTO com hasNext e o count(*) do Page não é executado.
+    // O modo keyset(after) também nunca executa o count, por isso tem precedência
+    @GetMapping(params = {"count=false", "!after"})
+    @ResponseStatus(HttpStatus.OK)
+    @ApiOperation("Obtains many Books by filters without counting the total of elements")
+    public SliceDTO<BookDTO> getSliceByFilter(BookDTO bookDTO, Pageable pageRequest){
+        log.info("Obtaining a book slice by filter: {}", bookDTO.toString());
+        Book bookFilter = bookMapper.toEntity(bookDTO);
+        Slice<BookDTO> sliceBook = bookService.findSliceByFilter(bookFilter, pageRequest);
+        return new SliceDTO<BookDTO>(sliceBook.getContent(), sliceBook.getNumber(), sliceBook.getSize(), sliceBook.hasNext());
+    }
+
+    //Modo keyset: quando o parametro after é enviado(vazio na primeira página) o page é ignorado e a consulta continua
+    // a partir do nextCursor da página anterior, com o mesmo custo para qualquer profundidade
+    @GetMapping(params = "after")
+    @ResponseStatus(HttpStatus.OK)
+    @ApiOperation("Obtains many Books by filters using cursor(keyset) pagination")
+    public CursorPageDTO<BookDTO> getByFilterAfter(BookDTO bookDTO, @RequestParam String after, Pageable pageRequest){
+        log.info("Obtaining a book by filter after cursor: {}", bookDTO.toString());
+        Book bookFilter = bookMapper.toEntity(bookDTO);
+        CursorPage<BookDTO> cursorPage = bookService.findByFilterAfter(bookFilter, after, pageRequest);
+        return new CursorPageDTO<BookDTO>(cursorPage.getContent(), pageRequest.getPageSize(), cursorPage.getNextCursor());
     }
 
     //MAPEAMENTO DE SUBRECURSO
+    //GETs condicionais: o ETag combina a versão do book com a quantidade e a última alteração dos seus loans
     @GetMapping("/{id}/loans")
-    @ResponseStatus(HttpStatus.OK)
     @ApiOperation("Obtains all Loans from Book by id book")
-    public Page<LoanDTO> getAllLoanFromBook(@PathVariable Long id, Pageable pageable){
+    public Page<LoanDTO> getAllLoanFromBook(@PathVariable Long id, Pageable pageable, WebRequest webRequest){
         log.info("Obtaining loans to book by id: {}", id);
+        if (notModified(bookService.getVersionWithLoans(id), webRequest)) {
+            return null;
+        }
+        Book book = bookService.getByid(id).orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
+        //os loans já vêm com a projeção LoanDTO(com o book)
+        return loanService.getLoansByBook(book, pageable);
+    }
+
+    @GetMapping(value = "/{id}/loans", params = {"count=false", "!after"})
+    @ApiOperation("Obtains all Loans from Book by id book without counting the total of elements")
+    public SliceDTO<LoanDTO> getLoanSliceFromBook(@PathVariable Long id, Pageable pageable, WebRequest webRequest){
+        log.info("Obtaining loan slice to book by id: {}", id);
+        if (notModified(bookService.getVersionWithLoans(id), webRequest)) {
+            return null;
+        }
         Book book = bookService.getByid(id).orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
-        Page<Loan> pageLoan = loanService.getLoansByBook(book, pageable);
-        List<LoanDTO> loanDTOS = pageLoan.getContent().stream()
-                .map(loan -> {
-                    Book loanBook = loan.getBook();
-                    BookDTO bookDTO = modelMapper.map(loanBook, BookDTO.class);
-                    LoanDTO loanDTO = modelMapper.map(loan, LoanDTO.class);
-                    loanDTO.setBookDTO(bookDTO);
-                    return loanDTO;
-                }).collect(Collectors.toList());
-        return new PageImpl<LoanDTO>(loanDTOS, pageable, pageLoan.getTotalElements());
+        Slice<LoanDTO> sliceLoan = loanService.getLoanSliceByBook(book, pageable);
+        return new SliceDTO<LoanDTO>(sliceLoan.getContent(), sliceLoan.getNumber(), sliceLoan.getSize(), sliceLoan.hasNext());
+    }
+
+    @GetMapping(value = "/{id}/loans", params = "after")
+    @ApiOperation("Obtains all Loans from Book by id book using cursor(keyset) pagination")
+    public CursorPageDTO<LoanDTO> getAllLoanFromBookAfter(@PathVariable Long id, @RequestParam String after, Pageable pageable, WebRequest webRequest){
+        log.info("Obtaining loans to book by id after cursor: {}", id);
+        if (notModified(bookService.getVersionWithLoans(id), webRequest)) {
+            return null;
+        }
+        Book book = bookService.getByid(id).orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
+        CursorPage<LoanDTO> cursorPage = loanService.getLoansByBookAfter(book, after, pageable);
+        return new CursorPageDTO<LoanDTO>(cursorPage.getContent(), pageable.getPageSize(), cursorPage.getNextCursor());
+    }
+
+    //histórico completo(auditoria) dos loans do book em NDJSON, escrito enquanto as linhas chegam do cursor, sem paginação
+    @GetMapping("/{id}/loans/stream")
+    @ApiOperation("Streams the complete loan history from Book by id book as NDJSON")
+    public ResponseEntity<StreamingResponseBody> streamLoansFromBook(@PathVariable Long id,
+                                                                     @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding){
+        log.info("Streaming loan history to book by id: {}", id);
+        Book book = bookService.getByid(id).orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
+        return StreamingResponses.attachment(exportPermits, StreamingResponses.APPLICATION_NDJSON,
+                "book-" + id + "-loans.ndjson", acceptEncoding, outputStream -> loanHistoryExport.exportByBook(book, outputStream));
+    }
+
+    //checkNotModified também adiciona ETag e Last-Modified na resposta 200. Book inexistente segue para o 404
+    private boolean notModified(Optional<ResourceVersionDTO> version, WebRequest webRequest) {
+        return version.map(resourceVersion -> webRequest.checkNotModified(resourceVersion.getETag(),
+                resourceVersion.getLastModifiedMillis())).orElse(false);
     }
 
     @GetMapping("/teste-log")
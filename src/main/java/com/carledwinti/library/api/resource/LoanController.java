@@ -1,28 +1,35 @@
 package com.carledwinti.library.api.resource;
 
 import com.carledwinti.library.api.constants.ConstantsError;
-import com.carledwinti.library.api.dto.BookDTO;
+import com.carledwinti.library.api.dto.CursorPageDTO;
 import com.carledwinti.library.api.dto.LoanDTO;
 import com.carledwinti.library.api.dto.LoanFilterDTO;
+import com.carledwinti.library.api.dto.ResourceVersionDTO;
 import com.carledwinti.library.api.dto.ReturnedLoanDTO;
+import com.carledwinti.library.api.dto.SliceDTO;
+import com.carledwinti.library.api.mapper.LoanMapper;
 import com.carledwinti.library.api.model.Book;
 import com.carledwinti.library.api.model.Loan;
+import com.carledwinti.library.api.pagination.CursorPage;
 import com.carledwinti.library.api.service.BookService;
 import com.carledwinti.library.api.service.LoanService;
+import com.carledwinti.library.api.service.export.ExportPermits;
+import com.carledwinti.library.api.service.export.LoanHistoryExport;
 import lombok.RequiredArgsConstructor;
-import org.modelmapper.ModelMapper;
 import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.validation.Valid;
 import java.time.LocalDate;
-import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/loans")
@@ -32,7 +39,9 @@ public class LoanController {
 
     private final LoanService loanService;
     private final BookService bookService;
-    private final ModelMapper modelMapper;
+    private final LoanMapper loanMapper;
+    private final LoanHistoryExport loanHistoryExport;
+    private final ExportPermits exportPermits;
     /*
     private LoanService loanService;
     private BookService bookService;
@@ -52,12 +61,35 @@ public class LoanController {
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST
                         , ConstantsError.MSG_ERROR_BOOK_NOT_FOUND_FOR_ISBN));
 
-        Loan loan = modelMapper.map(loanDTO, Loan.class);
+        Loan loan = loanMapper.toEntity(loanDTO);
         loan.setLoanDate(LocalDate.now());
         loan.setBook(book);
 
         Optional<Loan> optionalLoan = loanService.save(loan);
-        return modelMapper.map(optionalLoan.get(), LoanDTO.class);
+        return loanMapper.toDTO(optionalLoan.get());
+    }
+
+    //GET condicional: com If-None-Match/If-Modified-Since válidos para a versão do loan a resposta é 304 sem consultar o
+    //loan. O book não vai no corpo, o ETag depende somente do loan. Sem @ResponseStatus(OK), que sobrescreveria o 304
+    @GetMapping("{id}")
+    public LoanDTO getLoan(@PathVariable Long id, WebRequest webRequest){
+        Optional<ResourceVersionDTO> version = loanService.getVersion(id);
+        if (version.map(loanVersion -> webRequest.checkNotModified(loanVersion.getETag(),
+                loanVersion.getLastModifiedMillis())).orElse(false)) {
+            return null;
+        }
+        //projeção somente com as colunas do loan
+        return loanService.getDTOById(id)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
+    }
+
+    //histórico completo(auditoria) dos loans do customer em NDJSON, escrito enquanto as linhas chegam do cursor, sem
+    //paginação. Com Accept-Encoding gzip o corpo é comprimido durante a escrita
+    @GetMapping(value = "/stream", params = "customer")
+    public ResponseEntity<StreamingResponseBody> streamLoansFromCustomer(@RequestParam String customer,
+                                                                         @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding){
+        return StreamingResponses.attachment(exportPermits, StreamingResponses.APPLICATION_NDJSON,
+                "customer-loans.ndjson", acceptEncoding, outputStream -> loanHistoryExport.exportByCustomer(customer, outputStream));
     }
 
     @PatchMapping("{id}")
@@ -65,25 +97,33 @@ public class LoanController {
     public void getBook(@PathVariable Long id, @RequestBody ReturnedLoanDTO returnedLoanDTO){
         Loan loan = loanService.getById(id)
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, ConstantsError.MSG_ERROR_RETURN_LOAN_ID_NOTFOUND));
-        loan.setReturned(returnedLoanDTO.getReturned());
+        loanMapper.updateEntity(returnedLoanDTO, loan);
         loanService.update(loan);
     }
 
     @GetMapping
     @ResponseStatus(HttpStatus.OK)
     public Page<LoanDTO> findByFilter(LoanFilterDTO loanFilterDTO, Pageable pageable){
-        Loan loanFilter = modelMapper.map(loanFilterDTO, Loan.class);
-        Page<Loan> pageLoan = loanService.findByFilter(loanFilter, pageable);
-        List<LoanDTO> loanList = pageLoan.getContent().stream()
-                .map(loan -> {
-                    //Exemplo de mapeamento/conversão de objetos com os mesmos campos **** e subObjetos junto **********
-                    Book book = loan.getBook();
-                    BookDTO bookDTO = modelMapper.map(book, BookDTO.class);
-                    LoanDTO loanDTO = modelMapper.map(loan, LoanDTO.class);
-                    loanDTO.setBookDTO(bookDTO);
-                    return loanDTO;
-                })
-                .collect(Collectors.toList());
-        return new PageImpl<LoanDTO>(loanList, pageable, pageLoan.getTotalElements());
+        Loan loanFilter = loanMapper.toEntity(loanFilterDTO);
+        //cada loan já vem da consulta com o seu book(subObjeto) no bookDTO
+        return loanService.findByFilter(loanFilter, pageable);
+    }
+
+    //modo sem count(count=false), retorna somente se existe uma próxima página(hasNext)
+    @GetMapping(params = {"count=false", "!after"})
+    @ResponseStatus(HttpStatus.OK)
+    public SliceDTO<LoanDTO> findSliceByFilter(LoanFilterDTO loanFilterDTO, Pageable pageable){
+        Loan loanFilter = loanMapper.toEntity(loanFilterDTO);
+        Slice<LoanDTO> sliceLoan = loanService.findSliceByFilter(loanFilter, pageable);
+        return new SliceDTO<LoanDTO>(sliceLoan.getContent(), sliceLoan.getNumber(), sliceLoan.getSize(), sliceLoan.hasNext());
+    }
+
+    //modo keyset, ativado pelo parametro after(vazio na primeira página)
+    @GetMapping(params = "after")
+    @ResponseStatus(HttpStatus.OK)
+    public CursorPageDTO<LoanDTO> findByFilterAfter(LoanFilterDTO loanFilterDTO, @RequestParam String after, Pageable pageable){
+        Loan loanFilter = loanMapper.toEntity(loanFilterDTO);
+        CursorPage<LoanDTO> cursorPage = loanService.findByFilterAfter(loanFilter, after, pageable);
+        return new CursorPageDTO<LoanDTO>(cursorPage.getContent(), pageable.getPageSize(), cursorPage.getNextCursor());
     }
 }
@@ -0,0 +1,102 @@
+package com.carledwinti.library.api.resource;
+
+import com.carledwinti.library.api.constants.ConstantsError;
+import com.carledwinti.library.api.service.export.ExportPermits;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+//respostas das exportações em stream: anexo escrito em uma thread do MVC(StreamingResponseBody) enquanto os dados
+//são lidos da base, limitadas pelo ExportPermits. Com Accept-Encoding gzip o corpo é comprimido durante a escrita
+@Slf4j
+final class StreamingResponses {
+
+    static final MediaType APPLICATION_NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
+    private static final int GZIP_BUFFER_SIZE = 8192;
+
+    @FunctionalInterface
+    interface Export {
+        //retorna a quantidade de itens escritos
+        long writeTo(OutputStream outputStream) throws IOException;
+    }
+
+    private StreamingResponses() {
+    }
+
+    //sem permissão livre a exportação é recusada com 503, a permissão é devolvida quando a escrita termina
+    static ResponseEntity<StreamingResponseBody> attachment(ExportPermits exportPermits, MediaType mediaType,
+                                                            String filename, String acceptEncoding, Export export) {
+        if (!exportPermits.tryAcquire()) {
+            log.warn("Export rejected, too many concurrent exports, file: {}", filename);
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, ConstantsError.MSG_ERROR_TOO_MANY_EXPORTS);
+        }
+        boolean gzip = acceptsGzip(acceptEncoding);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(mediaType)
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.builder("attachment")
+                        .filename(filename).build().toString())
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return response.body(outputStream -> {
+            try {
+                long exported;
+                if (gzip) {
+                    //syncFlush: os flushes da exportação também enviam o que já foi comprimido. O finish escreve o
+                    //final do gzip sem fechar a resposta, que é fechada pelo Spring. O Deflater(memória nativa) é
+                    //liberado mesmo quando a exportação falha, sem escrever o final do gzip: o cliente não recebe um
+                    //arquivo truncado válido
+                    ResponseGzipOutputStream gzipOutputStream = new ResponseGzipOutputStream(outputStream);
+                    try {
+                        exported = export.writeTo(gzipOutputStream);
+                        gzipOutputStream.finish();
+                    } finally {
+                        gzipOutputStream.release();
+                    }
+                } else {
+                    exported = export.writeTo(outputStream);
+                }
+                log.info("Export finished, file: {}, gzip: {}, items: {}", filename, gzip, exported);
+            } finally {
+                exportPermits.release();
+            }
+        });
+    }
+
+    //o close do GZIPOutputStream fecharia a resposta, o release somente libera o Deflater
+    private static final class ResponseGzipOutputStream extends GZIPOutputStream {
+
+        ResponseGzipOutputStream(OutputStream outputStream) throws IOException {
+            super(outputStream, GZIP_BUFFER_SIZE, true);
+        }
+
+        void release() {
+            def.end();
+        }
+    }
+
+    //gzip aceito em qualquer posição do Accept-Encoding, exceto com q=0
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String encoding : acceptEncoding.split(",")) {
+            String[] parts = encoding.trim().split(";");
+            if (parts[0].trim().equalsIgnoreCase("gzip")) {
+                return parts.length == 1 || !parts[1].trim().replace(" ", "").matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
+    }
+}
@@ -1,16 +1,27 @@
 package com.carledwinti.library.api.service;
 
+import com.carledwinti.library.api.dto.BookDTO;
+import com.carledwinti.library.api.dto.ResourceVersionDTO;
 import com.carledwinti.library.api.model.Book;
+import com.carledwinti.library.api.pagination.CursorPage;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 
+import java.util.List;
 import java.util.Optional;
 
 public interface BookService {
     Book save(Book book);
     Optional<Book> getByid(Long id);
+    Optional<Book> getByidForUpdate(Long id);
+    Optional<ResourceVersionDTO> getVersion(Long id);
+    Optional<ResourceVersionDTO> getVersionWithLoans(Long id);
     void delete(Book book);
     Book update(Book book);
-    Page<Book> findByFilter(Book bookFilter, Pageable pageRequest);
+    Page<BookDTO> findByFilter(Book bookFilter, Pageable pageRequest);
+    Slice<BookDTO> findSliceByFilter(Book bookFilter, Pageable pageRequest);
+    CursorPage<BookDTO> findByFilterAfter(Book bookFilter, String after, Pageable pageRequest);
     Optional<Book> getBookByIsbn(String isbn);
+    List<Book> saveAll(List<Book> books);
 }
@@ -1,7 +1,8 @@
 package com.carledwinti.library.api.service;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public interface EmailService {
-    void sendEmailToLoansOverdue(String message, List<String> emailFromCustomersWithLoanOverdue);
+    CompletableFuture<Void> sendEmailToLoansOverdue(String message, List<String> emailFromCustomersWithLoanOverdue);
 }
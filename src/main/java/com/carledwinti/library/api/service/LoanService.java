@@ -1,19 +1,34 @@
 package com.carledwinti.library.api.service;
 
+import com.carledwinti.library.api.dto.LoanDTO;
 import com.carledwinti.library.api.dto.LoanFilterDTO;
+import com.carledwinti.library.api.dto.OverdueLoanDTO;
+import com.carledwinti.library.api.dto.ResourceVersionDTO;
 import com.carledwinti.library.api.model.Book;
 import com.carledwinti.library.api.model.Loan;
+import com.carledwinti.library.api.pagination.CursorPage;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 
+import java.time.LocalDate;
 import java.util.List;
 import java.util.Optional;
 
 public interface LoanService {
     Optional<Loan> save(Loan any);
     Optional<Loan> getById(Long id);
+    Optional<LoanDTO> getDTOById(Long id);
+    Optional<ResourceVersionDTO> getVersion(Long id);
     Optional<Loan> update(Loan loan);
-    Page<Loan> findByFilter(Loan loanFilter, Pageable pageable);
-    Page<Loan> getLoansByBook(Book book, Pageable pageable);
+    Page<LoanDTO> findByFilter(Loan loanFilter, Pageable pageable);
+    Page<LoanDTO> getLoansByBook(Book book, Pageable pageable);
+    Slice<LoanDTO> findSliceByFilter(Loan loanFilter, Pageable pageable);
+    Slice<LoanDTO> getLoanSliceByBook(Book book, Pageable pageable);
+    CursorPage<LoanDTO> findByFilterAfter(Loan loanFilter, String after, Pageable pageable);
+    CursorPage<LoanDTO> getLoansByBookAfter(Book book, String after, Pageable pageable);
+    //loans não devolvidos com o prazo(dueDate) vencido a pelo menos daysOfOverdue dias, 0 inclui o prazo de hoje
     List<Optional<Loan>> getAllOverdueLoans(Integer daysOfOverdue);
+    //loans não devolvidos com dueDate <= referenceDate, o dia do prazo já conta como atrasado
+    List<OverdueLoanDTO> getOverdueLoansAfter(LocalDate referenceDate, Long lastId, int size);
 }
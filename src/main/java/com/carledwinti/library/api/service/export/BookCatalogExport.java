@@ -0,0 +1,115 @@
+package com.carledwinti.library.api.service.export;
+
+import com.carledwinti.library.api.dto.BookDTO;
+import com.carledwinti.library.api.mapper.BookMapper;
+import com.carledwinti.library.api.model.Book;
+import com.carledwinti.library.api.repository.BookRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Exportação do catálogo inteiro de books escrita no OutputStream(corpo da resposta) enquanto os books são lidos da
+ * base pelo cursor do BookRepository.streamAll(). Cada book sai do contexto de persistência(detach) logo depois de
+ * convertido, a memória usada não depende do tamanho do catálogo. O OutputStream não é fechado aqui.
+ */
+@Component
+public class BookCatalogExport {
+
+    private static final String CSV_HEADER = "id,title,author,isbn";
+    private static final int WRITER_BUFFER_SIZE = 8192;
+
+    private final BookRepository bookRepository;
+    private final BookMapper bookMapper;
+    private final ObjectMapper objectMapper;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    public BookCatalogExport(BookRepository bookRepository, BookMapper bookMapper, ObjectMapper objectMapper) {
+        this.bookRepository = bookRepository;
+        this.bookMapper = bookMapper;
+        this.objectMapper = objectMapper;
+    }
+
+    //o stream do Spring Data precisa da transação aberta enquanto é consumido. Retorna a quantidade de books exportados
+    @Transactional(readOnly = true)
+    public long export(BookExportFormat format, OutputStream outputStream) throws IOException {
+        try (Stream<Book> books = bookRepository.streamAll()) {
+            Iterator<Book> iterator = books.iterator();
+            return format == BookExportFormat.CSV ? exportCsv(iterator, outputStream) : exportNdjson(iterator, outputStream);
+        }
+    }
+
+    private long exportNdjson(Iterator<Book> books, OutputStream outputStream) throws IOException {
+        NdjsonWriter writer = new NdjsonWriter(objectMapper, BookDTO.class, outputStream);
+        long count = 0;
+        while (books.hasNext()) {
+            writer.write(toDTO(books.next()));
+            count++;
+        }
+        writer.flush();
+        return count;
+    }
+
+    private long exportCsv(Iterator<Book> books, OutputStream outputStream) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8), WRITER_BUFFER_SIZE);
+        writer.write(CSV_HEADER);
+        writer.write('\n');
+        long count = 0;
+        while (books.hasNext()) {
+            writeCsv(writer, toDTO(books.next()));
+            count++;
+        }
+        writer.flush();
+        return count;
+    }
+
+    //o book já foi copiado para o DTO, sai do contexto de persistência para não acumular o catálogo
+    private BookDTO toDTO(Book book) {
+        BookDTO bookDTO = bookMapper.toDTO(book);
+        entityManager.detach(book);
+        return bookDTO;
+    }
+
+    private static void writeCsv(Writer writer, BookDTO bookDTO) throws IOException {
+        writer.write(String.valueOf(bookDTO.getId()));
+        writer.write(',');
+        writeCsvField(writer, bookDTO.getTitle());
+        writer.write(',');
+        writeCsvField(writer, bookDTO.getAuthor());
+        writer.write(',');
+        writeCsvField(writer, bookDTO.getIsbn());
+        writer.write('\n');
+    }
+
+    //RFC 4180: campos com vírgula, aspas ou quebra de linha entre aspas, com as aspas internas duplicadas
+    private static void writeCsvField(Writer writer, String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        boolean quoted = false;
+        for (int i = 0; i < value.length() && !quoted; i++) {
+            char c = value.charAt(i);
+            quoted = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quoted) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+}
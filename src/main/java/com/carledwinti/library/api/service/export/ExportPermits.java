@@ -0,0 +1,30 @@
+package com.carledwinti.library.api.service.export;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * Limite de exportações em stream(catálogo e histórico de loans) simultâneas. Cada exportação mantém uma conexão do
+ * pool e uma thread do MVC ocupadas até o cliente receber o último byte, sem limite poucos clientes lentos esgotariam
+ * o pool usado pelas demais requisições. A permissão é obtida antes da resposta e devolvida quando a escrita termina,
+ * sem permissão livre a exportação é recusada na hora(503) em vez de esperar.
+ */
+@Component
+public class ExportPermits {
+
+    private final Semaphore permits;
+
+    public ExportPermits(@Value("${application.exports.max-concurrent:2}") int maxConcurrent) {
+        this.permits = new Semaphore(maxConcurrent);
+    }
+
+    public boolean tryAcquire() {
+        return permits.tryAcquire();
+    }
+
+    public void release() {
+        permits.release();
+    }
+}
@@ -0,0 +1,66 @@
+package com.carledwinti.library.api.service.export;
+
+import com.carledwinti.library.api.dto.LoanDTO;
+import com.carledwinti.library.api.model.Book;
+import com.carledwinti.library.api.repository.LoanRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Histórico completo dos loans(auditoria) de um book ou de um customer em NDJSON, escrito no OutputStream(corpo da
+ * resposta) enquanto as linhas chegam do cursor do LoanRepository. Em memória ficam somente as linhas de um fetch do
+ * cursor e os buffers de escrita, qualquer que seja o tamanho do histórico.
+ *
+ * A escrita no OutputStream da resposta bloqueia enquanto o cliente não recebe o que já foi enviado(buffers do TCP
+ * cheios): com um cliente lento o cursor deixa de avançar e nada é acumulado. Um cliente parado é desconectado pelo
+ * timeout de escrita do Tomcat, o que encerra a transação e devolve a conexão ao pool.
+ */
+@Component
+public class LoanHistoryExport {
+
+    //mesma quantidade do fetch size do streamByBook/streamByCustomer: o que já foi lido é enviado antes de o cursor
+    //buscar as próximas linhas na base
+    private static final int FLUSH_ROWS = 1000;
+
+    private final LoanRepository loanRepository;
+    private final ObjectMapper objectMapper;
+
+    public LoanHistoryExport(LoanRepository loanRepository, ObjectMapper objectMapper) {
+        this.loanRepository = loanRepository;
+        this.objectMapper = objectMapper;
+    }
+
+    //o stream do Spring Data precisa da transação aberta enquanto é consumido. Retorna a quantidade de loans exportados
+    @Transactional(readOnly = true)
+    public long exportByBook(Book book, OutputStream outputStream) throws IOException {
+        try (Stream<LoanDTO> loans = loanRepository.streamByBook(book)) {
+            return export(loans.iterator(), outputStream);
+        }
+    }
+
+    @Transactional(readOnly = true)
+    public long exportByCustomer(String customer, OutputStream outputStream) throws IOException {
+        try (Stream<LoanDTO> loans = loanRepository.streamByCustomer(customer)) {
+            return export(loans.iterator(), outputStream);
+        }
+    }
+
+    private long export(Iterator<LoanDTO> loans, OutputStream outputStream) throws IOException {
+        NdjsonWriter writer = new NdjsonWriter(objectMapper, LoanDTO.class, outputStream);
+        long count = 0;
+        while (loans.hasNext()) {
+            writer.write(loans.next());
+            if (++count % FLUSH_ROWS == 0) {
+                writer.flush();
+            }
+        }
+        writer.flush();
+        return count;
+    }
+}
@@ -0,0 +1,37 @@
+package com.carledwinti.library.api.service.export;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+//NDJSON(um objeto JSON por linha) escrito direto no OutputStream pelo buffer do gerador do Jackson. Cada objeto é
+//escrito sem o flush do ObjectMapper, o envio fica por conta dos buffers e do flush(). O OutputStream não é fechado
+final class NdjsonWriter implements Flushable {
+
+    private final ObjectWriter objectWriter;
+    private final JsonGenerator generator;
+
+    NdjsonWriter(ObjectMapper objectMapper, Class<?> type, OutputStream outputStream) throws IOException {
+        this.objectWriter = objectMapper.writerFor(type).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        //sem o separador padrão(espaço) entre os objetos, cada objeto termina com a quebra de linha
+        this.generator = objectMapper.getFactory().createGenerator(outputStream, JsonEncoding.UTF8)
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                .setRootValueSeparator(null);
+    }
+
+    void write(Object value) throws IOException {
+        objectWriter.writeValue(generator, value);
+        generator.writeRaw('\n');
+    }
+
+    @Override
+    public void flush() throws IOException {
+        generator.flush();
+    }
+}
@@ -1,36 +1,89 @@
 package com.carledwinti.library.api.service.impl;
 
 import com.carledwinti.library.api.constants.ConstantsError;
+import com.carledwinti.library.api.dto.BookDTO;
+import com.carledwinti.library.api.dto.ResourceVersionDTO;
 import com.carledwinti.library.api.exception.BusinessException;
 import com.carledwinti.library.api.model.Book;
+import com.carledwinti.library.api.pagination.CursorPage;
+import com.carledwinti.library.api.pagination.Keyset;
+import com.carledwinti.library.api.pagination.KeysetCursor;
+import com.carledwinti.library.api.repository.BookIsbnIndex;
 import com.carledwinti.library.api.repository.BookRepository;
 import com.carledwinti.library.api.service.BookService;
-import org.springframework.data.domain.Example;
-import org.springframework.data.domain.ExampleMatcher;
+import com.carledwinti.library.api.service.search.BookSearchIndex;
+import com.carledwinti.library.api.service.search.IsbnBloomFilter;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @Service//Para que essa class seja gerenciada pelo Spring framework
 public class BookServiceImpl implements BookService {
 
+    //propriedades aceitas como sort key no modo keyset, as que aceitam null são ordenadas com os nulls como menor valor
+    //(KeysetQueries)
+    private static final Set<String> KEYSET_SORT_PROPERTIES =
+            new HashSet<>(Arrays.asList(Keyset.ID, "title", "author", "isbn"));
+
     private BookRepository bookRepository;
+    private BookSearchIndex bookSearchIndex;
+    private IsbnBloomFilter isbnBloomFilter;
 
-    public BookServiceImpl(BookRepository bookRepository){
+    public BookServiceImpl(BookRepository bookRepository, BookSearchIndex bookSearchIndex, IsbnBloomFilter isbnBloomFilter){
         this.bookRepository = bookRepository;
+        this.bookSearchIndex = bookSearchIndex;
+        this.isbnBloomFilter = isbnBloomFilter;
     }
 
+    //transações de escrita usam o primary, inclusive o existsByIsbn: em uma réplica atrasada um isbn recém cadastrado
+    //ainda não existiria. O bloom filter só recebe o isbn no commit, então um isbn cadastrado por outra requisição
+    //entre a verificação e o insert(id IDENTITY, o insert acontece no save) viola o idx_book_isbn e também é um
+    //isbn duplicado
     @Override
+    @Transactional
     public Book save(Book book) {
-        if(bookRepository.existsByIsbn(book.getIsbn())){
+        if(isbnBloomFilter.mightContain(book.getIsbn())){
+            if(bookRepository.existsByIsbn(book.getIsbn())){
+                throw new BusinessException(ConstantsError.MSG_ERROR_ISBN_ALREADY_EXISTS);
+            }
+            isbnBloomFilter.recordFalsePositive();
+        }
+        Book savedBook;
+        try {
+            savedBook = bookRepository.save(book);
+        } catch (DataIntegrityViolationException dataIntegrityViolationException) {
+            if (!BookIsbnIndex.isViolatedBy(dataIntegrityViolationException)) {
+                throw dataIntegrityViolationException;
+            }
             throw new BusinessException(ConstantsError.MSG_ERROR_ISBN_ALREADY_EXISTS);
         }
-        return bookRepository.save(book);
+        bookSearchIndex.indexAfterCommit(Collections.singletonList(savedBook));
+        isbnBloomFilter.putAfterCommit(Collections.singletonList(savedBook.getIsbn()));
+        return savedBook;
     }
 
+    //o findById é atendido pelo cache de segundo nível(região book), que guarda uma cópia do estado do book e não a
+    //instância alterada pelo controller, e só é atualizado no commit. Sem readOnly: com as réplicas as transações
+    //readOnly não alimentam o cache(ReplicaJpaTransactionManager), aqui um miss lê do primary e coloca o book no
+    //cache. Um hit não obtém a conexão(LazyConnectionDataSourceProxy), nem do primary nem das réplicas
     @Override
+    @Transactional
     public Optional<Book> getByid(Long id) {
         if(id == null){
             throw new IllegalArgumentException(ConstantsError.MSG_ERROR_ID_CANT_BE_NULL);
@@ -38,38 +91,158 @@ public class BookServiceImpl implements BookService {
         return bookRepository.findById(id);
     }
 
+    //leitura dos books que serão alterados ou removidos(PUT/DELETE): a transação de escrita vai ao primary e retorna a
+    //@Version do último commit, a versão lida em uma réplica atrasada faria o update falhar com conflito de versão
+    @Override
+    @Transactional
+    public Optional<Book> getByidForUpdate(Long id) {
+        if(id == null){
+            throw new IllegalArgumentException(ConstantsError.MSG_ERROR_ID_CANT_BE_NULL);
+        }
+        return bookRepository.findById(id);
+    }
+
+    //sem cache: a versão precisa refletir o commit mais recente, a consulta lê somente duas colunas
+    @Override
+    @Transactional(readOnly = true)
+    public Optional<ResourceVersionDTO> getVersion(Long id) {
+        if(id == null){
+            throw new IllegalArgumentException(ConstantsError.MSG_ERROR_ID_CANT_BE_NULL);
+        }
+        return bookRepository.findVersionById(id);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Optional<ResourceVersionDTO> getVersionWithLoans(Long id) {
+        if(id == null){
+            throw new IllegalArgumentException(ConstantsError.MSG_ERROR_ID_CANT_BE_NULL);
+        }
+        return bookRepository.findVersionWithLoansById(id);
+    }
+
     @Override
+    @Transactional
     public void delete(Book book) {
         if(book == null || book.getId() == null){
             throw new IllegalArgumentException(ConstantsError.MSG_ERROR_BOOK_AND_ID_CANT_BE_NULL);
         }
         bookRepository.delete(book);
+        bookSearchIndex.removeAfterCommit(book.getId());
     }
 
     @Override
+    @Transactional
     public Book update(Book book) {
         if(book == null || book.getId() == null){
             throw new IllegalArgumentException(ConstantsError.MSG_ERROR_BOOK_AND_ID_CANT_BE_NULL);
         }
-        return bookRepository.save(book);
+        Book updatedBook = bookRepository.save(book);
+        bookSearchIndex.indexAfterCommit(Collections.singletonList(updatedBook));
+        return updatedBook;
     }
 
+    //as listagens retornam a projeção BookDTO, serializada direto pelo controller. Na transação readOnly o flush é
+    //manual e, sem entities no contexto de persistência, não há snapshots nem dirty checking no fim da transação
     @Override
-    public Page<Book> findByFilter(Book bookFilter, Pageable pageRequest) {
-        Example<Book> exampleBook = Example.of(bookFilter,
-                ExampleMatcher.matching()
-                        .withIgnoreCase()//irá ignorar Case nos valores passados par acada propriedade(author, title, isbn)
-                        .withIgnoreNullValues()//irá ignorar as propriedades(author, title, isbn) cujo valor seja null
-                        .withStringMatcher(ExampleMatcher.StringMatcher.CONTAINING) //Neste caso irá buscar em cada
-                        // propriedade do tipo String que foi passada(author, title, isbn) valores que contenham
-                        // o valor passado em cada uma
-
-        );
-        return bookRepository.findAll(exampleBook, pageRequest);
+    @Transactional(readOnly = true)
+    public Page<BookDTO> findByFilter(Book bookFilter, Pageable pageRequest) {
+        //com o índice carregado a busca por substring é resolvida em memória e a base só carrega os books da página
+        if(useSearchIndex(bookFilter)){
+            Optional<Page<Long>> pageIds = bookSearchIndex.search(bookFilter, pageRequest);
+            if(pageIds.isPresent()){
+                Page<Long> page = pageIds.get();
+                return new PageImpl<>(findDTOsInOrder(page.getContent()), page.getPageable(), page.getTotalElements());
+            }
+        }
+        //contendo o valor de cada propriedade informada(author, title, isbn), ignorando case e as propriedades null
+        return bookRepository.findPageByFilter(bookFilter, pageRequest);
+    }
+
+    //o mesmo filtro do findByFilter sem o count(*), para clientes que só precisam saber se existe uma próxima página
+    @Override
+    @Transactional(readOnly = true)
+    public Slice<BookDTO> findSliceByFilter(Book bookFilter, Pageable pageRequest) {
+        if(useSearchIndex(bookFilter)){
+            Optional<Slice<Long>> sliceIds = bookSearchIndex.searchSlice(bookFilter, pageRequest);
+            if(sliceIds.isPresent()){
+                Slice<Long> slice = sliceIds.get();
+                return new SliceImpl<>(findDTOsInOrder(slice.getContent()), slice.getPageable(), slice.hasNext());
+            }
+        }
+        return bookRepository.findSliceByFilter(bookFilter, pageRequest);
     }
 
+    //o mesmo filtro do findByFilter, mas a página começa depois do cursor em vez de pular page * size linhas
     @Override
+    @Transactional(readOnly = true)
+    public CursorPage<BookDTO> findByFilterAfter(Book bookFilter, String after, Pageable pageRequest) {
+        Keyset keyset = KeysetCursor.decode(after, pageRequest, KEYSET_SORT_PROPERTIES);
+        int limit = pageRequest.getPageSize() + 1;
+        Optional<List<Long>> ids = useSearchIndex(bookFilter)
+                ? bookSearchIndex.searchAfter(bookFilter, keyset, limit) : Optional.empty();
+        List<BookDTO> books = ids.isPresent()
+                ? findDTOsInOrder(ids.get()) : bookRepository.findByFilterAfter(bookFilter, keyset, limit);
+        return KeysetCursor.page(books, keyset, pageRequest.getPageSize());
+    }
+
+    //página, slice e keyset usam o índice quando ele está carregado e o filtro é somente por title, author ou isbn
+    private boolean useSearchIndex(Book bookFilter) {
+        return bookSearchIndex.isReady() && bookFilter.getId() == null
+                && (bookFilter.getTitle() != null || bookFilter.getAuthor() != null || bookFilter.getIsbn() != null);
+    }
+
+    //o in(:ids) não garante a ordem, os books são recolocados na ordem dos ids encontrados pelo índice
+    private List<BookDTO> findDTOsInOrder(List<Long> ids) {
+        Map<Long, BookDTO> booksById = new HashMap<>(ids.size() * 2);
+        if(!ids.isEmpty()){
+            bookRepository.findDTOsByIds(ids).forEach(book -> booksById.put(book.getId(), book));
+        }
+        List<BookDTO> books = new ArrayList<>(ids.size());
+        for(Long id : ids){
+            BookDTO book = booksById.get(id);
+            if(book != null){
+                books.add(book);
+            }
+        }
+        return books;
+    }
+
+    //consulta do empréstimo(escrita) em uma transação de escrita: o findByIsbn é cacheável e somente o resultado lido
+    //no primary entra no cache de consultas
+    @Override
+    @Transactional
     public Optional<Book> getBookByIsbn(String isbn) {
-        return bookRepository.findByIsbn(isbn);
+        //isbn que o filtro garante não existir(digitação errada, código de outra biblioteca) não vai à base
+        if(!isbnBloomFilter.mightContain(isbn)){
+            return Optional.empty();
+        }
+        Optional<Book> book = bookRepository.findByIsbn(isbn);
+        if(!book.isPresent()){
+            isbnBloomFilter.recordFalsePositive();
+        }
+        return book;
+    }
+
+    //salva um lote(chunk) de books em uma transação, ignorando os isbns que já existem na base ou que se repetem no
+    //próprio lote. Retorna somente os books inseridos, já com o id preenchido
+    @Override
+    @Transactional
+    public List<Book> saveAll(List<Book> books) {
+        if(books.isEmpty()){
+            return books;
+        }
+        List<String> isbns = books.stream().map(Book::getIsbn).collect(Collectors.toList());
+        Set<String> knownIsbns = new HashSet<>(bookRepository.findExistentIsbns(isbns));
+        List<Book> newBooks = new ArrayList<>(books.size());
+        for(Book book : books){
+            if(knownIsbns.add(book.getIsbn())){
+                newBooks.add(book);
+            }
+        }
+        List<Book> insertedBooks = bookRepository.insertAll(newBooks);
+        bookSearchIndex.indexAfterCommit(insertedBooks);
+        isbnBloomFilter.putAfterCommit(insertedBooks.stream().map(Book::getIsbn).collect(Collectors.toList()));
+        return insertedBooks;
     }
 }
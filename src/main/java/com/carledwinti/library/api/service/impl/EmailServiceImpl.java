@@ -1,31 +1,48 @@
 package com.carledwinti.library.api.service.impl;
 
 import com.carledwinti.library.api.service.EmailService;
+import com.carledwinti.library.api.service.mail.MailDispatcher;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.mail.SimpleMailMessage;
-import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 @RequiredArgsConstructor
 public class EmailServiceImpl implements EmailService {
 
-    private final JavaMailSender javaMailSender;
+    private final MailDispatcher mailDispatcher;
 
     @Value("${application.mail.default.sender}")
     private String sender;
 
+    @Value("${application.mail.dispatch.batch-size:50}")
+    private int batchSize;
+
+    //uma mensagem por destinatário, um customer não vê o email dos outros. As mensagens são entregues ao MailDispatcher
+    //(assíncrono) em grupos de até batchSize, cada grupo enviado pela mesma conexão SMTP. O future termina quando
+    //todos os grupos terminam
     @Override
-    public void sendEmailToLoansOverdue(String message, List<String> emailFromCustomersWithLoanOverdue) {
-        String[] mails = emailFromCustomersWithLoanOverdue.toArray(new String[emailFromCustomersWithLoanOverdue.size()]);
-        SimpleMailMessage simpleMailMessage = new SimpleMailMessage();
-        simpleMailMessage.setFrom(sender);
-        simpleMailMessage.setSubject("Livro com empréstimo em atraso");
-        simpleMailMessage.setText(message);
-        simpleMailMessage.setTo(mails);
-        javaMailSender.send(simpleMailMessage);
+    public CompletableFuture<Void> sendEmailToLoansOverdue(String message, List<String> emailFromCustomersWithLoanOverdue) {
+        List<CompletableFuture<Void>> dispatches = new ArrayList<>();
+        for (int from = 0; from < emailFromCustomersWithLoanOverdue.size(); from += batchSize) {
+            List<String> mails = emailFromCustomersWithLoanOverdue.subList(from,
+                    Math.min(from + batchSize, emailFromCustomersWithLoanOverdue.size()));
+            List<SimpleMailMessage> messages = new ArrayList<>(mails.size());
+            for (String mail : mails) {
+                SimpleMailMessage simpleMailMessage = new SimpleMailMessage();
+                simpleMailMessage.setFrom(sender);
+                simpleMailMessage.setSubject("Livro com empréstimo em atraso");
+                simpleMailMessage.setText(message);
+                simpleMailMessage.setTo(mail);
+                messages.add(simpleMailMessage);
+            }
+            dispatches.add(mailDispatcher.dispatch(messages));
+        }
+        return CompletableFuture.allOf(dispatches.toArray(new CompletableFuture[0]));
     }
 }
@@ -1,37 +1,88 @@
 package com.carledwinti.library.api.service.impl;
 
 import com.carledwinti.library.api.constants.ConstantsError;
+import com.carledwinti.library.api.dto.LoanDTO;
 import com.carledwinti.library.api.dto.LoanFilterDTO;
+import com.carledwinti.library.api.dto.OverdueLoanDTO;
+import com.carledwinti.library.api.dto.ResourceVersionDTO;
 import com.carledwinti.library.api.exception.BusinessException;
 import com.carledwinti.library.api.model.Book;
 import com.carledwinti.library.api.model.Loan;
+import com.carledwinti.library.api.pagination.CursorPage;
+import com.carledwinti.library.api.pagination.Keyset;
+import com.carledwinti.library.api.pagination.KeysetCursor;
 import com.carledwinti.library.api.repository.LoanRepository;
 import com.carledwinti.library.api.service.LoanService;
+import com.carledwinti.library.api.service.lock.BookLocks;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Example;
 import org.springframework.data.domain.ExampleMatcher;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionOperations;
 
 import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
 
 @Service
 public class LoanServiceImpl implements LoanService {
 
+    //propriedades aceitas como sort key no modo keyset, as que aceitam null são ordenadas com os nulls como menor valor
+    //(KeysetQueries)
+    private static final Set<String> KEYSET_SORT_PROPERTIES =
+            new HashSet<>(Arrays.asList(Keyset.ID, "isbn", "customer", "loanDate"));
+
     private LoanRepository loanRepository;
+    private TransactionOperations transactionOperations;
+    private BookLocks bookLocks;
+
+    @Value("${application.loans.period-days:3}")
+    private int loanPeriodDays;
 
-    public LoanServiceImpl(LoanRepository loanRepository) {
+    public LoanServiceImpl(LoanRepository loanRepository, TransactionOperations transactionOperations, BookLocks bookLocks) {
         this.loanRepository = loanRepository;
+        this.transactionOperations = transactionOperations;
+        this.bookLocks = bookLocks;
     }
 
+    //os empréstimos do mesmo book esperam no lock do book, que é liberado somente depois do commit, assim o próximo já
+    //encontra o activeLoanId gravado e falha na checagem sem insert/rollback e sem esperar pelo lock da linha no banco
     @Override
     public Optional<Loan> save(Loan loan) {
+        Lock lock = bookLocks.forBook(loan.getBook().getId());
+        lock.lock();
+        try {
+            return transactionOperations.execute(status -> saveLoan(loan));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //a checagem pelo activeLoanId do book evita o insert na maioria dos casos, quem garante um único loan ativo é o
+    //update condicional(em uma corrida entre instâncias o segundo loan não altera o book e o rollback desfaz o insert)
+    private Optional<Loan> saveLoan(Loan loan) {
         if(loanRepository.existsByBookAndNotReturned(loan.getBook())){
             throw new BusinessException(ConstantsError.MSG_ERROR_BOOK_ALREADY_LOANED);
         }
-        return Optional.of(this.loanRepository.save(loan));
+        if(loan.getDueDate() == null){
+            loan.setDueDate(loan.getLoanDate().plusDays(loanPeriodDays));
+        } else if(loan.getDueDate().isBefore(loan.getLoanDate())){
+            throw new BusinessException(ConstantsError.MSG_ERROR_LOAN_DUE_DATE_BEFORE_LOAN_DATE);
+        }
+        Loan savedLoan = this.loanRepository.save(loan);
+        if(loanRepository.markBookOnLoan(loan.getBook().getId(), savedLoan.getId()) == 0){
+            throw new BusinessException(ConstantsError.MSG_ERROR_BOOK_ALREADY_LOANED);
+        }
+        return Optional.of(savedLoan);
     }
 
     @Override
@@ -39,30 +90,92 @@ public class LoanServiceImpl implements LoanService {
         return loanRepository.findById(id);
     }
 
+    //leitura do GET /api/loans/{id}: a projeção não carrega a entity e o seu book
     @Override
+    @Transactional(readOnly = true)
+    public Optional<LoanDTO> getDTOById(Long id) {
+        return loanRepository.findDTOById(id);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Optional<ResourceVersionDTO> getVersion(Long id) {
+        return loanRepository.findVersionById(id);
+    }
+
+    //devolvido libera o book, desfazer a devolução só é aceito se o book não tiver sido emprestado novamente
+    @Override
+    @Transactional
     public Optional<Loan> update(Loan loan) {
         Loan existentLoan = loanRepository.findById(loan.getId())
                 .orElseThrow(() -> new BusinessException(ConstantsError.MSG_ERROR_RETURN_LOAN_ID_NOTFOUND));
 
         existentLoan.setReturned(loan.getReturned());
         Loan updatedLoan = loanRepository.save(existentLoan);
+        Long bookId = updatedLoan.getBook().getId();
+        if(Boolean.TRUE.equals(updatedLoan.getReturned())){
+            loanRepository.clearBookActiveLoan(bookId, updatedLoan.getId());
+        } else if(loanRepository.markBookOnLoan(bookId, updatedLoan.getId()) == 0){
+            throw new BusinessException(ConstantsError.MSG_ERROR_BOOK_ALREADY_LOANED);
+        }
         return Optional.of(updatedLoan);
     }
 
+    //as listagens retornam a projeção LoanDTO(com o book), serializada direto pelo controller
     @Override
-    public Page<Loan> findByFilter(Loan loanFilter, Pageable pageable) {
+    @Transactional(readOnly = true)
+    public Page<LoanDTO> findByFilter(Loan loanFilter, Pageable pageable) {
         return loanRepository.findByBookIsbnOrCustomer(loanFilter.getIsbn(), loanFilter.getCustomer(), pageable);
     }
 
     @Override
-    public Page<Loan> getLoansByBook(Book book, Pageable pageable) {
+    @Transactional(readOnly = true)
+    public Page<LoanDTO> getLoansByBook(Book book, Pageable pageable) {
         return loanRepository.findByBook(book, pageable);
     }
 
     @Override
+    @Transactional(readOnly = true)
+    public Slice<LoanDTO> findSliceByFilter(Loan loanFilter, Pageable pageable) {
+        return loanRepository.findSliceByBookIsbnOrCustomer(loanFilter.getIsbn(), loanFilter.getCustomer(), pageable);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Slice<LoanDTO> getLoanSliceByBook(Book book, Pageable pageable) {
+        return loanRepository.findSliceByBook(book, pageable);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public CursorPage<LoanDTO> findByFilterAfter(Loan loanFilter, String after, Pageable pageable) {
+        Keyset keyset = KeysetCursor.decode(after, pageable, KEYSET_SORT_PROPERTIES);
+        List<LoanDTO> loans = loanRepository.findByBookIsbnOrCustomerAfter(loanFilter.getIsbn(), loanFilter.getCustomer(),
+                keyset, pageable.getPageSize() + 1);
+        return KeysetCursor.page(loans, keyset, pageable.getPageSize());
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public CursorPage<LoanDTO> getLoansByBookAfter(Book book, String after, Pageable pageable) {
+        Keyset keyset = KeysetCursor.decode(after, pageable, KEYSET_SORT_PROPERTIES);
+        List<LoanDTO> loans = loanRepository.findByBookAfter(book, keyset, pageable.getPageSize() + 1);
+        return KeysetCursor.page(loans, keyset, pageable.getPageSize());
+    }
+
+    @Override
+    @Transactional(readOnly = true)
     public List<Optional<Loan>> getAllOverdueLoans(Integer daysOfOverdue) {
-        LocalDate localDateOverdue = LocalDate.now().minusDays(daysOfOverdue);
-        return loanRepository.findByLoanDateLessThanAndNotReturned(localDateOverdue);
+        //daysOfOverdue conta os dias depois do prazo(dueDate) e não mais a idade do empréstimo: 0 são os loans com o
+        //prazo até hoje, os mesmos que a idade de 3 dias(prazo padrão) retornava antes do dueDate
+        return loanRepository.findOverdueLoans(LocalDate.now().minusDays(daysOfOverdue));
+    }
+
+    //loans com dueDate <= referenceDate ainda não devolvidos e com id maior que lastId, em ordem de id
+    @Override
+    @Transactional(readOnly = true)
+    public List<OverdueLoanDTO> getOverdueLoansAfter(LocalDate referenceDate, Long lastId, int size) {
+        return loanRepository.findOverdueLoansAfter(referenceDate, lastId, PageRequest.of(0, size));
     }
 
 
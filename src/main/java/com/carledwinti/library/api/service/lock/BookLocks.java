@@ -0,0 +1,39 @@
+package com.carledwinti.library.api.service.lock;
+
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Locks por book distribuídos em um número fixo de faixas(stripes). Requisições do mesmo book sempre caem no mesmo
+ * lock e são serializadas, books diferentes raramente dividem um lock e seguem em paralelo. A memória não cresce com a
+ * quantidade de books.
+ *
+ * Vale somente para esta instância da aplicação, a garantia entre instâncias é o update condicional do activeLoanId.
+ */
+public class BookLocks {
+
+    private final Lock[] locks;
+    private final int mask;
+
+    public BookLocks(int stripes) {
+        int size = 1;
+        while (size < stripes) {
+            size <<= 1;
+        }
+        this.locks = new Lock[size];
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    //espalha os bits do id(ids sequenciais) antes de escolher a faixa
+    public Lock forBook(Long bookId) {
+        long hash = bookId * 0x9E3779B97F4A7C15L;
+        return locks[(int) (hash >>> 32) & mask];
+    }
+
+    public int stripes() {
+        return locks.length;
+    }
+}
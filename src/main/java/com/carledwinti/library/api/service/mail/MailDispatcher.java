@@ -0,0 +1,251 @@
+package com.carledwinti.library.api.service.mail;
+
+import com.carledwinti.library.api.config.ExecutionThreads;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailParseException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import javax.mail.SendFailedException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Envio assíncrono dos emails. Cada dispatch vira uma tarefa em uma fila limitada atendida por poucas threads, e as
+ * mensagens da tarefa são enviadas em uma única chamada ao JavaMailSender, que usa a mesma conexão SMTP para todas.
+ * Com a fila cheia quem chamou o dispatch executa o envio, segurando o ritmo de quem produz. Os reenvios nunca são
+ * executados pela thread de reenvio: com a fila cheia eles voltam para o agendamento.
+ *
+ * Somente as mensagens que falharam são reenviadas, até maxAttempts tentativas, com espera dobrando a cada tentativa.
+ * Destinatários recusados pelo servidor(endereço inválido) e mensagens com endereço mal formado não são reenviados.
+ * O CompletableFuture do dispatch termina quando todas as mensagens foram enviadas ou recusadas, e termina com erro
+ * quando alguma não foi entregue depois de maxAttempts tentativas ou foi descartada no shutdown.
+ *
+ * No modo de threads virtuais(ExecutionThreads) as threads do envio são virtuais, o número de envios simultâneos
+ * continua limitado por workers para não abrir mais conexões SMTP do que o servidor aceita.
+ */
+@Slf4j
+@Component
+public class MailDispatcher {
+
+    static final String METRIC_SEND = "library.mail.send";
+    static final String METRIC_SENT = "library.mail.messages.sent";
+    static final String METRIC_RETRIED = "library.mail.messages.retried";
+    static final String METRIC_FAILED = "library.mail.messages.failed";
+
+    private final JavaMailSender javaMailSender;
+    private final ThreadPoolExecutor executor;
+    private final ScheduledExecutorService retryScheduler;
+    private final int maxAttempts;
+    private final long initialBackoffMillis;
+    private final Timer sendTimer;
+    private final Counter sentCounter;
+    private final Counter retriedCounter;
+    private final Counter failedCounter;
+    private final Set<Dispatch> pendingDispatches = ConcurrentHashMap.newKeySet();
+
+    public MailDispatcher(JavaMailSender javaMailSender, MeterRegistry meterRegistry, ExecutionThreads executionThreads,
+                          @Value("${application.mail.dispatch.workers:2}") int workers,
+                          @Value("${application.mail.dispatch.queue-capacity:100}") int queueCapacity,
+                          @Value("${application.mail.dispatch.max-attempts:3}") int maxAttempts,
+                          @Value("${application.mail.dispatch.initial-backoff-ms:1000}") long initialBackoffMillis) {
+        this.javaMailSender = javaMailSender;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), executionThreads.threadFactory("mail-dispatch-"),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.retryScheduler = Executors.newSingleThreadScheduledExecutor(executionThreads.threadFactory("mail-retry-"));
+        this.sendTimer = meterRegistry.timer(METRIC_SEND);
+        this.sentCounter = meterRegistry.counter(METRIC_SENT);
+        this.retriedCounter = meterRegistry.counter(METRIC_RETRIED);
+        this.failedCounter = meterRegistry.counter(METRIC_FAILED);
+    }
+
+    public CompletableFuture<Void> dispatch(List<SimpleMailMessage> messages) {
+        if (messages.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        Dispatch dispatch = new Dispatch(messages.size());
+        pendingDispatches.add(dispatch);
+        dispatch.future.whenComplete((result, failure) -> pendingDispatches.remove(dispatch));
+        submit(dispatch, messages, 1);
+        return dispatch.future;
+    }
+
+    //as tarefas já aceitas são enviadas antes de a aplicação terminar, os reenvios agendados são descartados e quem
+    //espera pelos seus dispatches recebe o erro
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        retryScheduler.shutdownNow();
+        executor.shutdown();
+        if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+            executor.shutdownNow();
+        }
+        int discarded = 0;
+        for (Dispatch dispatch : pendingDispatches) {
+            discarded += dispatch.discard(new MailSendException("mail dispatch stopped before the messages were sent"));
+        }
+        if (discarded > 0) {
+            failedCounter.increment(discarded);
+            log.warn("mail dispatch stopped with pending messages: {}", discarded);
+        }
+    }
+
+    private void submit(Dispatch dispatch, List<SimpleMailMessage> messages, int attempt) {
+        try {
+            executor.execute(() -> send(dispatch, messages, attempt));
+        } catch (RejectedExecutionException rejectedExecutionException) {
+            if (executor.isShutdown()) {
+                stopped(dispatch, messages);
+            } else if (attempt == 1) {
+                //fila cheia: quem chamou o dispatch envia
+                send(dispatch, messages, attempt);
+            } else {
+                //a thread de reenvio atende todos os reenvios e não pode ficar presa em um envio
+                scheduleRetry(dispatch, messages, attempt, initialBackoffMillis);
+            }
+        }
+    }
+
+    private void send(Dispatch dispatch, List<SimpleMailMessage> messages, int attempt) {
+        long start = System.nanoTime();
+        try {
+            javaMailSender.send(messages.toArray(new SimpleMailMessage[0]));
+            sentCounter.increment(messages.size());
+            dispatch.done(messages.size(), null);
+        } catch (MailSendException mailSendException) {
+            //o failedMessages tem como chave cada SimpleMailMessage que falhou, vazio quando não é possível saber quais
+            List<SimpleMailMessage> failedMessages = new ArrayList<>();
+            List<SimpleMailMessage> rejectedMessages = new ArrayList<>();
+            for (SimpleMailMessage message : messages) {
+                Exception exception = mailSendException.getFailedMessages().get(message);
+                if (exception != null) {
+                    (hasInvalidAddresses(exception) ? rejectedMessages : failedMessages).add(message);
+                }
+            }
+            if (failedMessages.isEmpty() && rejectedMessages.isEmpty()) {
+                failedMessages = messages;
+            }
+            int sent = messages.size() - failedMessages.size() - rejectedMessages.size();
+            sentCounter.increment(sent);
+            dispatch.done(sent, null);
+            reject(dispatch, rejectedMessages, mailSendException);
+            if (!failedMessages.isEmpty()) {
+                retryOrDrop(dispatch, failedMessages, attempt, mailSendException);
+            }
+        } catch (MailParseException mailParseException) {
+            reject(dispatch, messages, mailParseException);
+        } catch (MailException mailException) {
+            retryOrDrop(dispatch, messages, attempt, mailException);
+        } finally {
+            sendTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    //o mesmo destinatário seria recusado de novo, as mensagens contam como falha mas não falham o dispatch
+    private void reject(Dispatch dispatch, List<SimpleMailMessage> rejectedMessages, MailException mailException) {
+        if (rejectedMessages.isEmpty()) {
+            return;
+        }
+        failedCounter.increment(rejectedMessages.size());
+        log.warn("mail dispatch rejected {} messages without retrying: {}", rejectedMessages.size(),
+                mailException.getMessage());
+        dispatch.done(rejectedMessages.size(), null);
+    }
+
+    private void retryOrDrop(Dispatch dispatch, List<SimpleMailMessage> failedMessages, int attempt,
+                             MailException mailException) {
+        if (attempt >= maxAttempts) {
+            failedCounter.increment(failedMessages.size());
+            log.error("mail dispatch failed after {} attempts, messages: {}", attempt, failedMessages.size(), mailException);
+            dispatch.done(failedMessages.size(), mailException);
+            return;
+        }
+        long backoffMillis = initialBackoffMillis << (attempt - 1);
+        retriedCounter.increment(failedMessages.size());
+        log.warn("mail dispatch failed, retrying {} messages in {} ms: {}", failedMessages.size(), backoffMillis,
+                mailException.getMessage());
+        scheduleRetry(dispatch, failedMessages, attempt + 1, backoffMillis);
+    }
+
+    private void scheduleRetry(Dispatch dispatch, List<SimpleMailMessage> messages, int attempt, long delayMillis) {
+        try {
+            retryScheduler.schedule(() -> submit(dispatch, messages, attempt), delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException rejectedExecutionException) {
+            stopped(dispatch, messages);
+        }
+    }
+
+    private void stopped(Dispatch dispatch, List<SimpleMailMessage> messages) {
+        failedCounter.increment(messages.size());
+        log.warn("mail dispatch stopped, messages not sent: {}", messages.size());
+        dispatch.done(messages.size(), new MailSendException("mail dispatch stopped before the messages were sent"));
+    }
+
+    //SendFailedException com endereços inválidos: o servidor recusou o destinatário, não é uma falha temporária
+    private static boolean hasInvalidAddresses(Exception exception) {
+        Throwable cause = exception;
+        while (cause != null) {
+            if (cause instanceof SendFailedException) {
+                SendFailedException sendFailedException = (SendFailedException) cause;
+                return sendFailedException.getInvalidAddresses() != null
+                        && sendFailedException.getInvalidAddresses().length > 0;
+            }
+            //o getCause do MessagingException é o nextException
+            cause = cause.getCause();
+        }
+        return false;
+    }
+
+    //mensagens de um dispatch ainda não resolvidas, o future termina quando todas foram enviadas, recusadas ou perdidas
+    private static final class Dispatch {
+
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+        private final AtomicInteger remaining;
+        private volatile MailException failure;
+
+        Dispatch(int messages) {
+            this.remaining = new AtomicInteger(messages);
+        }
+
+        void done(int messages, MailException failure) {
+            if (failure != null && this.failure == null) {
+                this.failure = failure;
+            }
+            if (messages > 0 && remaining.addAndGet(-messages) == 0) {
+                if (this.failure == null) {
+                    future.complete(null);
+                } else {
+                    future.completeExceptionally(this.failure);
+                }
+            }
+        }
+
+        int discard(MailException failure) {
+            int messages = remaining.getAndSet(0);
+            if (messages > 0) {
+                future.completeExceptionally(failure);
+            }
+            return messages;
+        }
+    }
+}
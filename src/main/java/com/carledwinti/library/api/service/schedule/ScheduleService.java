@@ -1,17 +1,32 @@
 package com.carledwinti.library.api.service.schedule;
 
-import com.carledwinti.library.api.model.Loan;
+import com.carledwinti.library.api.config.ExecutionThreads;
+import com.carledwinti.library.api.dto.OverdueLoanDTO;
+import com.carledwinti.library.api.model.ScheduleCheckpoint;
+import com.carledwinti.library.api.repository.ScheduleCheckpointRepository;
 import com.carledwinti.library.api.service.EmailService;
 import com.carledwinti.library.api.service.LoanService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.LocalDate;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
+@Slf4j
 @Service
 @RequiredArgsConstructor //par injetar todas as propriedades final
 // sem precisar de @Autowired ou constructor para injeção
@@ -21,22 +36,113 @@ public class ScheduleService {
     private static final String CRON_LATE_LOANS = "0 0 0 1/1 * ?";
     private static final String CRON_LATE_LOANS_SEGUNDOS = "1/30 * * * * *";
 
+    static final String JOB_LATE_LOANS = "late-loans-mail";
+    static final String METRIC_LATE_LOANS_CHUNK = "library.schedule.late.loans.chunk";
+    static final String METRIC_LATE_LOANS_PROCESSED = "library.schedule.late.loans.processed";
+
     private final LoanService loanService;
     private final EmailService emailService;
+    private final ScheduleCheckpointRepository scheduleCheckpointRepository;
+    private final MeterRegistry meterRegistry;
+    private final ExecutionThreads executionThreads;
 
     @Value("${application.mail.message.loan.overdue}")
     private String message;
 
+    @Value("${application.schedule.late-loans.chunk-size:500}")
+    private int chunkSize;
+
+    //a tarefa espera a entrega dos emails de cada lote(SMTP e reenvios do MailDispatcher) nesta thread e não na do
+    //agendador, que é compartilhada pelas demais tarefas @Scheduled. Uma execução por vez e no máximo uma na fila, os
+    //disparos enquanto as duas existirem são descartados
+    private ThreadPoolExecutor lateLoansExecutor;
+
+    @PostConstruct
+    void startLateLoansExecutor(){
+        lateLoansExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(1),
+                executionThreads.threadFactory("late-loans-"),
+                (runnable, executor) -> log.warn("late loans mail already running and queued, trigger discarded"));
+    }
+
+    //a tarefa em andamento termina com erro quando o MailDispatcher descarta os envios pendentes no shutdown
+    @PreDestroy
+    void stopLateLoansExecutor(){
+        lateLoansExecutor.shutdownNow();
+    }
+
     //@Scheduled(cron=CRON_LATE_LOANS_SEGUNDOS)
     @Scheduled(cron=CRON_LATE_LOANS)
+    public void scheduleMailToLateLoans(){
+        lateLoansExecutor.execute(() -> {
+            try {
+                sendMailToLateLoans();
+            } catch (RuntimeException runtimeException) {
+                log.error("late loans mail stopped, the next run continues from the checkpoint", runtimeException);
+            }
+        });
+    }
+
+    //a execução interrompida por um restart continua ao subir a aplicação, sem esperar o próximo disparo do cron
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeMailToLateLoans(){
+        scheduleCheckpointRepository.findById(JOB_LATE_LOANS)
+                .filter(checkpoint -> !checkpoint.isFinished())
+                .ifPresent(checkpoint -> {
+                    log.info("resuming late loans mail of {} after loan id: {}", checkpoint.getRunDate(),
+                            checkpoint.getLastId());
+                    scheduleMailToLateLoans();
+                });
+    }
+
+    //os loans atrasados são lidos em lotes de chunkSize(somente id e email) e cada lote é entregue ao envio assíncrono de emails.
+    //Quando o envio do lote termina o último id é gravado no checkpoint, se a tarefa parar no meio a próxima execução
+    //continua a partir dele, qualquer que seja o dia, com a data de referência gravada(runDate). Terminada a execução
+    //de um dia anterior a do dia começa em seguida. Um lote com emails não entregues(depois das tentativas do
+    //MailDispatcher) para a tarefa sem ser gravado, e os emails do lote já entregues podem ser reenviados na próxima execução
     public void sendMailToLateLoans(){
-        List<Optional<Loan>> allOverdueLoans = loanService.getAllOverdueLoans(3);
-        List<String> emailFromCustomersWithLoanOverdue = allOverdueLoans.stream().map(optionalLoan -> {
-            Loan loan = optionalLoan.get();
-            String email = loan.getCustomerEmail();
-            return email;
-        }).collect(Collectors.toList());
-
-        emailService.sendEmailToLoansOverdue(message, emailFromCustomersWithLoanOverdue);
+        LocalDate today = LocalDate.now();
+        Optional<ScheduleCheckpoint> existentCheckpoint = scheduleCheckpointRepository.findById(JOB_LATE_LOANS);
+        if(existentCheckpoint.isPresent() && !existentCheckpoint.get().isFinished()){
+            sendMailToLateLoans(existentCheckpoint.get());
+            if(today.equals(existentCheckpoint.get().getRunDate())){
+                return;
+            }
+        } else if(existentCheckpoint.isPresent() && today.equals(existentCheckpoint.get().getRunDate())){
+            log.info("late loans mail already sent today, processed: {}", existentCheckpoint.get().getProcessed());
+            return;
+        }
+        sendMailToLateLoans(ScheduleCheckpoint.builder()
+                .jobName(JOB_LATE_LOANS).runDate(today).lastId(0L).processed(0L).build());
+    }
+
+    private void sendMailToLateLoans(ScheduleCheckpoint checkpoint){
+        log.info("sending late loans mail of {} starting after loan id: {}", checkpoint.getRunDate(), checkpoint.getLastId());
+
+        //atrasados são os loans com o prazo(dueDate) até o dia da execução, inclusive
+        LocalDate referenceDate = checkpoint.getRunDate();
+        Timer chunkTimer = meterRegistry.timer(METRIC_LATE_LOANS_CHUNK);
+        List<OverdueLoanDTO> lateLoans;
+        do {
+            Timer.Sample sample = Timer.start(meterRegistry);
+            lateLoans = loanService.getOverdueLoansAfter(referenceDate, checkpoint.getLastId(), chunkSize);
+            if(!lateLoans.isEmpty()){
+                List<String> emailFromCustomersWithLoanOverdue = lateLoans.stream()
+                        .map(OverdueLoanDTO::getCustomerEmail)
+                        .collect(Collectors.toList());
+                emailService.sendEmailToLoansOverdue(message, emailFromCustomersWithLoanOverdue).join();
+
+                checkpoint.setLastId(lateLoans.get(lateLoans.size() - 1).getId());
+                checkpoint.setProcessed(checkpoint.getProcessed() + lateLoans.size());
+                scheduleCheckpointRepository.save(checkpoint);
+                meterRegistry.counter(METRIC_LATE_LOANS_PROCESSED).increment(lateLoans.size());
+                sample.stop(chunkTimer);
+                log.info("late loans chunk sent, loans: {}, last id: {}, processed: {}",
+                        lateLoans.size(), checkpoint.getLastId(), checkpoint.getProcessed());
+            }
+        } while(lateLoans.size() == chunkSize);
+
+        checkpoint.setFinished(true);
+        scheduleCheckpointRepository.save(checkpoint);
+        log.info("late loans mail of {} finished, processed: {}", checkpoint.getRunDate(), checkpoint.getProcessed());
     }
 }
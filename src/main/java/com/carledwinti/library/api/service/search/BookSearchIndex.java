@@ -0,0 +1,531 @@
+package com.carledwinti.library.api.service.search;
+
+import com.carledwinti.library.api.model.Book;
+import com.carledwinti.library.api.pagination.Keyset;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Índice invertido de trigramas em memória sobre title, author e isbn, usado pelas buscas por filtro do BookService
+ * (página, slice e keyset) no lugar do lower(campo) like '%valor%' que varre a tabela inteira a cada busca.
+ *
+ * Cada book indexado recebe um número interno(doc) e cada trigrama(minúsculo) de cada campo aponta para a lista
+ * ordenada dos docs que o contém. Uma busca intersecciona as listas dos trigramas do valor pesquisado e confirma os
+ * candidatos com um contains ignorando case, pois ter todos os trigramas não garante a substring. Valores com menos de
+ * 3 caracteres não têm trigramas e são confirmados percorrendo todos os docs.
+ *
+ * Um book alterado ou removido só é marcado como removido(os docs são sempre adicionados no final, mantendo as listas
+ * ordenadas) e os removidos são descartados quando passam a ser a maioria.
+ */
+public class BookSearchIndex {
+
+    private static final int TITLE = 0;
+    private static final int AUTHOR = 1;
+    private static final int ISBN = 2;
+    private static final long REMOVED = -1L;
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int MIN_REMOVED_TO_COMPACT = 10_000;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile boolean ready;
+
+    private Map<Long, Integer> docByBookId = new HashMap<>();
+    private Map<Long, Posting> postings = new HashMap<>();
+    private long[] bookIds = new long[INITIAL_CAPACITY];
+    private String[][] fields = new String[3][INITIAL_CAPACITY];
+    private int docCount;
+    private int removedCount;
+
+    //enquanto a carga inicial não termina as buscas continuam indo direto para a base
+    public boolean isReady() {
+        return ready;
+    }
+
+    public void markReady() {
+        ready = true;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return docCount - removedCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    //dentro de uma transação o índice só é alterado depois do commit, um rollback não deixa books fantasmas no índice
+    public void indexAfterCommit(Collection<Book> books) {
+        afterCommit(() -> index(books));
+    }
+
+    public void removeAfterCommit(Long bookId) {
+        afterCommit(() -> remove(bookId));
+    }
+
+    public void index(Collection<Book> books) {
+        lock.writeLock().lock();
+        try {
+            for (Book book : books) {
+                if (book.getId() == null) {
+                    continue;
+                }
+                removeDoc(book.getId());
+                addDoc(book);
+            }
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(Long bookId) {
+        lock.writeLock().lock();
+        try {
+            removeDoc(bookId);
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Retorna a página de ids dos books que contém(ignorando case) todos os valores não nulos de title, author e isbn
+     * do filtro, na ordem do Pageable(id quando não ordenado) e com o total de encontrados.
+     * Retorna empty quando a ordenação não é por id, title, author ou isbn, nesse caso a busca deve ir para a base.
+     */
+    public Optional<Page<Long>> search(Book bookFilter, Pageable pageable) {
+        String[] values = filterValues(bookFilter);
+        lock.readLock().lock();
+        try {
+            DocOrder order = order(pageable.getSort());
+            if (order == null) {
+                return Optional.empty();
+            }
+            TopDocs top = top(values, order, null, pageable.getOffset() + pageable.getPageSize());
+            return Optional.of(new PageImpl<>(ids(top.sorted(), pageable.getOffset(), pageable.getPageSize()),
+                    pageable, top.matched));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    //a mesma busca sem o total(modo slice): o doc extra(size + 1) indica se existe uma próxima página
+    public Optional<Slice<Long>> searchSlice(Book bookFilter, Pageable pageable) {
+        String[] values = filterValues(bookFilter);
+        lock.readLock().lock();
+        try {
+            DocOrder order = order(pageable.getSort());
+            if (order == null) {
+                return Optional.empty();
+            }
+            int[] sortedDocs = top(values, order, null, pageable.getOffset() + pageable.getPageSize() + 1).sorted();
+            boolean hasNext = sortedDocs.length > pageable.getOffset() + pageable.getPageSize();
+            return Optional.of(new SliceImpl<>(ids(sortedDocs, pageable.getOffset(), pageable.getPageSize()),
+                    pageable, hasNext));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Modo keyset: até limit ids dos books encontrados depois da posição do keyset, na ordem da propriedade do keyset
+     * com o id desempatando na mesma direção(a mesma ordem da consulta do KeysetQueries). Retorna empty quando a
+     * propriedade não é id, title, author ou isbn.
+     */
+    public Optional<List<Long>> searchAfter(Book bookFilter, Keyset keyset, int limit) {
+        String[] values = filterValues(bookFilter);
+        Sort.Order sortOrder = new Sort.Order(keyset.getDirection(), keyset.getProperty());
+        lock.readLock().lock();
+        try {
+            //o id desempata na direção do keyset, os books com o mesmo valor(ou null) ficam na ordem do KeysetQueries
+            DocOrder order = order(keyset.isSortedById() ? Sort.by(sortOrder)
+                    : Sort.by(sortOrder, new Sort.Order(keyset.getDirection(), Keyset.ID)));
+            if (order == null) {
+                return Optional.empty();
+            }
+            DocFilter after = null;
+            if (!keyset.isFirstPage()) {
+                KeysetOrder byKeyset = keyset.isSortedById() ? null : byValue(keyset.getProperty(), sortOrder);
+                int direction = keyset.getDirection().isAscending() ? 1 : -1;
+                after = doc -> {
+                    int result = byKeyset != null ? byKeyset.compareTo(doc, keyset.getValue()) : 0;
+                    return result != 0 ? result > 0 : direction * Long.compare(bookIds[doc], keyset.getId()) > 0;
+                };
+            }
+            return Optional.of(ids(top(values, order, after, limit).sorted(), 0, limit));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static String[] filterValues(Book bookFilter) {
+        String[] values = new String[3];
+        values[TITLE] = lowerCase(bookFilter.getTitle());
+        values[AUTHOR] = lowerCase(bookFilter.getAuthor());
+        values[ISBN] = lowerCase(bookFilter.getIsbn());
+        return values;
+    }
+
+    //somente os limit primeiros da ordenação são mantidos(heap), o restante dos encontrados é apenas contado
+    private TopDocs top(String[] values, DocOrder order, DocFilter after, long limit) {
+        int[] candidates = candidates(values);
+        int candidateCount = candidates != null ? candidates.length : docCount;
+        TopDocs top = new TopDocs((int) Math.min(limit, candidateCount), order);
+        for (int i = 0; i < candidateCount; i++) {
+            int doc = candidates != null ? candidates[i] : i;
+            if (bookIds[doc] != REMOVED && matches(doc, values) && (after == null || after.accept(doc))) {
+                top.offer(doc);
+            }
+        }
+        return top;
+    }
+
+    private List<Long> ids(int[] sortedDocs, long offset, int size) {
+        List<Long> ids = new ArrayList<>(size);
+        for (long i = offset; i < sortedDocs.length && ids.size() < size; i++) {
+            ids.add(bookIds[sortedDocs[(int) i]]);
+        }
+        return ids;
+    }
+
+    //interseção das listas dos trigramas, começando pela menor. null quando nenhum valor tem trigramas
+    private int[] candidates(String[] values) {
+        List<Posting> lists = new ArrayList<>();
+        for (int field = TITLE; field <= ISBN; field++) {
+            String value = values[field];
+            if (value == null || value.length() < 3) {
+                continue;
+            }
+            for (long trigram : trigrams(field, value)) {
+                Posting posting = postings.get(trigram);
+                if (posting == null) {
+                    return new int[0];
+                }
+                lists.add(posting);
+            }
+        }
+        if (lists.isEmpty()) {
+            return null;
+        }
+        lists.sort(Comparator.comparingInt(posting -> posting.size));
+        Posting smallest = lists.get(0);
+        int[] result = Arrays.copyOf(smallest.docs, smallest.size);
+        int resultSize = result.length;
+        for (int i = 1; i < lists.size() && resultSize > 0; i++) {
+            resultSize = intersect(result, resultSize, lists.get(i));
+        }
+        return Arrays.copyOf(result, resultSize);
+    }
+
+    //as duas listas são crescentes, a busca em cada posting continua de onde parou e avança em saltos(galloping),
+    //o custo fica proporcional ao tamanho da lista menor e não ao da maior
+    private static int intersect(int[] result, int resultSize, Posting posting) {
+        int kept = 0;
+        int position = 0;
+        for (int i = 0; i < resultSize && position < posting.size; i++) {
+            int doc = result[i];
+            int step = 1;
+            int high = position;
+            while (high < posting.size && posting.docs[high] < doc) {
+                position = high + 1;
+                high += step;
+                step <<= 1;
+            }
+            position = Arrays.binarySearch(posting.docs, position, Math.min(high + 1, posting.size), doc);
+            if (position >= 0) {
+                result[kept++] = doc;
+            } else {
+                position = -position - 1;
+            }
+        }
+        return kept;
+    }
+
+    private boolean matches(int doc, String[] values) {
+        for (int field = TITLE; field <= ISBN; field++) {
+            if (values[field] != null && !containsIgnoreCase(fields[field][doc], values[field])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private DocOrder order(Sort sort) {
+        DocOrder byId = (doc, other) -> Long.compare(bookIds[doc], bookIds[other]);
+        if (sort.isUnsorted()) {
+            return byId;
+        }
+        DocOrder docOrder = null;
+        boolean sortedById = false;
+        for (Sort.Order order : sort) {
+            DocOrder next;
+            switch (order.getProperty()) {
+                case "id":
+                    next = order.isAscending() ? byId : (doc, other) -> byId.compare(other, doc);
+                    sortedById = true;
+                    break;
+                case "title":
+                    next = byField(TITLE, order);
+                    break;
+                case "author":
+                    next = byField(AUTHOR, order);
+                    break;
+                case "isbn":
+                    next = byField(ISBN, order);
+                    break;
+                default:
+                    return null;
+            }
+            docOrder = docOrder == null ? next : docOrder.then(next);
+        }
+        //o id desempata os valores iguais, do contrário a ordem entre as páginas não seria estável
+        return sortedById ? docOrder : docOrder.then(byId);
+    }
+
+    private DocOrder byField(int field, Sort.Order order) {
+        Comparator<String> values = Comparator.nullsFirst(order.isIgnoreCase()
+                ? String.CASE_INSENSITIVE_ORDER : Comparator.<String>naturalOrder());
+        int direction = order.isAscending() ? 1 : -1;
+        return (doc, other) -> direction * values.compare(fields[field][doc], fields[field][other]);
+    }
+
+    //compara o valor do campo de um doc com o valor(texto) guardado no cursor, na direção da ordenação
+    private KeysetOrder byValue(String property, Sort.Order order) {
+        int field = "title".equals(property) ? TITLE : "author".equals(property) ? AUTHOR : ISBN;
+        Comparator<String> values = Comparator.nullsFirst(Comparator.<String>naturalOrder());
+        int direction = order.isAscending() ? 1 : -1;
+        return (doc, value) -> direction * values.compare(fields[field][doc], value);
+    }
+
+    private void addDoc(Book book) {
+        if (docCount == bookIds.length) {
+            int capacity = docCount + (docCount >> 1);
+            bookIds = Arrays.copyOf(bookIds, capacity);
+            for (int field = TITLE; field <= ISBN; field++) {
+                fields[field] = Arrays.copyOf(fields[field], capacity);
+            }
+        }
+        int doc = docCount++;
+        bookIds[doc] = book.getId();
+        fields[TITLE][doc] = book.getTitle();
+        fields[AUTHOR][doc] = book.getAuthor();
+        fields[ISBN][doc] = book.getIsbn();
+        docByBookId.put(book.getId(), doc);
+        for (int field = TITLE; field <= ISBN; field++) {
+            String value = lowerCase(fields[field][doc]);
+            if (value != null && value.length() >= 3) {
+                for (long trigram : trigrams(field, value)) {
+                    postings.computeIfAbsent(trigram, key -> new Posting()).add(doc);
+                }
+            }
+        }
+    }
+
+    private void removeDoc(Long bookId) {
+        Integer doc = docByBookId.remove(bookId);
+        if (doc != null) {
+            bookIds[doc] = REMOVED;
+            fields[TITLE][doc] = null;
+            fields[AUTHOR][doc] = null;
+            fields[ISBN][doc] = null;
+            removedCount++;
+        }
+    }
+
+    //reconstrói o índice somente com os docs ativos, sem acessar a base
+    private void compactIfNeeded() {
+        if (removedCount < MIN_REMOVED_TO_COMPACT || removedCount < docCount - removedCount) {
+            return;
+        }
+        long[] oldBookIds = bookIds;
+        String[][] oldFields = fields;
+        int oldDocCount = docCount;
+        docByBookId = new HashMap<>();
+        postings = new HashMap<>();
+        bookIds = new long[Math.max(INITIAL_CAPACITY, oldDocCount - removedCount)];
+        fields = new String[3][bookIds.length];
+        docCount = 0;
+        removedCount = 0;
+        for (int doc = 0; doc < oldDocCount; doc++) {
+            if (oldBookIds[doc] != REMOVED) {
+                addDoc(Book.builder().id(oldBookIds[doc]).title(oldFields[TITLE][doc])
+                        .author(oldFields[AUTHOR][doc]).isbn(oldFields[ISBN][doc]).build());
+            }
+        }
+    }
+
+    //cada trigrama é codificado em um long: campo(2 bits) e os 3 chars(16 bits cada)
+    private static Set<Long> trigrams(int field, String value) {
+        Set<Long> trigrams = new HashSet<>();
+        for (int i = 0; i + 3 <= value.length(); i++) {
+            trigrams.add(((long) field << 48) | ((long) value.charAt(i) << 32)
+                    | ((long) value.charAt(i + 1) << 16) | value.charAt(i + 2));
+        }
+        return trigrams;
+    }
+
+    private static boolean containsIgnoreCase(String text, String lowerCaseValue) {
+        if (text == null) {
+            return false;
+        }
+        if (lowerCaseValue.isEmpty()) {
+            return true;
+        }
+        //o regionMatches(ignorando case) só é chamado nas posições em que o primeiro char já confere
+        char first = lowerCaseValue.charAt(0);
+        int last = text.length() - lowerCaseValue.length();
+        for (int i = 0; i <= last; i++) {
+            char c = text.charAt(i);
+            if ((c == first || Character.toLowerCase(c) == first)
+                    && text.regionMatches(true, i + 1, lowerCaseValue, 1, lowerCaseValue.length() - 1)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //Locale.ROOT no índice e na consulta: com o locale padrão da JVM(ex.: tr, I -> ı) os trigramas dos dois lados
+    //deixariam de conferir
+    private static String lowerCase(String value) {
+        return value != null ? value.toLowerCase(Locale.ROOT) : null;
+    }
+
+    private static void afterCommit(Runnable runnable) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            runnable.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                runnable.run();
+            }
+        });
+    }
+
+    //comparação entre docs sem o boxing de um Comparator<Integer>, chamada para cada book encontrado
+    private interface DocOrder {
+        int compare(int doc, int other);
+
+        default DocOrder then(DocOrder next) {
+            return (doc, other) -> {
+                int result = compare(doc, other);
+                return result != 0 ? result : next.compare(doc, other);
+            };
+        }
+    }
+
+    private interface KeysetOrder {
+        int compareTo(int doc, String value);
+    }
+
+    private interface DocFilter {
+        boolean accept(int doc);
+    }
+
+    //max-heap com os limit primeiros docs da ordenação, a raiz é o pior deles e é substituída por um doc melhor
+    private static final class TopDocs {
+        private final int[] heap;
+        private final DocOrder order;
+        private int size;
+        //total de docs oferecidos, inclusive os que não ficaram no heap
+        private int matched;
+
+        private TopDocs(int limit, DocOrder order) {
+            this.heap = new int[limit];
+            this.order = order;
+        }
+
+        private void offer(int doc) {
+            matched++;
+            if (size < heap.length) {
+                heap[size] = doc;
+                siftUp(size++);
+            } else if (size > 0 && order.compare(doc, heap[0]) < 0) {
+                heap[0] = doc;
+                siftDown(0);
+            }
+        }
+
+        //esvazia o heap retornando os docs na ordem
+        private int[] sorted() {
+            int[] sorted = new int[size];
+            for (int i = sorted.length - 1; i >= 0; i--) {
+                sorted[i] = heap[0];
+                heap[0] = heap[--size];
+                siftDown(0);
+            }
+            return sorted;
+        }
+
+        private void siftUp(int index) {
+            while (index > 0) {
+                int parent = (index - 1) >>> 1;
+                if (order.compare(heap[index], heap[parent]) <= 0) {
+                    return;
+                }
+                swap(index, parent);
+                index = parent;
+            }
+        }
+
+        private void siftDown(int index) {
+            while (true) {
+                int largest = index;
+                int left = 2 * index + 1;
+                int right = left + 1;
+                if (left < size && order.compare(heap[left], heap[largest]) > 0) {
+                    largest = left;
+                }
+                if (right < size && order.compare(heap[right], heap[largest]) > 0) {
+                    largest = right;
+                }
+                if (largest == index) {
+                    return;
+                }
+                swap(index, largest);
+                index = largest;
+            }
+        }
+
+        private void swap(int index, int other) {
+            int doc = heap[index];
+            heap[index] = heap[other];
+            heap[other] = doc;
+        }
+    }
+
+    //lista ordenada dos docs que contém um trigrama, os docs são sempre adicionados em ordem crescente
+    private static final class Posting {
+        private int[] docs = new int[4];
+        private int size;
+
+        private void add(int doc) {
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size + (size >> 1) + 1);
+            }
+            docs[size++] = doc;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.carledwinti.library.api.service.search;
+
+import com.carledwinti.library.api.dto.BookDTO;
+import com.carledwinti.library.api.model.Book;
+import com.carledwinti.library.api.pagination.Keyset;
+import com.carledwinti.library.api.repository.BookRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+//carrega o BookSearchIndex a partir da base quando a aplicação termina de subir, lendo os books por keyset(id)
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "application.books.search-index.enabled", havingValue = "true", matchIfMissing = true)
+public class BookSearchIndexLoader {
+
+    private static final int CHUNK_SIZE = 10_000;
+
+    private final BookRepository bookRepository;
+    private final BookSearchIndex bookSearchIndex;
+    private final TransactionTemplate transactionTemplate;
+
+    public BookSearchIndexLoader(BookRepository bookRepository, BookSearchIndex bookSearchIndex,
+                                 PlatformTransactionManager transactionManager) {
+        this.bookRepository = bookRepository;
+        this.bookSearchIndex = bookSearchIndex;
+        //cada chunk é lido em uma transação de escrita(primary), um book que ainda não chegou a uma réplica ficaria
+        //fora do índice e das buscas até ser alterado
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        long start = System.currentTimeMillis();
+        Book noFilter = new Book();
+        Keyset keyset = new Keyset(Keyset.ID, Sort.Direction.ASC, null, null);
+        List<BookDTO> books;
+        do {
+            Keyset chunkKeyset = keyset;
+            //a projeção não mantém as entities do chunk(e os seus snapshots) no contexto de persistência
+            books = transactionTemplate.execute(status -> bookRepository.findByFilterAfter(noFilter, chunkKeyset, CHUNK_SIZE));
+            bookSearchIndex.index(books.stream().map(BookSearchIndexLoader::toBook).collect(Collectors.toList()));
+            if (!books.isEmpty()) {
+                Long lastId = books.get(books.size() - 1).getId();
+                keyset = new Keyset(Keyset.ID, Sort.Direction.ASC, lastId.toString(), lastId);
+            }
+        } while (books.size() == CHUNK_SIZE);
+        bookSearchIndex.markReady();
+        log.info("book search index loaded, books: {}, time: {} ms", bookSearchIndex.size(),
+                System.currentTimeMillis() - start);
+    }
+
+    private static Book toBook(BookDTO book) {
+        return Book.builder().id(book.getId()).title(book.getTitle()).author(book.getAuthor()).isbn(book.getIsbn()).build();
+    }
+}
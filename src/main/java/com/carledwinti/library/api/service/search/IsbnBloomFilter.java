@@ -0,0 +1,221 @@
+package com.carledwinti.library.api.service.search;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Bloom filter dos isbns cadastrados. Quando o filtro responde que um isbn não existe a resposta é definitiva e a
+ * consulta na base pode ser evitada, quando responde que talvez exista a base decide(falso positivo na taxa fpp).
+ *
+ * Os puts desta instância entram no filtro no commit, os books salvos pelas outras instâncias só entram no sync
+ * periódico(markSynced) do IsbnBloomFilterLoader. Um não só vale até maxStalenessMillis depois do último sync, com o
+ * sync atrasado(base fora, scheduler ocupado) o filtro responde talvez e a base decide. Entre dois syncs um isbn
+ * cadastrado em outra instância ainda pode ser respondido como inexistente, a mesma defasagem(intervalo do sync) que
+ * as leituras das réplicas já admitem.
+ *
+ * Enquanto não for carregado(rebuild) o filtro responde sempre talvez. Books removidos continuam no filtro
+ * até o próximo rebuild, que recria os bits a partir da base e ajusta o tamanho à quantidade atual de isbns.
+ */
+public class IsbnBloomFilter implements MeterBinder {
+
+    //folga para os isbns cadastrados entre dois rebuilds sem que a taxa de falsos positivos passe do fpp
+    private static final double GROWTH = 1.5;
+    private static final long MIN_EXPECTED_ISBNS = 1024;
+
+    private final double fpp;
+    //0 confia no filtro sem sync, somente para uma única instância
+    private final long maxStalenessMillis;
+    private final LongAdder negatives = new LongAdder();
+    private final LongAdder falsePositives = new LongAdder();
+
+    private volatile Bits bits;
+    //bits em construção pelo rebuild, recebem também os isbns salvos durante a leitura da base
+    private volatile Bits building;
+    private volatile boolean ready;
+    //início do último sync(ou rebuild) concluído, todos os books commitados antes dele estão no filtro
+    private volatile long syncedAtMillis;
+
+    public IsbnBloomFilter(double fpp) {
+        this(fpp, 0);
+    }
+
+    public IsbnBloomFilter(double fpp, long maxStalenessMillis) {
+        this.fpp = fpp;
+        this.maxStalenessMillis = maxStalenessMillis;
+        this.bits = new Bits(MIN_EXPECTED_ISBNS, fpp);
+    }
+
+    public boolean mightContain(String isbn) {
+        if (!ready || isbn == null || isStale()) {
+            return true;
+        }
+        boolean mightContain = bits.mightContain(isbn);
+        if (!mightContain) {
+            negatives.increment();
+        }
+        return mightContain;
+    }
+
+    //chamado quando o filtro respondeu talvez e a base não encontrou o isbn
+    public void recordFalsePositive() {
+        if (ready) {
+            falsePositives.increment();
+        }
+    }
+
+    //building é lido antes de bits: se o rebuild começou depois desta leitura, a consulta dele à base já enxerga o
+    //book commitado, se terminou antes, bits já é o novo
+    public void put(String isbn) {
+        if (isbn == null) {
+            return;
+        }
+        Bits newBits = building;
+        if (newBits != null) {
+            newBits.put(isbn);
+        }
+        bits.put(isbn);
+    }
+
+    //o isbn entra no filtro depois do commit, um book salvo e desfeito(rollback) não gera falso positivo
+    public void putAfterCommit(Collection<String> isbns) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            isbns.forEach(this::put);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                isbns.forEach(IsbnBloomFilter.this::put);
+            }
+        });
+    }
+
+    //recria os bits dimensionados para expectedIsbns com os isbns lidos da base. A consulta só é aberta depois que os
+    //novos bits passam a receber os puts, nenhum isbn salvo durante o rebuild fica de fora
+    public void rebuild(long expectedIsbns, Supplier<Stream<String>> isbns) {
+        Bits newBits = new Bits(Math.max(MIN_EXPECTED_ISBNS, (long) (expectedIsbns * GROWTH)), fpp);
+        building = newBits;
+        try (Stream<String> stream = isbns.get()) {
+            stream.forEach(newBits::put);
+            bits = newBits;
+            ready = true;
+        } finally {
+            building = null;
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public void markSynced(long syncStartMillis) {
+        syncedAtMillis = syncStartMillis;
+    }
+
+    public boolean isStale() {
+        return maxStalenessMillis > 0 && System.currentTimeMillis() - syncedAtMillis > maxStalenessMillis;
+    }
+
+    //taxa de falsos positivos esperada para o preenchimento atual dos bits: (bits ligados / total de bits) ^ hashes
+    public double expectedFpp() {
+        return bits.expectedFpp();
+    }
+
+    public long sizeInBytes() {
+        return bits.words.length() * 8L;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("library.books.isbn.filter.fpp", this, IsbnBloomFilter::expectedFpp)
+                .description("expected false positive rate of the isbn bloom filter")
+                .register(registry);
+        Gauge.builder("library.books.isbn.filter.size", this, IsbnBloomFilter::sizeInBytes)
+                .baseUnit("bytes")
+                .register(registry);
+        FunctionCounter.builder("library.books.isbn.filter.negatives", negatives, LongAdder::sum)
+                .description("isbn lookups answered by the bloom filter without querying the database")
+                .register(registry);
+        FunctionCounter.builder("library.books.isbn.filter.false.positives", falsePositives, LongAdder::sum)
+                .description("isbn lookups the bloom filter let through that the database did not find")
+                .register(registry);
+    }
+
+    private static final class Bits {
+
+        private final AtomicLongArray words;
+        private final int numBits;
+        private final int numHashes;
+
+        //m = -n ln(p) / ln(2)^2 bits e k = m/n ln(2) hashes
+        Bits(long expectedIsbns, double fpp) {
+            long optimalBits = (long) Math.ceil(-expectedIsbns * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+            int words = (int) Math.min(Integer.MAX_VALUE / 64, (optimalBits + 63) / 64);
+            this.words = new AtomicLongArray(words);
+            this.numBits = words * 64;
+            this.numHashes = Math.max(1, (int) Math.round((double) numBits / expectedIsbns * Math.log(2)));
+        }
+
+        //as k posições saem de dois hashes(h1 + i * h2)
+        void put(String isbn) {
+            long hash = hash(isbn);
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 0; i < numHashes; i++) {
+                int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % numBits;
+                long mask = 1L << bit;
+                int word = bit >>> 6;
+                long current;
+                while (((current = words.get(word)) & mask) == 0 && !words.compareAndSet(word, current, current | mask)) {
+                    //outra thread alterou a palavra, tenta novamente
+                }
+            }
+        }
+
+        boolean mightContain(String isbn) {
+            long hash = hash(isbn);
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 0; i < numHashes; i++) {
+                int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % numBits;
+                if ((words.get(bit >>> 6) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        double expectedFpp() {
+            long setBits = 0;
+            for (int i = 0; i < words.length(); i++) {
+                setBits += Long.bitCount(words.get(i));
+            }
+            return Math.pow((double) setBits / numBits, numHashes);
+        }
+
+        //FNV-1a de 64 bits seguido do finalizador do murmur3 para espalhar os bits dos isbns(quase só dígitos)
+        private static long hash(String isbn) {
+            long hash = 0xcbf29ce484222325L;
+            for (int i = 0; i < isbn.length(); i++) {
+                hash ^= isbn.charAt(i);
+                hash *= 0x100000001b3L;
+            }
+            hash ^= hash >>> 33;
+            hash *= 0xff51afd7ed558ccdL;
+            hash ^= hash >>> 33;
+            hash *= 0xc4ceb9fe1a85ec53L;
+            hash ^= hash >>> 33;
+            return hash;
+        }
+    }
+}
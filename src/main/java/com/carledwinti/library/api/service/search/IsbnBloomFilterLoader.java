@@ -0,0 +1,82 @@
+package com.carledwinti.library.api.service.search;
+
+import com.carledwinti.library.api.repository.BookRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.List;
+
+//carrega o IsbnBloomFilter lendo a coluna isbn da base(stream) quando a aplicação termina de subir e o recria de
+//tempos em tempos para descartar os isbns dos books removidos. Entre os rebuilds o sync traz os isbns dos books
+//salvos pelas outras instâncias(lastModified recente)
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "application.books.isbn-filter.enabled", havingValue = "true", matchIfMissing = true)
+public class IsbnBloomFilterLoader {
+
+    private final BookRepository bookRepository;
+    private final IsbnBloomFilter isbnBloomFilter;
+    private final TransactionTemplate transactionTemplate;
+    private final long syncOverlapMillis;
+    //início do último sync(ou rebuild) concluído
+    private long syncedAtMillis;
+
+    public IsbnBloomFilterLoader(BookRepository bookRepository, IsbnBloomFilter isbnBloomFilter,
+                                 PlatformTransactionManager transactionManager,
+                                 @Value("${application.books.isbn-filter.sync-overlap-ms:60000}") long syncOverlapMillis) {
+        this.bookRepository = bookRepository;
+        this.isbnBloomFilter = isbnBloomFilter;
+        this.syncOverlapMillis = syncOverlapMillis;
+        //o stream do Spring Data precisa de uma transação aberta enquanto é consumido. A transação não é readOnly para
+        //ler do primary: um isbn que ainda não chegou a uma réplica ficaria fora do filtro e o getBookByIsbn
+        //responderia que ele não existe(falso negativo)
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        rebuild();
+    }
+
+    @Scheduled(initialDelayString = "${application.books.isbn-filter.rebuild-interval-ms:3600000}",
+               fixedDelayString = "${application.books.isbn-filter.rebuild-interval-ms:3600000}")
+    public synchronized void rebuild() {
+        long start = System.currentTimeMillis();
+        transactionTemplate.execute(status -> {
+            isbnBloomFilter.rebuild(bookRepository.count(), bookRepository::streamAllIsbns);
+            return null;
+        });
+        synced(start);
+        log.info("isbn bloom filter built, bytes: {}, expected fpp: {}, time: {} ms", isbnBloomFilter.sizeInBytes(),
+                isbnBloomFilter.expectedFpp(), System.currentTimeMillis() - start);
+    }
+
+    //relê os isbns dos books alterados desde o último sync menos a folga(overlap): o lastModified é preenchido antes do
+    //commit e pelo relógio de cada instância, um book commitado depois do sync anterior ou salvo por uma instância com
+    //o relógio atrasado ainda cai na janela. Sem sync por mais de maxStalenessMillis o filtro passa a responder talvez
+    @Scheduled(initialDelayString = "${application.books.isbn-filter.sync-interval-ms:1000}",
+               fixedDelayString = "${application.books.isbn-filter.sync-interval-ms:1000}")
+    public synchronized void sync() {
+        if (!isbnBloomFilter.isReady()) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        Instant since = Instant.ofEpochMilli(syncedAtMillis - syncOverlapMillis);
+        List<String> isbns = transactionTemplate.execute(status -> bookRepository.findIsbnsModifiedAfter(since));
+        isbns.forEach(isbnBloomFilter::put);
+        synced(start);
+    }
+
+    private void synced(long start) {
+        syncedAtMillis = start;
+        isbnBloomFilter.markSynced(start);
+    }
+}
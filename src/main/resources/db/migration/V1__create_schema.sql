@@ -0,0 +1,35 @@
+-- schema inicial, o mesmo que o hibernate gerava a partir das entities Book, Loan e ScheduleCheckpoint
+create table book (
+    id bigint generated by default as identity,
+    title varchar(255),
+    author varchar(255),
+    isbn varchar(255),
+    active_loan_id bigint,
+    version bigint default 0 not null,
+    last_modified timestamp,
+    primary key (id)
+);
+
+create table loan (
+    id bigint generated by default as identity,
+    isbn varchar(255),
+    customer varchar(255),
+    customer_email varchar(255),
+    id_book bigint,
+    loan_date date not null,
+    returned boolean,
+    version bigint default 0 not null,
+    last_modified timestamp,
+    primary key (id)
+);
+
+alter table loan add constraint fk_loan_book foreign key (id_book) references book (id);
+
+create table schedule_checkpoint (
+    job_name varchar(255) not null,
+    run_date date,
+    last_id bigint,
+    processed bigint,
+    finished boolean not null,
+    primary key (job_name)
+);
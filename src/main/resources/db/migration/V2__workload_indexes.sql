@@ -0,0 +1,21 @@
+-- indices das consultas dos repositories, conferidos pelo EXPLAIN em QueryIndexTest
+
+-- findByIsbn, existsByIsbn e a checagem de duplicados da carga em lote(isbn in (...)), um isbn por book
+create unique index idx_book_isbn on book (isbn);
+
+-- loans de um book(findByBook, findVersionWithLoansById). A foreign key é recriada depois do índice para usá-lo no
+-- lugar do índice que o H2 cria sozinho para a constraint
+alter table loan drop constraint fk_loan_book;
+create index idx_loan_id_book on loan (id_book);
+alter table loan add constraint fk_loan_book foreign key (id_book) references book (id);
+
+-- filtro de loans por isbn ou customer
+create index idx_loan_isbn on loan (isbn);
+create index idx_loan_customer on loan (customer);
+
+-- loans atrasados(returned = false and loan_date <= ?): returned passa a ser sempre preenchido, um loan novo não
+-- está devolvido
+update loan set returned = false where returned is null;
+alter table loan alter column returned set default false;
+alter table loan alter column returned set not null;
+create index idx_loan_returned_loan_date on loan (returned, loan_date);
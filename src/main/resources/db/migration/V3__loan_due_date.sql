@@ -0,0 +1,10 @@
+-- prazo de devolução de cada loan, definido no empréstimo(application.loans.period-days quando não informado)
+
+-- os loans existentes recebem o prazo fixo de 3 dias usado até aqui para calcular os atrasados
+alter table loan add column due_date date;
+update loan set due_date = dateadd('DAY', 3, loan_date) where due_date is null;
+alter table loan alter column due_date set not null;
+
+-- loans atrasados(returned = false and due_date < ?): o índice pela loan_date deixa de ser usado
+drop index idx_loan_returned_loan_date;
+create index idx_loan_returned_due_date on loan (returned, due_date);
@@ -0,0 +1,2 @@
+-- books alterados recentemente(lastModified > ?), lidos a cada sync do IsbnBloomFilter em todas as instâncias
+create index idx_book_last_modified on book (last_modified);
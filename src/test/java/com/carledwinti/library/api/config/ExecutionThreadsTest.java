@@ -0,0 +1,46 @@
+package com.carledwinti.library.api.config;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class ExecutionThreadsTest {
+
+    @Test
+    @DisplayName("Deve criar threads de plataforma daemon nomeadas quando o modo virtual não for solicitado")
+    public void platformThreads(){
+        //scenario
+        ExecutionThreads executionThreads = new ExecutionThreads(false);
+
+        //execution
+        Thread first = executionThreads.threadFactory("worker-").newThread(() -> {});
+        Thread second = executionThreads.threadFactory("worker-").newThread(() -> {});
+
+        //verification
+        Assertions.assertThat(executionThreads.isVirtual()).isFalse();
+        Assertions.assertThat(first.getName()).isEqualTo("worker-1");
+        Assertions.assertThat(second.getName()).isEqualTo("worker-1");
+        Assertions.assertThat(first.isDaemon()).isTrue();
+        Assertions.assertThatThrownBy(() -> executionThreads.newThreadPerTaskExecutor("worker-"))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    @DisplayName("Deve usar threads virtuais somente quando o JVM suportar, caindo para threads de plataforma")
+    public void virtualThreadsWhenSupported() throws Exception {
+        //scenario
+        ExecutionThreads executionThreads = new ExecutionThreads(true);
+
+        //verification
+        Assertions.assertThat(executionThreads.isVirtual()).isEqualTo(ExecutionThreads.isVirtualSupported());
+        if (executionThreads.isVirtual()) {
+            ExecutorService executor = executionThreads.newThreadPerTaskExecutor("virtual-");
+            String threadName = executor.submit(() -> Thread.currentThread().getName()).get(5, TimeUnit.SECONDS);
+            executor.shutdown();
+            Assertions.assertThat(threadName).startsWith("virtual-");
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.carledwinti.library.api.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class ReadWriteRoutingDataSourceTest {
+
+    DriverManagerDataSource primary;
+    DriverManagerDataSource replica;
+    SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    public void setUp(){
+        primary = h2("routing-primary");
+        replica = h2("routing-replica");
+        //a mesma tabela nas duas bases, cada uma com um valor diferente para identificar a base da leitura
+        for (DriverManagerDataSource dataSource : new DriverManagerDataSource[]{primary, replica}) {
+            JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+            jdbcTemplate.execute("create table origin (name varchar(20))");
+            jdbcTemplate.execute("create table replica_lag (lag_millis bigint)");
+            jdbcTemplate.update("insert into replica_lag values (0)");
+        }
+        new JdbcTemplate(primary).update("insert into origin values ('primary')");
+        new JdbcTemplate(replica).update("insert into origin values ('replica')");
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @AfterEach
+    public void tearDown(){
+        new JdbcTemplate(primary).execute("drop all objects");
+        new JdbcTemplate(replica).execute("drop all objects");
+    }
+
+    @Test
+    @DisplayName("Deve ler nas réplicas dentro de transações readOnly e usar o primary nas demais")
+    public void routeReadOnlyTransactionsToReplica(){
+        //scenario
+        ReplicaRouting replicaRouting = routing(replica);
+        DataSource dataSource = new LazyConnectionDataSourceProxy(new ReadWriteRoutingDataSource(replicaRouting));
+
+        //execution
+        String readOnly = transaction(dataSource, true).execute(status -> origin(dataSource));
+        String readWrite = transaction(dataSource, false).execute(status -> origin(dataSource));
+        String withoutTransaction = origin(dataSource);
+
+        //verification
+        Assertions.assertThat(readOnly).isEqualTo("replica");
+        Assertions.assertThat(readWrite).isEqualTo("primary");
+        Assertions.assertThat(withoutTransaction).isEqualTo("primary");
+        Assertions.assertThat(meterRegistry.get("library.datasource.connections").tag("pool", "replica-0")
+                .functionCounter().count()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Deve rotear pelo readOnly as transações do JpaTransactionManager, inclusive as participantes")
+    public void routeJpaTransactions(){
+        //scenario - o JpaTransactionManager obtém a conexão ao iniciar a transação, antes do readOnly ser publicado
+        DataSource dataSource = new LazyConnectionDataSourceProxy(new ReadWriteRoutingDataSource(routing(replica)));
+        LocalContainerEntityManagerFactoryBean factoryBean = new LocalContainerEntityManagerFactoryBean();
+        factoryBean.setDataSource(dataSource);
+        factoryBean.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+        factoryBean.setPackagesToScan(ReadWriteRoutingDataSourceTest.class.getPackage().getName());
+        factoryBean.afterPropertiesSet();
+        EntityManagerFactory entityManagerFactory = factoryBean.getObject();
+        EntityManager entityManager = SharedEntityManagerCreator.createSharedEntityManager(entityManagerFactory);
+        JpaTransactionManager transactionManager = new JpaTransactionManager(entityManagerFactory);
+
+        try {
+            //execution
+            String readOnly = transaction(transactionManager, true).execute(status -> origin(entityManager));
+            String readWrite = transaction(transactionManager, false).execute(status -> origin(entityManager));
+            //um método readOnly(ex.: do SimpleJpaRepository) chamado dentro de uma transação de escrita lê do primary
+            String joined = transaction(transactionManager, false).execute(status ->
+                    transaction(transactionManager, true).execute(inner -> origin(entityManager)));
+
+            //verification
+            Assertions.assertThat(readOnly).isEqualTo("replica");
+            Assertions.assertThat(readWrite).isEqualTo("primary");
+            Assertions.assertThat(joined).isEqualTo("primary");
+        } finally {
+            factoryBean.destroy();
+        }
+    }
+
+    @Test
+    @DisplayName("Deve ler no primary enquanto o atraso da réplica passar do máximo")
+    public void fallbackToPrimaryWhenReplicaLags(){
+        //scenario
+        ReplicaRouting replicaRouting = routing(replica);
+        DataSource dataSource = new LazyConnectionDataSourceProxy(new ReadWriteRoutingDataSource(replicaRouting));
+        new JdbcTemplate(replica).update("update replica_lag set lag_millis = 5001");
+
+        //execution
+        replicaRouting.checkReplicas();
+        String lagging = transaction(dataSource, true).execute(status -> origin(dataSource));
+        new JdbcTemplate(replica).update("update replica_lag set lag_millis = 10");
+        replicaRouting.checkReplicas();
+        String recovered = transaction(dataSource, true).execute(status -> origin(dataSource));
+
+        //verification
+        Assertions.assertThat(lagging).isEqualTo("primary");
+        Assertions.assertThat(recovered).isEqualTo("replica");
+        Assertions.assertThat(replicaRouting.isAvailable("replica-0")).isTrue();
+        Assertions.assertThat(meterRegistry.get("library.datasource.replica.fallbacks").functionCounter().count())
+                .isEqualTo(1);
+        Assertions.assertThat(meterRegistry.get("library.datasource.replica.lag").tag("pool", "replica-0")
+                .gauge().value()).isEqualTo(10);
+    }
+
+    @Test
+    @DisplayName("Deve ler no primary e retirar a réplica quando ela não entregar a conexão")
+    public void fallbackToPrimaryWhenReplicaFails(){
+        //scenario
+        DriverManagerDataSource unreachable = new DriverManagerDataSource() {
+            @Override
+            public Connection getConnection() throws SQLException {
+                throw new SQLException("Connection refused");
+            }
+        };
+        ReplicaRouting replicaRouting = routing(unreachable);
+        DataSource dataSource = new LazyConnectionDataSourceProxy(new ReadWriteRoutingDataSource(replicaRouting));
+
+        //execution
+        String origin = transaction(dataSource, true).execute(status -> origin(dataSource));
+
+        //verification
+        Assertions.assertThat(origin).isEqualTo("primary");
+        Assertions.assertThat(replicaRouting.isAvailable("replica-0")).isFalse();
+        Assertions.assertThat(meterRegistry.get("library.datasource.replica.available").tag("pool", "replica-0")
+                .gauge().value()).isEqualTo(0);
+    }
+
+    private ReplicaRouting routing(DataSource replicaDataSource) {
+        Map<String, DataSource> replicas = new LinkedHashMap<>(Collections.singletonMap("replica-0", replicaDataSource));
+        ReplicaRouting replicaRouting = new ReplicaRouting(primary, replicas, "select lag_millis from replica_lag", 5000);
+        replicaRouting.bindTo(meterRegistry);
+        return replicaRouting;
+    }
+
+    private static TransactionTemplate transaction(DataSource dataSource, boolean readOnly) {
+        return transaction(new DataSourceTransactionManager(dataSource), readOnly);
+    }
+
+    private static TransactionTemplate transaction(PlatformTransactionManager transactionManager, boolean readOnly) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setReadOnly(readOnly);
+        return transactionTemplate;
+    }
+
+    private static String origin(DataSource dataSource) {
+        return new JdbcTemplate(dataSource).queryForObject("select name from origin", String.class);
+    }
+
+    private static String origin(EntityManager entityManager) {
+        return (String) entityManager.createNativeQuery("select name from origin").getSingleResult();
+    }
+
+    private static DriverManagerDataSource h2(String name) {
+        return new DriverManagerDataSource("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1", "sa", "");
+    }
+}
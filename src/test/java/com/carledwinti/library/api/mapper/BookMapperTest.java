@@ -0,0 +1,55 @@
+package com.carledwinti.library.api.mapper;
+
+import com.carledwinti.library.api.dto.BookDTO;
+import com.carledwinti.library.api.dto.LoanDTO;
+import com.carledwinti.library.api.model.Book;
+import com.carledwinti.library.api.model.Loan;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.modelmapper.ModelMapper;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class BookMapperTest {
+
+    //o ModelMapper é a referência, os mappers precisam gerar exatamente os mesmos objetos(e portanto o mesmo json)
+    ModelMapper modelMapper = new ModelMapper();
+
+    BookMapper bookMapper = new BookMapper();
+
+    @Test
+    @DisplayName("Deve converter um bookDTO em book igual ao ModelMapper")
+    public void toEntity(){
+        BookDTO bookDTO = BookDTO.builder().id(1l).title("Lua Nova").author("Derik").isbn("123")
+                .loanDTOs(Arrays.asList(LoanDTO.builder().id(2l).build())).build();
+
+        Book book = bookMapper.toEntity(bookDTO);
+
+        Assertions.assertThat(book).isEqualTo(modelMapper.map(bookDTO, Book.class));
+        Assertions.assertThat(book.getLoans()).isNull();
+    }
+
+    @Test
+    @DisplayName("Deve converter um book em bookDTO igual ao ModelMapper")
+    public void toDTO(){
+        Book book = Book.builder().id(1l).title("Lua Nova").author("Derik").isbn("123").build();
+        book.setLoans(Arrays.asList(Loan.builder().id(2l).book(book).build()));
+
+        BookDTO bookDTO = bookMapper.toDTO(book);
+
+        Assertions.assertThat(bookDTO).isEqualTo(modelMapper.map(book, BookDTO.class));
+        Assertions.assertThat(bookDTO.getLoanDTOs()).isNull();
+    }
+
+    @Test
+    @DisplayName("Deve converter uma lista de books mantendo a ordem")
+    public void toDTOs(){
+        List<Book> books = Arrays.asList(Book.builder().id(1l).isbn("1").build(), Book.builder().id(2l).isbn("2").build());
+
+        List<BookDTO> bookDTOs = bookMapper.toDTOs(books);
+
+        Assertions.assertThat(bookDTOs).extracting(BookDTO::getId).containsExactly(1l, 2l);
+    }
+}
@@ -0,0 +1,83 @@
+package com.carledwinti.library.api.mapper;
+
+import com.carledwinti.library.api.dto.BookDTO;
+import com.carledwinti.library.api.dto.LoanDTO;
+import com.carledwinti.library.api.dto.LoanFilterDTO;
+import com.carledwinti.library.api.dto.ReturnedLoanDTO;
+import com.carledwinti.library.api.model.Book;
+import com.carledwinti.library.api.model.Loan;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.modelmapper.ModelMapper;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+
+public class LoanMapperTest {
+
+    ModelMapper modelMapper = new ModelMapper();
+
+    LoanMapper loanMapper = new LoanMapper(new BookMapper());
+
+    @Test
+    @DisplayName("Deve converter um loanDTO em loan sem o book")
+    public void toEntity(){
+        LoanDTO loanDTO = LoanDTO.builder().id(1l).isbn("123").customer("Lariano").customerEmail("lariano@email.com")
+                .returned(true).build();
+
+        Loan loan = loanMapper.toEntity(loanDTO);
+
+        Assertions.assertThat(loan).isEqualTo(modelMapper.map(loanDTO, Loan.class));
+    }
+
+    @Test
+    @DisplayName("Deve converter o filtro de loans em loan")
+    public void filterToEntity(){
+        LoanFilterDTO loanFilterDTO = LoanFilterDTO.builder().isbn("123").customer("Lariano").build();
+
+        Loan loan = loanMapper.toEntity(loanFilterDTO);
+
+        Assertions.assertThat(loan).isEqualTo(modelMapper.map(loanFilterDTO, Loan.class));
+    }
+
+    @Test
+    @DisplayName("Deve aplicar a devolução no loan")
+    public void updateEntity(){
+        Loan loan = existentLoan();
+
+        loanMapper.updateEntity(ReturnedLoanDTO.builder().returned(true).build(), loan);
+
+        Assertions.assertThat(loan.getReturned()).isTrue();
+    }
+
+    @Test
+    @DisplayName("Deve converter um loan em loanDTO igual ao ModelMapper")
+    public void toDTO(){
+        Loan loan = existentLoan();
+
+        LoanDTO loanDTO = loanMapper.toDTO(loan);
+
+        Assertions.assertThat(loanDTO).isEqualTo(modelMapper.map(loan, LoanDTO.class));
+        Assertions.assertThat(loanDTO.getBookDTO()).isNull();
+    }
+
+    @Test
+    @DisplayName("Deve converter uma página de loans junto com o book de cada loan")
+    public void toDTOsWithBook(){
+        Loan loan = existentLoan();
+        LoanDTO expected = modelMapper.map(loan, LoanDTO.class);
+        expected.setBookDTO(modelMapper.map(loan.getBook(), BookDTO.class));
+
+        List<LoanDTO> loanDTOs = loanMapper.toDTOsWithBook(Arrays.asList(loan));
+
+        Assertions.assertThat(loanDTOs).containsExactly(expected);
+    }
+
+    private Loan existentLoan(){
+        Book book = Book.builder().id(5678l).title("Antenor Santanará").isbn("123").author("Milanes").build();
+        return Loan.builder().id(1l).isbn("123").customer("Lariano").customerEmail("lariano@email.com")
+                .book(book).returned(false).loanDate(LocalDate.now()).build();
+    }
+}
@@ -0,0 +1,83 @@
+package com.carledwinti.library.api.metrics;
+
+import com.carledwinti.library.api.constants.ConstantsError;
+import com.carledwinti.library.api.dto.BookDTO;
+import com.carledwinti.library.api.exception.BusinessException;
+import com.carledwinti.library.api.model.Book;
+import com.carledwinti.library.api.service.BookService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mockito;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.util.Arrays;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+public class OperationMetricsAspectTest {
+
+    @MockBean
+    BookService bookService;
+
+    MeterRegistry meterRegistry;
+
+    BookService measuredBookService;
+
+    @BeforeEach
+    public void setUp(){
+        meterRegistry = new SimpleMeterRegistry();
+        AspectJProxyFactory proxyFactory = new AspectJProxyFactory(bookService);
+        proxyFactory.addAspect(new OperationMetricsAspect(meterRegistry));
+        measuredBookService = proxyFactory.getProxy();
+    }
+
+    @Test
+    @DisplayName("Deve medir as chamadas do service e a quantidade de linhas das páginas retornadas")
+    public void timeServiceCalls(){
+        //scenario
+        Book filter = new Book();
+        PageRequest pageRequest = PageRequest.of(0, 10);
+
+        //mock
+        Mockito.when(bookService.findByFilter(filter, pageRequest)).thenReturn(new PageImpl<>(
+                Arrays.asList(new BookDTO(), new BookDTO(), new BookDTO()), pageRequest, 3));
+
+        //execution
+        measuredBookService.findByFilter(filter, pageRequest);
+        measuredBookService.findByFilter(filter, pageRequest);
+
+        //verification
+        Assertions.assertThat(meterRegistry.get("library.service.calls").tag("component", "BookService")
+                .tag("method", "findByFilter").tag("exception", "none").timer().count()).isEqualTo(2);
+        Assertions.assertThat(meterRegistry.get("library.service.results").tag("method", "findByFilter")
+                .summary().totalAmount()).isEqualTo(6);
+    }
+
+    @Test
+    @DisplayName("Deve contar os erros das chamadas do service pelo tipo da exception")
+    public void countServiceErrors(){
+        //scenario
+        Book book = Book.builder().isbn("123").build();
+
+        //mock
+        Mockito.when(bookService.save(book)).thenThrow(new BusinessException(ConstantsError.MSG_ERROR_ISBN_ALREADY_EXISTS));
+
+        //execution
+        Throwable throwable = Assertions.catchThrowable(() -> measuredBookService.save(book));
+
+        //verification
+        Assertions.assertThat(throwable).isInstanceOf(BusinessException.class);
+        Assertions.assertThat(meterRegistry.get("library.service.calls").tag("method", "save")
+                .tag("exception", "BusinessException").timer().count()).isEqualTo(1);
+    }
+}
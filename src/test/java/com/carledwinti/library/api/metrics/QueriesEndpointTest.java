@@ -0,0 +1,65 @@
+package com.carledwinti.library.api.metrics;
+
+import com.carledwinti.library.api.model.Book;
+import com.carledwinti.library.api.repository.BookRepository;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import javax.persistence.EntityManagerFactory;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+public class QueriesEndpointTest {
+
+    @Autowired
+    TestEntityManager testEntityManager;
+
+    @Autowired
+    EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    BookRepository bookRepository;
+
+    QueriesEndpoint queriesEndpoint;
+
+    @BeforeEach
+    public void setUp(){
+        queriesEndpoint = new QueriesEndpoint(entityManagerFactory, new SlowQueryLog(200, 10));
+        queriesEndpoint.reset();
+    }
+
+    @Test
+    @DisplayName("Deve informar as execuções, linhas e cargas de entities de cada consulta JPQL")
+    public void reportQueryStatistics(){
+        //scenario
+        testEntityManager.persist(Book.builder().title("Lua Nova").author("Derik").isbn("9780001").build());
+        testEntityManager.persist(Book.builder().title("Sol").author("Ana").isbn("9780002").build());
+        testEntityManager.flush();
+        testEntityManager.clear();
+
+        //execution
+        bookRepository.findByIsbn("9780001");
+        bookRepository.findByIsbn("9780002");
+        QueriesEndpoint.QueriesReport report = queriesEndpoint.queries();
+
+        //verification
+        Assertions.assertThat(report.isStatisticsEnabled()).isTrue();
+        Assertions.assertThat(report.getQueries()).hasSize(1);
+        QueriesEndpoint.QueryReport query = report.getQueries().get(0);
+        Assertions.assertThat(query.getQuery()).contains("from Book").doesNotContain("9780001");
+        Assertions.assertThat(query.getExecutions()).isEqualTo(2);
+        Assertions.assertThat(query.getRows()).isEqualTo(2);
+        Assertions.assertThat(report.getEntityLoads()).isEqualTo(2);
+        Assertions.assertThat(report.getEntities()).extracting(QueriesEndpoint.EntityReport::getEntity)
+                .contains(Book.class.getName());
+    }
+}
@@ -0,0 +1,40 @@
+package com.carledwinti.library.api.metrics;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+public class SlowQueryLogTest {
+
+    @Test
+    @DisplayName("Deve guardar somente as últimas consultas acima do limite, da mais recente para a mais antiga")
+    public void keepLastSlowQueries(){
+        //scenario
+        SlowQueryLog slowQueryLog = new SlowQueryLog(100, 2);
+
+        //execution
+        slowQueryLog.record("select 1", TimeUnit.MILLISECONDS.toNanos(99));
+        slowQueryLog.record("select * from book", TimeUnit.MILLISECONDS.toNanos(150));
+        slowQueryLog.record("select * from loan", TimeUnit.MILLISECONDS.toNanos(300));
+        slowQueryLog.record("update book set title=?", TimeUnit.MILLISECONDS.toNanos(120));
+
+        //verification
+        List<String> sqls = slowQueryLog.getQueries().stream().map(SlowQueryLog.SlowQuery::getSql).collect(Collectors.toList());
+        Assertions.assertThat(sqls).containsExactly("update book set title=?", "select * from loan");
+        Assertions.assertThat(slowQueryLog.getQueries().get(1).getTimeMillis()).isEqualTo(300);
+    }
+
+    @Test
+    @DisplayName("Deve mascarar os literais de texto e números do SQL sem alterar os nomes das colunas")
+    public void redactLiterals(){
+        String redacted = SlowQueryLog.redact(
+                "select book0_.id as id1_0_ from book book0_ where book0_.isbn='978-85''01' and book0_.id>10 and x=?");
+
+        Assertions.assertThat(redacted)
+                .isEqualTo("select book0_.id as id1_0_ from book book0_ where book0_.isbn=? and book0_.id>? and x=?");
+    }
+}
@@ -1,7 +1,12 @@
 package com.carledwinti.library.api.repository;
 
+import com.carledwinti.library.api.dto.BookDTO;
 import com.carledwinti.library.api.model.Book;
+import com.carledwinti.library.api.pagination.CursorPage;
+import com.carledwinti.library.api.pagination.Keyset;
+import com.carledwinti.library.api.pagination.KeysetCursor;
 import org.assertj.core.api.Assertions;
+import org.hibernate.Session;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -9,10 +14,19 @@ import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 @ExtendWith(SpringExtension.class)
 @ActiveProfiles("test")
@@ -128,6 +142,136 @@ public class BookRepositoryTest {
         Assertions.assertThat(notFoundBook).isNull();
     }
 
+    @Test
+    @DisplayName("Deve inserir um lote de livros via JDBC preenchendo os ids")
+    public void insertAll(){
+        //scenario
+        List<Book> books = Arrays.asList(
+                Book.builder().author("Derik").title("Lua Nova").isbn("456").build(),
+                Book.builder().author("Lane").title("Arredores da Ilha").isbn("789").build());
+
+        //execution
+        List<Book> insertedBooks = bookRepository.insertAll(books);
+
+        //verification
+        Assertions.assertThat(insertedBooks).extracting(Book::getId).doesNotContainNull();
+        Book foundBook = testEntityManager.find(Book.class, insertedBooks.get(1).getId());
+        Assertions.assertThat(foundBook.getIsbn()).isEqualTo("789");
+        Assertions.assertThat(foundBook.getTitle()).isEqualTo("Arredores da Ilha");
+    }
+
+    @Test
+    @DisplayName("Deve retornar somente os isbns do lote que já existem na base")
+    public void findExistentIsbns(){
+        //scenario
+        testEntityManager.persist(createNewBook());
+
+        //execution
+        List<String> existentIsbns = bookRepository.findExistentIsbns(Arrays.asList("123", "456", "789"));
+
+        //verification
+        Assertions.assertThat(existentIsbns).containsExactly("456");
+    }
+
+    @Test
+    @DisplayName("Deve paginar os livros por keyset ordenando pelo título e desempatando pelo id")
+    public void findByFilterAfter(){
+        //scenario
+        Book lua = testEntityManager.persist(Book.builder().author("Derik").title("Lua Nova").isbn("1").build());
+        Book arredores = testEntityManager.persist(Book.builder().author("Lane").title("Arredores").isbn("2").build());
+        Book luaEdicao2 = testEntityManager.persist(Book.builder().author("Derik").title("Lua Nova").isbn("3").build());
+        testEntityManager.persist(Book.builder().author("Ana").title("Sol").isbn("4").build());
+        Book filter = Book.builder().author("eri").build();
+
+        //execution
+        List<BookDTO> firstPage = bookRepository.findByFilterAfter(filter, new Keyset("title", Sort.Direction.ASC, null, null), 2);
+        List<BookDTO> secondPage = bookRepository.findByFilterAfter(filter,
+                new Keyset("title", Sort.Direction.ASC, lua.getTitle(), lua.getId()), 2);
+        List<BookDTO> allBooks = bookRepository.findByFilterAfter(Book.builder().build(),
+                new Keyset("title", Sort.Direction.ASC, arredores.getTitle(), arredores.getId()), 10);
+
+        //verification
+        Assertions.assertThat(firstPage).extracting(BookDTO::getId).containsExactly(lua.getId(), luaEdicao2.getId());
+        Assertions.assertThat(secondPage).extracting(BookDTO::getId).containsExactly(luaEdicao2.getId());
+        Assertions.assertThat(allBooks).extracting(BookDTO::getIsbn).containsExactly("1", "3", "4");
+    }
+
+    @Test
+    @DisplayName("Deve paginar por keyset os livros sem título, com os nulls como menor valor nas duas direções")
+    public void findByFilterAfterNullSortKey(){
+        //scenario
+        Book lua = testEntityManager.persist(Book.builder().author("Derik").title("Lua Nova").isbn("1").build());
+        Book semTitulo = testEntityManager.persist(Book.builder().author("Lane").isbn("2").build());
+        Book arredores = testEntityManager.persist(Book.builder().author("Ana").title("Arredores").isbn("3").build());
+        Book semTitulo2 = testEntityManager.persist(Book.builder().author("Ana").isbn("4").build());
+
+        //execution - páginas de 1 livro, cada uma a partir do cursor da anterior
+        List<Long> ascending = allPagesByTitle(Sort.Direction.ASC);
+        List<Long> descending = allPagesByTitle(Sort.Direction.DESC);
+
+        //verification
+        Assertions.assertThat(ascending)
+                .containsExactly(semTitulo.getId(), semTitulo2.getId(), arredores.getId(), lua.getId());
+        Assertions.assertThat(descending)
+                .containsExactly(lua.getId(), arredores.getId(), semTitulo2.getId(), semTitulo.getId());
+    }
+
+    private List<Long> allPagesByTitle(Sort.Direction direction) {
+        PageRequest pageRequest = PageRequest.of(0, 1, Sort.by(direction, "title"));
+        Set<String> sortProperties = Collections.singleton("title");
+        List<Long> ids = new ArrayList<>();
+        String cursor = null;
+        do {
+            Keyset keyset = KeysetCursor.decode(cursor, pageRequest, sortProperties);
+            CursorPage<BookDTO> page = KeysetCursor.page(bookRepository.findByFilterAfter(Book.builder().build(), keyset, 2),
+                    keyset, 1);
+            page.getContent().forEach(book -> ids.add(book.getId()));
+            cursor = page.getNextCursor();
+        } while (cursor != null && ids.size() < 10);
+        return ids;
+    }
+
+    @Test
+    @DisplayName("Deve retornar um slice de livros filtrados sem o total, indicando se existe próxima página")
+    public void findSliceByFilter(){
+        //scenario
+        testEntityManager.persist(Book.builder().author("Derik").title("Lua Nova").isbn("1").build());
+        testEntityManager.persist(Book.builder().author("Lane").title("Arredores").isbn("2").build());
+        testEntityManager.persist(Book.builder().author("Derik").title("Lua Cheia").isbn("3").build());
+        Book filter = Book.builder().title("LUA").build();
+
+        //execution
+        Slice<BookDTO> firstSlice = bookRepository.findSliceByFilter(filter, PageRequest.of(0, 1, Sort.by("title")));
+        Slice<BookDTO> lastSlice = bookRepository.findSliceByFilter(filter, PageRequest.of(1, 1, Sort.by("title")));
+
+        //verification
+        Assertions.assertThat(firstSlice.getContent()).extracting(BookDTO::getIsbn).containsExactly("3");
+        Assertions.assertThat(firstSlice.hasNext()).isTrue();
+        Assertions.assertThat(lastSlice.getContent()).extracting(BookDTO::getIsbn).containsExactly("1");
+        Assertions.assertThat(lastSlice.hasNext()).isFalse();
+    }
+
+    @Test
+    @DisplayName("Deve retornar uma página de livros filtrados como projeção, sem carregar as entities")
+    public void findPageByFilter(){
+        //scenario
+        testEntityManager.persist(Book.builder().author("Derik").title("Lua Nova").isbn("1").build());
+        testEntityManager.persist(Book.builder().author("Lane").title("Arredores").isbn("2").build());
+        testEntityManager.persist(Book.builder().author("Derik").title("Lua Cheia").isbn("3").build());
+        testEntityManager.flush();
+        testEntityManager.clear();
+        Book filter = Book.builder().title("LUA").author("derik").build();
+
+        //execution
+        Page<BookDTO> page = bookRepository.findPageByFilter(filter, PageRequest.of(0, 1, Sort.by("title")));
+
+        //verification
+        Assertions.assertThat(page.getContent()).extracting(BookDTO::getTitle, BookDTO::getAuthor, BookDTO::getIsbn)
+                .containsExactly(Assertions.tuple("Lua Cheia", "Derik", "3"));
+        Assertions.assertThat(page.getTotalElements()).isEqualTo(2);
+        Assertions.assertThat(testEntityManager.getEntityManager().unwrap(Session.class).getStatistics().getEntityCount()).isZero();
+    }
+
     private Book createNewBook() {
         return Book.builder().author("Derik").title("Lua Nova").isbn("456").build();
     }
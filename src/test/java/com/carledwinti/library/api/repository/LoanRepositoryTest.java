@@ -1,8 +1,13 @@
 package com.carledwinti.library.api.repository;
 
+import com.carledwinti.library.api.dto.LoanDTO;
+import com.carledwinti.library.api.dto.OverdueLoanDTO;
 import com.carledwinti.library.api.model.Book;
 import com.carledwinti.library.api.model.Loan;
+import com.carledwinti.library.api.pagination.Keyset;
 import org.assertj.core.api.Assertions;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -12,9 +17,12 @@ import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
+import javax.persistence.EntityManagerFactory;
 import java.time.LocalDate;
 import java.util.Arrays;
 import java.util.List;
@@ -22,12 +30,16 @@ import java.util.Optional;
 
 @ExtendWith(SpringExtension.class)
 @ActiveProfiles("test")
-@DataJpaTest
+//as estatísticas do hibernate contam os statements executados, usadas para verificar o N+1 nas listagens
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
 public class LoanRepositoryTest {
 
     @Autowired
     TestEntityManager testEntityManager;
 
+    @Autowired
+    EntityManagerFactory entityManagerFactory;
+
     @Autowired
     LoanRepository loanRepository;
 
@@ -37,25 +49,162 @@ public class LoanRepositoryTest {
     @Test
     @DisplayName("Deve verificar se existe emprestimo não devolvido para o livro")
     public void existsByBookAndNotReturned(){
-        Book savedBook = createAndPersistLoan().getBook();
+        Loan savedLoan = createAndPersistLoan();
+        Book savedBook = savedLoan.getBook();
+        Assertions.assertThat(loanRepository.existsByBookAndNotReturned(savedBook)).isFalse();
+
+        loanRepository.markBookOnLoan(savedBook.getId(), savedLoan.getId());
         Boolean loanedBook = loanRepository.existsByBookAndNotReturned(savedBook);
         Assertions.assertThat(loanedBook).isTrue();
     }
 
+    @Test
+    @DisplayName("Deve responder que não existe emprestimo para um livro que não está na base")
+    public void existsByBookAndNotReturnedMissingBook(){
+        //scenario - book carregado e removido em seguida, como numa requisição concorrente
+        Book missingBook = testEntityManager.persistAndFlush(Book.builder().isbn("999").title("Sem Cadastro")
+                .author("Ninguem").build());
+        bookRepository.delete(missingBook);
+        testEntityManager.flush();
+        testEntityManager.detach(missingBook);
+
+        //execution
+        boolean loanedBook = loanRepository.existsByBookAndNotReturned(missingBook);
+
+        //verification
+        Assertions.assertThat(loanedBook).isFalse();
+    }
+
+    @Test
+    @DisplayName("Deve marcar o livro com um único emprestimo ativo e liberar somente com a devolução deste emprestimo")
+    public void markAndClearBookActiveLoan(){
+        //scenario
+        Loan savedLoan = createAndPersistLoan();
+        Long bookId = savedLoan.getBook().getId();
+        Loan otherLoan = testEntityManager.persist(Loan.builder().book(savedLoan.getBook()).loanDate(LocalDate.now())
+                .dueDate(LocalDate.now().plusDays(3)).isbn("6678").customer("Lane").customerEmail("lane@email.com").build());
+
+        //execution
+        int marked = loanRepository.markBookOnLoan(bookId, savedLoan.getId());
+        int markedAgain = loanRepository.markBookOnLoan(bookId, savedLoan.getId());
+        int markedByOther = loanRepository.markBookOnLoan(bookId, otherLoan.getId());
+        int clearedByOther = loanRepository.clearBookActiveLoan(bookId, otherLoan.getId());
+        int cleared = loanRepository.clearBookActiveLoan(bookId, savedLoan.getId());
+
+        //verification
+        Assertions.assertThat(marked).isEqualTo(1);
+        Assertions.assertThat(markedAgain).isEqualTo(1);
+        Assertions.assertThat(markedByOther).isEqualTo(0);
+        Assertions.assertThat(clearedByOther).isEqualTo(0);
+        Assertions.assertThat(cleared).isEqualTo(1);
+        Assertions.assertThat(loanRepository.existsByBookAndNotReturned(savedLoan.getBook())).isFalse();
+    }
+
 
     @Test
     @DisplayName("Deve buscar loan pelo isbn do livro ou customer")
     public void findByBookIsbnOrCustomer(){
         Loan savadLoan = createAndPersistLoan();
         int page=0, size=12;
-        Page<Loan> pageFoundLoan = loanRepository.findByBookIsbnOrCustomer("6678", "Amaro", PageRequest.of(page, size));
+        Page<LoanDTO> pageFoundLoan = loanRepository.findByBookIsbnOrCustomer("6678", "Amaro", PageRequest.of(page, size));
         Assertions.assertThat(pageFoundLoan.isEmpty()).isFalse();
         Assertions.assertThat(pageFoundLoan.getContent()).hasSize(1);
         Assertions.assertThat(pageFoundLoan.getPageable().getPageSize()).isEqualTo(12);
         Assertions.assertThat(pageFoundLoan.getPageable().getPageNumber()).isEqualTo(0);
         Assertions.assertThat(pageFoundLoan.getTotalPages()).isEqualTo(1);
         Assertions.assertThat(pageFoundLoan.getTotalElements()).isEqualTo(1);
-        Assertions.assertThat(pageFoundLoan.getContent()).contains(savadLoan);
+        Assertions.assertThat(pageFoundLoan.getContent()).extracting(LoanDTO::getId).contains(savadLoan.getId());
+    }
+
+    @Test
+    @DisplayName("Deve paginar os loans do livro por keyset a partir do último id entregue")
+    public void findByBookAfter(){
+        //scenario
+        List<Optional<Loan>> savedLoans = createListOptionalLoanOverdue();
+        Book book = savedLoans.get(2).get().getBook();
+        Keyset firstPage = new Keyset(Keyset.ID, Sort.Direction.DESC, null, null);
+
+        //execution
+        List<LoanDTO> firstLoans = loanRepository.findByBookAfter(book, firstPage, 2);
+        LoanDTO lastLoan = firstLoans.get(1);
+        List<LoanDTO> nextLoans = loanRepository.findByBookAfter(book,
+                new Keyset(Keyset.ID, Sort.Direction.DESC, lastLoan.getId().toString(), lastLoan.getId()), 2);
+
+        //verification
+        Assertions.assertThat(firstLoans).extracting(LoanDTO::getCustomer).containsExactly("Lima", "kanus");
+        Assertions.assertThat(nextLoans).extracting(LoanDTO::getCustomer).containsExactly("Frendess");
+    }
+
+    @Test
+    @DisplayName("Deve paginar por keyset os loans pelo isbn do livro ou customer")
+    public void findByBookIsbnOrCustomerAfter(){
+        //scenario
+        createListOptionalLoanOverdue();
+        Keyset firstPage = new Keyset("loanDate", Sort.Direction.ASC, null, null);
+
+        //execution
+        List<LoanDTO> foundLoans = loanRepository.findByBookIsbnOrCustomerAfter("123", "Lima", firstPage, 10);
+        List<LoanDTO> noFilterLoans = loanRepository.findByBookIsbnOrCustomerAfter(null, null, firstPage, 10);
+
+        //verification
+        Assertions.assertThat(foundLoans).extracting(LoanDTO::getCustomer).containsExactly("Lima", "Lariano", "Chicagos");
+        Assertions.assertThat(noFilterLoans).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Deve buscar um slice de loans pelo isbn do livro ou customer sem executar o count")
+    public void findSliceByBookIsbnOrCustomer(){
+        //scenario
+        createListOptionalLoanOverdue();
+
+        //execution
+        Slice<LoanDTO> firstSlice = loanRepository.findSliceByBookIsbnOrCustomer("123", "Lima", PageRequest.of(0, 2));
+        Slice<LoanDTO> lastSlice = loanRepository.findSliceByBookIsbnOrCustomer("123", "Lima", PageRequest.of(1, 2));
+
+        //verification
+        Assertions.assertThat(firstSlice.getContent()).hasSize(2);
+        Assertions.assertThat(firstSlice.hasNext()).isTrue();
+        Assertions.assertThat(lastSlice.getContent()).hasSize(1);
+        Assertions.assertThat(lastSlice.hasNext()).isFalse();
+    }
+
+    @Test
+    @DisplayName("Deve projetar a página de loans com os seus livros sem um select por livro(N+1) e sem carregar entities")
+    public void findLoansPageWithBooksInOneSelect(){
+        //scenario - 5 loans de 2 livros, nenhum livro no contexto de persistência
+        createListOptionalLoanOverdue();
+        Book book = bookRepository.findByIsbn("12553").get();
+        testEntityManager.flush();
+        testEntityManager.clear();
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        //execution - a projeção já traz o book de cada loan, como é serializada pelos controllers
+        statistics.clear();
+        Page<LoanDTO> pageByFilter = loanRepository.findByBookIsbnOrCustomer("123", "Frendess", PageRequest.of(0, 2, Sort.by("customer")));
+        long statementsByFilter = statistics.getPrepareStatementCount();
+        long entityLoads = statistics.getEntityLoadCount();
+
+        statistics.clear();
+        Page<LoanDTO> pageByBook = loanRepository.findByBook(book, PageRequest.of(0, 2));
+        long statementsByBook = statistics.getPrepareStatementCount();
+        entityLoads += statistics.getEntityLoadCount();
+
+        statistics.clear();
+        loanRepository.findSliceByBookIsbnOrCustomer("123", "Frendess", PageRequest.of(0, 2));
+        List<LoanDTO> loansAfter = loanRepository.findByBookIsbnOrCustomerAfter("123", "Frendess",
+                new Keyset(Keyset.ID, Sort.Direction.ASC, null, null), 3);
+        long statementsSliceAndKeyset = statistics.getPrepareStatementCount();
+        entityLoads += statistics.getEntityLoadCount();
+
+        //verification - um select para a página e um para o count, nenhuma entity carregada
+        Assertions.assertThat(pageByFilter.getContent()).extracting(loanDTO -> loanDTO.getBookDTO().getIsbn()).containsExactly("123", "12553");
+        Assertions.assertThat(loansAfter).extracting(loanDTO -> loanDTO.getBookDTO().getTitle()).doesNotContainNull();
+        Assertions.assertThat(entityLoads).isZero();
+        Assertions.assertThat(pageByFilter.getTotalElements()).isEqualTo(3);
+        Assertions.assertThat(statementsByFilter).isEqualTo(2);
+        Assertions.assertThat(pageByBook.getTotalElements()).isEqualTo(3);
+        Assertions.assertThat(statementsByBook).isEqualTo(2);
+        Assertions.assertThat(statementsSliceAndKeyset).isEqualTo(2);
     }
 
     private Loan createAndPersistLoan() {
@@ -65,7 +214,7 @@ public class LoanRepositoryTest {
 
         //Loan loan = Loan.builder().book(savedBook).returned(true).loanDate(LocalDate.now()).isbn(isbn).customer("Amaro").build();
         //returned true or false
-        Loan loan = Loan.builder().book(savedBook).returned(true).loanDate(LocalDate.now()).isbn(isbn).customer("Amaro").customerEmail("amaro@email.com").build();
+        Loan loan = Loan.builder().book(savedBook).returned(true).loanDate(LocalDate.now()).dueDate(LocalDate.now().plusDays(3)).isbn(isbn).customer("Amaro").customerEmail("amaro@email.com").build();
 
         Loan savedLoan = testEntityManager.persist(loan);
         return savedLoan;
@@ -85,8 +234,7 @@ public class LoanRepositoryTest {
         Assertions.assertThat(savedLoansOverdue.get(3).get().getIsbn()).isEqualTo("12553");
         Assertions.assertThat(savedLoansOverdue.get(4).get().getIsbn()).isEqualTo("12553");
 
-        LocalDate threeDaysOfOverdue = LocalDate.now().minusDays(3);
-        List<Optional<Loan>> foundLoansOverdue = loanRepository.findByLoanDateLessThanAndNotReturned(threeDaysOfOverdue);
+        List<Optional<Loan>> foundLoansOverdue = loanRepository.findOverdueLoans(LocalDate.now());
 
         Assertions.assertThat(foundLoansOverdue.isEmpty()).isFalse();
         Assertions.assertThat(foundLoansOverdue.size()).isEqualTo(3);
@@ -95,6 +243,54 @@ public class LoanRepositoryTest {
         Assertions.assertThat(foundLoansOverdue.get(2).get().getIsbn()).isEqualTo("12553");
     }
 
+    @Test
+    @DisplayName("Deve retornar em lotes por id somente o id e o email dos emprestimos vencidos")
+    public void findOverdueLoansAfter(){
+        //scenario
+        List<Optional<Loan>> savedLoans = createListOptionalLoanOverdue();
+        LocalDate today = LocalDate.now();
+
+        //execution
+        List<OverdueLoanDTO> firstChunk = loanRepository.findOverdueLoansAfter(today, 0L, PageRequest.of(0, 2));
+        List<OverdueLoanDTO> lastChunk = loanRepository.findOverdueLoansAfter(today,
+                firstChunk.get(1).getId(), PageRequest.of(0, 2));
+
+        //verification
+        Assertions.assertThat(firstChunk).containsExactly(
+                new OverdueLoanDTO(savedLoans.get(0).get().getId(), "lariano@email.com"),
+                new OverdueLoanDTO(savedLoans.get(1).get().getId(), "chicagos@email.com"));
+        Assertions.assertThat(lastChunk).containsExactly(
+                new OverdueLoanDTO(savedLoans.get(2).get().getId(), "frendess@email.com"));
+    }
+
+    @Test
+    @DisplayName("Deve considerar atrasado o emprestimo no dia do prazo e não no dia anterior")
+    public void findOverdueLoansOnDueDate(){
+        //scenario
+        LocalDate today = LocalDate.now();
+        Book book = bookRepository.save(Book.builder().title("Mirados Arabes").isbn("123").author("Lembratess").build());
+        Loan dueYesterday = loanRepository.save(overdueLoan(book, "ontem@email.com", today.minusDays(1)));
+        Loan dueToday = loanRepository.save(overdueLoan(book, "hoje@email.com", today));
+        loanRepository.save(overdueLoan(book, "amanha@email.com", today.plusDays(1)));
+
+        //execution
+        List<Optional<Loan>> foundLoansOverdue = loanRepository.findOverdueLoans(today);
+        List<OverdueLoanDTO> overdueChunk = loanRepository.findOverdueLoansAfter(today, 0L, PageRequest.of(0, 10));
+
+        //verification
+        Assertions.assertThat(foundLoansOverdue).extracting(loan -> loan.get().getId())
+                .containsExactly(dueYesterday.getId(), dueToday.getId());
+        Assertions.assertThat(overdueChunk).containsExactly(
+                new OverdueLoanDTO(dueYesterday.getId(), "ontem@email.com"),
+                new OverdueLoanDTO(dueToday.getId(), "hoje@email.com"));
+    }
+
+    //prazo padrão de 3 dias: o empréstimo de hoje - 3 vence hoje
+    private Loan overdueLoan(Book book, String customerEmail, LocalDate dueDate){
+        return Loan.builder().isbn(book.getIsbn()).customer("Lariano").customerEmail(customerEmail).book(book)
+                .returned(false).loanDate(dueDate.minusDays(3)).dueDate(dueDate).build();
+    }
+
     private List<Optional<Loan>> createListOptionalLoanOverdue(){
         Book book = Book.builder().title("Mirados Arabes").isbn("123").author("Lembratess").build();
         book = bookRepository.save(book);
@@ -105,6 +301,7 @@ public class LoanRepositoryTest {
                 .returned(false)
                 .customerEmail("lariano@email.com")
                 .loanDate(LocalDate.now().minusDays(10))
+                .dueDate(LocalDate.now().minusDays(7))
                 .build();
         loan1 = loanRepository.save(loan1);
 
@@ -114,6 +311,7 @@ public class LoanRepositoryTest {
                 .book(book)
                 .returned(false)
                 .loanDate(LocalDate.now().minusDays(8))
+                .dueDate(LocalDate.now().minusDays(5))
                 .build();
         loan2 = loanRepository.save(loan2);
 
@@ -127,6 +325,7 @@ public class LoanRepositoryTest {
                 .book(book2)
                 .returned(false)
                 .loanDate(LocalDate.now().minusDays(14))
+                .dueDate(LocalDate.now().minusDays(11))
                 .build();
         loan3 = loanRepository.save(loan3);
 
@@ -136,6 +335,7 @@ public class LoanRepositoryTest {
                 .book(book2)
                 .returned(false)
                 .loanDate(LocalDate.now())
+                .dueDate(LocalDate.now().plusDays(3))
                 .build();
         loan4 = loanRepository.save(loan4);
 
@@ -145,6 +345,7 @@ public class LoanRepositoryTest {
                 .book(book2)
                 .returned(true)
                 .loanDate(LocalDate.now().minusDays(50))
+                .dueDate(LocalDate.now().minusDays(47))
                 .build();
         loan5 = loanRepository.save(loan5);
 
@@ -0,0 +1,168 @@
+package com.carledwinti.library.api.repository;
+
+import com.carledwinti.library.api.model.Book;
+import com.carledwinti.library.api.pagination.Keyset;
+import org.assertj.core.api.Assertions;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+
+//confere pelo EXPLAIN do H2 que o SQL gerado para cada consulta dos repositories usa o índice criado pelas migrações
+//do flyway. O SQL é capturado pelo StatementInspector do hibernate e o EXPLAIN é executado com os mesmos parâmetros
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+        + "com.carledwinti.library.api.repository.QueryIndexTest$CapturedStatements")
+public class QueryIndexTest {
+
+    //segunda página para que o Spring Data execute também o count
+    private static final Pageable SECOND_PAGE = PageRequest.of(1, 10);
+    private static final LocalDate OVERDUE = LocalDate.now();
+
+    @Autowired
+    TestEntityManager testEntityManager;
+
+    @Autowired
+    BookRepository bookRepository;
+
+    @Autowired
+    LoanRepository loanRepository;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    public void setUp(){
+        CapturedStatements.STATEMENTS.clear();
+    }
+
+    @Test
+    @DisplayName("Deve usar o índice do isbn nas consultas de book por isbn")
+    public void bookQueriesUseIsbnIndex(){
+        Assertions.assertThat(plans(() -> bookRepository.existsByIsbn("123"), "123"))
+                .isNotEmpty().allMatch(plan -> plan.contains("IDX_BOOK_ISBN"));
+        Assertions.assertThat(plans(() -> bookRepository.findByIsbn("123"), "123"))
+                .isNotEmpty().allMatch(plan -> plan.contains("IDX_BOOK_ISBN"));
+        Assertions.assertThat(plans(() -> bookRepository.findExistentIsbns(Arrays.asList("123", "456")), "123", "456"))
+                .isNotEmpty().allMatch(plan -> plan.contains("IDX_BOOK_ISBN"));
+    }
+
+    @Test
+    @DisplayName("Deve impedir dois books com o mesmo isbn pelo índice único")
+    public void uniqueIsbn(){
+        //scenario
+        bookRepository.saveAndFlush(Book.builder().title("Lua Nova").author("Derik").isbn("123").build());
+
+        //execution e verification
+        Assertions.assertThatThrownBy(() ->
+                bookRepository.saveAndFlush(Book.builder().title("Lua Cheia").author("Lane").isbn("123").build()))
+                .isInstanceOf(DataIntegrityViolationException.class);
+    }
+
+    @Test
+    @DisplayName("Deve usar o índice do isbn ou do customer do loan no filtro de loans com um dos filtros")
+    public void loanFilterUsesIsbnOrCustomerIndex(){
+        Keyset firstPage = new Keyset("loanDate", Sort.Direction.ASC, null, null);
+
+        Assertions.assertThat(plans(() -> loanRepository.findByBookIsbnOrCustomer("123", null, SECOND_PAGE), "123"))
+                .hasSize(2).allMatch(plan -> plan.contains("IDX_LOAN_ISBN"));
+        Assertions.assertThat(plans(() -> loanRepository.findSliceByBookIsbnOrCustomer("123", null, SECOND_PAGE), "123"))
+                .isNotEmpty().allMatch(plan -> plan.contains("IDX_LOAN_ISBN"));
+        Assertions.assertThat(plans(() -> loanRepository.findByBookIsbnOrCustomerAfter("123", null, firstPage, 10), "123"))
+                .isNotEmpty().allMatch(plan -> plan.contains("IDX_LOAN_ISBN"));
+
+        Assertions.assertThat(plans(() -> loanRepository.findByBookIsbnOrCustomer(null, "Lima", SECOND_PAGE), "Lima"))
+                .hasSize(2).allMatch(plan -> plan.contains("IDX_LOAN_CUSTOMER"));
+        Assertions.assertThat(plans(() -> loanRepository.findSliceByBookIsbnOrCustomer(null, "Lima", SECOND_PAGE), "Lima"))
+                .isNotEmpty().allMatch(plan -> plan.contains("IDX_LOAN_CUSTOMER"));
+        Assertions.assertThat(plans(() -> loanRepository.findByBookIsbnOrCustomerAfter(null, "Lima", firstPage, 10), "Lima"))
+                .isNotEmpty().allMatch(plan -> plan.contains("IDX_LOAN_CUSTOMER"));
+        Assertions.assertThat(plans(() -> loanRepository.streamByCustomer("Lima").close(), "Lima"))
+                .isNotEmpty().allMatch(plan -> plan.contains("IDX_LOAN_CUSTOMER"));
+    }
+
+    @Test
+    @DisplayName("Deve usar o índice do book do loan nas consultas de loans de um book")
+    public void loansByBookUseBookIndex(){
+        //scenario
+        Book book = testEntityManager.persistAndFlush(Book.builder().title("Lua Nova").author("Derik").isbn("123").build());
+        CapturedStatements.STATEMENTS.clear();
+
+        Assertions.assertThat(plans(() -> loanRepository.findByBook(book, SECOND_PAGE), book.getId()))
+                .hasSize(2).allMatch(plan -> plan.contains("IDX_LOAN_ID_BOOK"));
+        Assertions.assertThat(plans(() -> loanRepository.findSliceByBook(book, SECOND_PAGE), book.getId()))
+                .isNotEmpty().allMatch(plan -> plan.contains("IDX_LOAN_ID_BOOK"));
+        Assertions.assertThat(plans(() -> bookRepository.findVersionWithLoansById(book.getId()), book.getId()))
+                .isNotEmpty().allMatch(plan -> plan.contains("IDX_LOAN_ID_BOOK"));
+        Assertions.assertThat(plans(() -> loanRepository.streamByBook(book).close(), book.getId()))
+                .isNotEmpty().allMatch(plan -> plan.contains("IDX_LOAN_ID_BOOK"));
+    }
+
+    @Test
+    @DisplayName("Deve usar o índice (returned, due_date) nas consultas de empréstimos atrasados")
+    public void overdueQueriesUseReturnedDueDateIndex(){
+        Assertions.assertThat(plans(() -> loanRepository.findOverdueLoans(OVERDUE), OVERDUE))
+                .isNotEmpty().allMatch(plan -> plan.contains("IDX_LOAN_RETURNED_DUE_DATE"));
+        Assertions.assertThat(plans(() -> loanRepository.findOverdueLoansAfter(OVERDUE, 0L, PageRequest.of(0, 10)), OVERDUE, 0L))
+                .isNotEmpty().allMatch(plan -> plan.contains("IDX_LOAN_RETURNED_DUE_DATE"));
+    }
+
+    @Test
+    @DisplayName("Deve usar o índice do lastModified no sync do bloom filter de isbns")
+    public void isbnFilterSyncUsesLastModifiedIndex(){
+        Timestamp since = Timestamp.from(Instant.now().minusSeconds(60));
+
+        Assertions.assertThat(plans(() -> bookRepository.findIsbnsModifiedAfter(since.toInstant()), since))
+                .isNotEmpty().allMatch(plan -> plan.contains("IDX_BOOK_LAST_MODIFIED"));
+    }
+
+    //executa a consulta e devolve o EXPLAIN de cada select gerado. Os parâmetros não informados são o limit/offset
+    //que o hibernate adiciona ao final do SQL
+    private List<String> plans(Runnable query, Object... parameters) {
+        CapturedStatements.STATEMENTS.clear();
+        query.run();
+        List<String> selects = CapturedStatements.STATEMENTS.stream()
+                .filter(sql -> sql.startsWith("select"))
+                .collect(Collectors.toList());
+        List<String> plans = new ArrayList<>();
+        for (String sql : selects) {
+            Object[] arguments = new Object[(int) sql.chars().filter(character -> character == '?').count()];
+            Arrays.fill(arguments, 10);
+            System.arraycopy(parameters, 0, arguments, 0, Math.min(parameters.length, arguments.length));
+            plans.add(jdbcTemplate.queryForObject("explain " + sql, String.class, arguments));
+        }
+        return plans;
+    }
+
+    public static class CapturedStatements implements StatementInspector {
+
+        static final List<String> STATEMENTS = new CopyOnWriteArrayList<>();
+
+        @Override
+        public String inspect(String sql) {
+            STATEMENTS.add(sql);
+            return sql;
+        }
+    }
+}
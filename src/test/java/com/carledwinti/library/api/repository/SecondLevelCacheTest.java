@@ -0,0 +1,204 @@
+package com.carledwinti.library.api.repository;
+
+import com.carledwinti.library.api.config.ReplicaJpaTransactionManager;
+import com.carledwinti.library.api.config.SecondLevelCacheConfig;
+import com.carledwinti.library.api.constants.ConstantsCache;
+import com.carledwinti.library.api.metrics.QueriesEndpoint;
+import com.carledwinti.library.api.metrics.SlowQueryLog;
+import com.carledwinti.library.api.model.Book;
+import com.carledwinti.library.api.model.Loan;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.JCacheMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.assertj.core.api.Assertions;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManagerFactory;
+import java.time.LocalDate;
+import java.util.Collections;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@DataJpaTest(properties = {"application.jpa.second-level-cache.enabled=true",
+                           "spring.jpa.properties.hibernate.generate_statistics=true"})
+@Import(SecondLevelCacheConfig.class)
+//sem a transação do teste, o cache de segundo nível só é atualizado/invalidado no fim de cada transação
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class SecondLevelCacheTest {
+
+    @Autowired
+    BookRepository bookRepository;
+
+    @Autowired
+    LoanRepository loanRepository;
+
+    @Autowired
+    EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @Autowired
+    CacheManager cacheManager;
+
+    TransactionTemplate transactionTemplate;
+
+    Statistics statistics;
+
+    @BeforeEach
+    public void setUp(){
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @AfterEach
+    public void tearDown(){
+        loanRepository.deleteAll();
+        bookRepository.deleteAll();
+        entityManagerFactory.getCache().evictAll();
+    }
+
+    @Test
+    @DisplayName("Deve carregar o book do cache de segundo nível sem consultar a base")
+    public void findBookFromSecondLevelCache(){
+        //scenario
+        //com IDENTITY o insert não coloca o book no cache, a primeira leitura coloca
+        Book book = bookRepository.save(createNewBook("123"));
+        bookRepository.findById(book.getId());
+        statistics.clear();
+
+        //execution
+        Book foundBook = bookRepository.findById(book.getId()).get();
+
+        //verification
+        Assertions.assertThat(foundBook.getIsbn()).isEqualTo("123");
+        Assertions.assertThat(statistics.getSecondLevelCacheHitCount()).isEqualTo(1);
+        Assertions.assertThat(statistics.getPrepareStatementCount()).isZero();
+        QueriesEndpoint.QueriesReport report = new QueriesEndpoint(entityManagerFactory, new SlowQueryLog(200, 10)).queries();
+        Assertions.assertThat(report.getRegions())
+                .filteredOn(region -> region.getRegion().equals(ConstantsCache.BOOK_REGION))
+                .extracting(QueriesEndpoint.RegionReport::getHits).containsExactly(1L);
+    }
+
+    @Test
+    @DisplayName("Deve responder as consultas por isbn pelo cache de consultas e invalidá-las com o insert via JDBC")
+    public void cacheIsbnQueriesUntilJdbcInsert(){
+        //scenario
+        Book book = bookRepository.save(createNewBook("123"));
+        statistics.clear();
+
+        //execution
+        boolean existsBefore = bookRepository.existsByIsbn("456");
+        bookRepository.existsByIsbn("456");
+        bookRepository.findByIsbn("123");
+        Book foundBook = bookRepository.findByIsbn("123").get();
+        long queryCacheHits = statistics.getQueryCacheHitCount();
+        long preparedStatements = statistics.getPrepareStatementCount();
+        transactionTemplate.execute(status -> bookRepository.insertAll(Collections.singletonList(createNewBook("456"))));
+        boolean existsAfter = bookRepository.existsByIsbn("456");
+
+        //verification
+        Assertions.assertThat(existsBefore).isFalse();
+        Assertions.assertThat(foundBook.getId()).isEqualTo(book.getId());
+        Assertions.assertThat(queryCacheHits).isEqualTo(2);
+        Assertions.assertThat(preparedStatements).isEqualTo(2);
+        Assertions.assertThat(existsAfter).isTrue();
+    }
+
+    @Test
+    @DisplayName("Deve retirar do cache somente o book alterado pelo update condicional do empréstimo")
+    public void evictOnlyLoanedBook(){
+        //scenario
+        Book loanedBook = bookRepository.save(createNewBook("123"));
+        Book otherBook = bookRepository.save(createNewBook("456"));
+        Loan loan = loanRepository.save(Loan.builder().book(loanedBook).isbn("123").customer("Fulano")
+                .customerEmail("fulano@email.com").loanDate(LocalDate.now()).dueDate(LocalDate.now().plusDays(3)).build());
+        bookRepository.findById(loanedBook.getId());
+        bookRepository.findById(otherBook.getId());
+
+        //execution
+        transactionTemplate.execute(status -> loanRepository.markBookOnLoan(loanedBook.getId(), loan.getId()));
+        statistics.clear();
+        Book foundLoanedBook = bookRepository.findById(loanedBook.getId()).get();
+        bookRepository.findById(otherBook.getId());
+
+        //verification
+        Assertions.assertThat(foundLoanedBook.getActiveLoanId()).isEqualTo(loan.getId());
+        Assertions.assertThat(statistics.getSecondLevelCacheMissCount()).isEqualTo(1);
+        Assertions.assertThat(statistics.getSecondLevelCacheHitCount()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Deve consultar sem alimentar o cache de segundo nível nas transações readOnly(réplicas)")
+    public void readOnlyTransactionsOnlyReadCache(){
+        //scenario
+        Book book = bookRepository.save(createNewBook("123"));
+        TransactionTemplate readOnly = new TransactionTemplate(new ReplicaJpaTransactionManager(entityManagerFactory));
+        readOnly.setReadOnly(true);
+        TransactionTemplate readWrite = new TransactionTemplate(new ReplicaJpaTransactionManager(entityManagerFactory));
+        statistics.clear();
+
+        //execution
+        readOnly.execute(status -> bookRepository.findById(book.getId()).get());
+        readOnly.execute(status -> bookRepository.findByIsbn("123").get());
+        long readOnlyEntityPuts = statistics.getSecondLevelCachePutCount();
+        long readOnlyQueryPuts = statistics.getQueryCachePutCount();
+        readWrite.execute(status -> bookRepository.findByIsbn("123").get());
+        readOnly.execute(status -> bookRepository.findById(book.getId()).get());
+
+        //verification
+        Assertions.assertThat(readOnlyEntityPuts).isZero();
+        Assertions.assertThat(readOnlyQueryPuts).isZero();
+        Assertions.assertThat(statistics.getQueryCachePutCount()).isEqualTo(1);
+        Assertions.assertThat(statistics.getSecondLevelCachePutCount()).isEqualTo(1);
+        Assertions.assertThat(statistics.getSecondLevelCacheHitCount()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Deve alimentar o cache nas leituras de escrita e expor as estatísticas das regiões para o actuator")
+    public void readWriteLookupsFillCacheWithStatistics(){
+        //scenario
+        Book book = bookRepository.save(createNewBook("123"));
+        TransactionTemplate readOnly = new TransactionTemplate(new ReplicaJpaTransactionManager(entityManagerFactory));
+        readOnly.setReadOnly(true);
+        TransactionTemplate readWrite = new TransactionTemplate(new ReplicaJpaTransactionManager(entityManagerFactory));
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        Cache bookRegion = cacheManager.getCache(ConstantsCache.BOOK_REGION);
+        new JCacheMetrics((javax.cache.Cache<?, ?>) bookRegion.getNativeCache(), Collections.emptyList()).bindTo(meterRegistry);
+        statistics.clear();
+
+        //execution - o getByid do BookService: o miss lê do primary e coloca o book no cache
+        readWrite.execute(status -> bookRepository.findById(book.getId()).get());
+        readOnly.execute(status -> bookRepository.findById(book.getId()).get());
+        readWrite.execute(status -> bookRepository.findById(book.getId()).get());
+
+        //verification
+        Assertions.assertThat(statistics.getSecondLevelCachePutCount()).isEqualTo(1);
+        Assertions.assertThat(statistics.getSecondLevelCacheHitCount()).isEqualTo(2);
+        Assertions.assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+        Assertions.assertThat(cacheManager.getCacheNames()).contains(ConstantsCache.BOOK_REGION);
+        Assertions.assertThat(meterRegistry.get("cache.gets").tag("result", "hit").functionCounter().count()).isEqualTo(2);
+        Assertions.assertThat(meterRegistry.get("cache.puts").functionCounter().count()).isEqualTo(1);
+    }
+
+    private Book createNewBook(String isbn) {
+        return Book.builder().isbn(isbn).author("Fulano").title("As aventuras").build();
+    }
+}
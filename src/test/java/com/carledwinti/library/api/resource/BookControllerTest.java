@@ -2,12 +2,20 @@ package com.carledwinti.library.api.resource;
 
 import com.carledwinti.library.api.constants.ConstantsError;
 import com.carledwinti.library.api.dto.BookDTO;
+import com.carledwinti.library.api.dto.LoanDTO;
+import com.carledwinti.library.api.dto.ResourceVersionDTO;
 import com.carledwinti.library.api.exception.BusinessException;
 import com.carledwinti.library.api.model.Book;
 import com.carledwinti.library.api.model.Loan;
+import com.carledwinti.library.api.pagination.CursorPage;
 import com.carledwinti.library.api.service.BookService;
 import com.carledwinti.library.api.service.LoanService;
+import com.carledwinti.library.api.service.export.BookCatalogExport;
+import com.carledwinti.library.api.service.export.BookExportFormat;
+import com.carledwinti.library.api.service.export.ExportPermits;
+import com.carledwinti.library.api.service.export.LoanHistoryExport;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.assertj.core.api.Assertions;
 import org.hamcrest.Matchers;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -19,23 +27,40 @@ import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMock
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
+import org.springframework.util.StreamUtils;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.time.LocalDate;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
 
 @ExtendWith(SpringExtension.class)//JUnit 5! //Cria um mini context para executar os testes
 @ActiveProfiles("test")//Define o ambiente/profile/perfil de 'test' para a execução destes testes
@@ -43,6 +68,7 @@ import java.util.Optional;
 //@WebMvcTest//Para criar context Rest e testar os métodos da api
 @WebMvcTest(controllers = {BookController.class})//Podemos configurar para subir somente controllers específicos no context
 @AutoConfigureMockMvc //configura um objeto para podermos realizar as requisições e permitirá a utilização do @Autowired
+@Import(ExportPermits.class)//o limite de exportações simultâneas é o bean real
 public class BookControllerTest {
 
     static String URL_BOOK_API = "/api/books";
@@ -50,12 +76,24 @@ public class BookControllerTest {
     @Autowired
     MockMvc mockMvc;//responsável por mockar as requisições para a api
 
+    @Autowired
+    BookController bookController;
+
+    @Autowired
+    ExportPermits exportPermits;
+
     @MockBean //mockBean é um mock especializado para criar uma instancia mock de um service para ser utilizado dentro do context do test e que pode ter o comportamento modificado de acordo com a necessida do test
     BookService bookService;
 
     @MockBean
     LoanService loanService;
 
+    @MockBean
+    BookCatalogExport bookCatalogExport;
+
+    @MockBean
+    LoanHistoryExport loanHistoryExport;
+
     @Test
     @DisplayName("Deve criar um livro com sucesso.")
     public void createBookTest() throws Exception {
@@ -191,6 +229,56 @@ public class BookControllerTest {
                 .andExpect(MockMvcResultMatchers.status().isNotFound());
     }
 
+    @Test
+    @DisplayName("Deve retornar not modified sem consultar o livro quando o ETag informado for o atual")
+    public void getBookNotModified() throws Exception {
+        //scenario
+        Long id = 1l;
+        ResourceVersionDTO version = new ResourceVersionDTO(3l, Instant.parse("2020-01-10T10:00:00Z"));
+
+        //mock
+        BDDMockito.given(bookService.getVersion(id)).willReturn(Optional.of(version));
+
+        //execution
+        MockHttpServletRequestBuilder mockHttpServletRequestBuilder =
+                MockMvcRequestBuilders.get(URL_BOOK_API+"/"+id)
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"3\"")
+                        .accept(MediaType.APPLICATION_JSON);
+
+        //verification
+        mockMvc.perform(mockHttpServletRequestBuilder)
+                .andExpect(MockMvcResultMatchers.status().isNotModified())
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.ETAG, "\"3\""))
+                .andExpect(MockMvcResultMatchers.content().string(""));
+        Mockito.verify(bookService, Mockito.never()).getByid(Mockito.anyLong());
+    }
+
+    @Test
+    @DisplayName("Deve obter o livro com ETag e Last-Modified quando o ETag informado estiver desatualizado")
+    public void getBookModified() throws Exception {
+        //scenario
+        Long id = 1l;
+        Book book = createNewBook();
+        ResourceVersionDTO version = new ResourceVersionDTO(4l, Instant.parse("2020-01-10T10:00:00Z"));
+
+        //mock
+        BDDMockito.given(bookService.getVersion(id)).willReturn(Optional.of(version));
+        BDDMockito.given(bookService.getByid(id)).willReturn(Optional.of(book));
+
+        //execution
+        MockHttpServletRequestBuilder mockHttpServletRequestBuilder =
+                MockMvcRequestBuilders.get(URL_BOOK_API+"/"+id)
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"3\"")
+                        .accept(MediaType.APPLICATION_JSON);
+
+        //verification
+        mockMvc.perform(mockHttpServletRequestBuilder)
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.ETAG, "\"4\""))
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.LAST_MODIFIED, "Fri, 10 Jan 2020 10:00:00 GMT"))
+                .andExpect(MockMvcResultMatchers.jsonPath("id").value(book.getId()));
+    }
+
     @Test
     @DisplayName("Deve deletar um livro")
     public void deleteBook() throws Exception {
@@ -199,7 +287,7 @@ public class BookControllerTest {
         Long id = book.getId();
 
         //mock
-        BDDMockito.given(bookService.getByid(Mockito.anyLong())).willReturn(Optional.of(book));
+        BDDMockito.given(bookService.getByidForUpdate(Mockito.anyLong())).willReturn(Optional.of(book));
         //BDDMockito.given(bookService.delete(Mockito.anyLong()));
 
         //execution
@@ -208,7 +296,7 @@ public class BookControllerTest {
 
         //verification
         mockMvc.perform(mockHttpServletRequestBuilder).andExpect(MockMvcResultMatchers.status().isNoContent());
-        Mockito.verify(bookService, Mockito.times(1)).getByid(id);
+        Mockito.verify(bookService, Mockito.times(1)).getByidForUpdate(id);
     }
 
     @Test
@@ -218,14 +306,14 @@ public class BookControllerTest {
         Long id = 67l;
 
         //mock
-        BDDMockito.given(bookService.getByid(Mockito.anyLong())).willReturn(Optional.empty());
+        BDDMockito.given(bookService.getByidForUpdate(Mockito.anyLong())).willReturn(Optional.empty());
 
         //execution
         MockHttpServletRequestBuilder mockHttpServletRequestBuilder = MockMvcRequestBuilders.delete(URL_BOOK_API+"/"+id);
 
         //verification
         mockMvc.perform(mockHttpServletRequestBuilder).andExpect(MockMvcResultMatchers.status().isNotFound());
-        Mockito.verify(bookService, Mockito.times(1)).getByid(id);
+        Mockito.verify(bookService, Mockito.times(1)).getByidForUpdate(id);
     }
 
     @Test
@@ -237,7 +325,7 @@ public class BookControllerTest {
 
         //mock**********************************************************************************************************
         Book existentBook = createNewBook();
-        BDDMockito.given(bookService.getByid(id)).willReturn(Optional.of(existentBook));
+        BDDMockito.given(bookService.getByidForUpdate(id)).willReturn(Optional.of(existentBook));
         Book updatedBook = createNewBook();
         updatedBook.setAuthor("Hirzts");
         updatedBook.setTitle("Vagalume da Luz Azul");
@@ -261,7 +349,7 @@ public class BookControllerTest {
                 .andExpect(MockMvcResultMatchers.jsonPath("title").value(updatedBook.getTitle()))
                 .andExpect(MockMvcResultMatchers.jsonPath("isbn").value(updatedBook.getIsbn()));
 
-        /*Mockito.verify(bookService, Mockito.times(1)).getByid(id);
+        /*Mockito.verify(bookService, Mockito.times(1)).getByidForUpdate(id);
         Mockito.verify(bookService, Mockito.times(1)).update(updatedBook);*/
     }
 
@@ -273,7 +361,7 @@ public class BookControllerTest {
         String bookDTOJson = new ObjectMapper().writeValueAsString(createNewBookDTO());
 
         //mock
-        BDDMockito.given(bookService.getByid(Mockito.anyLong())).willReturn(Optional.empty());
+        BDDMockito.given(bookService.getByidForUpdate(Mockito.anyLong())).willReturn(Optional.empty());
 
         //execution
         MockHttpServletRequestBuilder mockHttpServletRequestBuilder = MockMvcRequestBuilders.put(URL_BOOK_API.concat("/"+id))
@@ -296,7 +384,7 @@ public class BookControllerTest {
 
         //mock
         int page = 0, size = 100, total = 1;
-        PageImpl<Book> bookPage = new PageImpl<>(Arrays.asList(book), PageRequest.of(page, size), total);
+        PageImpl<BookDTO> bookPage = new PageImpl<>(Arrays.asList(toBookDTO(book)), PageRequest.of(page, size), total);
         BDDMockito.given(bookService.findByFilter(Mockito.any(Book.class), Mockito.any(Pageable.class))).willReturn(bookPage);
 
         //execution
@@ -324,7 +412,11 @@ public class BookControllerTest {
         Book existentBook = createNewBookManyLoans();
         String queryString = String.format("?page=0&size=10");
         String  rotaSubRecurso = URL_BOOK_API+"/"+id+"/loans"+queryString;
-        Page<Loan> pageLoan = new PageImpl<Loan>(existentBook.getLoans(), PageRequest.of(0, 10), 6);
+        List<LoanDTO> loans = existentBook.getLoans().stream().map(loan -> new LoanDTO(loan.getId(), loan.getIsbn(),
+                loan.getCustomer(), loan.getCustomerEmail(), loan.getReturned(), loan.getDueDate(), loan.getLoanDate(),
+                existentBook.getId(), existentBook.getTitle(), existentBook.getAuthor(), existentBook.getIsbn()))
+                .collect(Collectors.toList());
+        Page<LoanDTO> pageLoan = new PageImpl<LoanDTO>(loans, PageRequest.of(0, 10), 6);
 
         //mock da ** camada service **
         BDDMockito.given(bookService.getByid(id)).willReturn(Optional.of(existentBook));
@@ -347,6 +439,306 @@ public class BookControllerTest {
 //                .andExpect(MockMvcResultMatchers.jsonPath("loanDTOs[5]").exists());
     }
 
+    @Test
+    @DisplayName("Deve filtrar livros retornando um slice sem o total de elementos")
+    public void findBooksSlice() throws Exception {
+        //scenario
+        Book book = createNewBook();
+        String queryString = String.format("?title=%s&count=false&page=0&size=1", book.getTitle());
+        Slice<BookDTO> sliceBook = new SliceImpl<BookDTO>(Arrays.asList(toBookDTO(book)), PageRequest.of(0, 1), true);
+
+        //mock
+        BDDMockito.given(bookService.findSliceByFilter(Mockito.any(Book.class), Mockito.any(Pageable.class))).willReturn(sliceBook);
+
+        //execution
+        MockHttpServletRequestBuilder mockHttpServletRequestBuilder =
+                MockMvcRequestBuilders.get(URL_BOOK_API.concat(queryString))
+                        .accept(MediaType.APPLICATION_JSON);
+
+        //verification
+        mockMvc.perform(mockHttpServletRequestBuilder)
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("content", Matchers.hasSize(1)))
+                .andExpect(MockMvcResultMatchers.jsonPath("number").value(0))
+                .andExpect(MockMvcResultMatchers.jsonPath("size").value(1))
+                .andExpect(MockMvcResultMatchers.jsonPath("hasNext").value(true))
+                .andExpect(MockMvcResultMatchers.jsonPath("totalElements").doesNotExist());
+
+        Mockito.verify(bookService, Mockito.never()).findByFilter(Mockito.any(Book.class), Mockito.any(Pageable.class));
+    }
+
+    @Test
+    @DisplayName("Deve filtrar livros no modo keyset retornando o cursor da próxima página")
+    public void findBooksAfterCursor() throws Exception {
+        //scenario
+        Book book = createNewBook();
+        String queryString = String.format("?title=%s&after=%s&size=1&sort=title", book.getTitle(), "cursor-anterior");
+
+        //mock
+        BDDMockito.given(bookService.findByFilterAfter(Mockito.any(Book.class), Mockito.eq("cursor-anterior"), Mockito.any(Pageable.class)))
+                .willReturn(new CursorPage<BookDTO>(Arrays.asList(toBookDTO(book)), "proximo-cursor"));
+
+        //execution
+        MockHttpServletRequestBuilder mockHttpServletRequestBuilder =
+                MockMvcRequestBuilders.get(URL_BOOK_API.concat(queryString))
+                        .accept(MediaType.APPLICATION_JSON);
+
+        //verification
+        mockMvc.perform(mockHttpServletRequestBuilder)
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("content", Matchers.hasSize(1)))
+                .andExpect(MockMvcResultMatchers.jsonPath("content[0].isbn").value(book.getIsbn()))
+                .andExpect(MockMvcResultMatchers.jsonPath("size").value(1))
+                .andExpect(MockMvcResultMatchers.jsonPath("nextCursor").value("proximo-cursor"));
+
+        Mockito.verify(bookService, Mockito.never()).findByFilter(Mockito.any(Book.class), Mockito.any(Pageable.class));
+    }
+
+    @Test
+    @DisplayName("Deve criar livros em lote a partir de NDJSON com relatório dos itens rejeitados")
+    public void createBatchNdjson() throws Exception {
+        //scenario
+        String ndjson = "{\"title\":\"A mudança\",\"author\":\"Andres\",\"isbn\":\"123\"}\n"
+                + "{\"title\":\"Sem autor\",\"isbn\":\"456\"}\n"
+                + "{\"title\":\"A mudança 2\",\"author\":\"Andres\",\"isbn\":\"789\"}\n";
+        Book savedBook = createNewBook();
+
+        //mock - o isbn 789 já existe na base e não é inserido
+        BDDMockito.given(bookService.saveAll(Mockito.anyList())).willReturn(Arrays.asList(savedBook));
+
+        //execution
+        MockHttpServletRequestBuilder mockHttpServletRequestBuilder = MockMvcRequestBuilders.post(URL_BOOK_API.concat("/batch"))
+                .contentType("application/x-ndjson")
+                .accept(MediaType.APPLICATION_JSON)
+                .content(ndjson);
+
+        //verification
+        mockMvc.perform(mockHttpServletRequestBuilder)
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("received").value(3))
+                .andExpect(MockMvcResultMatchers.jsonPath("created").value(1))
+                .andExpect(MockMvcResultMatchers.jsonPath("rejected").value(2))
+                .andExpect(MockMvcResultMatchers.jsonPath("truncated").value(false))
+                .andExpect(MockMvcResultMatchers.jsonPath("items", Matchers.hasSize(2)))
+                .andExpect(MockMvcResultMatchers.jsonPath("items[0].index").value(1))
+                .andExpect(MockMvcResultMatchers.jsonPath("items[0].status").value("INVALID"))
+                .andExpect(MockMvcResultMatchers.jsonPath("items[0].isbn").value("456"))
+                .andExpect(MockMvcResultMatchers.jsonPath("items[1].index").value(2))
+                .andExpect(MockMvcResultMatchers.jsonPath("items[1].status").value("DUPLICATED"))
+                .andExpect(MockMvcResultMatchers.jsonPath("items[1].error").value(ConstantsError.MSG_ERROR_ISBN_ALREADY_EXISTS));
+
+        Mockito.verify(bookService, Mockito.times(1)).saveAll(Mockito.anyList());
+    }
+
+    @Test
+    @DisplayName("Deve parar a carga em lote no primeiro item com json inválido mantendo os anteriores")
+    public void createBatchInvalidJson() throws Exception {
+        //scenario
+        String json = "[{\"title\":\"A mudança\",\"author\":\"Andres\",\"isbn\":\"123\"}, {\"title\": ]";
+
+        //mock
+        BDDMockito.given(bookService.saveAll(Mockito.anyList())).willReturn(Arrays.asList(createNewBook()));
+
+        //execution
+        MockHttpServletRequestBuilder mockHttpServletRequestBuilder = MockMvcRequestBuilders.post(URL_BOOK_API.concat("/batch"))
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.APPLICATION_JSON)
+                .content(json);
+
+        //verification
+        mockMvc.perform(mockHttpServletRequestBuilder)
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("received").value(2))
+                .andExpect(MockMvcResultMatchers.jsonPath("created").value(1))
+                .andExpect(MockMvcResultMatchers.jsonPath("items[0].index").value(1))
+                .andExpect(MockMvcResultMatchers.jsonPath("items[0].status").value("INVALID"));
+    }
+
+    @Test
+    @DisplayName("Deve marcar como duplicado o isbn cadastrado por outra requisição durante a carga em lote")
+    public void createBatchConcurrentDuplicate() throws Exception {
+        //scenario
+        String ndjson = "{\"title\":\"A mudança\",\"author\":\"Andres\",\"isbn\":\"123\"}\n"
+                + "{\"title\":\"A mudança 2\",\"author\":\"Andres\",\"isbn\":\"789\"}\n";
+        Book savedBook = createNewBook();
+        DuplicateKeyException duplicateIsbn = new DuplicateKeyException(
+                "Unique index or primary key violation: \"PUBLIC.IDX_BOOK_ISBN ON PUBLIC.BOOK(ISBN) VALUES ('789', 2)\"");
+
+        //mock - o isbn 789 foi cadastrado depois da verificação, o chunk é desfeito e gravado um book por vez
+        BDDMockito.given(bookService.saveAll(Mockito.argThat(books -> books != null && books.size() == 2))).willThrow(duplicateIsbn);
+        BDDMockito.given(bookService.saveAll(Mockito.argThat(books -> books != null && books.size() == 1 && books.get(0).getIsbn().equals("123"))))
+                .willReturn(Arrays.asList(savedBook));
+        BDDMockito.given(bookService.saveAll(Mockito.argThat(books -> books != null && books.size() == 1 && books.get(0).getIsbn().equals("789"))))
+                .willThrow(duplicateIsbn);
+
+        //execution
+        MockHttpServletRequestBuilder mockHttpServletRequestBuilder = MockMvcRequestBuilders.post(URL_BOOK_API.concat("/batch"))
+                .contentType("application/x-ndjson")
+                .accept(MediaType.APPLICATION_JSON)
+                .content(ndjson);
+
+        //verification
+        mockMvc.perform(mockHttpServletRequestBuilder)
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("received").value(2))
+                .andExpect(MockMvcResultMatchers.jsonPath("created").value(1))
+                .andExpect(MockMvcResultMatchers.jsonPath("items", Matchers.hasSize(1)))
+                .andExpect(MockMvcResultMatchers.jsonPath("items[0].index").value(1))
+                .andExpect(MockMvcResultMatchers.jsonPath("items[0].status").value("DUPLICATED"));
+    }
+
+    @Test
+    @DisplayName("Deve limitar os itens rejeitados listados no relatório da carga em lote")
+    public void createBatchTruncatedReport() throws Exception {
+        //scenario
+        ReflectionTestUtils.setField(bookController, "batchMaxReportedRejections", 2);
+        String ndjson = "{\"title\":\"Sem autor 1\",\"isbn\":\"1\"}\n{\"title\":\"Sem autor 2\",\"isbn\":\"2\"}\n"
+                + "{\"title\":\"Sem autor 3\",\"isbn\":\"3\"}\n";
+
+        //mock
+        BDDMockito.given(bookService.saveAll(Mockito.anyList())).willReturn(Collections.emptyList());
+
+        //execution
+        MockHttpServletRequestBuilder mockHttpServletRequestBuilder = MockMvcRequestBuilders.post(URL_BOOK_API.concat("/batch"))
+                .contentType("application/x-ndjson")
+                .accept(MediaType.APPLICATION_JSON)
+                .content(ndjson);
+
+        //verification
+        try {
+            mockMvc.perform(mockHttpServletRequestBuilder)
+                    .andExpect(MockMvcResultMatchers.status().isOk())
+                    .andExpect(MockMvcResultMatchers.jsonPath("rejected").value(3))
+                    .andExpect(MockMvcResultMatchers.jsonPath("truncated").value(true))
+                    .andExpect(MockMvcResultMatchers.jsonPath("items", Matchers.hasSize(2)));
+        } finally {
+            ReflectionTestUtils.setField(bookController, "batchMaxReportedRejections", 1000);
+        }
+    }
+
+    @Test
+    @DisplayName("Deve exportar o catálogo em NDJSON comprimido com gzip quando aceito pelo cliente")
+    public void exportBooksGzip() throws Exception {
+        //scenario
+        String line = "{\"id\":12,\"title\":\"A mudança\",\"author\":\"Andres\",\"isbn\":\"123\"}\n";
+
+        //mock
+        BDDMockito.given(bookCatalogExport.export(Mockito.eq(BookExportFormat.NDJSON), Mockito.any(OutputStream.class)))
+                .willAnswer(invocation -> {
+                    invocation.getArgument(1, OutputStream.class).write(line.getBytes(StandardCharsets.UTF_8));
+                    return 1L;
+                });
+
+        //execution
+        MockHttpServletRequestBuilder mockHttpServletRequestBuilder = MockMvcRequestBuilders.get(URL_BOOK_API.concat("/export"))
+                .header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate");
+        MvcResult mvcResult = mockMvc.perform(mockHttpServletRequestBuilder)
+                .andExpect(MockMvcResultMatchers.request().asyncStarted())
+                .andReturn();
+
+        //verification
+        byte[] body = mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(mvcResult))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.content().contentType("application/x-ndjson"))
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"books.ndjson\""))
+                .andReturn().getResponse().getContentAsByteArray();
+        try (InputStream inputStream = new GZIPInputStream(new ByteArrayInputStream(body))) {
+            Assertions.assertThat(StreamUtils.copyToString(inputStream, StandardCharsets.UTF_8)).isEqualTo(line);
+        }
+    }
+
+    @Test
+    @DisplayName("Deve recusar a exportação do catálogo quando o limite de exportações simultâneas for atingido")
+    public void exportBooksTooManyConcurrentExports() throws Exception {
+        //scenario - as exportações em andamento ocupam todas as permissões
+        int permits = acquireAllExportPermits();
+
+        //execution
+        MockHttpServletRequestBuilder mockHttpServletRequestBuilder = MockMvcRequestBuilders.get(URL_BOOK_API.concat("/export"));
+
+        //verification
+        try {
+            mockMvc.perform(mockHttpServletRequestBuilder)
+                    .andExpect(MockMvcResultMatchers.status().isServiceUnavailable())
+                    .andExpect(MockMvcResultMatchers.jsonPath("errors[0]").value(ConstantsError.MSG_ERROR_TOO_MANY_EXPORTS));
+        } finally {
+            releaseExportPermits(permits);
+        }
+
+        Mockito.verifyNoInteractions(bookCatalogExport);
+    }
+
+    @Test
+    @DisplayName("Deve devolver a permissão de exportação quando a exportação do catálogo falhar")
+    public void exportBooksReleasePermitOnFailure() throws Exception {
+        //scenario
+        int permits = acquireAllExportPermits();
+        releaseExportPermits(permits);
+
+        //mock
+        BDDMockito.given(bookCatalogExport.export(Mockito.eq(BookExportFormat.NDJSON), Mockito.any(OutputStream.class)))
+                .willThrow(new IOException("Broken pipe"));
+
+        //execution
+        MockHttpServletRequestBuilder mockHttpServletRequestBuilder = MockMvcRequestBuilders.get(URL_BOOK_API.concat("/export"))
+                .header(HttpHeaders.ACCEPT_ENCODING, "gzip");
+        MvcResult mvcResult = mockMvc.perform(mockHttpServletRequestBuilder)
+                .andExpect(MockMvcResultMatchers.request().asyncStarted())
+                .andReturn();
+        mvcResult.getAsyncResult();
+
+        //verification
+        int available = acquireAllExportPermits();
+        releaseExportPermits(available);
+        Assertions.assertThat(available).isEqualTo(permits);
+    }
+
+    @Test
+    @DisplayName("Deve lançar erro ao exportar o catálogo em um formato desconhecido")
+    public void exportBooksInvalidFormat() throws Exception {
+        //execution
+        MockHttpServletRequestBuilder mockHttpServletRequestBuilder = MockMvcRequestBuilders.get(URL_BOOK_API.concat("/export"))
+                .param("format", "xml");
+
+        //verification
+        mockMvc.perform(mockHttpServletRequestBuilder)
+                .andExpect(MockMvcResultMatchers.status().isBadRequest())
+                .andExpect(MockMvcResultMatchers.jsonPath("errors[0]").value(ConstantsError.MSG_ERROR_INVALID_EXPORT_FORMAT));
+
+        Mockito.verifyNoInteractions(bookCatalogExport);
+    }
+
+    @Test
+    @DisplayName("Deve retornar resource not found ao transmitir o histórico de loans de um livro inexistente")
+    public void streamLoansFromInexistentBook() throws Exception {
+        //mock
+        BDDMockito.given(bookService.getByid(Mockito.anyLong())).willReturn(Optional.empty());
+
+        //execution
+        MockHttpServletRequestBuilder mockHttpServletRequestBuilder = MockMvcRequestBuilders.get(URL_BOOK_API.concat("/12/loans/stream"));
+
+        //verification
+        mockMvc.perform(mockHttpServletRequestBuilder)
+                .andExpect(MockMvcResultMatchers.status().isNotFound());
+
+        Mockito.verifyNoInteractions(loanHistoryExport);
+    }
+
+    private int acquireAllExportPermits() {
+        int permits = 0;
+        while (exportPermits.tryAcquire()) {
+            permits++;
+        }
+        return permits;
+    }
+
+    private void releaseExportPermits(int permits) {
+        for (int i = 0; i < permits; i++) {
+            exportPermits.release();
+        }
+    }
+
     private BookDTO createNewBookDTO() {
         return BookDTO.builder().author("Andres").isbn("123").title("A mudança").build();
     }
@@ -355,6 +747,11 @@ public class BookControllerTest {
         return Book.builder().id(12l).author("Andres").isbn("123").title("A mudança").build();
     }
 
+    //projeção do book, como retornada pelo BookService nas listagens
+    private BookDTO toBookDTO(Book book) {
+        return new BookDTO(book.getId(), book.getTitle(), book.getAuthor(), book.getIsbn());
+    }
+
     private Book createNewBookManyLoans() {
         Book book = Book.builder().id(12l).author("Andres").isbn("123").title("A mudança").build();
         List<Loan> loans = Arrays.asList(
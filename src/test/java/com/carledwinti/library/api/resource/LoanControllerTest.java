@@ -3,12 +3,16 @@ package com.carledwinti.library.api.resource;
 import com.carledwinti.library.api.constants.ConstantsError;
 import com.carledwinti.library.api.dto.LoanDTO;
 import com.carledwinti.library.api.dto.LoanFilterDTO;
+import com.carledwinti.library.api.dto.ResourceVersionDTO;
 import com.carledwinti.library.api.dto.ReturnedLoanDTO;
 import com.carledwinti.library.api.exception.BusinessException;
 import com.carledwinti.library.api.model.Book;
 import com.carledwinti.library.api.model.Loan;
+import com.carledwinti.library.api.pagination.CursorPage;
 import com.carledwinti.library.api.service.BookService;
 import com.carledwinti.library.api.service.LoanService;
+import com.carledwinti.library.api.service.export.ExportPermits;
+import com.carledwinti.library.api.service.export.LoanHistoryExport;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.hamcrest.Matchers;
@@ -21,18 +25,26 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
 
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.time.LocalDate;
 import java.util.Arrays;
 import java.util.Optional;
@@ -41,6 +53,7 @@ import java.util.Optional;
 @ActiveProfiles("test")
 @WebMvcTest(controllers = {LoanController.class})
 @AutoConfigureMockMvc
+@Import(ExportPermits.class)
 public class LoanControllerTest {
 
     static String URL_LOAN_API = "/api/loans";
@@ -54,6 +67,9 @@ public class LoanControllerTest {
     @MockBean
     LoanService loanService;
 
+    @MockBean
+    LoanHistoryExport loanHistoryExport;
+
     @Test
     @DisplayName("Deve realizar um empréstimo")
     public void createLoan() throws Exception {
@@ -143,6 +159,67 @@ public class LoanControllerTest {
         Mockito.verify(bookService, Mockito.times(1)).getBookByIsbn(isbn);
     }
 
+    @Test
+    @DisplayName("Deve retornar not modified sem consultar o empréstimo quando não houver alteração desde a data informada")
+    public void getLoanNotModified() throws Exception {
+        //scenario
+        Long loanId = 1l;
+        ResourceVersionDTO version = new ResourceVersionDTO(0l, Instant.parse("2020-01-10T10:00:00Z"));
+
+        //mock
+        BDDMockito.given(loanService.getVersion(loanId)).willReturn(Optional.of(version));
+
+        //execution
+        MockHttpServletRequestBuilder mockHttpServletRequestBuilder =
+                MockMvcRequestBuilders.get(URL_LOAN_API.concat("/") + loanId)
+                        .header(HttpHeaders.IF_MODIFIED_SINCE, "Fri, 10 Jan 2020 10:00:00 GMT")
+                        .accept(MediaType.APPLICATION_JSON);
+
+        //verification
+        mockMvc.perform(mockHttpServletRequestBuilder).andExpect(MockMvcResultMatchers.status().isNotModified());
+        Mockito.verify(loanService, Mockito.never()).getDTOById(Mockito.anyLong());
+    }
+
+    @Test
+    @DisplayName("Deve obter um empréstimo com o seu ETag")
+    public void getLoanTest() throws Exception {
+        //scenario
+        Long loanId = 1l;
+        LoanDTO loan = savedLoanDTO();
+        ResourceVersionDTO version = new ResourceVersionDTO(1l, Instant.parse("2020-01-10T10:00:00Z"));
+
+        //mock
+        BDDMockito.given(loanService.getVersion(loanId)).willReturn(Optional.of(version));
+        BDDMockito.given(loanService.getDTOById(loanId)).willReturn(Optional.of(loan));
+
+        //execution
+        MockHttpServletRequestBuilder mockHttpServletRequestBuilder =
+                MockMvcRequestBuilders.get(URL_LOAN_API.concat("/") + loanId)
+                        .accept(MediaType.APPLICATION_JSON);
+
+        //verification
+        mockMvc.perform(mockHttpServletRequestBuilder)
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.ETAG, "\"1\""))
+                .andExpect(MockMvcResultMatchers.jsonPath("id").value(loan.getId()));
+    }
+
+    @Test
+    @DisplayName("Deve retornar resource not found quando o empréstimo procurado não existir")
+    public void loanNotFoundTest() throws Exception {
+        //mock
+        BDDMockito.given(loanService.getVersion(Mockito.anyLong())).willReturn(Optional.empty());
+        BDDMockito.given(loanService.getDTOById(Mockito.anyLong())).willReturn(Optional.empty());
+
+        //execution
+        MockHttpServletRequestBuilder mockHttpServletRequestBuilder =
+                MockMvcRequestBuilders.get(URL_LOAN_API.concat("/") + 1l)
+                        .accept(MediaType.APPLICATION_JSON);
+
+        //verification
+        mockMvc.perform(mockHttpServletRequestBuilder).andExpect(MockMvcResultMatchers.status().isNotFound());
+    }
+
     @Test
     @DisplayName("Deve retornar um livro")
     public void returnBookTest() throws Exception {
@@ -205,11 +282,11 @@ public class LoanControllerTest {
     public void findLoanByFilter() throws Exception {
         //scenario
         Long loanId = 1l;
-        Loan existentLoan = savedLoan();
+        LoanDTO existentLoan = savedLoanDTO();
         LoanFilterDTO loanFilterDTO = LoanFilterDTO.builder().isbn("").customer("").build();
         Loan loanFilter = Loan.builder().isbn("").customer("").build();
         int page=0, size=12, total=1;
-        Page<Loan> loanPage = new PageImpl<Loan>(Arrays.asList(existentLoan), PageRequest.of(page, size), total);
+        Page<LoanDTO> loanPage = new PageImpl<LoanDTO>(Arrays.asList(existentLoan), PageRequest.of(page, size), total);
         String queryString = String.format("?isbn=%s&customer=%s&page=0&size=12", loanFilterDTO.getIsbn(), loanFilterDTO.getCustomer());
 
         //mock
@@ -233,6 +310,86 @@ public class LoanControllerTest {
         Mockito.verify(loanService, Mockito.times(1)).findByFilter(loanFilter, loanPage.getPageable());
     }
 
+    @Test
+    @DisplayName("Deve filtrar loans retornando um slice sem o total de elementos")
+    public void findLoanSliceByFilter() throws Exception {
+        //scenario
+        Loan loanFilter = Loan.builder().isbn("123").customer("Lariano").build();
+        Slice<LoanDTO> loanSlice = new SliceImpl<LoanDTO>(Arrays.asList(savedLoanDTO()), PageRequest.of(0, 12), false);
+        String queryString = "?isbn=123&customer=Lariano&count=false&page=0&size=12";
+
+        //mock
+        BDDMockito.given(loanService.findSliceByFilter(loanFilter, PageRequest.of(0, 12))).willReturn(loanSlice);
+
+        //execution
+        MockHttpServletRequestBuilder mockHttpServletRequestBuilder =
+                MockMvcRequestBuilders.get(URL_LOAN_API.concat(queryString))
+                        .accept(MediaType.APPLICATION_JSON);
+
+        //verification
+        mockMvc.perform(mockHttpServletRequestBuilder)
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("content", Matchers.hasSize(1)))
+                .andExpect(MockMvcResultMatchers.jsonPath("size").value(12))
+                .andExpect(MockMvcResultMatchers.jsonPath("hasNext").value(false));
+
+        Mockito.verify(loanService, Mockito.never()).findByFilter(Mockito.any(Loan.class), Mockito.any(Pageable.class));
+    }
+
+    @Test
+    @DisplayName("Deve filtrar loans no modo keyset sem cursor na primeira página")
+    public void findLoanByFilterAfter() throws Exception {
+        //scenario
+        LoanDTO existentLoan = savedLoanDTO();
+        Loan loanFilter = Loan.builder().isbn("123").build();
+        String queryString = "?isbn=123&after=&size=12";
+
+        //mock - última página, sem nextCursor
+        BDDMockito.given(loanService.findByFilterAfter(Mockito.eq(loanFilter), Mockito.eq(""), Mockito.any(Pageable.class)))
+                .willReturn(new CursorPage<LoanDTO>(Arrays.asList(existentLoan), null));
+
+        //execution
+        MockHttpServletRequestBuilder mockHttpServletRequestBuilder =
+                MockMvcRequestBuilders.get(URL_LOAN_API.concat(queryString))
+                        .accept(MediaType.APPLICATION_JSON);
+
+        //verification
+        mockMvc.perform(mockHttpServletRequestBuilder)
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("content", Matchers.hasSize(1)))
+                .andExpect(MockMvcResultMatchers.jsonPath("content[0].bookDTO.isbn").value("123"))
+                .andExpect(MockMvcResultMatchers.jsonPath("size").value(12))
+                .andExpect(MockMvcResultMatchers.jsonPath("nextCursor").doesNotExist());
+    }
+
+    @Test
+    @DisplayName("Deve transmitir o histórico de loans do customer em NDJSON")
+    public void streamLoansFromCustomer() throws Exception {
+        //scenario
+        String line = "{\"id\":1,\"customer\":\"Lariano\"}\n";
+
+        //mock
+        BDDMockito.given(loanHistoryExport.exportByCustomer(Mockito.eq("Lariano"), Mockito.any(OutputStream.class)))
+                .willAnswer(invocation -> {
+                    invocation.getArgument(1, OutputStream.class).write(line.getBytes(StandardCharsets.UTF_8));
+                    return 1L;
+                });
+
+        //execution
+        MockHttpServletRequestBuilder mockHttpServletRequestBuilder = MockMvcRequestBuilders.get(URL_LOAN_API.concat("/stream"))
+                .param("customer", "Lariano");
+        MvcResult mvcResult = mockMvc.perform(mockHttpServletRequestBuilder)
+                .andExpect(MockMvcResultMatchers.request().asyncStarted())
+                .andReturn();
+
+        //verification
+        mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(mvcResult))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.content().contentType("application/x-ndjson"))
+                .andExpect(MockMvcResultMatchers.header().doesNotExist(HttpHeaders.CONTENT_ENCODING))
+                .andExpect(MockMvcResultMatchers.content().string(line));
+    }
+
     private LoanDTO createNewLoanDTO(){
         return LoanDTO.builder().isbn("123").customer("Lariano").customerEmail("lariano@email.com").build();
     }
@@ -249,6 +406,14 @@ public class LoanControllerTest {
                 .build();
     }
 
+    //projeção do savedLoan, como retornada pelo LoanService nas leituras
+    private LoanDTO savedLoanDTO(){
+        Loan loan = savedLoan();
+        Book book = loan.getBook();
+        return new LoanDTO(loan.getId(), loan.getIsbn(), loan.getCustomer(), loan.getCustomerEmail(), loan.getReturned(),
+                loan.getDueDate(), loan.getLoanDate(), book.getId(), book.getTitle(), book.getAuthor(), book.getIsbn());
+    }
+
     private Book existentBook(){
         return Book.builder().id(5678l).title("Antenor Santanará").isbn("123").author("Milanes").build();
     }
@@ -1,28 +1,39 @@
 package com.carledwinti.library.api.service;
 
 import com.carledwinti.library.api.constants.ConstantsError;
+import com.carledwinti.library.api.dto.BookDTO;
 import com.carledwinti.library.api.exception.BusinessException;
 import com.carledwinti.library.api.model.Book;
+import com.carledwinti.library.api.pagination.CursorPage;
+import com.carledwinti.library.api.pagination.Keyset;
 import com.carledwinti.library.api.repository.BookRepository;
 import com.carledwinti.library.api.service.impl.BookServiceImpl;
+import com.carledwinti.library.api.service.search.BookSearchIndex;
+import com.carledwinti.library.api.service.search.IsbnBloomFilter;
 import org.assertj.core.api.Assertions;
+import org.hibernate.exception.ConstraintViolationException;
 import org.hamcrest.Matchers;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 import org.springframework.boot.test.mock.mockito.MockBean;
-import org.springframework.data.domain.Example;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
+import java.sql.SQLException;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 //Esta classe diferente da classe de teste para o Controller precisa somente das @s abaixo
 @ExtendWith(SpringExtension.class)//sobe o context para os testes
@@ -43,7 +54,7 @@ public class BookServiceTest {
 
     @BeforeEach
     public void setUp(){
-        this.bookService = new BookServiceImpl(bookRepository);
+        this.bookService = new BookServiceImpl(bookRepository, new BookSearchIndex(), new IsbnBloomFilter(0.01));
     }
 
     @Test
@@ -96,6 +107,42 @@ public class BookServiceTest {
         Mockito.verify(bookRepository, Mockito.never()).save(book);
     }
 
+    @Test
+    @DisplayName("Deve lançar erro de negocio quando o isbn for cadastrado por outra requisição antes do insert")
+    public void shoudNotSaveABookWithConcurrentDuplicatedISBN(){
+        //scenario
+        Book book = createValidBook();
+        book.setId(null);
+        //mock - o isbn ainda não existia na verificação e o insert viola o índice único
+        Mockito.when(bookRepository.existsByIsbn(Mockito.anyString())).thenReturn(false);
+        Mockito.when(bookRepository.save(book)).thenThrow(new DataIntegrityViolationException("could not execute statement",
+                new ConstraintViolationException("could not execute statement", new SQLException(), "PUBLIC.IDX_BOOK_ISBN")));
+        //execution
+        Throwable throwable = Assertions.catchThrowable(() -> bookService.save(book));
+
+        //verification
+        Assertions.assertThat(throwable)
+                .isInstanceOf(BusinessException.class)
+                .hasMessage(ConstantsError.MSG_ERROR_ISBN_ALREADY_EXISTS);
+    }
+
+    @Test
+    @DisplayName("Deve propagar violações de integridade que não são do isbn ao salvar livro")
+    public void shoudPropagateOtherIntegrityViolationsOnSave(){
+        //scenario
+        Book book = createValidBook();
+        book.setId(null);
+        DataIntegrityViolationException notNullViolation = new DataIntegrityViolationException("NULL not allowed for column \"TITLE\"");
+        //mock
+        Mockito.when(bookRepository.existsByIsbn(Mockito.anyString())).thenReturn(false);
+        Mockito.when(bookRepository.save(book)).thenThrow(notNullViolation);
+        //execution
+        Throwable throwable = Assertions.catchThrowable(() -> bookService.save(book));
+
+        //verification
+        Assertions.assertThat(throwable).isSameAs(notNullViolation);
+    }
+
     @Test
     @DisplayName("Deve obter um livro por id")
     public void getByid(){
@@ -266,14 +313,15 @@ public class BookServiceTest {
         Book bookFilter = existentBook();
         int page=0, size=10,total=1;
         PageRequest pageRequest = PageRequest.of(page, size);
-        Page<Book> bookPage = new PageImpl<>(Arrays.asList(bookFilter), pageRequest, total);
-        List<Book> bookList = Arrays.asList(bookFilter);
+        List<BookDTO> bookList = Arrays.asList(new BookDTO(bookFilter.getId(), bookFilter.getTitle(),
+                bookFilter.getAuthor(), bookFilter.getIsbn()));
+        Page<BookDTO> bookPage = new PageImpl<>(bookList, pageRequest, total);
 
         //mock
-        Mockito.when(bookRepository.findAll(Mockito.any(Example.class), Mockito.any(PageRequest.class))).thenReturn(bookPage);
+        Mockito.when(bookRepository.findPageByFilter(bookFilter, pageRequest)).thenReturn(bookPage);
 
         //execution
-        Page<Book> foundBooksFilter = bookService.findByFilter(bookFilter, pageRequest);
+        Page<BookDTO> foundBooksFilter = bookService.findByFilter(bookFilter, pageRequest);
 
         //verification
         Assertions.assertThat(foundBooksFilter).isNotNull();
@@ -284,6 +332,69 @@ public class BookServiceTest {
         Assertions.assertThat(foundBooksFilter.getTotalElements()).isEqualTo(1);
     }
 
+    @Test
+    @DisplayName("Deve filtrar livros pelo índice de busca carregando da base somente os ids da página")
+    public void findBookByFilterWithSearchIndex(){
+        //scenario
+        BookSearchIndex bookSearchIndex = new BookSearchIndex();
+        Book lua = Book.builder().id(1l).title("Lua Nova").author("Derik").isbn("1").build();
+        Book luaCristal = Book.builder().id(3l).title("A lua de Cristal").author("Derik").isbn("3").build();
+        bookSearchIndex.index(Arrays.asList(lua, luaCristal, Book.builder().id(2l).title("Sol").author("Ana").isbn("2").build()));
+        bookSearchIndex.markReady();
+        bookService = new BookServiceImpl(bookRepository, bookSearchIndex, new IsbnBloomFilter(0.01));
+        PageRequest pageRequest = PageRequest.of(0, 10, Sort.by("title"));
+
+        //mock - o in(:ids) não retorna na ordem dos ids
+        Mockito.when(bookRepository.findDTOsByIds(Arrays.asList(3l, 1l))).thenReturn(Arrays.asList(
+                new BookDTO(1l, "Lua Nova", "Derik", "1"), new BookDTO(3l, "A lua de Cristal", "Derik", "3")));
+
+        //execution
+        Page<BookDTO> foundBooks = bookService.findByFilter(Book.builder().title("LUA").build(), pageRequest);
+
+        //verification
+        Assertions.assertThat(foundBooks.getContent()).extracting(BookDTO::getId).containsExactly(3l, 1l);
+        Assertions.assertThat(foundBooks.getTotalElements()).isEqualTo(2);
+        Mockito.verify(bookRepository, Mockito.never()).findPageByFilter(Mockito.any(Book.class), Mockito.any(PageRequest.class));
+    }
+
+    @Test
+    @DisplayName("Deve buscar o slice e a página keyset pelo índice de busca sem consultar o filtro na base")
+    public void findBookSliceAndKeysetWithSearchIndex(){
+        //scenario
+        BookSearchIndex bookSearchIndex = new BookSearchIndex();
+        bookSearchIndex.index(Arrays.asList(Book.builder().id(1l).title("Lua Nova").author("Derik").isbn("1").build(),
+                Book.builder().id(3l).title("A lua de Cristal").author("Derik").isbn("3").build(),
+                Book.builder().id(2l).title("Sol").author("Ana").isbn("2").build()));
+        bookSearchIndex.markReady();
+        bookService = new BookServiceImpl(bookRepository, bookSearchIndex, new IsbnBloomFilter(0.01));
+        Book filter = Book.builder().title("LUA").build();
+        PageRequest pageRequest = PageRequest.of(0, 1, Sort.by("title"));
+
+        //mock
+        Mockito.when(bookRepository.findDTOsByIds(Arrays.asList(3l)))
+                .thenReturn(Arrays.asList(new BookDTO(3l, "A lua de Cristal", "Derik", "3")));
+        Mockito.when(bookRepository.findDTOsByIds(Arrays.asList(3l, 1l))).thenReturn(Arrays.asList(
+                new BookDTO(1l, "Lua Nova", "Derik", "1"), new BookDTO(3l, "A lua de Cristal", "Derik", "3")));
+        Mockito.when(bookRepository.findDTOsByIds(Arrays.asList(1l)))
+                .thenReturn(Arrays.asList(new BookDTO(1l, "Lua Nova", "Derik", "1")));
+
+        //execution
+        Slice<BookDTO> slice = bookService.findSliceByFilter(filter, pageRequest);
+        CursorPage<BookDTO> firstPage = bookService.findByFilterAfter(filter, "", pageRequest);
+        CursorPage<BookDTO> lastPage = bookService.findByFilterAfter(filter, firstPage.getNextCursor(), pageRequest);
+
+        //verification
+        Assertions.assertThat(slice.getContent()).extracting(BookDTO::getId).containsExactly(3l);
+        Assertions.assertThat(slice.hasNext()).isTrue();
+        Assertions.assertThat(firstPage.getContent()).extracting(BookDTO::getId).containsExactly(3l);
+        Assertions.assertThat(firstPage.getNextCursor()).isNotNull();
+        Assertions.assertThat(lastPage.getContent()).extracting(BookDTO::getId).containsExactly(1l);
+        Assertions.assertThat(lastPage.getNextCursor()).isNull();
+        Mockito.verify(bookRepository, Mockito.never()).findSliceByFilter(Mockito.any(Book.class), Mockito.any(PageRequest.class));
+        Mockito.verify(bookRepository, Mockito.never())
+                .findByFilterAfter(Mockito.any(Book.class), Mockito.any(Keyset.class), Mockito.anyInt());
+    }
+
     @Test
     @DisplayName("Deve obter um book by isbn")
     public void getBookByIsbn(){
@@ -307,6 +418,103 @@ public class BookServiceTest {
         Mockito.verify(bookRepository, Mockito.times(1)).findByIsbn(isbn);
     }
 
+    @Test
+    @DisplayName("Deve responder pelo bloom filter os isbns inexistentes sem consultar a base")
+    public void getBookByIsbnNotInFilter(){
+        //scenario
+        IsbnBloomFilter isbnBloomFilter = new IsbnBloomFilter(0.01);
+        isbnBloomFilter.rebuild(1, () -> Stream.of("123"));
+        bookService = new BookServiceImpl(bookRepository, new BookSearchIndex(), isbnBloomFilter);
+
+        //mock
+        Mockito.when(bookRepository.findByIsbn("123")).thenReturn(Optional.of(existentBook()));
+
+        //execution
+        Optional<Book> notFoundBook = bookService.getBookByIsbn("978-0000");
+        Optional<Book> foundBook = bookService.getBookByIsbn("123");
+
+        //verification
+        Assertions.assertThat(notFoundBook).isEmpty();
+        Assertions.assertThat(foundBook).isPresent();
+        Mockito.verify(bookRepository, Mockito.never()).findByIsbn("978-0000");
+        Mockito.verify(bookRepository, Mockito.times(1)).findByIsbn("123");
+    }
+
+
+    @Test
+    @DisplayName("Deve salvar um lote de livros ignorando isbns existentes e repetidos")
+    public void saveAllBooks(){
+        //scenario
+        Book newBook = Book.builder().isbn("1").title("Carros Velozes").author("Vegan Unbras").build();
+        Book existentIsbnBook = Book.builder().isbn("2").title("A vida de Sararhik").author("Blano").build();
+        Book repeatedIsbnBook = Book.builder().isbn("1").title("Carros Lentos").author("Vegan Unbras").build();
+        List<Book> books = Arrays.asList(newBook, existentIsbnBook, repeatedIsbnBook);
+
+        //mock
+        Mockito.when(bookRepository.findExistentIsbns(Arrays.asList("1", "2", "1"))).thenReturn(Arrays.asList("2"));
+        Mockito.when(bookRepository.insertAll(Arrays.asList(newBook))).thenReturn(Arrays.asList(newBook));
+
+        //execution
+        List<Book> savedBooks = bookService.saveAll(books);
+
+        //verification
+        Assertions.assertThat(savedBooks).containsExactly(newBook);
+        Mockito.verify(bookRepository, Mockito.times(1)).insertAll(Arrays.asList(newBook));
+        Mockito.verify(bookRepository, Mockito.never()).save(Mockito.any(Book.class));
+    }
+
+    @Test
+    @DisplayName("Deve retornar a página keyset com o cursor da próxima página")
+    public void findByFilterAfter(){
+        //scenario
+        Book filter = Book.builder().title("Carros").build();
+        PageRequest pageRequest = PageRequest.of(0, 2, Sort.by("title"));
+        List<BookDTO> books = Arrays.asList(
+                BookDTO.builder().id(7l).title("Carros Lentos").build(),
+                BookDTO.builder().id(3l).title("Carros: Velozes").build(),
+                BookDTO.builder().id(5l).title("Carros Velozes 2").build());
+
+        //mock - o repository retorna size + 1 linhas quando existe uma próxima página
+        Mockito.when(bookRepository.findByFilterAfter(Mockito.eq(filter), Mockito.any(Keyset.class), Mockito.eq(3)))
+                .thenReturn(books);
+
+        //execution
+        CursorPage<BookDTO> firstPage = bookService.findByFilterAfter(filter, "", pageRequest);
+        bookService.findByFilterAfter(filter, firstPage.getNextCursor(), pageRequest);
+
+        //verification
+        Assertions.assertThat(firstPage.getContent()).containsExactly(books.get(0), books.get(1));
+        Assertions.assertThat(firstPage.getNextCursor()).isNotNull();
+        ArgumentCaptor<Keyset> keysets = ArgumentCaptor.forClass(Keyset.class);
+        Mockito.verify(bookRepository, Mockito.times(2)).findByFilterAfter(Mockito.eq(filter), keysets.capture(), Mockito.eq(3));
+        Assertions.assertThat(keysets.getAllValues().get(0).isFirstPage()).isTrue();
+        Keyset nextKeyset = keysets.getAllValues().get(1);
+        Assertions.assertThat(nextKeyset.getProperty()).isEqualTo("title");
+        Assertions.assertThat(nextKeyset.getDirection()).isEqualTo(Sort.Direction.ASC);
+        Assertions.assertThat(nextKeyset.getValue()).isEqualTo("Carros: Velozes");
+        Assertions.assertThat(nextKeyset.getId()).isEqualTo(3l);
+    }
+
+    @Test
+    @DisplayName("Deve lançar erro de negócio ao receber cursor ou ordenação inválidos")
+    public void findByFilterAfterInvalidCursor(){
+        //scenario
+        Book filter = Book.builder().build();
+
+        //execution
+        Throwable invalidCursor = Assertions.catchThrowable(() ->
+                bookService.findByFilterAfter(filter, "não-é-um-cursor", PageRequest.of(0, 10)));
+        Throwable invalidSort = Assertions.catchThrowable(() ->
+                bookService.findByFilterAfter(filter, "", PageRequest.of(0, 10, Sort.by("loans"))));
+
+        //verification
+        Assertions.assertThat(invalidCursor).isInstanceOf(BusinessException.class)
+                .hasMessage(ConstantsError.MSG_ERROR_INVALID_CURSOR);
+        Assertions.assertThat(invalidSort).isInstanceOf(BusinessException.class)
+                .hasMessageStartingWith(ConstantsError.MSG_ERROR_INVALID_CURSOR_SORT);
+        Mockito.verify(bookRepository, Mockito.never())
+                .findByFilterAfter(Mockito.any(Book.class), Mockito.any(Keyset.class), Mockito.anyInt());
+    }
 
     private Book existentBook() {
         return Book.builder().id(13l).author("Vegan Unbras").isbn("123").title("Carros Velozes").build();
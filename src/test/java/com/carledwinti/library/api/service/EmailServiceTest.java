@@ -0,0 +1,80 @@
+package com.carledwinti.library.api.service;
+
+import com.carledwinti.library.api.config.ExecutionThreads;
+import com.carledwinti.library.api.service.impl.EmailServiceImpl;
+import com.carledwinti.library.api.service.mail.MailDispatcher;
+import com.icegreen.greenmail.util.GreenMail;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.mail.internet.MimeMessage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+public class EmailServiceTest {
+
+    GreenMail greenMail;
+
+    MailDispatcher mailDispatcher;
+
+    EmailService emailService;
+
+    @BeforeEach
+    public void setUp(){
+        //servidor SMTP local(porta 3025) no lugar do mailtrap
+        greenMail = new GreenMail(ServerSetupTest.SMTP);
+        greenMail.start();
+        JavaMailSenderImpl javaMailSender = new JavaMailSenderImpl();
+        javaMailSender.setHost("localhost");
+        javaMailSender.setPort(ServerSetupTest.SMTP.getPort());
+        javaMailSender.setDefaultEncoding("UTF-8");
+        mailDispatcher = new MailDispatcher(javaMailSender, new SimpleMeterRegistry(), new ExecutionThreads(false), 2, 10, 3, 10);
+        emailService = new EmailServiceImpl(mailDispatcher);
+        ReflectionTestUtils.setField(emailService, "sender", "library.api@carledwinti.com");
+        ReflectionTestUtils.setField(emailService, "batchSize", 50);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        mailDispatcher.shutdown();
+        greenMail.stop();
+    }
+
+    @Test
+    @DisplayName("Deve enviar uma mensagem por destinatário dos empréstimos atrasados")
+    public void sendEmailToLoansOverduePerRecipient() throws Exception {
+        //scenario
+        List<String> emails = new ArrayList<>();
+        for (int i = 0; i < 120; i++) {
+            emails.add("customer" + i + "@email.com");
+        }
+
+        //execution
+        emailService.sendEmailToLoansOverdue("Atrasado", emails).get(5, TimeUnit.SECONDS);
+
+        //verification
+        //120 mensagens enviadas em 3 grupos(50, 50 e 20) pela mesma conexão, nenhum customer vê o email dos outros
+        MimeMessage[] received = greenMail.getReceivedMessages();
+        Assertions.assertThat(received).hasSize(120);
+        Assertions.assertThat(received[0].getSubject()).isEqualTo("Livro com empréstimo em atraso");
+        List<String> recipients = new ArrayList<>();
+        for (MimeMessage message : received) {
+            Assertions.assertThat(message.getAllRecipients()).hasSize(1);
+            recipients.add(message.getAllRecipients()[0].toString());
+        }
+        Assertions.assertThat(recipients).containsExactlyInAnyOrderElementsOf(emails);
+    }
+}
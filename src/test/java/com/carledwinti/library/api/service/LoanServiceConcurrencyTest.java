@@ -0,0 +1,135 @@
+package com.carledwinti.library.api.service;
+
+import com.carledwinti.library.api.exception.BusinessException;
+import com.carledwinti.library.api.model.Book;
+import com.carledwinti.library.api.model.Loan;
+import com.carledwinti.library.api.repository.BookRepository;
+import com.carledwinti.library.api.repository.LoanRepository;
+import com.carledwinti.library.api.service.impl.LoanServiceImpl;
+import com.carledwinti.library.api.service.lock.BookLocks;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@DataJpaTest
+//sem a transação do teste, cada empréstimo precisa commitar para ser visto pelas outras threads
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class LoanServiceConcurrencyTest {
+
+    private static final int THREADS = 64;
+
+    @Autowired
+    LoanRepository loanRepository;
+
+    @Autowired
+    BookRepository bookRepository;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    LoanService loanService;
+
+    ExecutorService executorService;
+
+    @BeforeEach
+    public void setUp(){
+        loanService = new LoanServiceImpl(loanRepository, new TransactionTemplate(transactionManager), new BookLocks(256));
+        executorService = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        executorService.shutdown();
+        executorService.awaitTermination(10, TimeUnit.SECONDS);
+        loanRepository.deleteAll();
+        bookRepository.deleteAll();
+    }
+
+    @Test
+    @DisplayName("Deve emprestar o livro uma única vez com 64 requisições concorrentes para o mesmo livro")
+    public void concurrentLoansForSameBook() throws Exception {
+        //scenario
+        Book book = bookRepository.save(Book.builder().title("Sistema Solar").author("Urntin").isbn("6678").build());
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            books.add(book);
+        }
+
+        //execution
+        List<Boolean> results = loanConcurrently(books);
+
+        //verification
+        Assertions.assertThat(results).filteredOn(loaned -> loaned).hasSize(1);
+        Assertions.assertThat(loanRepository.count()).isEqualTo(1);
+        Assertions.assertThat(loanRepository.existsByBookAndNotReturned(book)).isTrue();
+        Assertions.assertThat(bookRepository.findById(book.getId()).get().getActiveLoanId())
+                .isEqualTo(loanRepository.findAll().get(0).getId());
+    }
+
+    @Test
+    @DisplayName("Deve emprestar em paralelo livros diferentes com 64 requisições concorrentes")
+    public void concurrentLoansForDifferentBooks() throws Exception {
+        //scenario
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            books.add(bookRepository.save(Book.builder().title("Livro " + i).author("Autor").isbn("isbn-" + i).build()));
+        }
+
+        //execution
+        List<Boolean> results = loanConcurrently(books);
+
+        //verification
+        Assertions.assertThat(results).containsOnly(true);
+        Assertions.assertThat(loanRepository.count()).isEqualTo(THREADS);
+    }
+
+    //uma thread por book da lista, todas liberadas ao mesmo tempo. true quando o empréstimo foi aceito
+    private List<Boolean> loanConcurrently(List<Book> books) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> futures = new ArrayList<>();
+        for (int i = 0; i < books.size(); i++) {
+            Book book = books.get(i);
+            String customer = "customer" + i;
+            Callable<Boolean> loanCall = () -> {
+                start.await();
+                Loan loan = Loan.builder().book(book).isbn(book.getIsbn()).customer(customer)
+                        .customerEmail(customer + "@email.com").loanDate(LocalDate.now()).build();
+                try {
+                    return loanService.save(loan).isPresent();
+                } catch (BusinessException businessException) {
+                    return false;
+                }
+            };
+            futures.add(executorService.submit(loanCall));
+        }
+        start.countDown();
+        List<Boolean> results = new ArrayList<>();
+        for (Future<Boolean> future : futures) {
+            results.add(future.get(30, TimeUnit.SECONDS));
+        }
+        return results;
+    }
+}
@@ -1,11 +1,13 @@
 package com.carledwinti.library.api.service;
 
 import com.carledwinti.library.api.constants.ConstantsError;
+import com.carledwinti.library.api.dto.LoanDTO;
 import com.carledwinti.library.api.exception.BusinessException;
 import com.carledwinti.library.api.model.Book;
 import com.carledwinti.library.api.model.Loan;
 import com.carledwinti.library.api.repository.LoanRepository;
 import com.carledwinti.library.api.service.impl.LoanServiceImpl;
+import com.carledwinti.library.api.service.lock.BookLocks;
 import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
@@ -16,6 +18,8 @@ import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.data.domain.*;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionOperations;
 
 import java.time.LocalDate;
 import java.util.Arrays;
@@ -33,7 +37,8 @@ public class LoanServiceTest {
 
     @BeforeEach
     public void setUp(){
-        this.loanService = new LoanServiceImpl(loanRepository);
+        this.loanService = new LoanServiceImpl(loanRepository, TransactionOperations.withoutTransaction(), new BookLocks(16));
+        ReflectionTestUtils.setField(loanService, "loanPeriodDays", 3);
     }
 
     @Test
@@ -47,6 +52,7 @@ public class LoanServiceTest {
         //mock
         Mockito.when(loanRepository.save(loan)).thenReturn(savedLoanMock);
         Mockito.when(loanRepository.existsByBookAndNotReturned(loan.getBook())).thenReturn(false);
+        Mockito.when(loanRepository.markBookOnLoan(loan.getBook().getId(), savedLoanMock.getId())).thenReturn(1);
         //execution
         //caso este método não tenha sido implementado com a chamada para loanRepository.save(..) que foi mockado
         //será retornado o erro org.opentest4j.AssertionFailedError:
@@ -60,10 +66,55 @@ public class LoanServiceTest {
         Assertions.assertThat(savedLoan.get().getCustomer()).isEqualTo(savedLoanMock.getCustomer());
         Assertions.assertThat(savedLoan.get().getIsbn()).isEqualTo(savedLoanMock.getIsbn());
         Assertions.assertThat(savedLoan.get().getLoanDate()).isEqualTo(LocalDate.now());
+        //sem prazo informado vale o prazo padrão
+        Assertions.assertThat(loan.getDueDate()).isEqualTo(LocalDate.now().plusDays(3));
 
         //precisamos garantir que o save nunca erá executado quando este erro for lançado
         Mockito.verify(loanRepository, Mockito.times(1)).existsByBookAndNotReturned(loan.getBook());
         Mockito.verify(loanRepository, Mockito.times(1)).save(loan);
+        Mockito.verify(loanRepository, Mockito.times(1)).markBookOnLoan(loan.getBook().getId(), savedLoanMock.getId());
+    }
+
+    @Test
+    @DisplayName("Deve lançar erro de negócio ao salvar um emprestimo com prazo anterior à data do emprestimo")
+    public void saveLoanWithDueDateBeforeLoanDate(){
+        //scenario
+        Loan loan = savedLoan();
+        loan.setId(null);
+        loan.setDueDate(LocalDate.now().minusDays(1));
+
+        //mock
+        Mockito.when(loanRepository.existsByBookAndNotReturned(loan.getBook())).thenReturn(false);
+
+        //execution
+        Throwable exception = Assertions.catchThrowable(() -> loanService.save(loan));
+
+        //verification
+        Assertions.assertThat(exception).isInstanceOf(BusinessException.class)
+                .hasMessage(ConstantsError.MSG_ERROR_LOAN_DUE_DATE_BEFORE_LOAN_DATE);
+        Mockito.verify(loanRepository, Mockito.never()).save(loan);
+    }
+
+    @Test
+    @DisplayName("Deve lançar erro de negócio quando outro emprestimo marcar o livro antes(concorrência)")
+    public void loanLoanedConcurrently(){
+        //scenario
+        Loan loan = savedLoan();
+        loan.setId(null);
+        Loan savedLoanMock = savedLoan();
+
+        //mock
+        Mockito.when(loanRepository.existsByBookAndNotReturned(loan.getBook())).thenReturn(false);
+        Mockito.when(loanRepository.save(loan)).thenReturn(savedLoanMock);
+        Mockito.when(loanRepository.markBookOnLoan(loan.getBook().getId(), savedLoanMock.getId())).thenReturn(0);
+
+        //execution
+        Throwable throwable = Assertions.catchThrowable(() -> loanService.save(loan));
+
+        //verification
+        Assertions.assertThat(throwable)
+                .isInstanceOf(BusinessException.class)
+                .hasMessage(ConstantsError.MSG_ERROR_BOOK_ALREADY_LOANED);
     }
 
     @Test
@@ -146,6 +197,7 @@ public class LoanServiceTest {
         Assertions.assertThat(loan.get().getReturned()).isTrue();
         Mockito.verify(loanRepository, Mockito.times(1)).findById(existentLoan.getId());
         Mockito.verify(loanRepository, Mockito.times(1)).save(existentLoan);
+        Mockito.verify(loanRepository, Mockito.times(1)).clearBookActiveLoan(existentLoan.getBook().getId(), existentLoan.getId());
     }
 
     @Test
@@ -157,9 +209,9 @@ public class LoanServiceTest {
         Loan loanFilter = Loan.builder().isbn("").customer("").build();
         List<Loan> loanFindList = Arrays.asList(loanFilter);
         Page<Loan> pageFindLoan = new PageImpl<Loan>(loanFindList, pageRequest, total);
-        Loan loan = savedLoan();
-        List<Loan> loanFoundList = Arrays.asList(loan);
-        Page<Loan> pageFoundLoan = new PageImpl<Loan>(loanFoundList, pageRequest, total);
+        LoanDTO loan = savedLoanDTO();
+        List<LoanDTO> loanFoundList = Arrays.asList(loan);
+        Page<LoanDTO> pageFoundLoan = new PageImpl<LoanDTO>(loanFoundList, pageRequest, total);
 
         //mock
         Mockito.when(loanRepository.findByBookIsbnOrCustomer(Mockito.anyString(),
@@ -168,7 +220,7 @@ public class LoanServiceTest {
                                     .thenReturn(pageFoundLoan);
 
         //execution
-        Page<Loan> foundPageLoan = loanService.findByFilter(loanFilter, pageFindLoan.getPageable());
+        Page<LoanDTO> foundPageLoan = loanService.findByFilter(loanFilter, pageFindLoan.getPageable());
 
         //verification
         Assertions.assertThat(foundPageLoan).isNotNull();
@@ -190,12 +242,35 @@ public class LoanServiceTest {
         Integer daysOfOverdue = 4;
 
         //mock
-        Mockito.when(loanRepository.findByLoanDateLessThanAndNotReturned(Mockito.any(LocalDate.class)))
+        Mockito.when(loanRepository.findOverdueLoans(Mockito.any(LocalDate.class)))
         .thenReturn(createExistentListOptionalLoanOverdue());
         //execution
         List<Optional<Loan>> foundOptionalLoanList = loanService.getAllOverdueLoans(daysOfOverdue);
         Assertions.assertThat(foundOptionalLoanList.isEmpty()).isFalse();
         Assertions.assertThat(foundOptionalLoanList.size()).isEqualTo(3);
+        //os dias são contados a partir do prazo(dueDate), não da data do empréstimo
+        Mockito.verify(loanRepository).findOverdueLoans(LocalDate.now().minusDays(daysOfOverdue));
+    }
+
+    @Test
+    @DisplayName("Deve filtrar loans retornando um slice, sem a consulta de count do Page")
+    public void findSliceByFilter(){
+        //scenario
+        Loan loanFilter = Loan.builder().isbn("123").customer("Lariano").build();
+        PageRequest pageRequest = PageRequest.of(0, 10);
+        Slice<LoanDTO> sliceLoan = new SliceImpl<>(Arrays.asList(savedLoanDTO()), pageRequest, true);
+
+        //mock
+        Mockito.when(loanRepository.findSliceByBookIsbnOrCustomer("123", "Lariano", pageRequest)).thenReturn(sliceLoan);
+
+        //execution
+        Slice<LoanDTO> foundLoans = loanService.findSliceByFilter(loanFilter, pageRequest);
+
+        //verification
+        Assertions.assertThat(foundLoans.getContent()).containsExactly(savedLoanDTO());
+        Assertions.assertThat(foundLoans.hasNext()).isTrue();
+        Mockito.verify(loanRepository, Mockito.never())
+                .findByBookIsbnOrCustomer(Mockito.anyString(), Mockito.anyString(), Mockito.any(Pageable.class));
     }
 
     private Loan savedLoan(){
@@ -209,6 +284,14 @@ public class LoanServiceTest {
                 .build();
     }
 
+    //projeção do savedLoan, como retornada pelas consultas de listagem do LoanRepository
+    private LoanDTO savedLoanDTO(){
+        Loan loan = savedLoan();
+        Book book = loan.getBook();
+        return new LoanDTO(loan.getId(), loan.getIsbn(), loan.getCustomer(), loan.getCustomerEmail(), loan.getReturned(),
+                loan.getDueDate(), loan.getLoanDate(), book.getId(), book.getTitle(), book.getAuthor(), book.getIsbn());
+    }
+
     private Book existentBook(){
         return Book.builder().id(5678l).title("Antenor Santanará").isbn("123").author("Milanes").build();
     }
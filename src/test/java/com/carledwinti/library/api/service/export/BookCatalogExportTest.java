@@ -0,0 +1,94 @@
+package com.carledwinti.library.api.service.export;
+
+import com.carledwinti.library.api.dto.BookDTO;
+import com.carledwinti.library.api.mapper.BookMapper;
+import com.carledwinti.library.api.model.Book;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.assertj.core.api.Assertions;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@DataJpaTest
+@Import({BookCatalogExport.class, BookMapper.class})
+@ImportAutoConfiguration(JacksonAutoConfiguration.class)
+public class BookCatalogExportTest {
+
+    @Autowired
+    TestEntityManager testEntityManager;
+
+    @Autowired
+    BookCatalogExport bookCatalogExport;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Test
+    @DisplayName("Deve exportar o catálogo em CSV em ordem de id sem manter os books no contexto de persistência")
+    public void exportCsv() throws Exception {
+        //scenario
+        Book first = testEntityManager.persist(createNewBook("123", "A mudança"));
+        Book second = testEntityManager.persist(createNewBook("456", "Contos, \"volume\" 1"));
+        testEntityManager.flush();
+        testEntityManager.clear();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        //execution
+        long exported = bookCatalogExport.export(BookExportFormat.CSV, outputStream);
+
+        //verification
+        Assertions.assertThat(exported).isEqualTo(2);
+        Assertions.assertThat(new String(outputStream.toByteArray(), StandardCharsets.UTF_8)).isEqualTo(
+                "id,title,author,isbn\n"
+                + first.getId() + ",A mudança,Andres,123\n"
+                + second.getId() + ",\"Contos, \"\"volume\"\" 1\",Andres,456\n");
+        Assertions.assertThat(managedEntities()).isZero();
+    }
+
+    @Test
+    @DisplayName("Deve exportar o catálogo em NDJSON com um book por linha")
+    public void exportNdjson() throws Exception {
+        //scenario
+        Book first = testEntityManager.persist(createNewBook("123", "A mudança"));
+        Book second = testEntityManager.persist(createNewBook("456", "Lua Nova"));
+        testEntityManager.flush();
+        testEntityManager.clear();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        //execution
+        long exported = bookCatalogExport.export(BookExportFormat.NDJSON, outputStream);
+
+        //verification
+        String[] lines = new String(outputStream.toByteArray(), StandardCharsets.UTF_8).split("\n", -1);
+        Assertions.assertThat(exported).isEqualTo(2);
+        Assertions.assertThat(lines).hasSize(3).endsWith("");
+        Assertions.assertThat(objectMapper.readValue(lines[0], BookDTO.class))
+                .isEqualTo(new BookDTO(first.getId(), "A mudança", "Andres", "123"));
+        Assertions.assertThat(objectMapper.readValue(lines[1], BookDTO.class))
+                .isEqualTo(new BookDTO(second.getId(), "Lua Nova", "Andres", "456"));
+        Assertions.assertThat(managedEntities()).isZero();
+    }
+
+    private int managedEntities() {
+        return testEntityManager.getEntityManager().unwrap(SessionImplementor.class)
+                .getPersistenceContext().getNumberOfManagedEntities();
+    }
+
+    private Book createNewBook(String isbn, String title) {
+        return Book.builder().isbn(isbn).author("Andres").title(title).build();
+    }
+}
@@ -0,0 +1,115 @@
+package com.carledwinti.library.api.service.export;
+
+import com.carledwinti.library.api.dto.LoanDTO;
+import com.carledwinti.library.api.model.Book;
+import com.carledwinti.library.api.model.Loan;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.assertj.core.api.Assertions;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@DataJpaTest
+@Import(LoanHistoryExport.class)
+@ImportAutoConfiguration(JacksonAutoConfiguration.class)
+public class LoanHistoryExportTest {
+
+    @Autowired
+    TestEntityManager testEntityManager;
+
+    @Autowired
+    LoanHistoryExport loanHistoryExport;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Test
+    @DisplayName("Deve transmitir o histórico completo de loans do livro em ordem de id, com o book em cada linha")
+    public void exportByBook() throws Exception {
+        //scenario
+        //mais loans que o fetch size, para que a escrita passe por mais de um flush
+        Book book = testEntityManager.persist(createNewBook("123"));
+        Book otherBook = testEntityManager.persist(createNewBook("456"));
+        for (int i = 0; i < 1500; i++) {
+            testEntityManager.persist(createNewLoan(book, "Fulano " + i));
+        }
+        Loan otherLoan = testEntityManager.persist(createNewLoan(otherBook, "Fulano 0"));
+        testEntityManager.flush();
+        testEntityManager.clear();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        //execution
+        long exported = loanHistoryExport.exportByBook(book, outputStream);
+
+        //verification
+        List<LoanDTO> loans = readLines(outputStream);
+        Assertions.assertThat(exported).isEqualTo(1500);
+        Assertions.assertThat(loans).hasSize(1500).allMatch(loan -> loan.getBookDTO().getId().equals(book.getId()));
+        Assertions.assertThat(loans).extracting(LoanDTO::getId).isSorted().doesNotContain(otherLoan.getId());
+        Assertions.assertThat(loans.get(0).getCustomer()).isEqualTo("Fulano 0");
+        Assertions.assertThat(managedEntities()).isZero();
+    }
+
+    @Test
+    @DisplayName("Deve transmitir somente os loans do customer informado")
+    public void exportByCustomer() throws Exception {
+        //scenario
+        Book book = testEntityManager.persist(createNewBook("123"));
+        Book otherBook = testEntityManager.persist(createNewBook("456"));
+        Loan firstLoan = testEntityManager.persist(createNewLoan(book, "Fulano"));
+        testEntityManager.persist(createNewLoan(book, "Ciclano"));
+        Loan secondLoan = testEntityManager.persist(createNewLoan(otherBook, "Fulano"));
+        testEntityManager.flush();
+        testEntityManager.clear();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        //execution
+        long exported = loanHistoryExport.exportByCustomer("Fulano", outputStream);
+
+        //verification
+        List<LoanDTO> loans = readLines(outputStream);
+        Assertions.assertThat(exported).isEqualTo(2);
+        Assertions.assertThat(loans).extracting(LoanDTO::getId).containsExactly(firstLoan.getId(), secondLoan.getId());
+        Assertions.assertThat(loans).extracting(loan -> loan.getBookDTO().getIsbn()).containsExactly("123", "456");
+    }
+
+    private List<LoanDTO> readLines(ByteArrayOutputStream outputStream) throws IOException {
+        List<LoanDTO> loans = new ArrayList<>();
+        for (String line : new String(outputStream.toByteArray(), StandardCharsets.UTF_8).split("\n")) {
+            loans.add(objectMapper.readValue(line, LoanDTO.class));
+        }
+        return loans;
+    }
+
+    private int managedEntities() {
+        return testEntityManager.getEntityManager().unwrap(SessionImplementor.class)
+                .getPersistenceContext().getNumberOfManagedEntities();
+    }
+
+    private Book createNewBook(String isbn) {
+        return Book.builder().isbn(isbn).author("Andres").title("A mudança").build();
+    }
+
+    private Loan createNewLoan(Book book, String customer) {
+        return Loan.builder().book(book).isbn(book.getIsbn()).customer(customer).customerEmail("fulano@email.com")
+                .loanDate(LocalDate.now()).dueDate(LocalDate.now().plusDays(3)).returned(true).build();
+    }
+}
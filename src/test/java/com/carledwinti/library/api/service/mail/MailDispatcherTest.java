@@ -0,0 +1,148 @@
+package com.carledwinti.library.api.service.mail;
+
+import com.carledwinti.library.api.config.ExecutionThreads;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mockito;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import javax.mail.Address;
+import javax.mail.SendFailedException;
+import javax.mail.internet.InternetAddress;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+public class MailDispatcherTest {
+
+    @MockBean
+    JavaMailSender javaMailSender;
+
+    MeterRegistry meterRegistry;
+
+    MailDispatcher mailDispatcher;
+
+    @BeforeEach
+    public void setUp(){
+        meterRegistry = new SimpleMeterRegistry();
+        mailDispatcher = new MailDispatcher(javaMailSender, meterRegistry, new ExecutionThreads(false), 1, 10, 3, 10);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        mailDispatcher.shutdown();
+    }
+
+    @Test
+    @DisplayName("Deve reenviar somente as mensagens que falharam")
+    public void retryOnlyFailedMessages() throws Exception {
+        //scenario
+        SimpleMailMessage first = message("lariano@email.com");
+        SimpleMailMessage second = message("chicagos@email.com");
+
+        //mock
+        Mockito.doThrow(new MailSendException(Collections.singletonMap(second, new RuntimeException("timeout"))))
+                .when(javaMailSender).send(first, second);
+
+        //execution
+        CompletableFuture<Void> dispatch = mailDispatcher.dispatch(Arrays.asList(first, second));
+
+        //verification
+        dispatch.get(2, TimeUnit.SECONDS);
+        Mockito.verify(javaMailSender).send(new SimpleMailMessage[]{second});
+        mailDispatcher.shutdown();
+        Assertions.assertThat(meterRegistry.counter(MailDispatcher.METRIC_SENT).count()).isEqualTo(2);
+        Assertions.assertThat(meterRegistry.counter(MailDispatcher.METRIC_RETRIED).count()).isEqualTo(1);
+        Assertions.assertThat(meterRegistry.timer(MailDispatcher.METRIC_SEND).count()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Deve desistir do envio depois do número máximo de tentativas")
+    public void giveUpAfterMaxAttempts() throws InterruptedException {
+        //scenario
+        SimpleMailMessage message = message("frendess@email.com");
+
+        //mock
+        Mockito.doThrow(new MailSendException("connection refused")).when(javaMailSender).send(new SimpleMailMessage[]{message});
+
+        //execution
+        CompletableFuture<Void> dispatch = mailDispatcher.dispatch(Collections.singletonList(message));
+
+        //verification
+        Throwable throwable = Assertions.catchThrowable(() -> dispatch.get(2, TimeUnit.SECONDS));
+        Assertions.assertThat(throwable).isInstanceOf(ExecutionException.class).hasCauseInstanceOf(MailSendException.class);
+        mailDispatcher.shutdown();
+        Mockito.verify(javaMailSender, Mockito.times(3)).send(new SimpleMailMessage[]{message});
+        Assertions.assertThat(meterRegistry.counter(MailDispatcher.METRIC_FAILED).count()).isEqualTo(1);
+        Assertions.assertThat(meterRegistry.counter(MailDispatcher.METRIC_SENT).count()).isEqualTo(0);
+    }
+
+    @Test
+    @DisplayName("Não deve reenviar as mensagens com o destinatário recusado pelo servidor")
+    public void dropRejectedRecipients() throws Exception {
+        //scenario
+        SimpleMailMessage valid = message("lariano@email.com");
+        SimpleMailMessage invalid = message("nao-existe@email.com");
+        SendFailedException rejected = new SendFailedException("Invalid Addresses", null, null, null,
+                new Address[]{new InternetAddress("nao-existe@email.com")});
+
+        //mock
+        Mockito.doThrow(new MailSendException(Collections.singletonMap(invalid, rejected)))
+                .when(javaMailSender).send(valid, invalid);
+
+        //execution
+        CompletableFuture<Void> dispatch = mailDispatcher.dispatch(Arrays.asList(valid, invalid));
+
+        //verification
+        dispatch.get(2, TimeUnit.SECONDS);
+        mailDispatcher.shutdown();
+        Mockito.verify(javaMailSender, Mockito.times(1)).send(Mockito.<SimpleMailMessage[]>any());
+        Assertions.assertThat(meterRegistry.counter(MailDispatcher.METRIC_SENT).count()).isEqualTo(1);
+        Assertions.assertThat(meterRegistry.counter(MailDispatcher.METRIC_FAILED).count()).isEqualTo(1);
+        Assertions.assertThat(meterRegistry.counter(MailDispatcher.METRIC_RETRIED).count()).isEqualTo(0);
+    }
+
+    @Test
+    @DisplayName("Deve terminar com erro o dispatch com reenvio pendente quando o envio for encerrado")
+    public void failPendingRetriesOnShutdown() throws Exception {
+        //scenario
+        mailDispatcher.shutdown();
+        mailDispatcher = new MailDispatcher(javaMailSender, meterRegistry, new ExecutionThreads(false), 1, 10, 3, 60_000);
+        SimpleMailMessage message = message("frendess@email.com");
+
+        //mock
+        Mockito.doThrow(new MailSendException("connection refused")).when(javaMailSender).send(new SimpleMailMessage[]{message});
+
+        //execution
+        CompletableFuture<Void> dispatch = mailDispatcher.dispatch(Collections.singletonList(message));
+        Mockito.verify(javaMailSender, Mockito.timeout(2000)).send(new SimpleMailMessage[]{message});
+        mailDispatcher.shutdown();
+
+        //verification
+        Assertions.assertThat(dispatch).isCompletedExceptionally();
+        Assertions.assertThat(meterRegistry.counter(MailDispatcher.METRIC_FAILED).count()).isEqualTo(1);
+        Assertions.assertThat(mailDispatcher.dispatch(Collections.singletonList(message))).isCompletedExceptionally();
+    }
+
+    private SimpleMailMessage message(String to) {
+        SimpleMailMessage simpleMailMessage = new SimpleMailMessage();
+        simpleMailMessage.setTo(to);
+        simpleMailMessage.setText("Atrasado");
+        return simpleMailMessage;
+    }
+}
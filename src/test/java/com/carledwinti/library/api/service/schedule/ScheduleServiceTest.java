@@ -0,0 +1,236 @@
+package com.carledwinti.library.api.service.schedule;
+
+import com.carledwinti.library.api.config.ExecutionThreads;
+import com.carledwinti.library.api.dto.OverdueLoanDTO;
+import com.carledwinti.library.api.model.ScheduleCheckpoint;
+import com.carledwinti.library.api.repository.ScheduleCheckpointRepository;
+import com.carledwinti.library.api.service.EmailService;
+import com.carledwinti.library.api.service.LoanService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.mail.MailSendException;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+public class ScheduleServiceTest {
+
+    @MockBean
+    LoanService loanService;
+
+    @MockBean
+    EmailService emailService;
+
+    @MockBean
+    ScheduleCheckpointRepository scheduleCheckpointRepository;
+
+    MeterRegistry meterRegistry;
+
+    ScheduleService scheduleService;
+
+    LocalDate referenceDate = LocalDate.now();
+
+    @BeforeEach
+    public void setUp(){
+        meterRegistry = new SimpleMeterRegistry();
+        scheduleService = new ScheduleService(loanService, emailService, scheduleCheckpointRepository, meterRegistry,
+                new ExecutionThreads(false));
+        ReflectionTestUtils.setField(scheduleService, "message", "Atrasado");
+        ReflectionTestUtils.setField(scheduleService, "chunkSize", 2);
+        Mockito.when(emailService.sendEmailToLoansOverdue(Mockito.anyString(), Mockito.anyList()))
+                .thenReturn(CompletableFuture.completedFuture(null));
+    }
+
+    @Test
+    @DisplayName("Deve enviar os emails dos emprestimos atrasados em lotes gravando o checkpoint a cada lote")
+    public void sendMailToLateLoansInChunks(){
+        //scenario
+        Mockito.when(scheduleCheckpointRepository.findById(ScheduleService.JOB_LATE_LOANS)).thenReturn(Optional.empty());
+        Mockito.when(loanService.getOverdueLoansAfter(referenceDate, 0L, 2)).thenReturn(Arrays.asList(
+                new OverdueLoanDTO(3l, "lariano@email.com"), new OverdueLoanDTO(7l, "chicagos@email.com")));
+        Mockito.when(loanService.getOverdueLoansAfter(referenceDate, 7L, 2)).thenReturn(Arrays.asList(
+                new OverdueLoanDTO(9l, "frendess@email.com")));
+
+        //execution
+        scheduleService.sendMailToLateLoans();
+
+        //verification
+        Mockito.verify(emailService).sendEmailToLoansOverdue("Atrasado", Arrays.asList("lariano@email.com", "chicagos@email.com"));
+        Mockito.verify(emailService).sendEmailToLoansOverdue("Atrasado", Collections.singletonList("frendess@email.com"));
+        ArgumentCaptor<ScheduleCheckpoint> checkpoint = ArgumentCaptor.forClass(ScheduleCheckpoint.class);
+        Mockito.verify(scheduleCheckpointRepository, Mockito.times(3)).save(checkpoint.capture());
+        Assertions.assertThat(checkpoint.getValue().getLastId()).isEqualTo(9l);
+        Assertions.assertThat(checkpoint.getValue().getProcessed()).isEqualTo(3l);
+        Assertions.assertThat(checkpoint.getValue().isFinished()).isTrue();
+        Assertions.assertThat(meterRegistry.counter(ScheduleService.METRIC_LATE_LOANS_PROCESSED).count()).isEqualTo(3);
+        Assertions.assertThat(meterRegistry.timer(ScheduleService.METRIC_LATE_LOANS_CHUNK).count()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Deve continuar o envio do dia a partir do último id gravado no checkpoint")
+    public void resumeFromCheckpoint(){
+        //scenario
+        ScheduleCheckpoint checkpoint = ScheduleCheckpoint.builder().jobName(ScheduleService.JOB_LATE_LOANS)
+                .runDate(LocalDate.now()).lastId(7l).processed(2l).build();
+        Mockito.when(scheduleCheckpointRepository.findById(ScheduleService.JOB_LATE_LOANS)).thenReturn(Optional.of(checkpoint));
+        Mockito.when(loanService.getOverdueLoansAfter(referenceDate, 7L, 2)).thenReturn(Arrays.asList(
+                new OverdueLoanDTO(9l, "frendess@email.com")));
+
+        //execution
+        scheduleService.sendMailToLateLoans();
+
+        //verification
+        Mockito.verify(loanService, Mockito.never()).getOverdueLoansAfter(referenceDate, 0L, 2);
+        Mockito.verify(emailService, Mockito.times(1)).sendEmailToLoansOverdue("Atrasado", Collections.singletonList("frendess@email.com"));
+        Assertions.assertThat(checkpoint.getProcessed()).isEqualTo(3l);
+        Assertions.assertThat(checkpoint.isFinished()).isTrue();
+    }
+
+    @Test
+    @DisplayName("Deve continuar a execução interrompida de ontem com a data de referência dela e depois enviar a do dia")
+    public void resumeYesterdayCheckpoint(){
+        //scenario
+        LocalDate yesterday = referenceDate.minusDays(1);
+        ScheduleCheckpoint checkpoint = ScheduleCheckpoint.builder().jobName(ScheduleService.JOB_LATE_LOANS)
+                .runDate(yesterday).lastId(7l).processed(2l).build();
+        Mockito.when(scheduleCheckpointRepository.findById(ScheduleService.JOB_LATE_LOANS)).thenReturn(Optional.of(checkpoint));
+        Mockito.when(loanService.getOverdueLoansAfter(yesterday, 7L, 2)).thenReturn(Collections.singletonList(
+                new OverdueLoanDTO(9l, "frendess@email.com")));
+        Mockito.when(loanService.getOverdueLoansAfter(referenceDate, 0L, 2)).thenReturn(Collections.singletonList(
+                new OverdueLoanDTO(3l, "lariano@email.com")));
+
+        //execution
+        scheduleService.sendMailToLateLoans();
+
+        //verification
+        Mockito.verify(loanService, Mockito.never()).getOverdueLoansAfter(yesterday, 0L, 2);
+        Mockito.verify(emailService).sendEmailToLoansOverdue("Atrasado", Collections.singletonList("frendess@email.com"));
+        Mockito.verify(emailService).sendEmailToLoansOverdue("Atrasado", Collections.singletonList("lariano@email.com"));
+        Assertions.assertThat(checkpoint.getRunDate()).isEqualTo(yesterday);
+        Assertions.assertThat(checkpoint.getProcessed()).isEqualTo(3l);
+        Assertions.assertThat(checkpoint.isFinished()).isTrue();
+        ArgumentCaptor<ScheduleCheckpoint> saved = ArgumentCaptor.forClass(ScheduleCheckpoint.class);
+        Mockito.verify(scheduleCheckpointRepository, Mockito.times(4)).save(saved.capture());
+        Assertions.assertThat(saved.getValue().getRunDate()).isEqualTo(referenceDate);
+        Assertions.assertThat(saved.getValue().getLastId()).isEqualTo(3l);
+        Assertions.assertThat(saved.getValue().isFinished()).isTrue();
+    }
+
+    @Test
+    @DisplayName("Deve continuar ao subir a aplicação somente a execução que não terminou")
+    public void resumeOnApplicationReady(){
+        //scenario
+        ScheduleCheckpoint finished = ScheduleCheckpoint.builder().jobName(ScheduleService.JOB_LATE_LOANS)
+                .runDate(referenceDate.minusDays(1)).lastId(9l).processed(3l).finished(true).build();
+        ScheduleCheckpoint interrupted = ScheduleCheckpoint.builder().jobName(ScheduleService.JOB_LATE_LOANS)
+                .runDate(referenceDate).lastId(7l).processed(2l).build();
+        Mockito.when(scheduleCheckpointRepository.findById(ScheduleService.JOB_LATE_LOANS))
+                .thenReturn(Optional.of(finished), Optional.of(interrupted));
+        Mockito.when(loanService.getOverdueLoansAfter(referenceDate, 7L, 2)).thenReturn(Collections.singletonList(
+                new OverdueLoanDTO(9l, "frendess@email.com")));
+
+        //execution
+        scheduleService.startLateLoansExecutor();
+        try {
+            scheduleService.resumeMailToLateLoans();
+            Mockito.verifyNoInteractions(loanService, emailService);
+            scheduleService.resumeMailToLateLoans();
+
+            //verification
+            Mockito.verify(emailService, Mockito.timeout(5000)).sendEmailToLoansOverdue("Atrasado",
+                    Collections.singletonList("frendess@email.com"));
+            Mockito.verify(scheduleCheckpointRepository, Mockito.timeout(5000).times(2)).save(interrupted);
+        } finally {
+            scheduleService.stopLateLoansExecutor();
+        }
+    }
+
+    @Test
+    @DisplayName("Deve parar sem gravar no checkpoint o lote com emails não entregues")
+    public void stopOnUndeliveredChunk(){
+        //scenario
+        Mockito.when(scheduleCheckpointRepository.findById(ScheduleService.JOB_LATE_LOANS)).thenReturn(Optional.empty());
+        Mockito.when(loanService.getOverdueLoansAfter(referenceDate, 0L, 2)).thenReturn(Arrays.asList(
+                new OverdueLoanDTO(3l, "lariano@email.com"), new OverdueLoanDTO(7l, "chicagos@email.com")));
+        Mockito.when(loanService.getOverdueLoansAfter(referenceDate, 7L, 2)).thenReturn(Arrays.asList(
+                new OverdueLoanDTO(9l, "frendess@email.com")));
+        CompletableFuture<Void> undelivered = new CompletableFuture<>();
+        undelivered.completeExceptionally(new MailSendException("connection refused"));
+
+        //mock
+        Mockito.when(emailService.sendEmailToLoansOverdue("Atrasado", Collections.singletonList("frendess@email.com")))
+                .thenReturn(undelivered);
+
+        //execution
+        Throwable throwable = Assertions.catchThrowable(() -> scheduleService.sendMailToLateLoans());
+
+        //verification
+        Assertions.assertThat(throwable).isInstanceOf(CompletionException.class).hasCauseInstanceOf(MailSendException.class);
+        ArgumentCaptor<ScheduleCheckpoint> checkpoint = ArgumentCaptor.forClass(ScheduleCheckpoint.class);
+        Mockito.verify(scheduleCheckpointRepository, Mockito.times(1)).save(checkpoint.capture());
+        Assertions.assertThat(checkpoint.getValue().getLastId()).isEqualTo(7l);
+        Assertions.assertThat(checkpoint.getValue().isFinished()).isFalse();
+    }
+
+    @Test
+    @DisplayName("Deve liberar a thread do agendador enquanto os emails do lote são entregues")
+    public void scheduleMailToLateLoansOwnThread(){
+        //scenario
+        Mockito.when(scheduleCheckpointRepository.findById(ScheduleService.JOB_LATE_LOANS)).thenReturn(Optional.empty());
+        Mockito.when(loanService.getOverdueLoansAfter(referenceDate, 0L, 2)).thenReturn(Collections.singletonList(
+                new OverdueLoanDTO(3l, "lariano@email.com")));
+        CompletableFuture<Void> delivery = new CompletableFuture<>();
+
+        //mock
+        Mockito.when(emailService.sendEmailToLoansOverdue("Atrasado", Collections.singletonList("lariano@email.com")))
+                .thenReturn(delivery);
+
+        //execution
+        scheduleService.startLateLoansExecutor();
+        try {
+            scheduleService.scheduleMailToLateLoans();
+
+            //verification - o disparo retorna antes da entrega e o checkpoint só é gravado depois dela
+            Mockito.verify(emailService, Mockito.timeout(5000)).sendEmailToLoansOverdue("Atrasado",
+                    Collections.singletonList("lariano@email.com"));
+            Mockito.verify(scheduleCheckpointRepository, Mockito.never()).save(Mockito.any(ScheduleCheckpoint.class));
+            delivery.complete(null);
+            Mockito.verify(scheduleCheckpointRepository, Mockito.timeout(5000).times(2)).save(Mockito.any(ScheduleCheckpoint.class));
+        } finally {
+            scheduleService.stopLateLoansExecutor();
+        }
+    }
+
+    @Test
+    @DisplayName("Não deve reenviar os emails quando a tarefa do dia já terminou")
+    public void skipFinishedCheckpoint(){
+        //scenario
+        ScheduleCheckpoint checkpoint = ScheduleCheckpoint.builder().jobName(ScheduleService.JOB_LATE_LOANS)
+                .runDate(LocalDate.now()).lastId(9l).processed(3l).finished(true).build();
+        Mockito.when(scheduleCheckpointRepository.findById(ScheduleService.JOB_LATE_LOANS)).thenReturn(Optional.of(checkpoint));
+
+        //execution
+        scheduleService.sendMailToLateLoans();
+
+        //verification
+        Mockito.verifyNoInteractions(loanService, emailService);
+        Mockito.verify(scheduleCheckpointRepository, Mockito.never()).save(Mockito.any(ScheduleCheckpoint.class));
+    }
+}
@@ -0,0 +1,179 @@
+package com.carledwinti.library.api.service.search;
+
+import com.carledwinti.library.api.model.Book;
+import com.carledwinti.library.api.pagination.Keyset;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+
+public class BookSearchIndexTest {
+
+    BookSearchIndex bookSearchIndex;
+
+    @BeforeEach
+    public void setUp(){
+        bookSearchIndex = new BookSearchIndex();
+        bookSearchIndex.index(Arrays.asList(
+                Book.builder().id(1l).title("Lua Nova").author("Derik").isbn("9780001").build(),
+                Book.builder().id(2l).title("Arredores da Ilha").author("Lane").isbn("9780002").build(),
+                Book.builder().id(3l).title("A LUA de Cristal").author("Derik Lua").isbn("9780003").build(),
+                Book.builder().id(4l).title("Sol").author("Ana").isbn("9780004").build()));
+    }
+
+    @Test
+    @DisplayName("Deve buscar por substring ignorando case em todos os campos informados do filtro")
+    public void searchContainingIgnoreCase(){
+        Page<Long> byTitle = search(Book.builder().title("lua").build(), PageRequest.of(0, 10));
+        Page<Long> byTitleAndAuthor = search(Book.builder().title("LUA").author("rik l").build(), PageRequest.of(0, 10));
+        Page<Long> byShortValue = search(Book.builder().title("a").isbn("04").build(), PageRequest.of(0, 10));
+        Page<Long> notFound = search(Book.builder().title("Lua Cheia").build(), PageRequest.of(0, 10));
+
+        Assertions.assertThat(byTitle.getContent()).containsExactly(1l, 3l);
+        Assertions.assertThat(byTitleAndAuthor.getContent()).containsExactly(3l);
+        Assertions.assertThat(byShortValue.getContent()).isEmpty();
+        Assertions.assertThat(search(Book.builder().title("o").isbn("04").build(), PageRequest.of(0, 10)).getContent())
+                .containsExactly(4l);
+        Assertions.assertThat(notFound.getTotalElements()).isEqualTo(0);
+    }
+
+    @Test
+    @DisplayName("Deve buscar ignorando case independente do locale padrão da JVM")
+    public void searchIgnoreCaseWithDefaultLocale(){
+        Locale defaultLocale = Locale.getDefault();
+        //no locale turco I minúsculo é ı(sem ponto) e i maiúsculo é İ
+        Locale.setDefault(new Locale("tr", "TR"));
+        try {
+            //scenario
+            bookSearchIndex.index(Collections.singletonList(
+                    Book.builder().id(5l).title("ILIADA").author("Homero").isbn("9780005").build()));
+
+            //execution
+            Page<Long> byLowerCase = search(Book.builder().title("iliada").build(), PageRequest.of(0, 10));
+            Page<Long> byUpperCase = search(Book.builder().title("ILIA").build(), PageRequest.of(0, 10));
+
+            //verification
+            Assertions.assertThat(byLowerCase.getContent()).containsExactly(5l);
+            Assertions.assertThat(byUpperCase.getContent()).containsExactly(5l);
+        } finally {
+            Locale.setDefault(defaultLocale);
+        }
+    }
+
+    @Test
+    @DisplayName("Deve paginar e ordenar os ids encontrados retornando o total")
+    public void searchPageAndSort(){
+        Book filter = Book.builder().isbn("978000").build();
+
+        Page<Long> firstPage = search(filter, PageRequest.of(0, 2, Sort.by("title")));
+        Page<Long> secondPage = search(filter, PageRequest.of(1, 2, Sort.by("title")));
+        Page<Long> byIdDesc = search(filter, PageRequest.of(0, 3, Sort.by(Sort.Direction.DESC, "id")));
+
+        Assertions.assertThat(firstPage.getContent()).containsExactly(3l, 2l);
+        Assertions.assertThat(secondPage.getContent()).containsExactly(1l, 4l);
+        Assertions.assertThat(firstPage.getTotalElements()).isEqualTo(4);
+        Assertions.assertThat(byIdDesc.getContent()).containsExactly(4l, 3l, 2l);
+        Assertions.assertThat(bookSearchIndex.search(filter, PageRequest.of(0, 2, Sort.by("loans")))).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Deve buscar um slice sem o total indicando se existe uma próxima página")
+    public void searchSlice(){
+        Book filter = Book.builder().isbn("978000").build();
+
+        Slice<Long> firstSlice = bookSearchIndex.searchSlice(filter, PageRequest.of(0, 3, Sort.by("title"))).get();
+        Slice<Long> lastSlice = bookSearchIndex.searchSlice(filter, PageRequest.of(1, 3, Sort.by("title"))).get();
+
+        Assertions.assertThat(firstSlice.getContent()).containsExactly(3l, 2l, 1l);
+        Assertions.assertThat(firstSlice.hasNext()).isTrue();
+        Assertions.assertThat(lastSlice.getContent()).containsExactly(4l);
+        Assertions.assertThat(lastSlice.hasNext()).isFalse();
+        Assertions.assertThat(bookSearchIndex.searchSlice(filter, PageRequest.of(0, 2, Sort.by("loans")))).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Deve buscar os ids depois da posição do keyset na ordem da propriedade desempatando pelo id")
+    public void searchAfterKeyset(){
+        bookSearchIndex.index(Collections.singletonList(
+                Book.builder().id(5l).title("Lua Nova").author("Lane").isbn("9780005").build()));
+        Book filter = Book.builder().isbn("978000").build();
+
+        List<Long> firstPage = bookSearchIndex.searchAfter(filter, new Keyset("title", Sort.Direction.ASC, null, null), 3).get();
+        List<Long> afterLuaNova = bookSearchIndex.searchAfter(filter, new Keyset("title", Sort.Direction.ASC, "Lua Nova", 1l), 3).get();
+        List<Long> beforeLuaNova = bookSearchIndex.searchAfter(filter, new Keyset("title", Sort.Direction.DESC, "Lua Nova", 5l), 3).get();
+        List<Long> afterId = bookSearchIndex.searchAfter(filter, new Keyset("id", Sort.Direction.DESC, "3", 3l), 3).get();
+
+        Assertions.assertThat(firstPage).containsExactly(3l, 2l, 1l);
+        Assertions.assertThat(afterLuaNova).containsExactly(5l, 4l);
+        Assertions.assertThat(beforeLuaNova).containsExactly(1l, 2l, 3l);
+        Assertions.assertThat(afterId).containsExactly(2l, 1l);
+        Assertions.assertThat(bookSearchIndex.searchAfter(filter, new Keyset("loans", Sort.Direction.ASC, null, null), 3)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Deve buscar os ids depois de um keyset parado em um título null, na mesma ordem do KeysetQueries")
+    public void searchAfterNullKeyset(){
+        bookSearchIndex.index(Arrays.asList(
+                Book.builder().id(5l).author("Lane").isbn("9780005").build(),
+                Book.builder().id(6l).author("Ana").isbn("9780006").build()));
+        Book filter = Book.builder().isbn("978000").build();
+
+        List<Long> firstPage = bookSearchIndex.searchAfter(filter, new Keyset("title", Sort.Direction.ASC, null, null), 3).get();
+        List<Long> afterNull = bookSearchIndex.searchAfter(filter, new Keyset("title", Sort.Direction.ASC, null, 5l), 3).get();
+        List<Long> afterSolDesc = bookSearchIndex.searchAfter(filter, new Keyset("title", Sort.Direction.DESC, "Sol", 4l), 10).get();
+        List<Long> afterNullDesc = bookSearchIndex.searchAfter(filter, new Keyset("title", Sort.Direction.DESC, null, 6l), 3).get();
+
+        Assertions.assertThat(firstPage).containsExactly(5l, 6l, 3l);
+        Assertions.assertThat(afterNull).containsExactly(6l, 3l, 2l);
+        Assertions.assertThat(afterSolDesc).containsExactly(1l, 2l, 3l, 6l, 5l);
+        Assertions.assertThat(afterNullDesc).containsExactly(5l);
+    }
+
+    @Test
+    @DisplayName("Deve refletir no índice os livros alterados e removidos")
+    public void updateAndRemove(){
+        bookSearchIndex.index(Collections.singletonList(
+                Book.builder().id(1l).title("Lua Velha").author("Derik").isbn("9780001").build()));
+        bookSearchIndex.remove(3l);
+
+        Assertions.assertThat(search(Book.builder().title("nova").build(), PageRequest.of(0, 10)).getContent()).isEmpty();
+        Assertions.assertThat(search(Book.builder().title("lua").build(), PageRequest.of(0, 10)).getContent()).containsExactly(1l);
+        Assertions.assertThat(bookSearchIndex.size()).isEqualTo(3);
+    }
+
+    @Test
+    @DisplayName("Deve manter as buscas corretas depois de descartar os docs removidos")
+    public void compactRemovedDocs(){
+        List<Book> books = new ArrayList<>();
+        for (long id = 100; id < 30_100; id++) {
+            books.add(Book.builder().id(id).title("Livro " + id).author("Autor").isbn("isbn-" + id).build());
+        }
+        bookSearchIndex.index(books);
+        for (long id = 100; id < 25_100; id++) {
+            bookSearchIndex.remove(id);
+        }
+
+        Assertions.assertThat(bookSearchIndex.size()).isEqualTo(5_004);
+        Assertions.assertThat(search(Book.builder().isbn("isbn-251").build(), PageRequest.of(0, 5)).getTotalElements())
+                .isEqualTo(100);
+        Assertions.assertThat(search(Book.builder().title("lua").build(), PageRequest.of(0, 5)).getContent())
+                .containsExactly(1l, 3l);
+    }
+
+    private Page<Long> search(Book filter, PageRequest pageRequest) {
+        Optional<Page<Long>> page = bookSearchIndex.search(filter, pageRequest);
+        Assertions.assertThat(page).isPresent();
+        return page.get();
+    }
+}
@@ -0,0 +1,93 @@
+package com.carledwinti.library.api.service.search;
+
+import com.carledwinti.library.api.repository.BookRepository;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+public class IsbnBloomFilterLoaderTest {
+
+    IsbnBloomFilter isbnBloomFilter;
+    IsbnBloomFilterLoader isbnBloomFilterLoader;
+
+    @MockBean
+    BookRepository bookRepository;
+
+    @MockBean
+    PlatformTransactionManager transactionManager;
+
+    @BeforeEach
+    public void setUp(){
+        this.isbnBloomFilter = new IsbnBloomFilter(0.01, 3000);
+        this.isbnBloomFilterLoader = new IsbnBloomFilterLoader(bookRepository, isbnBloomFilter, transactionManager, 60000);
+    }
+
+    @Test
+    @DisplayName("Deve incluir no filtro os isbns dos books salvos por outras instâncias desde o último sync")
+    public void syncBooksSavedByOtherInstances(){
+        //mock
+        Mockito.when(bookRepository.count()).thenReturn(1L);
+        Mockito.when(bookRepository.streamAllIsbns()).thenReturn(Stream.of("9780001"));
+        Mockito.when(bookRepository.findIsbnsModifiedAfter(Mockito.any(Instant.class)))
+                .thenReturn(Arrays.asList("9780001", "9780002"));
+
+        //execution
+        long start = System.currentTimeMillis();
+        isbnBloomFilterLoader.load();
+        Assertions.assertThat(isbnBloomFilter.mightContain("9780002")).isFalse();
+        isbnBloomFilterLoader.sync();
+
+        //verification
+        Assertions.assertThat(isbnBloomFilter.mightContain("9780002")).isTrue();
+        Assertions.assertThat(isbnBloomFilter.isStale()).isFalse();
+        //a janela começa antes do rebuild, alcançando os books commitados depois da leitura da base
+        ArgumentCaptor<Instant> since = ArgumentCaptor.forClass(Instant.class);
+        Mockito.verify(bookRepository).findIsbnsModifiedAfter(since.capture());
+        Assertions.assertThat(since.getValue()).isBeforeOrEqualTo(Instant.ofEpochMilli(start - 60000));
+    }
+
+    @Test
+    @DisplayName("Não deve sincronizar antes de o filtro ser carregado")
+    public void syncBeforeLoad(){
+        //execution
+        isbnBloomFilterLoader.sync();
+
+        //verification
+        Mockito.verify(bookRepository, Mockito.never()).findIsbnsModifiedAfter(Mockito.any(Instant.class));
+        Assertions.assertThat(isbnBloomFilter.mightContain("9780002")).isTrue();
+    }
+
+    @Test
+    @DisplayName("Deve responder talvez quando o sync com a base falha")
+    public void syncFailure(){
+        //mock
+        Mockito.when(bookRepository.count()).thenReturn(0L);
+        Mockito.when(bookRepository.streamAllIsbns()).thenReturn(Stream.empty());
+        Mockito.when(bookRepository.findIsbnsModifiedAfter(Mockito.any(Instant.class)))
+                .thenThrow(new IllegalStateException("database unavailable"));
+        isbnBloomFilterLoader.load();
+        Assertions.assertThat(isbnBloomFilter.mightContain("9780002")).isFalse();
+
+        //execution
+        isbnBloomFilter.markSynced(System.currentTimeMillis() - 5000);
+        Assertions.assertThatThrownBy(() -> isbnBloomFilterLoader.sync()).isInstanceOf(IllegalStateException.class);
+
+        //verification
+        Assertions.assertThat(isbnBloomFilter.mightContain("9780002")).isTrue();
+        Mockito.verify(bookRepository).findIsbnsModifiedAfter(Mockito.any(Instant.class));
+    }
+}
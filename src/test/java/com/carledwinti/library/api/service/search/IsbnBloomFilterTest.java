@@ -0,0 +1,87 @@
+package com.carledwinti.library.api.service.search;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+public class IsbnBloomFilterTest {
+
+    @Test
+    @DisplayName("Deve responder talvez para qualquer isbn enquanto o filtro não foi carregado")
+    public void notReady(){
+        IsbnBloomFilter isbnBloomFilter = new IsbnBloomFilter(0.01);
+
+        Assertions.assertThat(isbnBloomFilter.isReady()).isFalse();
+        Assertions.assertThat(isbnBloomFilter.mightContain("9780001")).isTrue();
+    }
+
+    @Test
+    @DisplayName("Deve encontrar todos os isbns carregados e recusar os desconhecidos perto da taxa configurada")
+    public void falsePositiveRate(){
+        //scenario
+        IsbnBloomFilter isbnBloomFilter = new IsbnBloomFilter(0.01);
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        isbnBloomFilter.bindTo(meterRegistry);
+
+        //execution
+        isbnBloomFilter.rebuild(100_000, () -> LongStream.range(0, 100_000).mapToObj(IsbnBloomFilterTest::isbn));
+        long falsePositives = LongStream.range(100_000, 200_000).mapToObj(IsbnBloomFilterTest::isbn)
+                .filter(isbnBloomFilter::mightContain).count();
+
+        //verification
+        Assertions.assertThat(LongStream.range(0, 100_000).mapToObj(IsbnBloomFilterTest::isbn)
+                .allMatch(isbnBloomFilter::mightContain)).isTrue();
+        //dimensionado com folga(GROWTH) a taxa real fica abaixo do fpp
+        Assertions.assertThat(falsePositives).isLessThan(1_000);
+        Assertions.assertThat(isbnBloomFilter.expectedFpp()).isLessThan(0.01);
+        Assertions.assertThat(meterRegistry.get("library.books.isbn.filter.negatives").functionCounter().count())
+                .isEqualTo(100_000 - falsePositives);
+        Assertions.assertThat(meterRegistry.get("library.books.isbn.filter.fpp").gauge().value()).isLessThan(0.01);
+    }
+
+    @Test
+    @DisplayName("Deve manter os isbns salvos durante o rebuild e descartar os que não estão mais na base")
+    public void rebuildKeepsConcurrentPuts(){
+        //scenario
+        IsbnBloomFilter isbnBloomFilter = new IsbnBloomFilter(0.01);
+        isbnBloomFilter.rebuild(2, () -> Stream.of("9780001", "9780002"));
+
+        //execution - o 9780003 é salvo enquanto a base é lida e o 9780002 foi removido
+        isbnBloomFilter.rebuild(2, () -> {
+            isbnBloomFilter.put("9780003");
+            return Stream.of("9780001");
+        });
+
+        //verification
+        Assertions.assertThat(isbnBloomFilter.mightContain("9780001")).isTrue();
+        Assertions.assertThat(isbnBloomFilter.mightContain("9780003")).isTrue();
+        Assertions.assertThat(isbnBloomFilter.mightContain("9780002")).isFalse();
+    }
+
+    @Test
+    @DisplayName("Deve responder talvez para os isbns desconhecidos quando o sync com a base está atrasado")
+    public void staleFilter(){
+        //scenario
+        IsbnBloomFilter isbnBloomFilter = new IsbnBloomFilter(0.01, 3000);
+        isbnBloomFilter.rebuild(1, () -> Stream.of("9780001"));
+
+        //execution e verification
+        isbnBloomFilter.markSynced(System.currentTimeMillis());
+        Assertions.assertThat(isbnBloomFilter.isStale()).isFalse();
+        Assertions.assertThat(isbnBloomFilter.mightContain("9780002")).isFalse();
+
+        //o 9780002 pode ter sido salvo por outra instância depois do último sync
+        isbnBloomFilter.markSynced(System.currentTimeMillis() - 5000);
+        Assertions.assertThat(isbnBloomFilter.isStale()).isTrue();
+        Assertions.assertThat(isbnBloomFilter.mightContain("9780002")).isTrue();
+    }
+
+    private static String isbn(long number) {
+        return String.valueOf(9788500000000L + number);
+    }
+}